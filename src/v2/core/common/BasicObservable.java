@@ -15,8 +15,12 @@ public class BasicObservable<T> implements Observable<T> {
         copy.forEach(o -> o.next(value));
     }
 
-    public Observer.Ref subscribe(Observer<T> observer) {
+    public synchronized Observer.Ref subscribe(Observer<T> observer) {
         observers.add(observer);
-        return () -> observers.remove(observer);
+        return () -> {
+            synchronized (this) {
+                observers.remove(observer);
+            }
+        };
     }
 }
@@ -0,0 +1,25 @@
+package v2.core.common;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counter for hot paths that many threads increment at once. Increments don't contend and don't notify;
+ * observers see the sum when the owner calls {@link #publish()}.
+ */
+public class StripedCounter extends BasicObservable<Long> implements Subject<Long> {
+
+    private final LongAdder adder = new LongAdder();
+
+    @Override
+    public Long value() {
+        return adder.sum();
+    }
+
+    public void increment() {
+        adder.increment();
+    }
+
+    public void publish() {
+        next(adder.sum());
+    }
+}
@@ -0,0 +1,14 @@
+package v2.core.concurrency;
+
+import v2.core.context.Module;
+
+/**
+ * Source of the current time in milliseconds. Modules read time from here instead of the system,
+ * so that a simulation can run them on virtual time.
+ */
+public interface Clock extends Module {
+
+    Clock SYSTEM = System::currentTimeMillis;
+
+    long millis();
+}
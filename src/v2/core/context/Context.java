@@ -2,9 +2,18 @@ package v2.core.context;
 
 import v2.core.common.BasicObservable;
 import v2.core.common.Observable;
+import v2.core.common.Observer;
 
 import java.util.*;
 
+/**
+ * <p>
+ *     Modules of one scope, resolved by class or by the module interfaces they implement directly.
+ *     A child context holds only its own registrations and resolves everything else through its parent,
+ *     so the many node contexts of a simulation share the registry of the simulation instead of copying it.
+ *     Registrations don't change once a context is built; a child's registration hides the parent's.
+ * </p>
+ */
 public class Context {
 
     public enum Status {
@@ -15,17 +24,18 @@ public class Context {
         Destroyed
     }
 
+    private final Context parent;
     private final Map<Class<? extends Module>, Module> registry;
     private final Collection<Module> modules;
     private Status status = Status.Building;
     private final BasicObservable<String> teardown = new BasicObservable<>();
+    private final Observer.Ref parentTeardownRef;
 
-    private Context(Map<Class<? extends Module>, Module> registry, Collection<Module> modules, Observable<String> parentTeardown) {
+    private Context(Context parent, Map<Class<? extends Module>, Module> registry, Collection<Module> modules) {
+        this.parent = parent;
         this.registry = registry;
         this.modules = modules;
-        if (parentTeardown != null) {
-            parentTeardown.subscribe(this::destroy);
-        }
+        parentTeardownRef = parent == null? null : parent.teardown.subscribe(this::destroy);
     }
 
     public Status status() {
@@ -51,18 +61,21 @@ public class Context {
         teardown.next(null);
         modules.forEach(Module::destroy);
         status = Status.Destroyed;
+        // a restarted child must not stay reachable from its parent
+        if (parentTeardownRef != null) parentTeardownRef.unsubscribe();
     }
 
     @SuppressWarnings("unchecked")
     public <T extends Module> T resolve(Class<T> moduleClass) {
-        if (!registry.containsKey(moduleClass)) {
-            throw new IllegalStateException(String.format("unresolved dependency: %s", moduleClass));
+        for (var ctx = this; ctx != null; ctx = ctx.parent) {
+            var module = ctx.registry.get(moduleClass);
+            if (module != null) return (T) module;
         }
-        return (T) registry.get(moduleClass);
+        throw new IllegalStateException(String.format("unresolved dependency: %s", moduleClass));
     }
 
     public static class Builder {
-        private final Map<Class<? extends Module>, Module> registry;
+        private final Map<Class<? extends Module>, Module> registry = new HashMap<>();
         private final Collection<Module> modules = new ArrayList<>();
         private final Context parentContext;
 
@@ -72,7 +85,6 @@ public class Context {
 
         public Builder(Context parentContext) {
             this.parentContext = parentContext;
-            registry = parentContext != null? new HashMap<>(parentContext.registry) : new HashMap<>();
         }
 
         @SuppressWarnings("unchecked")
@@ -91,7 +103,7 @@ public class Context {
         }
 
         public Context build() {
-            Context ctx = new Context(registry, modules, parentContext == null? null : parentContext.teardown);
+            Context ctx = new Context(parentContext, registry, modules);
             modules.forEach(m -> m.build(ctx));
             return ctx;
         }
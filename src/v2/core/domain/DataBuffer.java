@@ -0,0 +1,23 @@
+package v2.core.domain;
+
+import v2.core.context.Module;
+import v2.core.domain.message.Message;
+
+import java.util.function.Predicate;
+
+/**
+ * Store-and-forward queue for data messages that cannot be delivered to the data sink right now.
+ */
+public interface DataBuffer extends Module {
+
+    void store(Message message);
+
+    /**
+     * passes up to max buffered messages to the consumer, oldest first.
+     * a message is removed once the consumer accepts it; draining stops at the first rejected message.
+     * @return the number of accepted messages
+     */
+    int drain(int max, Predicate<Message> consumer);
+
+    boolean isEmpty();
+}
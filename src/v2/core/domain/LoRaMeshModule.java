@@ -7,4 +7,9 @@ import v2.core.domain.message.Message;
 public interface LoRaMeshModule extends Module {
     void listen(ChannelInfo channel, Observer<Message> observer);
     void enqueue(ChannelInfo channel, Message message);
+
+    /**
+     * @return the number of enqueued messages that were not sent yet
+     */
+    int queued();
 }
\ No newline at end of file
@@ -0,0 +1,104 @@
+package v2.core.domain;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * <p>
+ *     Snapshot of a joined node, used to resume without a full join after a reboot.
+ * </p>
+ * <p>
+ *     binary structure (version 1): <br/>
+ *     [version: 1] [address: 1] [channel length: 1] [channel code] <br/>
+ *     [hello counter: 1] [uplink counter: 1] [uplink next receiving: 1] [missing count: 1] [missing counters] <br/>
+ *     [routing count: 1] [routing addresses] <br/>
+ *     [retx count: 1] ([address: 1] [retx * 255: 1])*
+ * </p>
+ */
+public class NodeState {
+
+    public static final byte VERSION = 1;
+
+    public final int address;
+    public final ChannelInfo meshChannel;
+    public final int helloCounter;
+    public final int uplinkCounter;
+    public final int uplinkNextReceiving;
+    public final Collection<Integer> uplinkMissing;
+    public final Collection<Integer> routing;
+    public final Map<Integer, Double> retx;
+
+    public NodeState(int address, ChannelInfo meshChannel, int helloCounter, int uplinkCounter, int uplinkNextReceiving,
+                     Collection<Integer> uplinkMissing, Collection<Integer> routing, Map<Integer, Double> retx) {
+        this.address = address;
+        this.meshChannel = meshChannel;
+        this.helloCounter = helloCounter;
+        this.uplinkCounter = uplinkCounter;
+        this.uplinkNextReceiving = uplinkNextReceiving;
+        this.uplinkMissing = uplinkMissing;
+        this.routing = routing;
+        this.retx = retx;
+    }
+
+    public byte[] toBytes() {
+        byte[] channel = meshChannel.code.getBytes(StandardCharsets.US_ASCII);
+        var buf = ByteBuffer.allocate(9 + channel.length + uplinkMissing.size() + routing.size() + 2 * retx.size());
+        buf.put(VERSION);
+        buf.put((byte) address);
+        buf.put((byte) channel.length);
+        buf.put(channel);
+        buf.put((byte) helloCounter);
+        buf.put((byte) uplinkCounter);
+        buf.put((byte) uplinkNextReceiving);
+        putAll(buf, uplinkMissing);
+        putAll(buf, routing);
+        buf.put((byte) retx.size());
+        retx.forEach((neighbour, value) -> {
+            buf.put(neighbour.byteValue());
+            buf.put((byte) Math.round(Math.max(0, Math.min(1, value)) * 255));
+        });
+        return buf.array();
+    }
+
+    public static NodeState parse(byte[] data) {
+        try {
+            var buf = ByteBuffer.wrap(data);
+            if (buf.get() != VERSION) throw new IllegalArgumentException("unsupported node state version");
+            int address = buf.get() & 0xff;
+            byte[] channel = new byte[buf.get() & 0xff];
+            buf.get(channel);
+            int helloCounter = buf.get() & 0xff;
+            int uplinkCounter = buf.get() & 0xff;
+            int uplinkNextReceiving = buf.get() & 0xff;
+            var missing = getAll(buf);
+            var routing = getAll(buf);
+            Map<Integer, Double> retx = new HashMap<>();
+            for (int i = buf.get() & 0xff; i > 0; i--) {
+                int neighbour = buf.get() & 0xff;
+                retx.put(neighbour, (buf.get() & 0xff) / 255.0);
+            }
+            return new NodeState(address, new ChannelInfo(new String(channel, StandardCharsets.US_ASCII)),
+                    helloCounter, uplinkCounter, uplinkNextReceiving, missing, routing, retx);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("truncated node state");
+        }
+    }
+
+    private static void putAll(ByteBuffer buf, Collection<Integer> values) {
+        buf.put((byte) values.size());
+        for (int value : values) buf.put((byte) value);
+    }
+
+    private static List<Integer> getAll(ByteBuffer buf) {
+        List<Integer> values = new ArrayList<>();
+        for (int i = buf.get() & 0xff; i > 0; i--) values.add(buf.get() & 0xff);
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("NodeState(address=%d, channel=%s, routing=%s, retx=%s)", address, meshChannel, routing, retx);
+    }
+}
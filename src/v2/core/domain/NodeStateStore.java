@@ -0,0 +1,18 @@
+package v2.core.domain;
+
+import v2.core.context.Module;
+
+/**
+ * Keeps the latest {@link NodeState} across reboots.
+ */
+public interface NodeStateStore extends Module {
+
+    void save(NodeState state);
+
+    /**
+     * @return the latest saved state, or null if there is none or it is unreadable
+     */
+    NodeState load();
+
+    void clear();
+}
@@ -0,0 +1,97 @@
+package v2.core.domain;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * <p>
+ *     A job the pce hands to a controller in response to a fed message.
+ * </p>
+ * <p>
+ *     invite: send a join answer to the target, assigning the address to the node with the given serial id <br/>
+ *     trace: ask the target to resend the messages with the given correspondence counters <br/>
+ *     update: send routing registry updates to the target
+ * </p>
+ */
+public class PceCommand {
+
+    public enum Type {
+        Invite,
+        Trace,
+        Update
+    }
+
+    public final Type type;
+    public final int target;
+    public final int address;
+    public final long serialId;
+    public final byte[] data;
+
+    private PceCommand(Type type, int target, int address, long serialId, byte[] data) {
+        this.type = type;
+        this.target = target;
+        this.address = address;
+        this.serialId = serialId;
+        this.data = data;
+    }
+
+    public static PceCommand invite(int target, int address, long serialId) {
+        return new PceCommand(Type.Invite, target, address, serialId, new byte[0]);
+    }
+
+    public static PceCommand trace(int target, byte... counters) {
+        return new PceCommand(Type.Trace, target, 0, 0, counters);
+    }
+
+    public static PceCommand update(int target, byte... routing) {
+        return new PceCommand(Type.Update, target, 0, 0, routing);
+    }
+
+    /**
+     * parses the string representation used by the json api, e.g. "3 invite 7 1234" or "3 update 1 2 66"
+     */
+    public static PceCommand parse(String command) {
+        String[] parts = command.split(" ");
+        byte target = Byte.parseByte(parts[0]);
+        switch (parts[1]) {
+            case "invite": return invite(target, Byte.parseByte(parts[2]), Long.parseLong(parts[3]));
+            case "trace": return trace(target, parseData(parts));
+            case "update": return update(target, parseData(parts));
+            default: throw new IllegalArgumentException("command not interpretable: " + command);
+        }
+    }
+
+    private static byte[] parseData(String[] parts) {
+        byte[] data = new byte[parts.length - 2];
+        for (int i = 2; i < parts.length; i++) data[i - 2] = (byte) Integer.parseInt(parts[i]);
+        return data;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof PceCommand)) return false;
+        PceCommand other = (PceCommand) o;
+        return type == other.type && target == other.target && address == other.address
+                && serialId == other.serialId && Arrays.equals(data, other.data);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Objects.hash(type, target, address, serialId) + Arrays.hashCode(data);
+    }
+
+    /**
+     * @return the string representation used by the json api
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder().append(target).append(' ').append(type.name().toLowerCase());
+        if (type == Type.Invite) {
+            sb.append(' ').append(address).append(' ').append(serialId);
+        } else {
+            for (byte b : data) sb.append(' ').append(b);
+        }
+        return sb.toString();
+    }
+}
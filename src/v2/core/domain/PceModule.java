@@ -10,6 +10,6 @@ public interface PceModule extends Module {
     ChannelInfo heartbeat();
     int allocateAddress(long sid, byte mediatorId, double mediatorRetx);
     CorrespondenceRegister correspondence(int address);
-    List<String> feed(long controllerId, Message message);
+    List<PceCommand> feed(long controllerId, Message message);
 
 }
@@ -9,5 +9,13 @@ public interface RetxRegister extends Observer<Message> {
     void next(Message message);
     double calculateRetx(int address, String... options);
     Map<Integer, Double> calculateRetx(double threshold, String... options);
+    /**
+     * @return true if a hello of the address was received, seeding does not count
+     */
     boolean knows(int address);
+
+    /**
+     * starts the estimation for an address from a previously calculated retx
+     */
+    void seed(int address, double retx);
 }
@@ -32,6 +32,7 @@ public interface MessageHeader {
     int MESH_ADDRESS_LIMIT = ADDRESS_MULTIPURPOSE_BIT - 1;
     int RESEND_BIT = ADDRESS_MULTIPURPOSE_BIT; // as part of message header, indicates that this message was lost before and should ignore cache
     int DELETE_BIT = ADDRESS_MULTIPURPOSE_BIT; // as part of routing data, indicates that an address should be removed from the forwarding list
+    int ROUTING_RESET = DELETE_BIT; // as part of routing data, deletes address 0, i.e. clears the forwarding list before the following entries
     int RESOLVED_BIT = ADDRESS_MULTIPURPOSE_BIT; // as part of tracing data, indicates that a message was found
     int DOWNWARDS_BIT = 1 << (ADDRESS_BITS - 1);
     ////////// end address part //////////
@@ -1,6 +1,7 @@
 package v2.core.domain.node;
 
 import v2.core.common.BasicSubject;
+import v2.core.common.Counter;
 import v2.core.common.Subject;
 import v2.core.concurrency.Executor;
 import v2.core.concurrency.CancellationToken;
@@ -30,26 +31,53 @@ public class Node implements Module {
     public static final long HELLO_DELAY = 0;
     public static final long RENDEZVOUS_PERIOD = 65000;
     public static final long RENDEZVOUS_DELAY = 0;
-    public static final long ROUTING_PERIOD = 120000;
+    public static final long ROUTING_CHECK_PERIOD = 20000;
     public static final long ROUTING_DELAY = 107000;
+    public static final long ROUTING_KEEPALIVE_PERIOD = 160000;
+    public static final double ROUTING_REPORT_THRESHOLD = 0.1;
     public static final int TRACING_VOLLEY = 10;
     public static final int JOIN_VOLLEY = 10;
     public static final long JOIN_DELAY = 1000;
     public static final long JOIN_TIMEOUT = 3000;
+    public static final int DRAIN_BATCH = 32;
+    public static final long DRAIN_PERIOD = 5000;
+    /**
+     * buffered data is only handed to the radio while fewer messages than this wait to be sent,
+     * so the buffer stays on disk instead of piling up in the radio queue
+     */
+    public static final int DRAIN_QUEUE_LIMIT = 4;
+    public static final long RESUME_TIMEOUT = 45000;
+    /**
+     * the state is saved whenever a sending counter enters a new window of this size,
+     * so a node resuming after a power loss skips the window to never reuse a counter
+     */
+    public static final int COUNTER_WINDOW = 8;
+
+    /**
+     * header of buffered data that was read before an uplink existed. packed when drained.
+     */
+    private static final int UNPACKED = 0;
 
     private int address = -1;
     private final BasicSubject<NodeStatus> status = new BasicSubject<>(NodeStatus.Down);
     private ChannelInfo meshChannel;
     private final Set<Integer> routingRegistry = new HashSet<>();
+    private volatile int routingVersion = 0;
+    private volatile Set<Integer> publishedRouting = Set.of();
 
     private RetxRegister retxRegister;
+    private Map<Integer, Double> reportedRetx;
+    private long checksSinceReport = 0;
+    private final Counter routingChanges = new Counter();
     private final Map<Long, Integer> joinCounter = new HashMap<>();
     private final Map<Integer, Integer> traceCounter = new HashMap<>();
 
     private List<CancellationToken> cancellationTokens = new ArrayList<>();
 
-    private CorrespondenceRegister uplink;
-    private CorrespondenceRegister hello;
+    private LocalCorrespondenceRegister uplink;
+    private LocalCorrespondenceRegister hello;
+    private boolean resumed = false;
+    private boolean neighbourConfirmed = false;
 
     private final MessageCache cache = new MessageCache(64);
     private boolean dataSinkConnected = false;
@@ -60,6 +88,8 @@ public class Node implements Module {
     private LoRaMeshModule lora;
     private PceModule pce;
     private DataSinkModule dataSink;
+    private DataBuffer buffer;
+    private NodeStateStore stateStore;
     private Consumer<String> teardownCallback;
 
     @Override
@@ -71,6 +101,8 @@ public class Node implements Module {
         lora = ctx.resolve(LoRaMeshModule.class);
         pce = ctx.resolve(PceModule.class);
         dataSink = ctx.resolve(DataSinkModule.class);
+        buffer = ctx.resolve(DataBuffer.class);
+        stateStore = ctx.resolve(NodeStateStore.class);
         teardownCallback = ctx::destroy;
     }
 
@@ -84,6 +116,7 @@ public class Node implements Module {
     public void destroy() {
         info("shutting down");
         cancelAllProcedures();
+        saveState();
     }
 
     private synchronized void cancelAllProcedures() {
@@ -104,10 +137,24 @@ public class Node implements Module {
         return status;
     }
 
+    /**
+     * @return counts changes of the routing registry
+     */
+    public Subject<Long> routingChanges() {
+        return routingChanges;
+    }
+
     public Map<Integer, Double> retx() {
         return retxRegister== null? new HashMap<>() : retxRegister.calculateRetx(0.2);
     }
 
+    /**
+     * @return true if the node resumed from a persisted state instead of joining
+     */
+    public boolean isResumed() {
+        return resumed;
+    }
+
     public boolean isAlive() {
         return status.get() != NodeStatus.Down && status.get() != NodeStatus.Error;
     }
@@ -119,12 +166,15 @@ public class Node implements Module {
                 var result = pce.heartbeat();
                 if (result != null) error("connected");
                 dataSinkConnected = dataSink.heartbeat();
+                drainBuffer();
+                saveState();
                 break;
 
             case Controller:
                 meshChannel = pce.heartbeat();
                 if (meshChannel == null) error("disconnected");
                 dataSinkConnected = dataSink.heartbeat();
+                drainBuffer();
                 break;
         }
     }
@@ -159,12 +209,66 @@ public class Node implements Module {
         dataSinkConnected = dataSink.heartbeat();
         meshChannel = pce.heartbeat();
         if (meshChannel != null) {
+            stateStore.clear();
             initNode(pce.allocateAddress(id(), (byte) -1, 0.0), true);
         } else {
-            seek();
+            var state = stateStore.load();
+            if (state != null) {
+                resume(state);
+            } else {
+                seek();
+            }
         }
     }
 
+    /**
+     * continues as the node described by the state without joining.
+     * a hello of a neighbour with another address confirms the state, a hello with the resumed address means
+     * the address was given to another node meanwhile.
+     * falls back to seek mode on a conflict or if no neighbour is heard within {@link #RESUME_TIMEOUT}.
+     */
+    private void resume(NodeState state) {
+        info("resuming from %s", state);
+        meshChannel = state.meshChannel;
+        resumed = true;
+        neighbourConfirmed = false;
+        initNode(state.address, false, state);
+
+        var ct = exec.schedule(() -> {
+            if (!neighbourConfirmed) abandonResume("resumed state not confirmed by any neighbour");
+        }, RESUME_TIMEOUT);
+        cancellationTokens.add(ct);
+    }
+
+    private void abandonResume(String reason) {
+        warn(reason);
+        stateStore.clear();
+        resumed = false;
+        cancelAllProcedures();
+        routingRegistry.clear();
+        routingChanged();
+        seek();
+    }
+
+    private void saveState() {
+        try {
+            var state = state();
+            if (state != null) stateStore.save(state);
+        } catch (Exception e) {
+            logger.exception(e, this);
+        }
+    }
+
+    /**
+     * @return the state to resume from after a reboot, null if the node has not joined or is the controller
+     */
+    public NodeState state() {
+        if (address <= 0 || uplink == null || status.get() == NodeStatus.Controller) return null;
+        return new NodeState(address, meshChannel,
+                hello.sendingCounter(), uplink.sendingCounter(), uplink.nextReceivingCounter(), uplink.missing(),
+                new ArrayList<>(routingRegistry), retx());
+    }
+
     private boolean shouldForward(Message message) {
         return routingRegistry.contains(message.getRoutingAddress())
                 && (MessageType.Resend.matches(message) || !cache.contains(message));
@@ -178,8 +282,12 @@ public class Node implements Module {
             lora.enqueue(meshChannel, message);
         } else if (MessageType.Data.matches(message) && dataSinkConnected) {
             info("feeding data sink: %s", message);
-            var tracingHeaders = dataSink.feed(message);
-            registerTracingHeaders(tracingHeaders);
+            if (!feedDataSink(message)) {
+                buffer.store(message);
+            }
+        } else if (MessageType.Data.matches(message) && status.get() == NodeStatus.Controller) {
+            debug("buffering data: %s", message);
+            buffer.store(message);
         } else if (MessageType.Upwards.matches(message) && status.get() == NodeStatus.Controller) {
             debug("feeding pce: %s", message);
             var commands = pce.feed(id(), message);
@@ -234,7 +342,7 @@ public class Node implements Module {
         });
 
         for (int i = 0; i < JOIN_VOLLEY; i++) {
-            emit(hello.packAndIncrement(MessageType.Hello, data));
+            emit(packAndIncrement(hello, MessageType.Hello, data));
         }
 
         var ct = exec.schedule(this::join, JOIN_TIMEOUT); // timeout will be cancelled when joined successfully
@@ -242,24 +350,77 @@ public class Node implements Module {
     }
 
     private void initNode(int assignedAddress, boolean controller) {
+        initNode(assignedAddress, controller, null);
+    }
+
+    private void initNode(int assignedAddress, boolean controller, NodeState state) {
         info("init as %s %d", controller? "controller" : "node", assignedAddress);
         cancelAllProcedures();
         this.address = assignedAddress;
         hello = LocalCorrespondenceRegister.from(this.address);
         uplink = LocalCorrespondenceRegister.from(this.address);
         retxRegister = new RetxRegisterImpl();
+        if (state != null) {
+            hello.restoreSendingCounter(state.helloCounter + COUNTER_WINDOW);
+            uplink.restoreSendingCounter(state.uplinkCounter + COUNTER_WINDOW);
+            uplink.restore(state.uplinkNextReceiving, state.uplinkMissing);
+            routingRegistry.addAll(state.routing);
+            routingChanged();
+            state.retx.forEach(retxRegister::seed);
+        }
         status.set(controller? NodeStatus.Controller : NodeStatus.Node);
 
         var ct = exec.schedulePeriodic(this::sendRendezvous, RENDEZVOUS_PERIOD, RENDEZVOUS_DELAY);
         cancellationTokens.add(ct);
         ct = exec.schedulePeriodic(this::statusCheck, STATUS_CHECK_PERIOD, STATUS_CHECK_DELAY);
         cancellationTokens.add(ct);
-        ct = exec.schedulePeriodic(() -> emit(generateHello()), HELLO_PERIOD, HELLO_DELAY);
+        ct = exec.schedulePeriodic(() -> emit(generateHello()), config.helloPeriod(), HELLO_DELAY);
         cancellationTokens.add(ct);
-        ct = exec.schedulePeriodic(() -> emit(generateNetworkData()), ROUTING_PERIOD, ROUTING_DELAY);
+        reportedRetx = null;
+        checksSinceReport = 0;
+        ct = exec.schedulePeriodic(this::reportRouting, config.routingCheckPeriod(), ROUTING_DELAY);
         cancellationTokens.add(ct);
 
         lora.listen(meshChannel, controller? this::handleMessageAsController : this::handleMessageAsNode);
+        ct = exec.schedulePeriodic(this::drainBuffer, DRAIN_PERIOD, 0);
+        cancellationTokens.add(ct);
+    }
+
+    private boolean feedDataSink(Message message) {
+        try {
+            registerTracingHeaders(dataSink.feed(message));
+            return true;
+        } catch (Exception e) {
+            warn("data sink unreachable: %s", e.getMessage());
+            dataSinkConnected = false;
+            return false;
+        }
+    }
+
+    /**
+     * forwards one batch of buffered data, called every {@link #DRAIN_PERIOD} and on status checks.
+     * controllers feed up to {@link #DRAIN_BATCH} messages to the data sink,
+     * nodes only top up the radio queue to {@link #DRAIN_QUEUE_LIMIT}
+     */
+    private void drainBuffer() {
+        if (uplink == null || buffer.isEmpty()) return;
+        int max = status.get() == NodeStatus.Controller? DRAIN_BATCH : Math.min(DRAIN_BATCH, DRAIN_QUEUE_LIMIT - lora.queued());
+        if (max <= 0) return;
+        int drained = buffer.drain(max, this::forwardBuffered);
+        if (drained > 0) debug("drained %d buffered messages", drained);
+    }
+
+    private boolean forwardBuffered(Message message) {
+        boolean controller = status.get() == NodeStatus.Controller;
+        if (controller && !dataSinkConnected) return false;
+        if (message.header == UNPACKED) {
+            message = packAndIncrement(uplink, MessageType.Data, message.data);
+        }
+        if (controller) {
+            return feedDataSink(message);
+        }
+        emit(message);
+        return true;
     }
 
     private void  handleMessageAsController(Message message) {
@@ -287,7 +448,8 @@ public class Node implements Module {
     private void handleHello(Message message) {
         debug("received hello: %s", message);
         if (message.getAddress() == address) {
-            warn("received own hello");
+            if (resumed) abandonResume(String.format("resumed address %d is used by a neighbour", address));
+            else warn("received own hello");
         } else if (message.getAddress() == 0) {
             ByteBuffer buf = ByteBuffer.wrap(message.data());
             if (buf.remaining() < 9) {
@@ -304,7 +466,7 @@ public class Node implements Module {
                                 ByteBuffer buf2 = ByteBuffer.allocate(9);
                                 buf2.put(reliability);
                                 buf2.putLong(id);
-                                emit(uplink.packAndIncrement(MessageType.UpwardsJoin, buf2.array()));
+                                emit(packAndIncrement(uplink, MessageType.UpwardsJoin, buf2.array()));
                             }, JOIN_DELAY);
                     cancellationTokens.add(ct);
                     return 1;
@@ -313,6 +475,7 @@ public class Node implements Module {
                 }
             });
         } else {
+            neighbourConfirmed = true;
             retxRegister.next(message);
 
             registerTracingHeaders(MessageUtil.helloDataToTracingHeaders(message.data()));
@@ -350,6 +513,7 @@ public class Node implements Module {
             registerTracingHeaders(MessageUtil.countersToTracingHeaders(uplink.address(), uplink.registerAndListLosses(message)));
             routingRegistry.add(address);
             routingRegistry.add(address | MessageHeader.DOWNWARDS_BIT);
+            routingChanged();
 
             var ct = exec.async(() -> this.invite(address, message));
             cancellationTokens.add(ct);
@@ -357,6 +521,7 @@ public class Node implements Module {
         } else if (MessageType.Downwards.matches(message) && shouldForward(message)) {
             routingRegistry.add(address);
             routingRegistry.add(message.data(0) | MessageHeader.DOWNWARDS_BIT);
+            routingChanged();
             emit(message);
         } else {
             handleDefaultAsNode(message);
@@ -375,6 +540,7 @@ public class Node implements Module {
         if (MessageType.Downwards.matches(message) && message.getAddress() == address) {
             registerTracingHeaders(MessageUtil.countersToTracingHeaders(uplink.address(), uplink.registerAndListLosses(message)));
             updateRouting(message.data());
+            saveState();
         } else {
             handleDefaultAsNode(message);
         }
@@ -390,7 +556,7 @@ public class Node implements Module {
 
     private synchronized Message generateHello() {
         if (!DO_TRACE) {
-            return hello.packAndIncrement(MessageType.Hello);
+            return packAndIncrement(hello, MessageType.Hello);
         }
         byte[] data = new byte[traceCounter.size() * 2];
         int i = 0;
@@ -403,27 +569,59 @@ public class Node implements Module {
             if (counter >= TRACING_VOLLEY) traceCounter.remove(tracingHeader);
             else traceCounter.put(tracingHeader, counter);
         }
-        return hello.packAndIncrement(MessageType.Hello, data);
+        return packAndIncrement(hello, MessageType.Hello, data);
     }
 
-    private Message generateNetworkData() {
+    /**
+     * sends the retx vector upwards if it changed by more than {@link #ROUTING_REPORT_THRESHOLD}
+     * or if nothing was reported for {@link #ROUTING_KEEPALIVE_PERIOD}
+     */
+    private void reportRouting() {
         var retx = retx();
+        checksSinceReport++;
+        if (!retxChanged(retx) && checksSinceReport < ROUTING_KEEPALIVE_PERIOD / config.routingCheckPeriod()) {
+            return;
+        }
+        reportedRetx = retx;
+        checksSinceReport = 0;
+        emit(generateNetworkData(retx));
+    }
+
+    private boolean retxChanged(Map<Integer, Double> retx) {
+        if (reportedRetx == null || !retx.keySet().equals(reportedRetx.keySet())) return true;
+        for (var entry : retx.entrySet()) {
+            if (Math.abs(entry.getValue() - reportedRetx.get(entry.getKey())) > ROUTING_REPORT_THRESHOLD) return true;
+        }
+        return false;
+    }
+
+    private Message generateNetworkData(Map<Integer, Double> retx) {
         ByteBuffer buffer = ByteBuffer.allocate(retx.size() * 2);
         retx.forEach((key, value) -> {
             buffer.put(key.byteValue());
-            buffer.put((byte) (value * 256));
+            buffer.put((byte) Math.min(255, (int) (value * 256)));
         });
         byte[] data = buffer.array();
-        return uplink.packAndIncrement(MessageType.UpwardsRouting, data);
+        return packAndIncrement(uplink, MessageType.UpwardsRouting, data);
+    }
+
+    /**
+     * packs the message with the next counter of the register and saves the state when the counter enters a new window
+     */
+    private Message packAndIncrement(LocalCorrespondenceRegister register, MessageType type, byte... data) {
+        var message = register.packAndIncrement(type, data);
+        if (register.sendingCounter() % COUNTER_WINDOW == 0) saveState();
+        return message;
     }
 
     public void feedData(byte... data) {
         if (uplink == null) {
-//            warn("data loss in status %s: %s", status, Arrays.toString(data));
+            debug("buffering data in status %s", status);
+            buffer.store(new Message(UNPACKED, data));
             return;
         }
         try {
-            emit(uplink.packAndIncrement(MessageType.Data, data));
+            emit(packAndIncrement(uplink, MessageType.Data, data));
         } catch (Exception e) {
             logger.exception(e, this);
         }
@@ -433,19 +631,55 @@ public class Node implements Module {
         return routingRegistry;
     }
 
+    /**
+     * @return changes with every change of the routing registry, so other threads can tell cheaply whether it changed
+     */
+    public int routingVersion() {
+        return routingVersion;
+    }
+
+    /**
+     * @return an immutable copy of the routing registry as of its latest change, for other threads
+     */
+    public Set<Integer> routingSnapshot() {
+        return publishedRouting;
+    }
+
+    /**
+     * publishes the registry after a change, the copy first so that a new version never comes with an old copy
+     */
+    private void routingChanged() {
+        publishedRouting = Set.copyOf(routingRegistry);
+        routingVersion++;
+    }
+
     @Override
     public String info() {
         return String.format("Node %d (%s/%d)", id(), status, address);
     }
 
+    /**
+     * applies routing entries in order: additions, deletions (with the delete bit)
+     * and {@link MessageHeader#ROUTING_RESET}, which makes the update a full replacement of the registry
+     */
     private void updateRouting(byte[] data) {
-        for (int address : data) {
-            if ((address & MessageHeader.DELETE_BIT) != 0) {
-                routingRegistry.remove(address & ~MessageHeader.DELETE_BIT);
+        Set<Integer> updated = new HashSet<>(routingRegistry);
+        for (byte entry : data) {
+            int address = entry & 0xff;
+            if (address == MessageHeader.ROUTING_RESET) {
+                updated.clear();
+            } else if ((address & MessageHeader.DELETE_BIT) != 0) {
+                updated.remove(address & ~MessageHeader.DELETE_BIT);
             } else {
-                routingRegistry.add(address);
+                updated.add(address);
             }
         }
+        if (!updated.equals(routingRegistry)) {
+            routingRegistry.retainAll(updated);
+            routingRegistry.addAll(updated);
+            routingChanged();
+            routingChanges.increment();
+        }
     }
 
     private void registerTracingHeaders(Collection<Integer> tracingHeaders) {
@@ -470,17 +704,14 @@ public class Node implements Module {
         }
     }
 
-    private void interpretCommand(String command) {
+    private void interpretCommand(PceCommand command) {
         debug("command: %s", command);
-        String[] parts = command.split(" ");
-        byte targetId = Byte.parseByte(parts[0]);
-        switch (parts[1]) {
-            case "invite": {
-                byte address = Byte.parseByte(parts[2]);
-                long id = Long.parseLong(parts[3]);
+        int targetId = command.target;
+        switch (command.type) {
+            case Invite: {
                 ByteBuffer buf = ByteBuffer.allocate(9);
-                buf.put(address);
-                buf.putLong(id);
+                buf.put((byte) command.address);
+                buf.putLong(command.serialId);
                 byte[] data = buf.array();
                 Message message = pce.correspondence(targetId).pack(MessageType.DownwardsJoin, data);
 
@@ -494,18 +725,16 @@ public class Node implements Module {
                 }
             }
                 break;
-            case "trace": {
+            case Trace: {
                 if (DO_TRACE) {
-                    byte[] data = new byte[parts.length - 2];
-                    for (int i = 2; i < parts.length; i++) data[i - 2] = (byte) Integer.parseInt(parts[i]);
+                    byte[] data = command.data;
                     var ct = exec.async(() -> emit(pce.correspondence(targetId).pack(MessageType.Trace, data)));
                     cancellationTokens.add(ct);
                 }
             }
                 break;
-            case "update": {
-                byte[] data = new byte[parts.length - 2];
-                for (int i = 2; i < parts.length; i++) data[i - 2] = (byte) Integer.parseInt(parts[i]);
+            case Update: {
+                byte[] data = command.data;
                 if (targetId == this.address) {
                     updateRouting(data);
                 } else {
@@ -521,5 +750,13 @@ public class Node implements Module {
 
     public interface Config extends Module {
         long id();
+
+        default long helloPeriod() {
+            return HELLO_PERIOD;
+        }
+
+        default long routingCheckPeriod() {
+            return ROUTING_CHECK_PERIOD;
+        }
     }
 }
@@ -0,0 +1,57 @@
+package v2.core.test;
+
+import org.junit.jupiter.api.Test;
+import v2.core.context.Context;
+import v2.core.context.Module;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContextTest {
+
+    interface Named extends Module {
+        String name();
+    }
+
+    static class Shared implements Named {
+        @Override
+        public String name() {
+            return "shared";
+        }
+    }
+
+    static class Own implements Named {
+        @Override
+        public String name() {
+            return "own";
+        }
+    }
+
+    @Test
+    void testChildResolvesThroughParent() {
+        var shared = new Shared();
+        var parent = new Context.Builder().register(shared).build();
+        var child = new Context.Builder(parent).register(new Own()).build();
+        var grandchild = new Context.Builder(child).build();
+
+        assertEquals("own", child.resolve(Named.class).name());
+        assertEquals("own", grandchild.resolve(Named.class).name());
+        assertEquals(shared, grandchild.resolve(Shared.class));
+        assertEquals("shared", parent.resolve(Named.class).name());
+        assertThrows(IllegalStateException.class, () -> parent.resolve(Own.class));
+    }
+
+    @Test
+    void testParentTeardownDestroysChildrenOnce() {
+        var parent = new Context.Builder().build().deploy();
+        var restarted = new Context.Builder(parent).build().deploy();
+        int[] teardowns = {0};
+        restarted.teardown().subscribe(x -> teardowns[0]++);
+        restarted.destroy("restart");
+        var child = new Context.Builder(parent).build().deploy();
+
+        parent.destroy("end");
+
+        assertEquals(1, teardowns[0]);
+        assertEquals(Context.Status.Destroyed, child.status());
+    }
+}
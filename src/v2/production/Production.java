@@ -14,6 +14,9 @@ import v2.shared.api.HttpLogger;
 import v2.shared.api.HttpPceModule;
 import v2.shared.impl.ConsoleLogger;
 import v2.shared.impl.FileLogger;
+import v2.shared.impl.FileNodeStateStore;
+import v2.shared.impl.MappedDataBuffer;
+import v2.shared.impl.NodeSupervisor;
 import v2.shared.impl.SimpleExecutor;
 import v2.shared.integration.CommandLine;
 import v2.shared.integration.FileClient;
@@ -33,20 +36,28 @@ public class Production {
         String apiUrl = config.var("api", "localhost:8080");
         boolean pceDisabled = config.var("pce").equals("disabled");
         boolean dataSinkDisabled = config.var("data").equals("disabled");
+        var pceProtocol = config.var("pce-protocol").equals("binary")? HttpPceModule.Protocol.Binary : HttpPceModule.Protocol.Json;
 
         var ctx = new Context.Builder()
                 .register(new LinuxAdapter())
-                .register(new Node())
-                .register(new LogMultiplexer(new ConsoleLogger(), new FileLogger(), new HttpLogger()))
+                .register(new ConsoleLogger())
                 .register(new CommandLine())
                 .register(new FileClient())
                 .register(new Http())
-                .register(new GuardedDataSinkModule(new HttpDataSinkModuleModule()))
-                .register(new GuardedPceModule(new HttpPceModule()))
-                .register(new E32LoRaMeshModule())
-                .register(new HttpSynchronizer())
-                .register(new RpiTemperatureSensor())
                 .register(new SimpleExecutor())
+                .register(new NodeSupervisor(parent -> new Context.Builder(parent)
+                        .register(new NodeSupervisor.SoftRebootOs())
+                        .register(new Node())
+                        .register(new LogMultiplexer(new ConsoleLogger(), new FileLogger(), new HttpLogger()))
+                        .register(new GuardedDataSinkModule(new HttpDataSinkModuleModule()))
+                        .register(new MappedDataBuffer())
+                        .register(new FileNodeStateStore())
+                        .register(new GuardedPceModule(new HttpPceModule(pceProtocol)))
+                        .register(new E32LoRaMeshModule())
+                        .register(new HttpSynchronizer())
+                        .register(new RpiTemperatureSensor())
+                        .register(new SimpleExecutor())
+                        .build()))
                 .build()
                 .deploy();
 
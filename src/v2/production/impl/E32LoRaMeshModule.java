@@ -122,6 +122,11 @@ public class E32LoRaMeshModule implements LoRaMeshModule {
         queue.add(new SendingItem(channel, message));
     }
 
+    @Override
+    public int queued() {
+        return queue.size();
+    }
+
 
     private String messageToRaw(Message message) {
         var sb = new StringBuilder();
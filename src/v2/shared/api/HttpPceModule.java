@@ -2,28 +2,76 @@ package v2.shared.api;
 
 import v2.core.common.BasicObservable;
 import v2.core.common.Observable;
+import v2.core.concurrency.CancellationToken;
+import v2.core.concurrency.Executor;
 import v2.core.context.Context;
 import v2.core.domain.ChannelInfo;
 import v2.core.domain.CorrespondenceRegister;
+import v2.core.domain.PceCommand;
 import v2.core.domain.PceModule;
 import v2.core.domain.message.Message;
+import v2.core.domain.message.MessageHeader;
 import v2.core.domain.node.Node;
+import v2.core.log.Logger;
 import v2.shared.measurements.PceModuleInsights;
+import v2.shared.util.BinaryUtil;
 import v2.shared.util.JsonUtil;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 public class HttpPceModule implements PceModule, PceModuleInsights {
 
+    /**
+     * how often receiving counters are written back to the pce, they are written back on destroy as well.
+     * A controller that dies in between loses at most this much receiving state
+     */
+    public static final long CORRESPONDENCE_SYNC_PERIOD = 30000;
+
+    public enum Protocol {
+        Json,
+        Binary
+    }
+
+    private final Protocol protocol;
+
     private final BasicObservable<Message> forwarded = new BasicObservable<>();
+    private final Map<Integer, LeasedCorrespondenceRegister> correspondence = new HashMap<>();
 
     private Http http;
     private Node node;
+    private Executor exec;
+    private Logger logger;
+    private CancellationToken syncToken;
+
+    public HttpPceModule() {
+        this(Protocol.Json);
+    }
+
+    public HttpPceModule(Protocol protocol) {
+        this.protocol = protocol;
+    }
 
     @Override
     public void build(Context ctx) {
         http = ctx.resolve(Http.class);
         node = ctx.resolve(Node.class);
+        exec = ctx.resolve(Executor.class);
+        logger = ctx.resolve(Logger.class);
+    }
+
+    @Override
+    public void deploy() {
+        syncToken = exec.schedulePeriodic(this::syncCorrespondence, CORRESPONDENCE_SYNC_PERIOD, CORRESPONDENCE_SYNC_PERIOD);
+    }
+
+    @Override
+    public void destroy() {
+        if (syncToken != null) syncToken.cancel();
+        syncCorrespondence();
     }
 
     @Override
@@ -44,19 +92,38 @@ public class HttpPceModule implements PceModule, PceModuleInsights {
     }
 
     @Override
-    public CorrespondenceRegister correspondence(int address) {
-        return new HttpCorrespondenceRegister(address, http);
+    public synchronized CorrespondenceRegister correspondence(int address) {
+        int key = address & ~MessageHeader.DOWNWARDS_BIT & ~MessageHeader.ADDRESS_MULTIPURPOSE_BIT;
+        return correspondence.computeIfAbsent(key, k -> new LeasedCorrespondenceRegister(k, http));
     }
 
     @Override
-    public List<String> feed(long controllerId, Message message) {
+    public List<PceCommand> feed(long controllerId, Message message) {
         forwarded.next(message);
+        if (protocol == Protocol.Binary) {
+            var response = http.postResponseBinary("/pce/feed/binary", BinaryUtil.feedRequest(controllerId, message));
+            return BinaryUtil.parseFeedResponse(response);
+        }
         var response = http.postResponseString(String.format("/pce/feed?controllerId=%d", controllerId), JsonUtil.message(message));
-        return JsonUtil.parseStringList(response);
+        return JsonUtil.parseStringList(response).stream().map(PceCommand::parse).collect(Collectors.toList());
     }
 
     @Override
     public Observable<Message> forwarded() {
         return forwarded;
     }
+
+    private void syncCorrespondence() {
+        for (var register : registers()) {
+            try {
+                register.sync();
+            } catch (Exception e) {
+                logger.exception(e, this);
+            }
+        }
+    }
+
+    private synchronized List<LeasedCorrespondenceRegister> registers() {
+        return new ArrayList<>(correspondence.values());
+    }
 }
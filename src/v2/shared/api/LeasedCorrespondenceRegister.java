@@ -0,0 +1,113 @@
+package v2.shared.api;
+
+import v2.core.domain.CorrespondenceRegister;
+import v2.core.domain.message.Message;
+import v2.core.domain.message.MessageHeader;
+import v2.core.domain.message.MessageType;
+import v2.shared.impl.LocalCorrespondenceRegister;
+import v2.shared.util.JsonUtil;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * <p>
+ *     Caching counterpart of {@link HttpCorrespondenceRegister}.
+ * </p>
+ * <p>
+ *     Sending counters are leased from the pce in blocks of {@link #LEASE_SIZE}.
+ *     The pce advances its counter by the whole block, so counters are never handed out twice,
+ *     not even when a controller restarts with an unused lease. The unused rest of a lease is skipped,
+ *     receivers count it as lost once.
+ *     Counters are exchanged with the pce unwrapped, only headers carry them modulo the counter range.
+ * </p>
+ * <p>
+ *     Receiving counters are tracked locally with the semantics of {@link LocalCorrespondenceRegister}.
+ *     The state is loaded from the pce on first use and written back by {@link #sync()}.
+ *     Whatever was registered since the last sync is lost if the controller dies without one,
+ *     so those losses are reported again after a restart.
+ * </p>
+ */
+public class LeasedCorrespondenceRegister implements CorrespondenceRegister {
+
+    public static final int LEASE_SIZE = 8;
+    private static final int counterLimit = 1 << MessageHeader.COUNTER_BITS;
+
+    private final int address;
+    private final Http http;
+    private final LocalCorrespondenceRegister receiving;
+
+    private int next;
+    private int leased = 0;
+    private boolean restored = false;
+    private boolean dirty = false;
+
+    public LeasedCorrespondenceRegister(int address, Http http) {
+        this.address = address & ~MessageHeader.DOWNWARDS_BIT;
+        this.http = http;
+        this.receiving = LocalCorrespondenceRegister.from(this.address);
+    }
+
+    public int address() {
+        return address;
+    }
+
+    @Override
+    public synchronized Message pack(MessageType type, byte... data) {
+        // no counter is used, so there is nothing to lease
+        if (leased == 0) next = Integer.parseInt(http.getResponseString(String.format("/correspondence/out/%d", address)));
+        return new Message(header(type), data);
+    }
+
+    @Override
+    public synchronized Message packAndIncrement(MessageType type, byte... data) {
+        if (leased == 0) lease();
+        int header = header(type);
+        next++;
+        leased--;
+        return new Message(header, data);
+    }
+
+    @Override
+    public synchronized Collection<Integer> registerAndListLosses(Message message) {
+        if (!restored) restore();
+        dirty = true;
+        return new ArrayList<>(receiving.registerAndListLosses(message));
+    }
+
+    /**
+     * writes the receiving state back to the pce, if it changed since the last sync
+     */
+    public synchronized void sync() {
+        if (!dirty) return;
+        List<Integer> state = new ArrayList<>();
+        state.add(receiving.nextReceivingCounter());
+        state.addAll(receiving.missing());
+        http.postResponseVoid(String.format("/correspondence/in/%d", address), JsonUtil.intList(state));
+        dirty = false;
+    }
+
+    private int header(MessageType type) {
+        return type.getHeaderBinary()
+                | address
+                | MessageHeader.DOWNWARDS_BIT
+                | ((next % counterLimit) << MessageHeader.COUNTER_SHIFT);
+    }
+
+    private void lease() {
+        var response = http.postResponseString(String.format("/correspondence/out/%d/lease", address), LEASE_SIZE + "");
+        next = Integer.parseInt(response);
+        leased = LEASE_SIZE;
+    }
+
+    private void restore() {
+        int[] state = JsonUtil.parseIntArray(http.getResponseString(String.format("/correspondence/in/%d", address)));
+        if (state.length > 0) {
+            List<Integer> missing = new ArrayList<>(state.length - 1);
+            for (int i = 1; i < state.length; i++) missing.add(state[i]);
+            receiving.restore(state[0], missing);
+        }
+        restored = true;
+    }
+}
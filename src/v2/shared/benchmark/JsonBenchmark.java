@@ -0,0 +1,101 @@
+package v2.shared.benchmark;
+
+import v2.core.domain.message.Message;
+import v2.shared.util.JsonUtil;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Compares the streaming json writer and tokenizing parser with the former String.format and regex based code.
+ */
+public class JsonBenchmark {
+
+    private static final int SAMPLES = 512;
+    private static final int WARMUP_ROUNDS = 100;
+    private static final int ROUNDS = 500;
+
+    public static void main(String... args) {
+        Random random = new Random(11);
+        List<Message> messages = new ArrayList<>();
+        List<Map<Integer, Double>> retx = new ArrayList<>();
+        List<String> intLists = new ArrayList<>();
+        for (int i = 0; i < SAMPLES; i++) {
+            byte[] data = new byte[random.nextInt(13)];
+            random.nextBytes(data);
+            messages.add(new Message(random.nextInt(1 << 16), data));
+            Map<Integer, Double> map = new HashMap<>();
+            for (int j = random.nextInt(8); j > 0; j--) map.put(1 + random.nextInt(63), random.nextDouble());
+            retx.add(map);
+            List<Integer> ints = new ArrayList<>();
+            for (int j = random.nextInt(6); j > 0; j--) ints.add(random.nextInt(1 << 13));
+            intLists.add(JsonUtil.intList(ints));
+        }
+
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            legacy(messages, retx, intLists);
+            streaming(messages, retx, intLists);
+        }
+        long t0 = System.nanoTime();
+        long legacyCheck = 0;
+        for (int round = 0; round < ROUNDS; round++) legacyCheck += legacy(messages, retx, intLists);
+        long t1 = System.nanoTime();
+        long streamingCheck = 0;
+        for (int round = 0; round < ROUNDS; round++) streamingCheck += streaming(messages, retx, intLists);
+        long t2 = System.nanoTime();
+
+        if (legacyCheck != streamingCheck) throw new IllegalStateException("implementations disagree");
+
+        double ops = (double) SAMPLES * ROUNDS;
+        System.out.printf("implementation, ns/op (message + retx map + int list)%n");
+        System.out.printf("legacy, %.1f%n", (t1 - t0) / ops);
+        System.out.printf("streaming, %.1f%n", (t2 - t1) / ops);
+    }
+
+    private static long streaming(List<Message> messages, List<Map<Integer, Double>> retx, List<String> intLists) {
+        long check = 0;
+        for (int i = 0; i < messages.size(); i++) {
+            check += JsonUtil.message(messages.get(i)).length();
+            check += JsonUtil.retxMap(retx.get(i)).length();
+            for (int value : JsonUtil.parseIntArray(intLists.get(i))) check += value;
+        }
+        return check;
+    }
+
+    private static long legacy(List<Message> messages, List<Map<Integer, Double>> retx, List<String> intLists) {
+        long check = 0;
+        for (int i = 0; i < messages.size(); i++) {
+            var message = messages.get(i);
+            check += ("{" + String.format("\"%s\": ", "header") + String.format("\"%d\"", message.header) + ", "
+                    + String.format("\"%s\": ", "data") + legacyBytes(message.data) + "}").length();
+            check += legacyRetxMap(retx.get(i)).length();
+            for (int value : legacyParseIntList(intLists.get(i))) check += value;
+        }
+        return check;
+    }
+
+    private static String legacyBytes(byte[] data) {
+        StringBuilder sb = new StringBuilder("[");
+        if (data.length > 0) {
+            for (var b : data) sb.append(b).append(", ");
+            sb.delete(sb.length() - 2, sb.length());
+        }
+        return sb.append("]").toString();
+    }
+
+    private static String legacyRetxMap(Map<Integer, Double> data) {
+        StringBuilder sb = new StringBuilder("{");
+        if (!data.isEmpty()) {
+            for (var entry : data.entrySet()) sb.append(String.format(Locale.ROOT, "%d: %f, ", entry.getKey(), entry.getValue()));
+            sb.delete(sb.length() - 2, sb.length());
+        }
+        return sb.append("}").toString();
+    }
+
+    private static List<Integer> legacyParseIntList(String str) {
+        if (str.equals("[]")) return Collections.emptyList();
+        return Arrays.stream(str.substring(1, str.length() - 1).split("\\s*,\\s*"))
+                .map(Integer::parseInt)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,104 @@
+package v2.shared.benchmark;
+
+import v2.core.domain.PceCommand;
+import v2.core.domain.message.Message;
+import v2.core.domain.message.MessageType;
+import v2.shared.util.BinaryUtil;
+import v2.shared.util.JsonUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+/**
+ * Compares the json and the binary pce exchange on payload size and controller-side cpu time
+ * (encoding the fed message, decoding the returned commands).
+ */
+public class PceProtocolBenchmark {
+
+    private static final int SAMPLES = 256;
+    private static final int WARMUP_ROUNDS = 200;
+    private static final int ROUNDS = 1000;
+
+    public static void main(String... args) {
+        Random random = new Random(7);
+        List<Message> messages = new ArrayList<>();
+        List<List<PceCommand>> responses = new ArrayList<>();
+        for (int i = 0; i < SAMPLES; i++) {
+            int address = 1 + random.nextInt(63);
+            switch (i % 3) {
+                case 0: {
+                    byte[] retx = new byte[12];
+                    random.nextBytes(retx);
+                    messages.add(new Message(MessageType.UpwardsRouting.getHeaderBinary() | address, retx));
+                    byte[] updates = new byte[1 + random.nextInt(10)];
+                    random.nextBytes(updates);
+                    responses.add(List.of(PceCommand.update(address, updates)));
+                }
+                    break;
+                case 1: {
+                    byte[] data = new byte[1 + random.nextInt(8)];
+                    random.nextBytes(data);
+                    messages.add(new Message(MessageType.Data.getHeaderBinary() | address, data));
+                    responses.add(i % 2 == 0 ? List.of() : List.of(PceCommand.trace(address, (byte) 3, (byte) 4)));
+                }
+                    break;
+                default: {
+                    byte[] join = new byte[9];
+                    random.nextBytes(join);
+                    messages.add(new Message(MessageType.UpwardsJoin.getHeaderBinary() | address, join));
+                    responses.add(List.of(PceCommand.invite(address, 1 + random.nextInt(63), random.nextLong())));
+                }
+            }
+        }
+
+        List<String> jsonResponses = responses.stream()
+                .map(r -> JsonUtil.stringList(r.stream().map(PceCommand::toString).collect(Collectors.toList())))
+                .collect(Collectors.toList());
+        List<byte[]> binaryResponses = responses.stream().map(BinaryUtil::feedResponse).collect(Collectors.toList());
+
+        long jsonBytes = 0, binaryBytes = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            jsonBytes += JsonUtil.message(messages.get(i)).getBytes().length + jsonResponses.get(i).getBytes().length;
+            binaryBytes += BinaryUtil.feedRequest(42, messages.get(i)).length + binaryResponses.get(i).length;
+        }
+
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            json(messages, jsonResponses);
+            binary(messages, binaryResponses);
+        }
+        long t0 = System.nanoTime();
+        long jsonCheck = 0;
+        for (int round = 0; round < ROUNDS; round++) jsonCheck += json(messages, jsonResponses);
+        long t1 = System.nanoTime();
+        long binaryCheck = 0;
+        for (int round = 0; round < ROUNDS; round++) binaryCheck += binary(messages, binaryResponses);
+        long t2 = System.nanoTime();
+
+        if (jsonCheck != binaryCheck) throw new IllegalStateException("protocols decoded different commands");
+
+        double exchanges = (double) SAMPLES * ROUNDS;
+        System.out.printf("protocol, bytes/exchange, ns/exchange%n");
+        System.out.printf("json, %.1f, %.1f%n", jsonBytes / (double) SAMPLES, (t1 - t0) / exchanges);
+        System.out.printf("binary, %.1f, %.1f%n", binaryBytes / (double) SAMPLES, (t2 - t1) / exchanges);
+    }
+
+    private static long json(List<Message> messages, List<String> responses) {
+        long check = 0;
+        for (int i = 0; i < messages.size(); i++) {
+            check += JsonUtil.message(messages.get(i)).length() > 0 ? 1 : 0;
+            for (var command : JsonUtil.parseStringList(responses.get(i))) check += PceCommand.parse(command).hashCode();
+        }
+        return check;
+    }
+
+    private static long binary(List<Message> messages, List<byte[]> responses) {
+        long check = 0;
+        for (int i = 0; i < messages.size(); i++) {
+            check += BinaryUtil.feedRequest(42, messages.get(i)).length > 0 ? 1 : 0;
+            for (var command : BinaryUtil.parseFeedResponse(responses.get(i))) check += command.hashCode();
+        }
+        return check;
+    }
+}
@@ -12,6 +12,10 @@ import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 
+/**
+ * Buffers messages and writes them to a new file of the log directory once the buffer is full.
+ * May be shared by the nodes of a simulation, see {@link SharedLogger}.
+ */
 public class FileLogger implements Logger {
     private static final DateFormat labelDf = new SimpleDateFormat("yyyy-MM-dd_HH:mm:ss.SSSS_Z:");
     private static final DateFormat filenameDf = new SimpleDateFormat("yyyy-MM-dd_HH_mm_ss");
@@ -37,7 +41,7 @@ public class FileLogger implements Logger {
         flush();
     }
 
-    public void flush() {
+    public synchronized void flush() {
         if (dir != null) {
             fs.write(dir.resolve(filenameDf.format(new Date())), output.toString());
         }
@@ -45,7 +49,7 @@ public class FileLogger implements Logger {
     }
 
     @Override
-    public void log(Severity severity, String text, Module module) {
+    public synchronized void log(Severity severity, String text, Module module) {
         if (output.length() >= FLUSH_THRESHOLD) {
             flush();
         }
@@ -0,0 +1,65 @@
+package v2.shared.impl;
+
+import v2.core.context.Context;
+import v2.core.domain.NodeState;
+import v2.core.domain.NodeStateStore;
+import v2.core.log.Logger;
+import v2.shared.integration.FileClient;
+
+import java.nio.file.Path;
+
+public class FileNodeStateStore implements NodeStateStore {
+
+    private static final String FILENAME = "node.state";
+
+    private final String dirName;
+    private FileClient fs;
+    private Logger logger;
+    private Path path;
+
+    public FileNodeStateStore() {
+        this("state");
+    }
+
+    public FileNodeStateStore(String dirName) {
+        this.dirName = dirName;
+    }
+
+    @Override
+    public void build(Context ctx) {
+        fs = ctx.resolve(FileClient.class);
+        logger = ctx.resolve(Logger.class);
+    }
+
+    @Override
+    public synchronized void save(NodeState state) {
+        fs.replace(path(), state.toBytes());
+    }
+
+    @Override
+    public synchronized NodeState load() {
+        if (!fs.exists(path())) return null;
+        try {
+            return NodeState.parse(fs.read(path()));
+        } catch (Exception e) {
+            logger.warn("discarding unreadable node state: " + e.getMessage(), this);
+            clear();
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        fs.delete(path());
+    }
+
+    @Override
+    public String info() {
+        return String.format("Node State @ %s", dirName);
+    }
+
+    private Path path() {
+        if (path == null) path = fs.create(dirName).resolve(FILENAME);
+        return path;
+    }
+}
@@ -5,11 +5,15 @@ import v2.core.domain.message.Message;
 import v2.core.domain.message.MessageHeader;
 import v2.core.domain.message.MessageType;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
+/**
+ * Correspondence with one node. Safe for concurrent use, e.g. by several controllers feeding the same pce.
+ */
 public class LocalCorrespondenceRegister implements CorrespondenceRegister {
 
     public static LocalCorrespondenceRegister to(int address) {
@@ -36,8 +40,33 @@ public class LocalCorrespondenceRegister implements CorrespondenceRegister {
         return address;
     }
 
+    public synchronized int sendingCounter() {
+        return sendingCounter;
+    }
+
+    public synchronized int nextReceivingCounter() {
+        return nextReceivingCounter;
+    }
+
+    public synchronized Collection<Integer> missing() {
+        return new ArrayList<>(missing);
+    }
+
+    /**
+     * restores the receiving state of a previous instance, e.g. after a restart
+     */
+    public synchronized void restore(int nextReceivingCounter, Collection<Integer> missing) {
+        this.nextReceivingCounter = nextReceivingCounter % counterLimit;
+        this.missing.clear();
+        this.missing.addAll(missing);
+    }
+
+    public synchronized void restoreSendingCounter(int sendingCounter) {
+        this.sendingCounter = sendingCounter % counterLimit;
+    }
+
     @Override
-    public Message pack(MessageType type, byte... data) {
+    public synchronized Message pack(MessageType type, byte... data) {
         int header = type.getHeaderBinary()
                 | (address << MessageHeader.ADDRESS_SHIFT)
                 | (sendingCounter << MessageHeader.COUNTER_SHIFT);
@@ -45,7 +74,7 @@ public class LocalCorrespondenceRegister implements CorrespondenceRegister {
     }
 
     @Override
-    public Message packAndIncrement(MessageType type, byte... data) {
+    public synchronized Message packAndIncrement(MessageType type, byte... data) {
         int header = type.getHeaderBinary()
                 | (address << MessageHeader.ADDRESS_SHIFT)
                 | (sendingCounter << MessageHeader.COUNTER_SHIFT);
@@ -59,7 +88,7 @@ public class LocalCorrespondenceRegister implements CorrespondenceRegister {
     /**
      * returns the list of counter numbers that were skipped when receiving this message
      */
-    public Collection<Integer> registerAndListLosses(Message message) {
+    public synchronized Collection<Integer> registerAndListLosses(Message message) {
         int counter = message.getCounter();
 
         if (counter == nextReceivingCounter) {
@@ -73,6 +102,6 @@ public class LocalCorrespondenceRegister implements CorrespondenceRegister {
             }
             nextReceivingCounter = (counter + 1) % counterLimit;
         }
-        return missing;
+        return new ArrayList<>(missing);
     }
 }
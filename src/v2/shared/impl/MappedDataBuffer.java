@@ -0,0 +1,312 @@
+package v2.shared.impl;
+
+import v2.core.common.BasicSubject;
+import v2.core.common.Counter;
+import v2.core.common.Subject;
+import v2.core.concurrency.Clock;
+import v2.core.context.Context;
+import v2.core.domain.DataBuffer;
+import v2.core.domain.message.Message;
+import v2.core.log.Logger;
+import v2.shared.integration.FileClient;
+import v2.shared.measurements.DataBufferInsights;
+
+import java.nio.MappedByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+/**
+ * <p>
+ *     Append-only log of memory-mapped segment files below the file client root.
+ *     The read cursor is persisted next to the segments, so draining continues where it stopped after a restart.
+ *     Nothing is mapped until the first message is stored, unless there are segments to resume from.
+ * </p>
+ * <p>
+ *     record structure: <br/>
+ *     [record length: 4] [message header: 4] [message data] <br/>
+ *     a record length of 0 marks the end of a segment.
+ * </p>
+ * <p>
+ *     Disk usage is bounded by {@link #MAX_SEGMENTS}. When a new segment exceeds the limit,
+ *     the oldest segment is deleted and its unread messages are counted as lost.
+ *     Segments are unmapped before they are deleted.
+ * </p>
+ * <p>
+ *     Messages stored by the consumer of a drain, e.g. when it emits a message whose delivery fails again,
+ *     are queued and appended when the drain returns, so the segment being read is never rolled or evicted under it.
+ * </p>
+ */
+public class MappedDataBuffer implements DataBuffer, DataBufferInsights {
+
+    public static final int SEGMENT_SIZE = 1 << 16;
+    public static final int MAX_SEGMENTS = 16;
+    private static final int RECORD_OVERHEAD = 2 * Integer.BYTES;
+
+    private final String dirName;
+    private final BasicSubject<Long> bufferedBytes = new BasicSubject<>(0L);
+    private final Counter drained = new Counter();
+    private final Counter lost = new Counter();
+    private double drainRate = 0;
+    private long backlogStart = -1;
+    private long backlogDrained;
+
+    private FileClient fs;
+    private Logger logger;
+    private Clock clock;
+
+    private Path dir;
+    private MappedByteBuffer cursor;
+    private final TreeMap<Integer, MappedByteBuffer> segments = new TreeMap<>();
+    private int readSegment, readOffset;
+    private int writeSegment, writeOffset;
+    private boolean nothingToResume;
+    private boolean draining;
+    private final List<Message> storedWhileDraining = new ArrayList<>();
+
+    public MappedDataBuffer() {
+        this("buffer");
+    }
+
+    public MappedDataBuffer(String dirName) {
+        this.dirName = dirName;
+    }
+
+    @Override
+    public void build(Context ctx) {
+        fs = ctx.resolve(FileClient.class);
+        logger = ctx.resolve(Logger.class);
+        clock = ctx.resolve(Clock.class);
+    }
+
+    @Override
+    public void postDeploy() {
+        open(false);
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (dir == null) return;
+        cursor.force();
+        segments.values().forEach(MappedByteBuffer::force);
+        fs.unmap(cursor);
+        segments.values().forEach(fs::unmap);
+        segments.clear();
+        cursor = null;
+        dir = null;
+        nothingToResume = false;
+    }
+
+    @Override
+    public synchronized void store(Message message) {
+        if (draining) {
+            storedWhileDraining.add(message);
+            return;
+        }
+        open(true);
+        append(message);
+    }
+
+    private void append(Message message) {
+        int size = RECORD_OVERHEAD + message.dataLength();
+        if (size + Integer.BYTES > SEGMENT_SIZE) {
+            logger.warn("message exceeds segment size: " + message, this);
+            lost.increment();
+            return;
+        }
+        if (writeOffset + size + Integer.BYTES > SEGMENT_SIZE) {
+            roll();
+        }
+        var segment = segments.get(writeSegment);
+        segment.putInt(writeOffset + Integer.BYTES, message.header);
+        segment.put(writeOffset + RECORD_OVERHEAD, message.data);
+        segment.putInt(writeOffset, size);
+        writeOffset += size;
+        bufferedBytes.set(bufferedBytes.value() + size);
+    }
+
+    @Override
+    public synchronized int drain(int max, Predicate<Message> consumer) {
+        if (draining) return 0;
+        if (!open(false)) return 0;
+        int accepted = 0;
+        draining = true;
+        try {
+            accepted = drainSegments(max, consumer);
+        } finally {
+            draining = false;
+            storedWhileDraining.forEach(this::append);
+            storedWhileDraining.clear();
+        }
+        if (accepted > 0) measureDrainRate(accepted);
+        return accepted;
+    }
+
+    /**
+     * the rate counts from the first batch of a backlog on, so it covers the pauses between batches
+     * and the time the sink was unreachable, not only the drain calls
+     */
+    private void measureDrainRate(int accepted) {
+        long now = clock.millis();
+        if (backlogStart < 0) {
+            backlogStart = now;
+            backlogDrained = 0;
+        } else {
+            backlogDrained += accepted;
+            if (now > backlogStart) drainRate = backlogDrained * 1000.0 / (now - backlogStart);
+        }
+        if (bufferedBytes.value() == 0) backlogStart = -1;
+    }
+
+    private int drainSegments(int max, Predicate<Message> consumer) {
+        int accepted = 0;
+        while (accepted < max) {
+            var segment = segments.get(readSegment);
+            int size = recordSize(segment, readOffset);
+            if (size == 0) {
+                if (readSegment >= writeSegment) break;
+                fs.unmap(segments.remove(readSegment));
+                fs.delete(segmentPath(readSegment));
+                readSegment++;
+                readOffset = 0;
+                saveCursor();
+                continue;
+            }
+            byte[] data = new byte[size - RECORD_OVERHEAD];
+            segment.get(readOffset + RECORD_OVERHEAD, data);
+            var message = new Message(segment.getInt(readOffset + Integer.BYTES), data);
+            if (!consumer.test(message)) break;
+            readOffset += size;
+            saveCursor();
+            bufferedBytes.set(bufferedBytes.value() - size);
+            drained.increment();
+            accepted++;
+        }
+        return accepted;
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        if (!open(false)) return storedWhileDraining.isEmpty();
+        return bufferedBytes.value() == 0 && storedWhileDraining.isEmpty();
+    }
+
+    @Override
+    public Subject<Long> bufferedBytes() {
+        return bufferedBytes;
+    }
+
+    @Override
+    public Subject<Long> drained() {
+        return drained;
+    }
+
+    @Override
+    public Subject<Long> lost() {
+        return lost;
+    }
+
+    @Override
+    public double drainRate() {
+        return drainRate;
+    }
+
+    @Override
+    public String info() {
+        return String.format("Data Buffer @ %s", dirName);
+    }
+
+    /**
+     * maps the segments and the cursor unless they are mapped already
+     * @param create false to map nothing if there are no segments to resume from
+     * @return true if the buffer is mapped
+     */
+    private boolean open(boolean create) {
+        if (dir != null) return true;
+        if (!create) {
+            if (nothingToResume) return false;
+            var path = fs.resolve(dirName);
+            nothingToResume = !fs.exists(path) || fs.list(path).stream().noneMatch(p -> p.getFileName().toString().endsWith(".seg"));
+            if (nothingToResume) return false;
+        }
+        dir = fs.create(dirName);
+        for (Path path : fs.list(dir)) {
+            String name = path.getFileName().toString();
+            if (name.endsWith(".seg")) {
+                segments.put(Integer.parseInt(name.substring(0, name.length() - 4)), fs.map(path, SEGMENT_SIZE));
+            }
+        }
+        if (segments.isEmpty()) {
+            segments.put(0, fs.map(segmentPath(0), SEGMENT_SIZE));
+        }
+        cursor = fs.map(dir.resolve("cursor"), 2 * Integer.BYTES);
+        readSegment = cursor.getInt(0);
+        readOffset = cursor.getInt(Integer.BYTES);
+        if (!segments.containsKey(readSegment)) {
+            readSegment = segments.firstKey();
+            readOffset = 0;
+            saveCursor();
+        }
+        writeSegment = segments.lastKey();
+        writeOffset = end(segments.get(writeSegment), 0);
+
+        long bytes = 0;
+        for (var entry : segments.tailMap(readSegment).entrySet()) {
+            int from = entry.getKey() == readSegment ? readOffset : 0;
+            bytes += end(entry.getValue(), from) - from;
+        }
+        bufferedBytes.set(bytes);
+        if (bytes > 0) logger.info(String.format("resuming with %d buffered bytes", bytes), this);
+        return true;
+    }
+
+    private void roll() {
+        writeSegment++;
+        writeOffset = 0;
+        segments.put(writeSegment, fs.map(segmentPath(writeSegment), SEGMENT_SIZE));
+        while (segments.size() > MAX_SEGMENTS) {
+            evictOldest();
+        }
+    }
+
+    private void evictOldest() {
+        int oldest = segments.firstKey();
+        var segment = segments.remove(oldest);
+        if (oldest == readSegment) {
+            int count = 0;
+            for (int offset = readOffset, size; (size = recordSize(segment, offset)) != 0; offset += size) {
+                bufferedBytes.set(bufferedBytes.value() - size);
+                count++;
+            }
+            for (int i = 0; i < count; i++) lost.increment();
+            logger.warn(String.format("buffer full, dropped %d messages", count), this);
+            readSegment = segments.firstKey();
+            readOffset = 0;
+            saveCursor();
+        }
+        fs.unmap(segment);
+        fs.delete(segmentPath(oldest));
+    }
+
+    private int end(MappedByteBuffer segment, int offset) {
+        for (int size; (size = recordSize(segment, offset)) != 0; offset += size);
+        return offset;
+    }
+
+    private int recordSize(MappedByteBuffer segment, int offset) {
+        if (segment == null || offset + Integer.BYTES > SEGMENT_SIZE) return 0;
+        int size = segment.getInt(offset);
+        return size < RECORD_OVERHEAD || offset + size > SEGMENT_SIZE ? 0 : size;
+    }
+
+    private void saveCursor() {
+        cursor.putInt(0, readSegment);
+        cursor.putInt(Integer.BYTES, readOffset);
+    }
+
+    private Path segmentPath(int index) {
+        return dir.resolve(String.format("%08d.seg", index));
+    }
+}
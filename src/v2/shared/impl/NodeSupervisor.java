@@ -0,0 +1,158 @@
+package v2.shared.impl;
+
+import v2.core.common.BasicSubject;
+import v2.core.common.Counter;
+import v2.core.common.Observer;
+import v2.core.common.Subject;
+import v2.core.concurrency.Clock;
+import v2.core.concurrency.Executor;
+import v2.core.context.Context;
+import v2.core.domain.OsAdapter;
+import v2.core.domain.node.Node;
+import v2.core.domain.node.NodeStatus;
+import v2.core.log.Logger;
+import v2.shared.measurements.SupervisorInsights;
+
+import java.nio.file.Path;
+import java.util.function.Function;
+
+/**
+ * <p>
+ *     Owns the node context and rebuilds it in the same process when the node fails.
+ *     The node context is created by the factory as a child of the supervisor's context
+ *     and must register a {@link SoftRebootOs}, so that {@link Node#error(String)} ends up in {@link #restart(String)}.
+ * </p>
+ * <p>
+ *     Restarts are delayed with exponential backoff from {@link #INITIAL_BACKOFF} up to {@link #MAX_BACKOFF}.
+ *     After {@link #MAX_RESTARTS} failures without a stable period in between,
+ *     the supervisor gives up and reboots through the {@link OsAdapter} of its own context.
+ * </p>
+ */
+public class NodeSupervisor implements SupervisorInsights {
+
+    public static final long INITIAL_BACKOFF = 1000;
+    public static final long MAX_BACKOFF = 60000;
+    public static final int MAX_RESTARTS = 5;
+    public static final long STABLE_PERIOD = 600000;
+
+    private final Function<Context, Context> factory;
+    private final Counter restarts = new Counter();
+    private final BasicSubject<Long> recoveryTime = new BasicSubject<>(0L);
+
+    private Context parent;
+    private OsAdapter os;
+    private Executor exec;
+    private Clock clock;
+    private Logger logger;
+
+    private Context child;
+    private Observer.Ref statusRef;
+    private boolean restarting = false;
+    private int failures = 0;
+    private long startedAt;
+
+    public NodeSupervisor(Function<Context, Context> factory) {
+        this.factory = factory;
+    }
+
+    @Override
+    public void build(Context ctx) {
+        parent = ctx;
+        os = ctx.resolve(OsAdapter.class);
+        exec = ctx.resolve(Executor.class);
+        clock = ctx.resolve(Clock.class);
+        logger = ctx.resolve(Logger.class);
+    }
+
+    @Override
+    public void postDeploy() {
+        start(null);
+    }
+
+    @Override
+    public synchronized void destroy() {
+        restarting = true;
+        if (child != null) child.destroy("supervisor shut down");
+    }
+
+    @Override
+    public Subject<Long> restarts() {
+        return restarts;
+    }
+
+    @Override
+    public Subject<Long> recoveryTime() {
+        return recoveryTime;
+    }
+
+    /**
+     * tears down the node context and builds a new one after the current backoff delay
+     */
+    public synchronized void restart(String reason) {
+        if (restarting) return;
+        restarting = true;
+        long failedAt = clock.millis();
+        if (failedAt - startedAt > STABLE_PERIOD) failures = 0;
+        failures++;
+        child.destroy(reason);
+
+        if (failures > MAX_RESTARTS) {
+            logger.error(String.format("%d restarts failed, rebooting: %s", MAX_RESTARTS, reason), this);
+            os.reboot();
+            return;
+        }
+        long backoff = Math.min(INITIAL_BACKOFF << (failures - 1), MAX_BACKOFF);
+        logger.warn(String.format("restarting node in %d ms (attempt %d): %s", backoff, failures, reason), this);
+        exec.schedule(() -> start(failedAt), backoff);
+    }
+
+    private synchronized void start(Long failedAt) {
+        if (parent.status().ordinal() >= Context.Status.Destroying.ordinal()) return;
+        if (statusRef != null) statusRef.unsubscribe();
+        child = factory.apply(parent);
+        restarting = false;
+        startedAt = clock.millis();
+        if (failedAt != null) {
+            restarts.increment();
+            statusRef = child.resolve(Node.class).status().subscribe(status -> {
+                if (status == NodeStatus.Node || status == NodeStatus.Controller) {
+                    long duration = clock.millis() - failedAt;
+                    logger.info(String.format("node recovered after %d ms", duration), this);
+                    recoveryTime.set(duration);
+                    statusRef.unsubscribe();
+                }
+            });
+        }
+        child.deploy();
+    }
+
+    @Override
+    public String info() {
+        return String.format("Node Supervisor (%d restarts)", restarts.value());
+    }
+
+    /**
+     * Os adapter of the supervised context. Reboots are turned into soft restarts of that context.
+     */
+    public static class SoftRebootOs implements OsAdapter {
+
+        private NodeSupervisor supervisor;
+        private OsAdapter os;
+
+        @Override
+        public void build(Context ctx) {
+            supervisor = ctx.resolve(NodeSupervisor.class);
+            os = supervisor.os;
+        }
+
+        @Override
+        public Path pwd() {
+            return os.pwd();
+        }
+
+        @Override
+        public void reboot() {
+            supervisor.restart("reboot requested");
+        }
+    }
+}
@@ -19,7 +19,9 @@ public class RetxRegisterImpl implements RetxRegister {
 
     @Override
     public boolean knows(int address) {
-        return perAddress.containsKey(address);
+        // a seeded address is only known once heard again, it may belong to a new node
+        var entry = perAddress.get(address);
+        return entry != null && entry.expectedCounter >= 0;
     }
 
     @Override
@@ -27,11 +29,20 @@ public class RetxRegisterImpl implements RetxRegister {
         if (!MessageType.Hello.matches(message)) return;
         int counter = message.getCounter();
         var entry = perAddress.computeIfAbsent(message.getNodeAddress(), address -> new Entry(counter));
+        if (entry.expectedCounter < 0) entry.expectedCounter = counter;
         entry.currentReceivedCounter++;
         entry.currentMissedCounter += counter - entry.expectedCounter;
         entry.expectedCounter = (counter + COUNTER_LIMIT) % COUNTER_LIMIT;
     }
 
+    @Override
+    public void seed(int address, double retx) {
+        var entry = new Entry(-1);
+        entry.currentReceivedCounter = retx;
+        entry.currentMissedCounter = 1 - retx;
+        perAddress.put(address, entry);
+    }
+
     @Override
     public double calculateRetx(int address, String... options) {
         var entry = perAddress.getOrDefault(address, null);
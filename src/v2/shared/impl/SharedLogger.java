@@ -0,0 +1,34 @@
+package v2.shared.impl;
+
+import v2.core.context.Context;
+import v2.core.context.Module;
+import v2.core.log.Logger;
+
+/**
+ * Forwards the messages of its context at or above the level of the context's {@link ConsoleLogger.Handle}
+ * to a logger shared with other contexts, which is built, deployed and destroyed by its own context.
+ */
+public class SharedLogger implements Logger {
+    private final Logger target;
+    private ConsoleLogger.Handle handle;
+
+    public SharedLogger(Logger target) {
+        this.target = target;
+    }
+
+    @Override
+    public void build(Context ctx) {
+        handle = ctx.resolve(ConsoleLogger.Handle.class);
+    }
+
+    @Override
+    public void log(Severity severity, String text, Module module) {
+        if (severity.ordinal() < handle.logLevel().ordinal()) return;
+        target.log(severity, text, module);
+    }
+
+    @Override
+    public void exception(Exception e, Module module) {
+        target.exception(e, module);
+    }
+}
@@ -2,13 +2,14 @@ package v2.shared.impl;
 
 import v2.core.concurrency.Executor;
 import v2.core.concurrency.CancellationToken;
+import v2.core.concurrency.Clock;
 import v2.core.context.Context;
 
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
-public class SimpleExecutor implements Executor {
+public class SimpleExecutor implements Executor, Clock {
     private final ScheduledExecutorService executor = new ScheduledThreadPoolExecutor(3);
 
     public synchronized CancellationToken schedule(Runnable task, long delay) {
@@ -21,6 +22,11 @@ public class SimpleExecutor implements Executor {
         return () -> ref.cancel(true);
     }
 
+    @Override
+    public long millis() {
+        return System.currentTimeMillis();
+    }
+
     @Override
     public void build(Context ctx) {
     }
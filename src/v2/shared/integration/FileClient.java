@@ -6,11 +6,20 @@ import v2.core.log.Logger;
 
 import java.io.File;
 import java.io.FileWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 public class FileClient implements Module {
 
@@ -71,6 +80,112 @@ public class FileClient implements Module {
         }
     }
 
+    /**
+     * writes to a temporary file first and moves it over the target, so readers never see a partial write
+     */
+    public void replace(Path path, byte[] data) {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        write(tmp, data);
+        try {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (Exception e) {
+            logger.exception(e, this);
+        }
+    }
+
+    public boolean exists(Path path) {
+        return Files.exists(path);
+    }
+
+    public byte[] read(Path path) {
+        logger.debug(String.format("reading file %s", path), this);
+        try {
+            return Files.readAllBytes(path);
+        } catch (Exception e) {
+            logger.exception(e, this);
+            throw new RuntimeException("file reading failed");
+        }
+    }
+
+    /**
+     * @return stream to write the file with, for files too large to be built in memory first
+     */
+    public OutputStream output(Path path) {
+        logger.debug(String.format("writing to file %s", path), this);
+        try {
+            return Files.newOutputStream(path);
+        } catch (Exception e) {
+            logger.exception(e, this);
+            throw new RuntimeException("file opening failed");
+        }
+    }
+
+    public InputStream input(Path path) {
+        logger.debug(String.format("reading file %s", path), this);
+        try {
+            return Files.newInputStream(path);
+        } catch (Exception e) {
+            logger.exception(e, this);
+            throw new RuntimeException("file opening failed");
+        }
+    }
+
+    public MappedByteBuffer map(Path path, int size) {
+        logger.debug(String.format("mapping file %s (%d bytes)", path, size), this);
+        try (var channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (Exception e) {
+            logger.exception(e, this);
+            throw new RuntimeException("file mapping failed");
+        }
+    }
+
+    /**
+     * releases a mapping right away instead of when the buffer is collected, so its file can be deleted
+     * on systems that refuse to delete mapped files. The buffer must not be used afterwards
+     */
+    public void unmap(MappedByteBuffer buffer) {
+        try {
+            var unsafe = Class.forName("sun.misc.Unsafe");
+            var instance = unsafe.getDeclaredField("theUnsafe");
+            instance.setAccessible(true);
+            unsafe.getMethod("invokeCleaner", ByteBuffer.class).invoke(instance.get(null), buffer);
+        } catch (Exception e) {
+            logger.debug("unable to unmap, the mapping is released with the buffer: " + e, this);
+        }
+    }
+
+    public List<Path> list(Path dir) {
+        try (var stream = Files.list(dir)) {
+            return stream.sorted().collect(Collectors.toList());
+        } catch (Exception e) {
+            logger.exception(e, this);
+            throw new RuntimeException("directory listing failed");
+        }
+    }
+
+    public void delete(Path path) {
+        logger.debug(String.format("deleting file %s", path), this);
+        try {
+            Files.deleteIfExists(path);
+        } catch (Exception e) {
+            logger.exception(e, this);
+        }
+    }
+
+    /**
+     * deletes the directory with everything in it, if it exists
+     */
+    public void deleteAll(Path dir) {
+        logger.debug(String.format("deleting directory %s", dir), this);
+        if (!Files.exists(dir)) return;
+        try (var walk = Files.walk(dir)) {
+            for (var path : walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) Files.delete(path);
+        } catch (Exception e) {
+            logger.exception(e, this);
+        }
+    }
+
     public List<String> readAllLines(String filename) {
         logger.debug(String.format("reading file %s", filename), this);
         try {
@@ -0,0 +1,15 @@
+package v2.shared.measurements;
+
+import v2.core.common.Subject;
+import v2.core.context.Module;
+
+public interface DataBufferInsights extends Module {
+    Subject<Long> bufferedBytes();
+    Subject<Long> drained();
+    Subject<Long> lost();
+
+    /**
+     * @return drained messages per second of clock time, since the first batch of the current or latest backlog
+     */
+    double drainRate();
+}
@@ -12,14 +12,20 @@ public class NodeStatistics implements Module {
 
     private long nodeId;
     private Subject<Long> step;
+    private DataBufferInsights bufferInsights;
+    private SupervisorInsights supervisorInsights;
 
     private Observer.Ref statusRef;
+    private long startTimestamp;
     private Long setupTimestamp;
+    private boolean resumed;
     private int emptyTriggers = 0;
     private int dataTriggers = 0;
     private int helloTriggers = 0;
     private int routingTriggers = 0;
     private int otherTriggers = 0;
+    private long routingChanges = 0;
+    private Long lastRoutingChange;
 
 
     @Override
@@ -29,18 +35,27 @@ public class NodeStatistics implements Module {
         var executorInsights = ctx.resolve(ExecutorInsights.class);
         var loraInsights = ctx.resolve(LoraMeshModuleInsights.class);
 //        var pceInsights = ctx.resolve(PceModuleInsights.class);
+        bufferInsights = ctx.resolve(DataBufferInsights.class);
+        supervisorInsights = ctx.resolve(SupervisorInsights.class);
 
         nodeId = node.id();
         step = executorInsights.step();
+        startTimestamp = step.value();
 
         statusRef = node.status().subscribe(status -> {
             if (status == NodeStatus.Controller || status == NodeStatus.Node) {
                 setupTimestamp = step.value();
+                resumed = node.isResumed();
                 statusRef.unsubscribe();
             }
         });
 
         loraInsights.triggered().subscribe(this::countMessage);
+        node.routingChanges().subscribe(changes -> {
+            if (changes == 0) return;
+            routingChanges = changes;
+            lastRoutingChange = step.value();
+        });
     }
 
     private void countMessage(Message message) {
@@ -65,6 +80,17 @@ public class NodeStatistics implements Module {
         return setupTimestamp;
     }
 
+    /**
+     * @return executor steps from context start until the node was set up, i.e. the (re-)join time
+     */
+    public Long getSetupDuration() {
+        return setupTimestamp == null? null : setupTimestamp - startTimestamp;
+    }
+
+    public boolean isResumed() {
+        return resumed;
+    }
+
     public int getEmptyTriggers() {
         return emptyTriggers;
     }
@@ -84,4 +110,35 @@ public class NodeStatistics implements Module {
     public int getOtherTriggers() {
         return otherTriggers;
     }
+
+    public long getRoutingChanges() {
+        return routingChanges;
+    }
+
+    /**
+     * @return executor step of the latest change of the node's routing registry, i.e. when routing converged
+     */
+    public Long getLastRoutingChange() {
+        return lastRoutingChange;
+    }
+
+    public long getBufferedBytes() {
+        return bufferInsights.bufferedBytes().value();
+    }
+
+    public long getDrained() {
+        return bufferInsights.drained().value();
+    }
+
+    public long getLost() {
+        return bufferInsights.lost().value();
+    }
+
+    public long getRestarts() {
+        return supervisorInsights.restarts().value();
+    }
+
+    public long getRecoveryTime() {
+        return supervisorInsights.recoveryTime().value();
+    }
 }
@@ -9,6 +9,7 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 
 public class ResultsCollector implements Module {
     private static final DateFormat df = new SimpleDateFormat("yyyy-MM-dd_HH_mm_ss");
@@ -21,17 +22,27 @@ public class ResultsCollector implements Module {
         fs = ctx.resolve(FileClient.class);
     }
 
-    public void register(NodeStatistics source) {
+    public synchronized void register(NodeStatistics source) {
         sources.add(source);
     }
 
+    /**
+     * @return statistics of all nodes built so far, one per node context, so a restarted node is listed again
+     */
+    public synchronized List<NodeStatistics> statistics() {
+        return new ArrayList<>(sources);
+    }
+
     @Override
-    public void preDestroy() {
-        StringBuilder sb = new StringBuilder("node, setup_time, t_empty, t_data, t_hello, t_routing, t_other\n");
+    public synchronized void preDestroy() {
+        StringBuilder sb = new StringBuilder("node, setup_time, setup_duration, resumed, t_empty, t_data, t_hello, t_routing, t_other, routing_changes, last_routing_change, buffered_bytes, drained, lost, restarts, recovery_ms\n");
         sources.forEach(s -> {
             var setupTime = s.getSetupTimestamp();
             String setup = setupTime == null? "-" : setupTime.toString();
-            sb.append(String.format("%d, %s, %d, %d, %d, %d, %d\n", s.getNodeId(), setup, s.getEmptyTriggers(), s.getDataTriggers(), s.getHelloTriggers(), s.getRoutingTriggers(), s.getOtherTriggers()));
+            String duration = setupTime == null? "-" : s.getSetupDuration().toString();
+            String lastRoutingChange = s.getLastRoutingChange() == null? "-" : s.getLastRoutingChange().toString();
+            sb.append(String.format("%d, %s, %s, %b, %d, %d, %d, %d, %d, %d, %s, %d, %d, %d, %d, %d\n", s.getNodeId(), setup, duration, s.isResumed(), s.getEmptyTriggers(), s.getDataTriggers(), s.getHelloTriggers(), s.getRoutingTriggers(), s.getOtherTriggers(), s.getRoutingChanges(), lastRoutingChange,
+                    s.getBufferedBytes(), s.getDrained(), s.getLost(), s.getRestarts(), s.getRecoveryTime()));
         });
 
         fs.write(String.format("simulation_results_%s.csv", df.format(new Date())), sb.toString());
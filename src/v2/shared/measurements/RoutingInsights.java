@@ -0,0 +1,16 @@
+package v2.shared.measurements;
+
+import v2.core.common.Subject;
+import v2.core.context.Module;
+
+public interface RoutingInsights extends Module {
+    long epoch();
+    Subject<Long> cacheHits();
+    Subject<Long> cacheMisses();
+    double cacheHitRate();
+
+    /**
+     * @return nanoseconds spent on the latest routing calculation
+     */
+    Subject<Long> recomputeNanos();
+}
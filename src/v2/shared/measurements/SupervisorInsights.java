@@ -0,0 +1,13 @@
+package v2.shared.measurements;
+
+import v2.core.common.Subject;
+import v2.core.context.Module;
+
+public interface SupervisorInsights extends Module {
+    Subject<Long> restarts();
+
+    /**
+     * @return milliseconds from the latest failure until the node was set up again
+     */
+    Subject<Long> recoveryTime();
+}
@@ -0,0 +1,95 @@
+package v2.shared.test;
+
+import org.junit.jupiter.api.Test;
+import v2.core.domain.message.Message;
+import v2.shared.util.JsonParser;
+import v2.shared.util.JsonUtil;
+import v2.shared.util.JsonWriter;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonUtilTest {
+
+    @Test
+    void testMessageFormat() {
+        var message = new Message(1234, (byte) 1, (byte) -2, (byte) 127);
+        assertEquals("{\"header\": \"1234\", \"data\": [1, -2, 127]}", JsonUtil.message(message));
+        assertEquals("{\"header\": \"0\", \"data\": []}", JsonUtil.message(new Message(0)));
+    }
+
+    @Test
+    void testRetxMapFormat() {
+        Map<Integer, Double> retx = new LinkedHashMap<>();
+        retx.put(1, 0.5);
+        retx.put(2, 0.1234567);
+        retx.put(3, 1.0);
+        retx.put(4, 0.0000004);
+        retx.put(5, -0.25);
+        StringBuilder expected = new StringBuilder("{");
+        retx.forEach((k, v) -> expected.append(String.format(Locale.ROOT, "%d: %f, ", k, v)));
+        expected.delete(expected.length() - 2, expected.length()).append("}");
+        assertEquals(expected.toString(), JsonUtil.retxMap(retx));
+        assertEquals("{}", JsonUtil.retxMap(Map.of()));
+    }
+
+    @Test
+    void testIntRoundTrip() {
+        var values = List.of(0, 1, -1, 31, 255, Integer.MAX_VALUE, Integer.MIN_VALUE);
+        int[] parsed = JsonUtil.parseIntArray(JsonUtil.intList(values));
+        assertArrayEquals(values.stream().mapToInt(i -> i).toArray(), parsed);
+        assertArrayEquals(new int[0], JsonUtil.parseIntArray("[]"));
+        assertArrayEquals(new int[0], JsonUtil.parseIntArray(" [ ] "));
+        assertArrayEquals(new int[] {1, 2, 3}, JsonUtil.parseIntArray("[1,2 ,\n \"3\"]"));
+        assertEquals(List.of(4, 5), JsonUtil.parseIntList("[4, 5]"));
+    }
+
+    @Test
+    void testByteRoundTrip() {
+        byte[] data = {0, 1, -1, 127, -128};
+        assertArrayEquals(data, JsonUtil.parseByteArray(JsonUtil.bytes(data)));
+        assertEquals(List.of((byte) 3, (byte) -3), JsonUtil.parseByteList("[3, -3]"));
+        assertArrayEquals(new byte[0], JsonUtil.parseByteArray("[]"));
+    }
+
+    @Test
+    void testByteOutOfRange() {
+        assertThrows(IllegalArgumentException.class, () -> JsonUtil.parseByteArray("[1, 128]"));
+        assertThrows(IllegalArgumentException.class, () -> JsonUtil.parseByteArray("[255]"));
+        assertThrows(IllegalArgumentException.class, () -> JsonUtil.parseByteArray("[-129, 0]"));
+        assertThrows(IllegalArgumentException.class, () -> JsonUtil.parseByteList("[\"200\"]"));
+    }
+
+    @Test
+    void testStringRoundTrip() {
+        var values = List.of("3 invite 7 1234", "", "a, b", "quote \" and \\ backslash", "line\nbreak\ttab\u0001");
+        assertEquals(values, JsonUtil.parseStringList(JsonUtil.stringList(values)));
+        assertEquals(List.of(), JsonUtil.parseStringList("[]"));
+        assertEquals(List.of("1 update 2", "3 trace 4"), JsonUtil.parseStringList("[\"1 update 2\",\"3 trace 4\"]"));
+    }
+
+    @Test
+    void testWriterReuse() {
+        var writer = new JsonWriter();
+        writer.beginObject().key("a").value(1).endObject();
+        assertEquals("{\"a\": 1}", writer.toString());
+        writer.reset().beginArray().value("x").beginObject().endObject().endArray();
+        assertEquals("[\"x\", {}]", writer.toString());
+    }
+
+    @Test
+    void testMalformedInput() {
+        assertThrows(IllegalArgumentException.class, () -> JsonParser.intArray("[1, 2"));
+        assertThrows(IllegalArgumentException.class, () -> JsonParser.intArray("[1, x]"));
+        assertThrows(IllegalArgumentException.class, () -> JsonParser.intArray("[1] 2"));
+        assertThrows(IllegalArgumentException.class, () -> JsonParser.intArray("[99999999999]"));
+        assertThrows(IllegalArgumentException.class, () -> JsonParser.stringList("[\"open"));
+        // only ascii digits, not arabic-indic or full-width ones
+        assertThrows(IllegalArgumentException.class, () -> JsonParser.intArray("[1\u0663]"));
+        assertThrows(IllegalArgumentException.class, () -> JsonParser.intArray("[\uff15]"));
+    }
+}
@@ -0,0 +1,91 @@
+package v2.shared.test;
+
+import org.junit.jupiter.api.Test;
+import v2.core.domain.message.MessageHeader;
+import v2.core.domain.message.MessageType;
+import v2.shared.api.LeasedCorrespondenceRegister;
+import v2.shared.impl.LocalCorrespondenceRegister;
+import v2.shared.testing.InMemoryCorrespondenceHttp;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LeasedCorrespondenceRegisterTest {
+
+    private static final int ADDRESS = 5;
+    private static final int LEASE = LeasedCorrespondenceRegister.LEASE_SIZE;
+
+    @Test
+    void testCountersAreClaimedInBlocks() {
+        var http = new InMemoryCorrespondenceHttp();
+        var register = new LeasedCorrespondenceRegister(ADDRESS, http);
+
+        for (int i = 0; i <= LEASE; i++) {
+            assertEquals(i, register.pack(MessageType.Downwards).getCounter());
+            assertEquals(i, register.packAndIncrement(MessageType.Downwards).getCounter());
+        }
+        assertEquals(2, http.requests().stream().filter(path -> path.endsWith("/lease")).count());
+        assertEquals(2 * LEASE, http.counter(ADDRESS));
+    }
+
+    @Test
+    void testPackDoesNotLease() {
+        var http = new InMemoryCorrespondenceHttp();
+        http.setCounter(ADDRESS, 3);
+        var register = new LeasedCorrespondenceRegister(ADDRESS, http);
+
+        assertEquals(3, register.pack(MessageType.Trace).getCounter());
+        assertEquals(3, register.pack(MessageType.Trace).getCounter());
+        assertEquals(3, http.counter(ADDRESS));
+        assertEquals(List.of("/correspondence/out/5", "/correspondence/out/5"), http.requests());
+    }
+
+    @Test
+    void testCountersWrapOnlyInHeaders() {
+        var http = new InMemoryCorrespondenceHttp();
+        int limit = 1 << MessageHeader.COUNTER_BITS;
+        http.setCounter(ADDRESS, limit - 2);
+        var register = new LeasedCorrespondenceRegister(ADDRESS, http);
+
+        for (int i = 0; i < 4; i++) register.packAndIncrement(MessageType.Downwards);
+        assertEquals(2, register.pack(MessageType.Downwards).getCounter());
+        assertEquals(limit - 2 + LEASE, http.counter(ADDRESS));
+    }
+
+    @Test
+    void testRestartDoesNotHandOutCountersTwice() {
+        var http = new InMemoryCorrespondenceHttp();
+        var first = new LeasedCorrespondenceRegister(ADDRESS, http);
+        Set<Integer> sent = new HashSet<>();
+        for (int i = 0; i < 3; i++) sent.add(first.packAndIncrement(MessageType.Downwards).getCounter());
+
+        // a restarted controller skips the unused rest of the lease of before
+        var second = new LeasedCorrespondenceRegister(ADDRESS, http);
+        sent.add(second.packAndIncrement(MessageType.Downwards).getCounter());
+        assertEquals(2 * LEASE, http.counter(ADDRESS));
+
+        var third = new LeasedCorrespondenceRegister(ADDRESS, http);
+        for (int i = 0; i < LEASE; i++) {
+            assertTrue(sent.add(third.packAndIncrement(MessageType.Downwards).getCounter()), "counter handed out twice");
+        }
+    }
+
+    @Test
+    void testReceivingStateIsRestored() {
+        var http = new InMemoryCorrespondenceHttp();
+        var node = LocalCorrespondenceRegister.to(ADDRESS);
+        var register = new LeasedCorrespondenceRegister(ADDRESS, http);
+
+        assertEquals(List.of(), register.registerAndListLosses(node.packAndIncrement(MessageType.Upwards)));
+        node.packAndIncrement(MessageType.Upwards);
+        assertEquals(List.of(1), register.registerAndListLosses(node.packAndIncrement(MessageType.Upwards)));
+        register.sync();
+
+        // the restarted register still knows 1 is missing and 3 is next
+        var restarted = new LeasedCorrespondenceRegister(ADDRESS, http);
+        assertEquals(List.of(1), restarted.registerAndListLosses(node.packAndIncrement(MessageType.Upwards)));
+    }
+}
@@ -0,0 +1,170 @@
+package v2.shared.test;
+
+import org.junit.jupiter.api.Test;
+import v2.core.concurrency.Clock;
+import v2.core.context.Context;
+import v2.core.domain.message.Message;
+import v2.shared.impl.MappedDataBuffer;
+import v2.shared.integration.FileClient;
+import v2.shared.testing.SilentLogger;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedDataBufferTest {
+
+    private static final int DATA_LENGTH = 200;
+    private static final int PER_SEGMENT = (MappedDataBuffer.SEGMENT_SIZE - Integer.BYTES) / (DATA_LENGTH + 2 * Integer.BYTES);
+
+    private long now;
+
+    @Test
+    void testMapsOnFirstStore() throws Exception {
+        var root = Files.createTempDirectory("buffer");
+        var buffer = new MappedDataBuffer();
+        var ctx = deploy(root, buffer);
+        assertTrue(buffer.isEmpty());
+        assertEquals(0, buffer.drain(10, m -> true));
+        assertFalse(Files.exists(root.resolve("buffer")));
+
+        buffer.store(message(1));
+        assertTrue(Files.exists(root.resolve("buffer").resolve("00000000.seg")));
+        ctx.destroy("test ended");
+
+        // a restarted buffer resumes with what is on disk
+        var resumed = new MappedDataBuffer();
+        ctx = deploy(root, resumed);
+        assertFalse(resumed.isEmpty());
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(1, resumed.drain(10, m -> drained.add(index(m))));
+        assertEquals(List.of(1), drained);
+        ctx.destroy("test ended");
+    }
+
+    /**
+     * a consumer that stores messages again, e.g. because forwarding them failed, must not roll the buffer under the drain
+     */
+    @Test
+    void testStoreDuringDrainIsQueued() throws Exception {
+        var root = Files.createTempDirectory("buffer");
+        var buffer = new MappedDataBuffer();
+        var ctx = deploy(root, buffer);
+        int count = MappedDataBuffer.MAX_SEGMENTS * PER_SEGMENT;
+        for (int i = 0; i < count; i++) buffer.store(message(i));
+
+        List<Integer> drained = new ArrayList<>();
+        int accepted = buffer.drain(10, m -> {
+            drained.add(index(m));
+            buffer.store(message(count + drained.size()));
+            return true;
+        });
+        assertEquals(10, accepted);
+        assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), drained);
+
+        // appending the queued messages rolled the buffer and evicted the rest of the first segment
+        assertEquals(PER_SEGMENT - 10, (long) buffer.lost().value());
+        drained.clear();
+        buffer.drain(1, m -> drained.add(index(m)));
+        assertEquals(List.of(PER_SEGMENT), drained);
+        ctx.destroy("test ended");
+    }
+
+    @Test
+    void testResumesAcrossSegments() throws Exception {
+        var root = Files.createTempDirectory("buffer");
+        var buffer = new MappedDataBuffer();
+        var ctx = deploy(root, buffer);
+        int count = 2 * PER_SEGMENT + 5;
+        for (int i = 0; i < count; i++) buffer.store(message(i));
+        assertTrue(Files.exists(root.resolve("buffer").resolve("00000002.seg")));
+
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(PER_SEGMENT + 3, buffer.drain(PER_SEGMENT + 3, m -> drained.add(index(m))));
+        assertFalse(Files.exists(root.resolve("buffer").resolve("00000000.seg")), "drained segment deleted");
+        long bytes = buffer.bufferedBytes().value();
+        ctx.destroy("test ended");
+
+        // the cursor in the second segment survives the restart
+        var resumed = new MappedDataBuffer();
+        ctx = deploy(root, resumed);
+        assertEquals(bytes, (long) resumed.bufferedBytes().value());
+        while (resumed.drain(10, m -> drained.add(index(m))) > 0);
+        for (int i = 0; i < count; i++) assertEquals(i, (int) drained.get(i));
+        assertEquals(count, drained.size());
+        assertTrue(resumed.isEmpty());
+        assertEquals(0L, (long) resumed.lost().value());
+        ctx.destroy("test ended");
+    }
+
+    @Test
+    void testEvictionCountsUnreadMessagesAsLost() throws Exception {
+        var root = Files.createTempDirectory("buffer");
+        var buffer = new MappedDataBuffer();
+        var ctx = deploy(root, buffer);
+        List<Integer> drained = new ArrayList<>();
+        for (int i = 0; i < MappedDataBuffer.MAX_SEGMENTS * PER_SEGMENT; i++) buffer.store(message(i));
+        assertEquals(5, buffer.drain(5, m -> drained.add(index(m))));
+        assertEquals(0L, (long) buffer.lost().value());
+
+        // one more message opens a segment beyond the limit and evicts the oldest
+        buffer.store(message(-1));
+        assertEquals(PER_SEGMENT - 5, (long) buffer.lost().value());
+        assertEquals(MappedDataBuffer.MAX_SEGMENTS, Files.list(root.resolve("buffer")).filter(p -> p.toString().endsWith(".seg")).count());
+        drained.clear();
+        buffer.drain(1, m -> drained.add(index(m)));
+        assertEquals(List.of(PER_SEGMENT), drained);
+        ctx.destroy("test ended");
+    }
+
+    @Test
+    void testDrainRateFollowsTheClock() throws Exception {
+        var buffer = new MappedDataBuffer();
+        var ctx = deploy(Files.createTempDirectory("buffer"), buffer);
+        for (int i = 0; i < 40; i++) buffer.store(message(i));
+
+        now = 1000;
+        buffer.drain(10, m -> true);
+        now = 3000;
+        buffer.drain(10, m -> true);
+        // a failed attempt while the sink is down adds time but no messages
+        now = 5000;
+        buffer.drain(10, m -> false);
+        now = 6000;
+        buffer.drain(10, m -> true);
+        assertEquals(20 / 5.0, buffer.drainRate(), 1e-9);
+
+        // a new backlog starts over
+        buffer.drain(10, m -> true);
+        assertTrue(buffer.isEmpty());
+        for (int i = 0; i < 20; i++) buffer.store(message(i));
+        now = 10000;
+        buffer.drain(10, m -> true);
+        now = 11000;
+        buffer.drain(10, m -> true);
+        assertEquals(10.0, buffer.drainRate(), 1e-9);
+        ctx.destroy("test ended");
+    }
+
+    private Context deploy(Path root, MappedDataBuffer buffer) {
+        return new Context.Builder()
+                .register((FileClient.Config) () -> root)
+                .register((Clock) () -> now)
+                .register(new SilentLogger())
+                .register(new FileClient())
+                .register(buffer)
+                .build().deploy();
+    }
+
+    private static Message message(int index) {
+        return new Message(0x1234, ByteBuffer.allocate(DATA_LENGTH).putInt(index).array());
+    }
+
+    private static int index(Message message) {
+        return ByteBuffer.wrap(message.data).getInt();
+    }
+}
@@ -0,0 +1,23 @@
+package v2.shared.test;
+
+import org.junit.jupiter.api.Test;
+import v2.core.domain.message.MessageType;
+import v2.shared.impl.LocalCorrespondenceRegister;
+import v2.shared.impl.RetxRegisterImpl;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetxRegisterImplTest {
+
+    @Test
+    void testSeededAddressIsKnownOnceHeard() {
+        var register = new RetxRegisterImpl();
+        register.seed(5, 0.8);
+        assertFalse(register.knows(5));
+        assertEquals(0.8, register.calculateRetx(5), 1e-9);
+
+        register.next(LocalCorrespondenceRegister.from(5).packAndIncrement(MessageType.Hello));
+        assertTrue(register.knows(5));
+        assertFalse(register.knows(6));
+    }
+}
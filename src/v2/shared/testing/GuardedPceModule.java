@@ -4,6 +4,7 @@ import v2.core.context.Context;
 import v2.core.context.Module;
 import v2.core.domain.ChannelInfo;
 import v2.core.domain.CorrespondenceRegister;
+import v2.core.domain.PceCommand;
 import v2.core.domain.PceModule;
 import v2.core.domain.message.Message;
 
@@ -12,26 +13,39 @@ import java.util.List;
 public class GuardedPceModule implements PceModule {
 
     private final PceModule pce;
+    private final boolean owned;
     private Handle handle;
 
     public GuardedPceModule(PceModule pce) {
+        this(pce, true);
+    }
+
+    private GuardedPceModule(PceModule pce, boolean owned) {
         this.pce = pce;
+        this.owned = owned;
+    }
+
+    /**
+     * guards a pce shared by several nodes, which is built, deployed and destroyed by its owner
+     */
+    public static GuardedPceModule shared(PceModule pce) {
+        return new GuardedPceModule(pce, false);
     }
 
     @Override
     public void build(Context ctx) {
-        pce.build(ctx);
+        if (owned) pce.build(ctx);
         handle = ctx.resolve(Handle.class);
     }
 
     @Override
     public void deploy() {
-        pce.deploy();
+        if (owned) pce.deploy();
     }
 
     @Override
     public void destroy() {
-        pce.destroy();
+        if (owned) pce.destroy();
     }
 
     @Override
@@ -52,7 +66,7 @@ public class GuardedPceModule implements PceModule {
     }
 
     @Override
-    public List<String> feed(long controllerId, Message message) {
+    public List<PceCommand> feed(long controllerId, Message message) {
         if (handle.pceDisabled()) throw new IllegalStateException("disabled");
         return pce.feed(controllerId, message);
     }
@@ -0,0 +1,62 @@
+package v2.shared.testing;
+
+import v2.shared.api.Http;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Answers the correspondence requests of {@link v2.shared.api.LeasedCorrespondenceRegister} like the pce would,
+ * without a server. Unwrapped sending counters per address and the receiving state as it was posted.
+ */
+public class InMemoryCorrespondenceHttp extends Http {
+
+    private final Map<Integer, Integer> counters = new HashMap<>();
+    private final Map<Integer, String> receiving = new HashMap<>();
+    private final List<String> requests = new ArrayList<>();
+
+    public synchronized int counter(int address) {
+        return counters.getOrDefault(address, 0);
+    }
+
+    public synchronized void setCounter(int address, int counter) {
+        counters.put(address, counter);
+    }
+
+    /**
+     * @return the paths of all requests so far
+     */
+    public synchronized List<String> requests() {
+        return new ArrayList<>(requests);
+    }
+
+    @Override
+    public synchronized String getResponseString(String path) {
+        requests.add(path);
+        if (path.startsWith("/correspondence/out/")) return counter(address(path)) + "";
+        return receiving.getOrDefault(address(path), "[]");
+    }
+
+    @Override
+    public synchronized String postResponseString(String path, String data) {
+        requests.add(path);
+        if (!path.endsWith("/lease")) throw new IllegalArgumentException(path);
+        int address = address(path);
+        int counter = counter(address);
+        counters.put(address, counter + Integer.parseInt(data));
+        return counter + "";
+    }
+
+    @Override
+    public synchronized void postResponseVoid(String path, String data) {
+        requests.add(path);
+        if (path.startsWith("/correspondence/in/")) receiving.put(address(path), data);
+        else throw new IllegalArgumentException(path);
+    }
+
+    private static int address(String path) {
+        return Integer.parseInt(path.split("/")[3]);
+    }
+}
@@ -0,0 +1,17 @@
+package v2.shared.testing;
+
+import v2.core.context.Module;
+import v2.core.log.Logger;
+
+/**
+ * Drops every message, for tests and benchmarks that would otherwise be slowed down by logging.
+ */
+public class SilentLogger implements Logger {
+    @Override
+    public void log(Severity severity, String text, Module module) {
+    }
+
+    @Override
+    public void exception(Exception e, Module module) {
+    }
+}
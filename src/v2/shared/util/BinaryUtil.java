@@ -0,0 +1,116 @@
+package v2.shared.util;
+
+import v2.core.domain.PceCommand;
+import v2.core.domain.message.Message;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ *     Binary exchange format between controller and pce.
+ * </p>
+ * <p>
+ *     feed request: <br/>
+ *     [version: 1] [controller id: 8] [message header: 2] [data length: 1] [data]
+ * </p>
+ * <p>
+ *     feed response: <br/>
+ *     [command count: 1] [command records] <br/>
+ *     each record starts with [type: 1] [target: 1], followed by <br/>
+ *     - invite: [address: 1] [serial id: 8] <br/>
+ *     - trace, update: [data length: 1] [data]
+ * </p>
+ */
+public class BinaryUtil {
+
+    public static final byte VERSION = 1;
+
+    private static final byte INVITE = 1;
+    private static final byte TRACE = 2;
+    private static final byte UPDATE = 3;
+
+    public static byte[] feedRequest(long controllerId, Message message) {
+        ByteBuffer buf = ByteBuffer.allocate(12 + message.dataLength());
+        buf.put(VERSION);
+        buf.putLong(controllerId);
+        buf.putShort((short) message.header);
+        buf.put((byte) message.dataLength());
+        buf.put(message.data);
+        return buf.array();
+    }
+
+    public static long feedRequestControllerId(byte[] request) {
+        checkVersion(request);
+        return ByteBuffer.wrap(request).getLong(1);
+    }
+
+    public static Message feedRequestMessage(byte[] request) {
+        checkVersion(request);
+        ByteBuffer buf = ByteBuffer.wrap(request, 9, request.length - 9);
+        int header = Short.toUnsignedInt(buf.getShort());
+        byte[] data = new byte[Byte.toUnsignedInt(buf.get())];
+        buf.get(data);
+        return new Message(header, data);
+    }
+
+    public static byte[] feedResponse(List<PceCommand> commands) {
+        int size = 1;
+        for (var command : commands) size += command.type == PceCommand.Type.Invite ? 11 : 3 + command.data.length;
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        buf.put((byte) commands.size());
+        for (var command : commands) {
+            switch (command.type) {
+                case Invite:
+                    buf.put(INVITE).put((byte) command.target).put((byte) command.address).putLong(command.serialId);
+                    break;
+                case Trace:
+                    buf.put(TRACE).put((byte) command.target).put((byte) command.data.length).put(command.data);
+                    break;
+                case Update:
+                    buf.put(UPDATE).put((byte) command.target).put((byte) command.data.length).put(command.data);
+                    break;
+            }
+        }
+        return buf.array();
+    }
+
+    public static List<PceCommand> parseFeedResponse(byte[] response) {
+        if (response.length == 0) return new ArrayList<>();
+        ByteBuffer buf = ByteBuffer.wrap(response);
+        int count = Byte.toUnsignedInt(buf.get());
+        List<PceCommand> commands = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte type = buf.get();
+            byte target = buf.get();
+            switch (type) {
+                case INVITE: {
+                    byte address = buf.get();
+                    commands.add(PceCommand.invite(target, address, buf.getLong()));
+                }
+                    break;
+                case TRACE:
+                    commands.add(PceCommand.trace(target, data(buf)));
+                    break;
+                case UPDATE:
+                    commands.add(PceCommand.update(target, data(buf)));
+                    break;
+                default: throw new IllegalArgumentException("unknown command type: " + type);
+            }
+        }
+        return commands;
+    }
+
+    private static byte[] data(ByteBuffer buf) {
+        byte[] data = new byte[Byte.toUnsignedInt(buf.get())];
+        buf.get(data);
+        return data;
+    }
+
+    private static void checkVersion(byte[] request) {
+        if (request.length == 0 || request[0] != VERSION) {
+            throw new IllegalArgumentException("unsupported pce protocol version");
+        }
+    }
+}
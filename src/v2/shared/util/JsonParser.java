@@ -0,0 +1,142 @@
+package v2.shared.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tokenizing parser for the flat arrays returned by the api. Numbers may be quoted, whitespace is free.
+ */
+public class JsonParser {
+
+    private final CharSequence in;
+    private int pos = 0;
+
+    public JsonParser(CharSequence in) {
+        this.in = in;
+    }
+
+    public static int[] intArray(CharSequence in) {
+        return new JsonParser(in).readIntArray();
+    }
+
+    /**
+     * @throws IllegalArgumentException for values outside of the signed byte range, like {@link Byte#parseByte(String)}
+     */
+    public static byte[] byteArray(CharSequence in) {
+        int[] values = new JsonParser(in).readIntArray(Byte.MIN_VALUE, Byte.MAX_VALUE);
+        byte[] result = new byte[values.length];
+        for (int i = 0; i < values.length; i++) result[i] = (byte) values[i];
+        return result;
+    }
+
+    public static List<String> stringList(CharSequence in) {
+        return new JsonParser(in).readStringList();
+    }
+
+    public int[] readIntArray() {
+        return readIntArray(Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    private int[] readIntArray(int min, int max) {
+        int[] result = new int[8];
+        int size = 0;
+        expect('[');
+        if (!tryConsume(']')) {
+            do {
+                if (size == result.length) result = Arrays.copyOf(result, size * 2);
+                int value = readInt();
+                if (value < min || value > max) throw error(String.format("%d out of range [%d, %d]", value, min, max));
+                result[size++] = value;
+            } while (tryConsume(','));
+            expect(']');
+        }
+        expectEnd();
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+    public List<String> readStringList() {
+        List<String> result = new ArrayList<>();
+        expect('[');
+        if (!tryConsume(']')) {
+            do {
+                result.add(readString());
+            } while (tryConsume(','));
+            expect(']');
+        }
+        expectEnd();
+        return result;
+    }
+
+    public int readInt() {
+        skipWhitespace();
+        boolean quoted = tryConsume('"');
+        boolean negative = tryConsume('-');
+        int start = pos;
+        long value = 0;
+        while (pos < in.length() && in.charAt(pos) >= '0' && in.charAt(pos) <= '9') {
+            value = value * 10 + (in.charAt(pos++) - '0');
+            if (value > (long) Integer.MAX_VALUE + 1) throw error("integer overflow");
+        }
+        if (pos == start) throw error("integer expected");
+        if (quoted) expect('"');
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) throw error("integer overflow");
+        return (int) value;
+    }
+
+    public String readString() {
+        expect('"');
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            if (pos >= in.length()) throw error("unterminated string");
+            char c = in.charAt(pos++);
+            if (c == '"') return sb.toString();
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if (pos >= in.length()) throw error("unterminated escape");
+            char e = in.charAt(pos++);
+            switch (e) {
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'u':
+                    if (pos + 4 > in.length()) throw error("short unicode escape");
+                    sb.append((char) Integer.parseInt(in.subSequence(pos, pos + 4).toString(), 16));
+                    pos += 4;
+                    break;
+                default: sb.append(e);
+            }
+        }
+    }
+
+    private boolean tryConsume(char c) {
+        skipWhitespace();
+        if (pos < in.length() && in.charAt(pos) == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(char c) {
+        if (!tryConsume(c)) throw error(String.format("'%c' expected", c));
+    }
+
+    private void expectEnd() {
+        skipWhitespace();
+        if (pos != in.length()) throw error("trailing characters");
+    }
+
+    private void skipWhitespace() {
+        while (pos < in.length() && Character.isWhitespace(in.charAt(pos))) pos++;
+    }
+
+    private IllegalArgumentException error(String reason) {
+        return new IllegalArgumentException(String.format("invalid json at %d: %s", pos, reason));
+    }
+}
@@ -5,102 +5,90 @@ import v2.core.domain.node.Node;
 import v2.shared.api.domain.LogEntry;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class JsonUtil {
 
+    private static final ThreadLocal<JsonWriter> writer = ThreadLocal.withInitial(JsonWriter::new);
+
+    private static JsonWriter writer() {
+        return writer.get().reset();
+    }
+
     public static String nodeInfo(Node node) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("{")
-                .append(key("id")).append(integer(node.id())).append(", ")
-                .append(key("address")).append(integer(node.address())).append(", ")
-                .append(key("status")).append(string(node.status())).append(", ")
-                .append(key("retx")).append(retxMap(node.retx()))
-                .append("}");
-        return sb.toString();
+        return writer().beginObject()
+                .key("id").quoted(node.id())
+                .key("address").quoted(node.address())
+                .key("status").value(node.status())
+                .key("retx").retxMap(node.retx())
+                .endObject().toString();
     }
 
     public static String message(Message data) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("{")
-                .append(key("header")).append(integer(data.header)).append(", ")
-                .append(key("data")).append(bytes(data.data))
-                .append("}");
-        return sb.toString();
+        return writer().beginObject()
+                .key("header").quoted(data.header)
+                .key("data").bytes(data.data)
+                .endObject().toString();
     }
 
     public static String logEntry(LogEntry data) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("{")
-                .append(key("severity")).append(string(data.severity)).append(", ")
-                .append(key("moduleInfo")).append(string(data.moduleInfo)).append(", ")
-                .append(key("data")).append(bytes(data.data))
-                .append("}");
-        return sb.toString();
+        return writer().beginObject()
+                .key("severity").value(data.severity)
+                .key("moduleInfo").value(data.moduleInfo)
+                .key("data").bytes(data.data)
+                .endObject().toString();
     }
 
     public static String key(String name) {
-        return String.format("\"%s\": ", name);
+        return writer().key(name).toString();
     }
 
     public static String integer(long n) {
-        return String.format("\"%d\"", n);
+        return writer().quoted(n).toString();
     }
 
     public static String string(Object o) {
-        return String.format("\"%s\"", o.toString());
+        return writer().value(o).toString();
     }
 
     public static String bytes(byte[] data) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("[");
-        if (data.length > 0) {
-            for (var b : data) sb.append(b).append(", ");
-            sb.delete(sb.length() - 2, sb.length());
-        }
-        sb.append("]");
-        return sb.toString();
+        return writer().bytes(data).toString();
+    }
+
+    public static String intList(Collection<Integer> data) {
+        return writer().ints(data).toString();
+    }
+
+    public static String stringList(Collection<String> data) {
+        return writer().strings(data).toString();
     }
 
     public static String retxMap(Map<Integer, Double> data) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("{");
-        if (!data.isEmpty()) {
-            for (var entry : data.entrySet()) sb.append(String.format("%d: %f, ", entry.getKey(), entry.getValue()));
-            sb.delete(sb.length() - 2, sb.length());
-        }
-        sb.append("}");
-        return sb.toString();
+        return writer().retxMap(data).toString();
     }
 
     public static List<String> parseStringList(String str) {
-        if (str.equals("[]")) return new ArrayList<>();
-        return Arrays.asList(str.substring(2, str.length() -2).split("\"\\s*,\\s*\""));
+        return JsonParser.stringList(str);
     }
 
     public static byte[] parseByteArray(String str) {
-        if (str.equals("[]")) return new byte[]{};
-        var split = str.substring(1, str.length() -1).split("\\s*,\\s*");
-        byte[] result = new byte[split.length];
-        for (int i = 0; i < split.length; i++) {
-            result[i] = Byte.parseByte(split[i]);
-        }
-        return result;
+        return JsonParser.byteArray(str);
     }
 
     public static List<Byte> parseByteList(String str) {
-        if (str.equals("[]")) return Collections.emptyList();
-        return Arrays.stream(str.substring(1, str.length() -1)
-                .split("\\s*,\\s*"))
-                .map(Byte::parseByte)
-                .collect(Collectors.toList());
+        byte[] values = JsonParser.byteArray(str);
+        List<Byte> result = new ArrayList<>(values.length);
+        for (byte b : values) result.add(b);
+        return result;
+    }
+
+    public static int[] parseIntArray(String str) {
+        return JsonParser.intArray(str);
     }
 
     public static List<Integer> parseIntList(String str) {
-        if (str.equals("[]")) return Collections.emptyList();
-        return Arrays.stream(str.substring(1, str.length() -1)
-                        .split("\\s*,\\s*"))
-                .map(Integer::parseInt)
-                .collect(Collectors.toList());
+        int[] values = JsonParser.intArray(str);
+        List<Integer> result = new ArrayList<>(values.length);
+        for (int i : values) result.add(i);
+        return result;
     }
 }
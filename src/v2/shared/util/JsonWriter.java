@@ -0,0 +1,164 @@
+package v2.shared.util;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Streaming json writer appending to a reusable buffer. Separators are inserted automatically.
+ */
+public class JsonWriter {
+
+    private static final long[] POW10 = {1, 10, 100, 1000, 10000, 100000, 1000000};
+
+    private final StringBuilder sb;
+    private boolean first = true;
+
+    public JsonWriter() {
+        this(new StringBuilder(128));
+    }
+
+    public JsonWriter(StringBuilder sb) {
+        this.sb = sb;
+    }
+
+    public JsonWriter reset() {
+        sb.setLength(0);
+        first = true;
+        return this;
+    }
+
+    public JsonWriter beginObject() {
+        separate();
+        sb.append('{');
+        first = true;
+        return this;
+    }
+
+    public JsonWriter endObject() {
+        sb.append('}');
+        first = false;
+        return this;
+    }
+
+    public JsonWriter beginArray() {
+        separate();
+        sb.append('[');
+        first = true;
+        return this;
+    }
+
+    public JsonWriter endArray() {
+        sb.append(']');
+        first = false;
+        return this;
+    }
+
+    public JsonWriter key(String name) {
+        separate();
+        quote(name).append(": ");
+        first = true;
+        return this;
+    }
+
+    /**
+     * writes the number as quoted string, as expected by the api
+     */
+    public JsonWriter quoted(long n) {
+        separate();
+        sb.append('"').append(n).append('"');
+        return this;
+    }
+
+    public JsonWriter value(long n) {
+        separate();
+        sb.append(n);
+        return this;
+    }
+
+    public JsonWriter value(Object o) {
+        separate();
+        quote(o.toString());
+        return this;
+    }
+
+    public JsonWriter bytes(byte[] data) {
+        beginArray();
+        for (byte b : data) value(b);
+        return endArray();
+    }
+
+    public JsonWriter ints(Collection<Integer> data) {
+        beginArray();
+        for (int i : data) value(i);
+        return endArray();
+    }
+
+    public JsonWriter strings(Collection<String> data) {
+        beginArray();
+        for (String s : data) value(s);
+        return endArray();
+    }
+
+    /**
+     * writes the map with unquoted integer keys and six fraction digits, as expected by the api
+     */
+    public JsonWriter retxMap(Map<Integer, Double> data) {
+        separate();
+        sb.append('{');
+        first = true;
+        for (var entry : data.entrySet()) {
+            separate();
+            sb.append(entry.getKey().intValue()).append(": ");
+            fixed(entry.getValue(), 6);
+        }
+        return endObject();
+    }
+
+    public int length() {
+        return sb.length();
+    }
+
+    @Override
+    public String toString() {
+        return sb.toString();
+    }
+
+    private void separate() {
+        if (first) {
+            first = false;
+        } else {
+            sb.append(", ");
+        }
+    }
+
+    private void fixed(double value, int digits) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            sb.append(value);
+            return;
+        }
+        long scaled = Math.round(Math.abs(value) * POW10[digits]);
+        if (value < 0 && scaled != 0) sb.append('-');
+        sb.append(scaled / POW10[digits]).append('.');
+        long fraction = scaled % POW10[digits];
+        for (int d = digits - 1; d > 0 && fraction < POW10[d]; d--) sb.append('0');
+        sb.append(fraction);
+    }
+
+    private StringBuilder quote(String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+            }
+        }
+        return sb.append('"');
+    }
+}
@@ -1,12 +1,20 @@
 package v2.simulation;
 
+import v2.core.concurrency.Clock;
 import v2.core.concurrency.Executor;
 import v2.core.context.Context;
+import v2.core.domain.ChannelInfo;
+import v2.core.domain.NodeState;
+import v2.core.domain.message.Message;
 import v2.core.domain.node.Node;
 import v2.core.log.LogMultiplexer;
 import v2.core.log.Logger;
 import v2.shared.impl.ConsoleLogger;
 import v2.shared.impl.FileLogger;
+import v2.shared.impl.FileNodeStateStore;
+import v2.shared.impl.MappedDataBuffer;
+import v2.shared.impl.NodeSupervisor;
+import v2.shared.impl.SharedLogger;
 import v2.shared.integration.FileClient;
 import v2.shared.measurements.ExecutorInsights;
 import v2.shared.measurements.NodeStatistics;
@@ -18,43 +26,98 @@ import v2.simulation.domain.NodeSimulationSpecs;
 import v2.simulation.gui.ControlPanel;
 import v2.simulation.gui.GUI;
 import v2.simulation.gui.GraphPanel;
+import v2.simulation.impl.PartitionedExecutor;
 import v2.simulation.impl.PseudoOs;
+import v2.simulation.impl.ShardedExecutor;
 import v2.simulation.impl.SimulatedLoRaMeshModule;
+import v2.simulation.impl.SimulatedNodeData;
 import v2.simulation.impl.SimulatedPCE;
 import v2.simulation.impl.VirtualTimeExecutor;
+import v2.simulation.radio.RadioMedium;
+import v2.simulation.replay.EventLog;
+import v2.simulation.replay.Replayer;
+import v2.simulation.snapshot.Snapshot;
+import v2.simulation.util.NeighbourIndex;
 import v2.simulation.util.NodeHandle;
+import v2.simulation.util.ReceptionMatrix;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.ObjectInputStream;
-import java.io.Serializable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Consumer;
 
-public class Simulation implements ConsoleLogger.Handle, FileClient.Config, VirtualTimeExecutor.Config, DataSimulator.Config, Serializable {
-    protected static final long SerialVersionUID = 32;
+public class Simulation implements ConsoleLogger.Handle, FileClient.Config, VirtualTimeExecutor.Config, PartitionedExecutor.Config, DataSimulator.Config,
+        RadioMedium.Network {
 
     public static final Path root = Path.of(String.format("%s/LoraMesh/simulation", System.getenv("LOCALAPPDATA")));
     public static final URI api = URI.create("http://localhost:8080");
+    public static final long DISCRETE_EVENT_DURATION = 24 * 3600 * 1000L;
+    /**
+     * interval in which recorded events are written
+     */
+    public static final long RECORD_FLUSH_PERIOD = 10000;
+    public static final String SNAPSHOT = "latest.snapshot";
+    /**
+     * directories of the node states and buffers, cleared when the simulation starts without a checkpoint
+     */
+    public static final String STATE_DIR = "state";
+    public static final String BUFFER_DIR = "buffer";
 
     private final List<NodeSimulationSpecs> specsList = new ArrayList<>();
-    private transient Context sharedContext;
-    private transient Map<NodeSimulationSpecs, Context> context;
-    private transient List<NodeHandle> handle;
+    private Context sharedContext;
+    private ShardedExecutor exec;
+    private Clock clock;
+    private NeighbourIndex neighbours;
+    private RadioMedium medium;
+    private Map<NodeSimulationSpecs, Context> context;
+    private Map<NodeSimulationSpecs, Executor> shards;
+    private Map<NodeSimulationSpecs, NodeHandle> current;
+    private Map<NodeSimulationSpecs, SimulatedPCE> pces;
+    private SimulatedPCE sharedPce;
+    private Logger sharedLogger;
+    private List<NodeHandle> handle;
+    private Path directory;
+    private Path recording;
+    private Path replaying;
+    private Replayer replayer;
+    private EventLog.Writer recorder;
+    private Path restoring;
+    /**
+     * state of every node of a restored checkpoint by id, null for nodes that had not joined; taken by the first build
+     */
+    private Map<Long, NodeState> restoredStates;
+    private Map<Long, List<SimulatedNodeData>> restoredPces;
 
-    private transient NodeHandle selected;
-    private transient List<Consumer<NodeHandle>> selectionListeners;
+    private NodeHandle selected;
+    private List<Consumer<NodeHandle>> selectionListeners;
     public int timeControl = 1;
+    public boolean discreteEvent = false;
+    public int partitions = Runtime.getRuntime().availableProcessors();
+    public long seed = 0;
+    public long dataFeedPeriod = 5000;
     public String view = "plain";
-    public final Logger.Severity logLevel = Logger.Severity.Debug;
+    public Logger.Severity logLevel = Logger.Severity.Debug;
+    /**
+     * nodes log to the logger of the simulation and all controllers feed one pce,
+     * so a node costs a few kilobytes of heap instead of a pce and log buffer of its own
+     */
+    public boolean compact = false;
+    /**
+     * pces calculate the routing of every topology change from scratch instead of repairing their shortest-path trees
+     */
+    public boolean allPairsRouting = false;
 
     @Override
     public void build(Context ctx) {
         sharedContext = ctx;
         var logger = ctx.resolve(Logger.class);
-        var exec = ctx.resolve(Executor.class);
+        sharedLogger = logger;
+        exec = ctx.resolve(ShardedExecutor.class);
+        clock = ctx.resolve(Clock.class);
 
 //        ctx.resolve(ExecutorInsights.class).step().subscribe(step -> {
 //            if (step >= 10000000) {
@@ -65,55 +128,168 @@ public class Simulation implements ConsoleLogger.Handle, FileClient.Config, Virt
     }
 
     public void deploy() {
-        context = new HashMap<>();
-        handle = new ArrayList<>();
+        // nodes are built, restarted and looked up from the executor's threads
+        context = new ConcurrentHashMap<>();
+        shards = new ConcurrentHashMap<>();
+        current = new ConcurrentHashMap<>();
+        pces = new ConcurrentHashMap<>();
+        handle = new CopyOnWriteArrayList<>();
         selectionListeners = new ArrayList<>();
+        if (restoring != null) restore();
+        if (restoredStates == null) {
+            // ids follow from the labels, a fresh run would resume the nodes of an earlier one against a new pce
+            var fs = sharedContext.resolve(FileClient.class);
+            fs.deleteAll(fs.resolve(STATE_DIR));
+            fs.deleteAll(fs.resolve(BUFFER_DIR));
+        }
+        if (compact) {
+            sharedPce = newPce();
+            sharedPce.build(sharedContext);
+            if (restoredPces != null) restoreShared();
+        }
 
+        neighbours = new NeighbourIndex(new ReceptionMatrix());
+        specsList.forEach(neighbours::add);
+        medium = new RadioMedium(this, neighbours, seed);
+        try {
+            if (recording != null) {
+                recorder = new EventLog.Writer(recording, seed);
+                medium.setListener(recorder);
+                exec.schedulePeriodic(() -> recorder.flush(clock.millis()), RECORD_FLUSH_PERIOD, RECORD_FLUSH_PERIOD);
+            }
+            if (replaying != null) {
+                Map<Long, NodeSimulationSpecs> nodes = new HashMap<>();
+                specsList.forEach(specs -> nodes.put(specs.id(), specs));
+                replayer = new Replayer(new EventLog.Reader(replaying), medium, nodes, this::executor, sharedLogger);
+                replayer.start(exec, clock);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
         specsList.forEach(this::init);
     }
 
     @Override
     public void preDestroy() {
         System.out.println("finalizing...");
+        if (recorder != null) {
+            try {
+                recorder.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * writes every transmission and delivery of the run to the file, to be called before the deployment.
+     * The log is only the same for runs of the same scenario and seed on the {@link PartitionedExecutor},
+     * whose virtual clock doesn't depend on thread scheduling
+     */
+    public void record(Path file) {
+        recording = file;
+    }
+
+    /**
+     * feeds the deliveries recorded in the file to the nodes instead of letting their frames through the medium,
+     * to be called before the deployment
+     */
+    public void replay(Path file) {
+        replaying = file;
+    }
+
+    /**
+     * @return the replayer of a deployed simulation that replays a recording, null otherwise
+     */
+    public Replayer replayer() {
+        return replayer;
     }
 
     private void init(NodeSimulationSpecs specs) {
+        var shard = shards.computeIfAbsent(specs, exec::shard);
+        context.put(specs, new Context.Builder(sharedContext)
+                .register(shard)
+                .register(new PseudoOs(this, specs))
+                .register(new NodeSupervisor(parent -> buildNode(parent, specs)))
+                .build().deploy());
+    }
+
+    private Context buildNode(Context parent, NodeSimulationSpecs specs) {
         var nodeHandle = new NodeHandle();
-        var nodeCtx = context.put(specs, new Context.Builder(sharedContext)
+        var stateStore = new FileNodeStateStore(STATE_DIR + "/" + specs.id());
+        var pce = compact? sharedPce : newPce();
+        var nodeCtx = new Context.Builder(parent)
                 .register(specs)
                 .register(nodeHandle)
                 .register(new Node())
-                .register(new PseudoOs(this))
-                .register(new LogMultiplexer(new ConsoleLogger(), new FileLogger()))
+                .register(new NodeSupervisor.SoftRebootOs())
+                .register(compact? new SharedLogger(sharedLogger) : new LogMultiplexer(new ConsoleLogger(), new FileLogger()))
                 .register(new GuardedDataSinkModule(new DataSimulator()))
-                .register(new GuardedPceModule(new SimulatedPCE()))
+                .register(new MappedDataBuffer(BUFFER_DIR + "/" + specs.id()))
+                .register(stateStore)
+                .register(compact? GuardedPceModule.shared(pce) : new GuardedPceModule(pce))
                 .register(new SimulatedLoRaMeshModule())
 //                .register(new DataSimulator())
                 .register(new NodeStatistics())
-                .build().deploy());
+                .build();
+        if (restoredStates != null && restoredStates.containsKey(specs.id())) {
+            // the checkpoint decides where the node resumes, not a state left from an earlier run
+            var state = restoredStates.remove(specs.id());
+            if (state != null) stateStore.save(state); else stateStore.clear();
+        }
+        var restoredPce = restoredPces == null? null : restoredPces.remove(specs.id());
+        if (restoredPce != null) restoredPce.forEach(pce::restore);
         handle.add(nodeHandle);
+        current.put(specs, nodeHandle);
+        if (!compact) pces.put(specs, pce);
+        nodeCtx.teardown().subscribe(x -> {
+            handle.remove(nodeHandle);
+            current.remove(specs, nodeHandle);
+            if (!compact) pces.remove(specs, pce);
+        });
+        return nodeCtx;
     }
 
-    public void add(String label, double x, double y) {
-        var specs = new NodeSimulationSpecs(label, x, y, false);
+    public NodeSimulationSpecs add(String label, double x, double y) {
+        return add(label, x, y, false);
+    }
+
+    /**
+     * nodes added before the deployment are started with it
+     */
+    public NodeSimulationSpecs add(String label, double x, double y, boolean controller) {
+        var specs = new NodeSimulationSpecs(label, x, y, controller);
         specsList.add(specs);
+        if (context == null) return specs;
+        neighbours.add(specs);
         init(specs);
+        return specs;
     }
 
     public void remove(NodeHandle node) {
         var specs = node.specs();
         context.remove(specs).destroy("node removed");
+        shards.remove(specs);
         handle.remove(node);
         specsList.remove(specs);
+        neighbours.remove(specs);
     }
 
-    public void restart(NodeHandle node) {
-        var specs = node.specs();
+    /**
+     * hard restart of a node including its supervisor, the simulated equivalent of a reboot
+     */
+    public void restart(NodeSimulationSpecs specs) {
         context.remove(specs).destroy("node restarted");
-        handle.remove(node);
         init(specs);
     }
 
+    /**
+     * @return the specs of all nodes, including those added before the deployment
+     */
+    public List<NodeSimulationSpecs> specs() {
+        return Collections.unmodifiableList(specsList);
+    }
+
     public NodeHandle get(int index) {
         return handle.get(index);
     }
@@ -122,6 +298,40 @@ public class Simulation implements ConsoleLogger.Handle, FileClient.Config, Virt
         return handle;
     }
 
+    /**
+     * @return reachable nodes by sender, kept up to date as nodes are added, moved or linked by hand
+     */
+    public NeighbourIndex neighbours() {
+        return neighbours;
+    }
+
+    public RadioMedium medium() {
+        return medium;
+    }
+
+    /**
+     * @return the running node of the specs, null while it is down between a teardown and its restart
+     */
+    public NodeHandle handle(NodeSimulationSpecs specs) {
+        return current.get(specs);
+    }
+
+    /**
+     * @return the executor shard of the node, on which all its tasks run
+     */
+    @Override
+    public Executor executor(NodeSimulationSpecs specs) {
+        return shards.get(specs);
+    }
+
+    @Override
+    public boolean deliver(NodeSimulationSpecs specs, ChannelInfo channel, Message message) {
+        var node = current.get(specs);
+        if (node == null || !node.isAlive() || !channel.equals(node.listeningChannel())) return false;
+        node.receive(message);
+        return true;
+    }
+
     public NodeHandle getSelected() {
         return selected;
     }
@@ -151,12 +361,19 @@ public class Simulation implements ConsoleLogger.Handle, FileClient.Config, Virt
 
     @Override
     public Path root() {
-        return root;
+        return directory != null? directory : root;
+    }
+
+    /**
+     * keeps logs, state and results of this simulation in the given directory instead of the default one
+     */
+    public void setDirectory(Path directory) {
+        this.directory = directory;
     }
 
     @Override
     public int poolSize() {
-        return 1;
+        return Runtime.getRuntime().availableProcessors();
     }
 
     @Override
@@ -164,24 +381,145 @@ public class Simulation implements ConsoleLogger.Handle, FileClient.Config, Virt
         return Math.pow(0.5 , timeControl);
     }
 
+    @Override
+    public boolean discreteEvent() {
+        return discreteEvent;
+    }
+
+    @Override
+    public int partitions() {
+        return partitions;
+    }
+
+    @Override
+    public long lookahead() {
+        return RadioMedium.DELIVERY_DELAY;
+    }
+
     @Override
     public long dataFeedPeriod() {
-        return 5000;
+        return dataFeedPeriod;
+    }
+
+    /**
+     * writes the settings and nodes to the file, and with the runtime state, the state of every node and pce.
+     * The shared pce of a compact simulation is written as the pce of controller 0.
+     * The runtime state is only consistent if no node runs meanwhile, see {@link #checkpoint(Path)}
+     */
+    public void save(Path file, boolean runtime) {
+        var fs = sharedContext.resolve(FileClient.class);
+        var settings = new Snapshot.Settings();
+        settings.time = clock.millis();
+        settings.seed = seed;
+        settings.dataFeedPeriod = dataFeedPeriod;
+        settings.timeControl = timeControl;
+        settings.discreteEvent = discreteEvent;
+        settings.view = view;
+        try (var writer = new Snapshot.Writer(fs.output(file), settings, runtime)) {
+            List<NodeSimulationSpecs> nodes = new ArrayList<>(specsList);
+            for (var specs : nodes) writer.node(specs);
+            if (!runtime) return;
+            for (var specs : nodes) {
+                var node = current.get(specs);
+                var state = node == null? null : node.state();
+                if (state != null) writer.state(specs.id(), state);
+            }
+            if (sharedPce != null) writePce(writer, 0, sharedPce, settings.time);
+            for (var entry : pces.entrySet()) writePce(writer, entry.getKey().id(), entry.getValue(), settings.time);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writePce(Snapshot.Writer writer, long controller, SimulatedPCE pce, long now) throws IOException {
+        List<SimulatedNodeData> known = new ArrayList<>(pce.nodes());
+        known.sort(Comparator.comparingLong(SimulatedNodeData::getId));
+        for (var node : known) writer.pce(controller, node, now);
+    }
+
+    /**
+     * saves the simulation with its runtime state while no node runs, see {@link ShardedExecutor#quiesce(Runnable)}
+     */
+    public void checkpoint(Path file) {
+        exec.quiesce(() -> save(file, true));
+    }
+
+    /**
+     * replaces nodes and settings by the ones saved in the file when the simulation is deployed.
+     * Nodes of a checkpoint resume with their saved state and the pce with its repository
+     */
+    public void restore(Path file) {
+        restoring = file;
+    }
+
+    private void restore() {
+        var fs = sharedContext.resolve(FileClient.class);
+        try (var reader = new Snapshot.Reader(fs.input(restoring))) {
+            var settings = reader.settings;
+            seed = settings.seed;
+            dataFeedPeriod = settings.dataFeedPeriod;
+            timeControl = settings.timeControl;
+            discreteEvent = settings.discreteEvent;
+            view = settings.view;
+            specsList.clear();
+            if (reader.runtime) {
+                restoredStates = Collections.synchronizedMap(new HashMap<>());
+                restoredPces = new ConcurrentHashMap<>();
+            }
+            long now = clock.millis();
+            reader.read(new Snapshot.Visitor() {
+                @Override
+                public void node(NodeSimulationSpecs specs) {
+                    specsList.add(specs);
+                    if (restoredStates != null) restoredStates.put(specs.id(), null);
+                }
+
+                @Override
+                public void state(long id, NodeState state) {
+                    restoredStates.put(id, state);
+                }
+
+                @Override
+                public void pce(long controller, SimulatedNodeData node) {
+                    node.lastUpdated += now;
+                    restoredPces.computeIfAbsent(controller, c -> new ArrayList<>()).add(node);
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        restoring = null;
+    }
+
+    /**
+     * merges the pces of a checkpoint into the shared pce, starting with the shared pce of a compact checkpoint.
+     * Of nodes known to several controllers, the first record whose address is still free wins
+     */
+    private void restoreShared() {
+        Set<Long> ids = new HashSet<>();
+        Set<Integer> addresses = new HashSet<>();
+        restoredPces.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .flatMap(entry -> entry.getValue().stream())
+                .filter(node -> ids.add(node.id) && (node.address <= 0 || addresses.add(node.address)))
+                .forEach(sharedPce::restore);
+        restoredPces = null;
+    }
+
+    private SimulatedPCE newPce() {
+        return new SimulatedPCE(SimulatedPCE.ROUTING_HYSTERESIS, allPairsRouting);
     }
 
     public static void main(String... args) throws Exception {
         var dir = root.toFile();
         if (!dir.exists() && !dir.mkdirs()) throw new Exception();
         Simulation simulation;
-        File file = root.resolve("latest.ser").toFile();
-        try {
-            FileInputStream fs = new FileInputStream(file);
-            ObjectInputStream os = new ObjectInputStream(fs);
-            simulation = (Simulation) os.readObject();
-            fs.close();
-            os.close();
-        } catch (Exception e) {
-            System.out.printf("no simulation saved under %s\n", file.getAbsolutePath());
+        Path snapshot = root.resolve(SNAPSHOT);
+        if (snapshot.toFile().exists()) {
+            simulation = new Simulation();
+            simulation.restore(snapshot);
+        } else {
+            System.out.printf("no simulation saved under %s\n", snapshot.toAbsolutePath());
             simulation = new Simulation();
             simulation.specsList.add(new NodeSimulationSpecs("ctl", 0, 0, true));
         }
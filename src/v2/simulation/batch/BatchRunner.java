@@ -0,0 +1,197 @@
+package v2.simulation.batch;
+
+import v2.core.context.Context;
+import v2.shared.impl.FileLogger;
+import v2.shared.integration.FileClient;
+import v2.shared.measurements.NodeStatistics;
+import v2.shared.measurements.ResultsCollector;
+import v2.simulation.Simulation;
+import v2.simulation.impl.PartitionedExecutor;
+import v2.simulation.replay.EventLog;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * <p>
+ *     Runs {@link Scenario scenarios} without a GUI, every run of a parameter sweep in its own context
+ *     on a single-partition executor, as many runs at a time as there are cores. Each run keeps logs, state
+ *     and the per-node results of {@link ResultsCollector} in its own directory; one line per run with the
+ *     aggregated {@link NodeStatistics} and the counters of the radio medium is appended to {@code summary.csv}.
+ * </p>
+ * <p>
+ *     Runs are deterministic: nodes start without state, on a virtual clock, and all randomness derives from the seed.
+ *     With {@code --record} every run writes its {@link EventLog} to {@code events.bin}. With {@code --replay <directory>}
+ *     every run gets the deliveries recorded by the run of the same name in that directory, records its own log
+ *     and reports the first event in which it differs from the recording.
+ * </p>
+ * <p>
+ *     Arguments: scenario files, optionally {@code --parallel <runs>}, {@code --out <directory>}, {@code --record}
+ *     and {@code --replay <directory>}. Results go to {@code batch} in the working directory unless {@code --out} is given.
+ * </p>
+ */
+public class BatchRunner {
+
+    public static final String SUMMARY_HEADER = "run, seed, hello_period, routing_check_period, data_feed_period, nodes, joined, " +
+            "setup_mean, setup_max, t_empty, t_data, t_hello, t_routing, t_other, routing_changes, drained, lost, restarts, " +
+            "tx, received, collisions, deaf, wall_ms\n";
+
+    private final Path out;
+    private final int parallel;
+    private boolean record;
+    private Path replay;
+
+    public BatchRunner(Path out, int parallel) {
+        this.out = out;
+        this.parallel = parallel;
+    }
+
+    public void setRecord(boolean record) {
+        this.record = record;
+    }
+
+    /**
+     * @param recordings output directory of an earlier batch that was recorded
+     */
+    public void setReplay(Path recordings) {
+        this.replay = recordings;
+    }
+
+    public static void main(String... args) throws Exception {
+        // not below Simulation.root, which relies on %LOCALAPPDATA%
+        Path out = Path.of("batch");
+        int parallel = Runtime.getRuntime().availableProcessors();
+        boolean record = false;
+        Path replay = null;
+        List<Scenario> scenarios = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--out":
+                    out = Path.of(args[++i]);
+                    break;
+                case "--parallel":
+                    parallel = Integer.parseInt(args[++i]);
+                    break;
+                case "--record":
+                    record = true;
+                    break;
+                case "--replay":
+                    replay = Path.of(args[++i]);
+                    break;
+                default:
+                    scenarios.add(Scenario.load(Path.of(args[i])));
+            }
+        }
+        if (scenarios.isEmpty()) {
+            System.out.println("usage: BatchRunner [--parallel <runs>] [--out <directory>] [--record] [--replay <directory>] <scenario.properties>...");
+            return;
+        }
+        var runner = new BatchRunner(out, parallel);
+        runner.setRecord(record);
+        runner.setReplay(replay);
+        runner.run(scenarios);
+        System.exit(0);
+    }
+
+    /**
+     * runs every combination of every scenario and waits for all of them
+     * @return the summary line of every run, in the order of the runs
+     */
+    public List<String> run(List<Scenario> scenarios) throws Exception {
+        Files.createDirectories(out);
+        List<Scenario.Run> runs = new ArrayList<>();
+        scenarios.forEach(s -> runs.addAll(s.expand()));
+        System.out.printf("%d runs, %d at a time, results in %s%n", runs.size(), parallel, out.toAbsolutePath());
+
+        var pool = Executors.newFixedThreadPool(parallel);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (var run : runs) results.add(pool.submit(() -> run(run)));
+
+            var summary = out.resolve("summary.csv");
+            if (!Files.exists(summary)) Files.writeString(summary, SUMMARY_HEADER);
+            List<String> lines = new ArrayList<>();
+            for (var result : results) {
+                String line = result.get();
+                lines.add(line);
+                Files.writeString(summary, line, StandardOpenOption.APPEND);
+                System.out.print(line);
+            }
+            return lines;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private String run(Scenario.Run run) throws Exception {
+        long start = System.nanoTime();
+        var simulation = run.simulation();
+        simulation.partitions = 1;
+        var directory = Files.createDirectories(out.resolve(run.name()));
+        simulation.setDirectory(directory);
+        var events = directory.resolve("events.bin");
+        if (record || replay != null) simulation.record(events);
+        if (replay != null) simulation.replay(replay.resolve(run.name()).resolve("events.bin"));
+
+        var exec = new PartitionedExecutor();
+        var results = new ResultsCollector();
+        var ctx = new Context.Builder()
+                .register(simulation)
+                .register(new FileClient())
+                .register(exec)
+                .register(new FileLogger())
+                .register(results)
+                .build().deploy();
+
+        var end = new CountDownLatch(1);
+        exec.schedule(() -> {
+            exec.pause(true);
+            end.countDown();
+        }, run.scenario.duration);
+        exec.pause(false);
+        end.await();
+
+        String line = summarize(run, simulation, results.statistics(), (System.nanoTime() - start) / 1000000);
+        ctx.destroy("run ended");
+        if (replay != null) {
+            String difference = EventLog.compare(replay.resolve(run.name()).resolve("events.bin"), events);
+            System.out.printf("%s: %s, %d deliveries dropped%n", run.name(),
+                    difference == null? "same events as the recording" : "differs from the recording at " + difference,
+                    simulation.replayer().dropped().value());
+        }
+        return line;
+    }
+
+    private static String summarize(Scenario.Run run, Simulation simulation, List<NodeStatistics> statistics, long wallMillis) {
+        Set<Long> nodes = new HashSet<>();
+        Map<Long, Long> setup = new HashMap<>();
+        Map<Long, Long> restarts = new HashMap<>();
+        long empty = 0, data = 0, hello = 0, routing = 0, other = 0, changes = 0, drained = 0, lost = 0;
+        for (var s : statistics) {
+            nodes.add(s.getNodeId());
+            // the first setup of a node is its join, later ones are recoveries after restarts
+            if (s.getSetupDuration() != null) setup.putIfAbsent(s.getNodeId(), s.getSetupDuration());
+            empty += s.getEmptyTriggers();
+            data += s.getDataTriggers();
+            hello += s.getHelloTriggers();
+            routing += s.getRoutingTriggers();
+            other += s.getOtherTriggers();
+            changes += s.getRoutingChanges();
+            drained += s.getDrained();
+            lost += s.getLost();
+            // the supervisor outlives the node, every context of a node reports its count so far
+            restarts.merge(s.getNodeId(), s.getRestarts(), Math::max);
+        }
+        var durations = setup.values().stream().mapToLong(Long::longValue).summaryStatistics();
+        var medium = simulation.medium();
+        return String.format("%s, %d, %d, %d, %d, %d, %d, %s, %s, %d, %d, %d, %d, %d, %d, %d, %d, %d, %d, %d, %d, %d, %d\n",
+                run.name(), run.seed, run.helloPeriod, run.routingCheckPeriod, run.dataFeedPeriod, nodes.size(), setup.size(),
+                setup.isEmpty()? "-" : String.format("%.0f", durations.getAverage()), setup.isEmpty()? "-" : Long.toString(durations.getMax()),
+                empty, data, hello, routing, other, changes, drained, lost, restarts.values().stream().mapToLong(Long::longValue).sum(),
+                medium.transmissions(), medium.receptions(), medium.collisions(), medium.deaf(), wallMillis);
+    }
+}
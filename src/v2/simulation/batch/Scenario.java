@@ -0,0 +1,210 @@
+package v2.simulation.batch;
+
+import v2.core.domain.node.Node;
+import v2.simulation.Simulation;
+import v2.simulation.domain.NodeSimulationSpecs;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * <p>
+ *     A headless simulation setup read from a properties file:
+ * </p>
+ * <pre>
+ * name=grid
+ * # simulated seconds
+ * duration=600
+ * node.ctl=0,0,controller
+ * node.n1=1.5,0
+ * # reception of n1 from ctl
+ * link.n1.ctl=0.9
+ * # further nodes: "grid columns rows spacing" or "random count side seed"
+ * topology=grid 4 4 1.2
+ * # comma separated lists are swept, every combination is one run
+ * seed=1,2,3
+ * hello_period=10000,20000
+ * routing_check_period=20000
+ * data_feed_period=5000
+ * # nodes share the logger and a single pce, for very large meshes
+ * compact=false
+ * # pces calculate every routing from scratch (Floyd-Warshall) instead of repairing trees
+ * all_pairs_routing=false
+ * </pre>
+ * <p>
+ *     Labels must be unique within their first 8 bytes, as they make the node id. Scenarios with colliding labels are rejected.
+ * </p>
+ */
+public class Scenario {
+
+    public final String name;
+    public final long duration;
+    public final boolean compact;
+    public final boolean allPairsRouting;
+    private final List<Long> seeds;
+    private final List<Long> helloPeriods;
+    private final List<Long> routingCheckPeriods;
+    private final List<Long> dataFeedPeriods;
+    private final Map<String, double[]> nodes = new LinkedHashMap<>();
+    private final Set<String> controllers = new HashSet<>();
+    private final Map<String, Map<String, Double>> links = new LinkedHashMap<>();
+
+    private Scenario(String name, Properties properties) {
+        this.name = properties.getProperty("name", name);
+        duration = Long.parseLong(properties.getProperty("duration", "600").trim()) * 1000;
+        seeds = values(properties, "seed", 0);
+        helloPeriods = values(properties, "hello_period", Node.HELLO_PERIOD);
+        routingCheckPeriods = values(properties, "routing_check_period", Node.ROUTING_CHECK_PERIOD);
+        dataFeedPeriods = values(properties, "data_feed_period", 5000);
+        compact = Boolean.parseBoolean(properties.getProperty("compact", "false").trim());
+        allPairsRouting = Boolean.parseBoolean(properties.getProperty("all_pairs_routing", "false").trim());
+
+        var keys = new TreeSet<>(properties.stringPropertyNames());
+        for (String key : keys) {
+            String value = properties.getProperty(key).trim();
+            if (key.startsWith("node.")) {
+                String[] parts = value.split("\\s*,\\s*");
+                if (parts.length < 2) throw new IllegalArgumentException(String.format("%s: expected x,y[,controller]", key));
+                String label = key.substring(5);
+                nodes.put(label, new double[] {Double.parseDouble(parts[0]), Double.parseDouble(parts[1])});
+                if (parts.length > 2 && parts[2].equals("controller")) controllers.add(label);
+            }
+        }
+        String topology = properties.getProperty("topology");
+        if (topology != null) generate(topology.trim().split("\\s+"));
+        if (controllers.isEmpty() && !nodes.isEmpty()) controllers.add(nodes.keySet().iterator().next());
+        Map<Long, String> ids = new HashMap<>();
+        for (String label : nodes.keySet()) {
+            String other = ids.putIfAbsent(NodeSimulationSpecs.idOf(label), label);
+            if (other != null) {
+                throw new IllegalArgumentException(String.format("nodes %s and %s: labels collide in their first 8 bytes", other, label));
+            }
+        }
+
+        for (String key : keys) {
+            if (!key.startsWith("link.")) continue;
+            String[] pair = key.substring(5).split("\\.");
+            if (pair.length != 2 || !nodes.containsKey(pair[0]) || !nodes.containsKey(pair[1])) {
+                throw new IllegalArgumentException(String.format("%s: expected link.<receiver>.<sender> of known nodes", key));
+            }
+            links.computeIfAbsent(pair[0], k -> new LinkedHashMap<>()).put(pair[1], Double.parseDouble(properties.getProperty(key).trim()));
+        }
+    }
+
+    public static Scenario load(Path file) throws IOException {
+        try (Reader reader = Files.newBufferedReader(file)) {
+            var properties = new Properties();
+            properties.load(reader);
+            String name = file.getFileName().toString().replaceFirst("\\.[^.]*$", "");
+            return new Scenario(name, properties);
+        }
+    }
+
+    public static Scenario of(String name, Properties properties) {
+        return new Scenario(name, properties);
+    }
+
+    private void generate(String[] topology) {
+        switch (topology[0]) {
+            case "grid": {
+                int columns = Integer.parseInt(topology[1]), rows = Integer.parseInt(topology[2]);
+                double spacing = Double.parseDouble(topology[3]);
+                for (int r = 0; r < rows; r++) {
+                    for (int c = 0; c < columns; c++) {
+                        nodes.putIfAbsent(String.format("g%03d%03d", r, c), new double[] {c * spacing, r * spacing});
+                    }
+                }
+                break;
+            }
+            case "random": {
+                int count = Integer.parseInt(topology[1]);
+                double side = Double.parseDouble(topology[2]);
+                var random = new Random(topology.length > 3? Long.parseLong(topology[3]) : count);
+                for (int n = 0; n < count; n++) {
+                    nodes.putIfAbsent(String.format("r%06d", n), new double[] {random.nextDouble() * side, random.nextDouble() * side});
+                }
+                break;
+            }
+            default:
+                throw new IllegalArgumentException(String.format("unknown topology %s", topology[0]));
+        }
+    }
+
+    private static List<Long> values(Properties properties, String key, long fallback) {
+        String value = properties.getProperty(key);
+        if (value == null || value.isBlank()) return List.of(fallback);
+        List<Long> values = new ArrayList<>();
+        for (String part : value.split(",")) values.add(Long.parseLong(part.trim()));
+        return values;
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * @return one run per combination of the swept parameters
+     */
+    public List<Run> expand() {
+        List<Run> runs = new ArrayList<>();
+        for (long seed : seeds) {
+            for (long hello : helloPeriods) {
+                for (long routing : routingCheckPeriods) {
+                    for (long dataFeed : dataFeedPeriods) {
+                        runs.add(new Run(this, runs.size(), seed, hello, routing, dataFeed));
+                    }
+                }
+            }
+        }
+        return runs;
+    }
+
+    /**
+     * One combination of parameters of a scenario.
+     */
+    public static class Run {
+        public final Scenario scenario;
+        public final int index;
+        public final long seed;
+        public final long helloPeriod;
+        public final long routingCheckPeriod;
+        public final long dataFeedPeriod;
+
+        Run(Scenario scenario, int index, long seed, long helloPeriod, long routingCheckPeriod, long dataFeedPeriod) {
+            this.scenario = scenario;
+            this.index = index;
+            this.seed = seed;
+            this.helloPeriod = helloPeriod;
+            this.routingCheckPeriod = routingCheckPeriod;
+            this.dataFeedPeriod = dataFeedPeriod;
+        }
+
+        public String name() {
+            return String.format("%s-%03d", scenario.name, index);
+        }
+
+        /**
+         * @return a simulation with the nodes and links of the scenario, not deployed yet
+         */
+        public Simulation simulation() {
+            var simulation = new Simulation();
+            simulation.seed = seed;
+            simulation.dataFeedPeriod = dataFeedPeriod;
+            simulation.compact = scenario.compact;
+            simulation.allPairsRouting = scenario.allPairsRouting;
+            Map<String, NodeSimulationSpecs> specs = new HashMap<>();
+            scenario.nodes.forEach((label, position) -> {
+                var node = simulation.add(label, position[0], position[1], scenario.controllers.contains(label));
+                node.setHelloPeriod(helloPeriod);
+                node.setRoutingCheckPeriod(routingCheckPeriod);
+                specs.put(label, node);
+            });
+            scenario.links.forEach((receiver, senders) -> senders.forEach((sender, reception) ->
+                    specs.get(receiver).reception.put(specs.get(sender).id(), reception)));
+            return simulation;
+        }
+    }
+}
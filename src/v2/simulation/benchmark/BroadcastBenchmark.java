@@ -0,0 +1,80 @@
+package v2.simulation.benchmark;
+
+import v2.simulation.domain.NodeSimulationSpecs;
+import v2.simulation.util.NeighbourIndex;
+import v2.simulation.util.ReceptionMatrix;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Transmissions per second of a simulated broadcast, deciding for every node in reach whether it receives,
+ * with a scan over all nodes against the neighbour index. Nodes are spread with about one node per unit of area.
+ * The index column includes building the neighbour lists on first use.
+ */
+public class BroadcastBenchmark {
+
+    private static final int[] NODES = {100, 1000, 10000};
+    private static final long BUDGET_MILLIS = 2000;
+
+    private static long received;
+
+    public static void main(String... args) {
+        System.out.println("nodes, scan tx/s, index tx/s, avg neighbours, index build ms");
+        for (int nodes : NODES) {
+            var specs = mesh(nodes);
+            scan(specs, BUDGET_MILLIS / 4);
+            double scan = scan(specs, BUDGET_MILLIS);
+
+            var index = new NeighbourIndex(new ReceptionMatrix());
+            specs.forEach(index::add);
+            long start = System.nanoTime();
+            long links = 0;
+            for (var sender : specs) links += index.of(sender).size();
+            double buildMillis = (System.nanoTime() - start) / 1e6;
+            indexed(index, specs, BUDGET_MILLIS / 4);
+            double indexed = indexed(index, specs, BUDGET_MILLIS);
+            System.out.printf("%d, %.0f, %.0f, %.1f, %.1f%n", nodes, scan, indexed, links / (double) nodes, buildMillis);
+        }
+        if (received == 0) System.out.println("nothing received");
+    }
+
+    private static List<NodeSimulationSpecs> mesh(int nodes) {
+        var random = new Random(nodes);
+        double side = Math.sqrt(nodes);
+        List<NodeSimulationSpecs> specs = new ArrayList<>();
+        for (int n = 0; n < nodes; n++) {
+            specs.add(new NodeSimulationSpecs(String.format("n%07d", n), random.nextDouble() * side, random.nextDouble() * side, n == 0));
+        }
+        return specs;
+    }
+
+    private static double scan(List<NodeSimulationSpecs> specs, long budget) {
+        long deadline = System.nanoTime() + budget * 1000000;
+        long tx = 0;
+        var random = new Random(0);
+        while (System.nanoTime() < deadline) {
+            var sender = specs.get(random.nextInt(specs.size()));
+            tx++;
+            for (var other : specs) {
+                if (other != sender && other.reception(sender) >= random.nextDouble()) received++;
+            }
+        }
+        return tx * 1000.0 / budget;
+    }
+
+    private static double indexed(NeighbourIndex index, List<NodeSimulationSpecs> specs, long budget) {
+        long deadline = System.nanoTime() + budget * 1000000;
+        long tx = 0;
+        var random = new Random(0);
+        while (System.nanoTime() < deadline) {
+            var sender = specs.get(random.nextInt(specs.size()));
+            tx++;
+            for (var link : index.of(sender)) {
+                if (link.reception >= random.nextDouble()) received++;
+            }
+        }
+        return tx * 1000.0 / budget;
+    }
+}
@@ -0,0 +1,81 @@
+package v2.simulation.benchmark;
+
+import v2.core.context.Context;
+import v2.shared.testing.SilentLogger;
+import v2.simulation.impl.VirtualTimeExecutor;
+
+import java.util.Random;
+
+/**
+ * Simulated seconds per wall-clock second of the virtual time executor against the number of workers,
+ * for 500 nodes with one executor shard each. Every node has the periodic timers of a mesh node,
+ * each task burns a few microseconds like a message handler.
+ */
+public class DispatchScalingBenchmark {
+
+    private static final int NODES = 500;
+    private static final long[] PERIODS = {1000, 5000, 20000, 30000, 65000};
+    private static final int WORK = 2000;
+    private static final long BUDGET_MILLIS = 3000;
+
+    public static void main(String... args) throws Exception {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        System.out.printf("%d cpus%n", cpus);
+        System.out.println("workers, tasks/s, virtual s/s");
+        for (int workers = 1; workers <= Math.max(cpus, 2); workers *= 2) {
+            run(workers, BUDGET_MILLIS / 3);
+            double[] result = run(workers, BUDGET_MILLIS);
+            System.out.printf("%d, %.0f, %.1f%n", workers, result[0], result[1]);
+        }
+    }
+
+    private static double[] run(int workers, long budget) throws Exception {
+        var exec = new VirtualTimeExecutor();
+        var ctx = new Context.Builder().register(new Config(workers)).register(new SilentLogger()).register(exec).build().deploy();
+        var random = new Random(workers);
+        for (int n = 0; n < NODES; n++) {
+            var shard = exec.shard(n);
+            for (long period : PERIODS) {
+                shard.schedulePeriodic(DispatchScalingBenchmark::work, period, random.nextInt((int) period));
+            }
+        }
+        long steps = exec.step().value();
+        exec.pause(false);
+        Thread.sleep(budget);
+        exec.pause(true);
+        long virtual = exec.millis();
+        ctx.destroy("benchmark ended");
+        return new double[] {(exec.step().value() - steps) * 1000.0 / budget, virtual / (double) budget};
+    }
+
+    private static volatile double sink;
+
+    private static void work() {
+        double x = 1;
+        for (int i = 0; i < WORK; i++) x = x * 1.0000001 + 1e-9;
+        sink = x;
+    }
+
+    private static class Config implements VirtualTimeExecutor.Config {
+        private final int workers;
+
+        Config(int workers) {
+            this.workers = workers;
+        }
+
+        @Override
+        public int poolSize() {
+            return workers;
+        }
+
+        @Override
+        public double timeFactor() {
+            return 1;
+        }
+
+        @Override
+        public boolean discreteEvent() {
+            return true;
+        }
+    }
+}
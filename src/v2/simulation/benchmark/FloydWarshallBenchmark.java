@@ -0,0 +1,65 @@
+package v2.simulation.benchmark;
+
+import v2.simulation.routing.FloydWarshallRouting;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * All-pairs shortest paths on random geometric topologies, single-threaded vs. spread over a fork-join pool.
+ * The pool size defaults to the number of available processors and can be passed as first argument.
+ */
+public class FloydWarshallBenchmark {
+
+    private static final int[] SIZES = {16, 32, 64, 128, 256, 512, 1024};
+    private static final double RANGE = 1.6;
+    private static final long BUDGET_NANOS = 2_000_000_000L;
+
+    public static void main(String... args) {
+        int threads = args.length > 0? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        var pool = new ForkJoinPool(threads);
+        System.out.printf("nodes, sequential ms, parallel ms (%d threads), speedup%n", threads);
+        for (int n : SIZES) {
+            var retx = topology(new Random(n), n);
+            double sequential = measure(() -> new FloydWarshallRouting(retx).solve());
+            double parallel = measure(() -> new FloydWarshallRouting(retx).solve(pool));
+            System.out.printf("%d, %.3f, %.3f, %.2f%n", n, sequential / 1e6, parallel / 1e6, sequential / parallel);
+        }
+        pool.shutdown();
+    }
+
+    /**
+     * @return nanoseconds per run after warm-up
+     */
+    private static double measure(Runnable run) {
+        for (int i = 0; i < 3; i++) run.run();
+        int runs = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            run.run();
+            runs++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < BUDGET_NANOS && runs < 1000);
+        return (double) elapsed / runs;
+    }
+
+    private static Map<Integer, Map<Integer, Double>> topology(Random random, int n) {
+        double side = Math.sqrt(n);
+        double[] x = new double[n + 1], y = new double[n + 1];
+        for (int a = 1; a <= n; a++) {
+            x[a] = random.nextDouble() * side;
+            y[a] = random.nextDouble() * side;
+        }
+        Map<Integer, Map<Integer, Double>> retx = new HashMap<>();
+        for (int a = 1; a <= n; a++) {
+            Map<Integer, Double> links = new HashMap<>();
+            for (int b = 1; b <= n; b++) {
+                double d = Math.hypot(x[a] - x[b], y[a] - y[b]);
+                if (a != b && d < RANGE) links.put(b, Math.max(0.05, 1 - d / RANGE));
+            }
+            retx.put(a, links);
+        }
+        return retx;
+    }
+}
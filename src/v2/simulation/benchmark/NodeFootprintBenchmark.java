@@ -0,0 +1,93 @@
+package v2.simulation.benchmark;
+
+import v2.core.context.Context;
+import v2.core.log.Logger;
+import v2.shared.integration.FileClient;
+import v2.shared.measurements.ResultsCollector;
+import v2.shared.testing.SilentLogger;
+import v2.simulation.Simulation;
+import v2.simulation.impl.PartitionedExecutor;
+
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * <p>
+ *     Heap per node of a headless mesh on a square with about one node per unit of area,
+ *     with a pce and log buffer per node and in compact mode, where the nodes share them.
+ * </p>
+ * <p>
+ *     The heap is measured after a full collection once the mesh ran for a few simulated seconds,
+ *     less the heap before the simulation was set up. Node buffers are mapped files and don't count.
+ * </p>
+ * <p>
+ *     Arguments: node counts, e.g. {@code 1000 10000}. Full mode is skipped above 2000 nodes,
+ *     run with enough heap, e.g. {@code -Xmx4g}.
+ * </p>
+ */
+public class NodeFootprintBenchmark {
+
+    private static final long DURATION = 10000;
+    private static final int FULL_LIMIT = 2000;
+
+    public static void main(String... args) throws Exception {
+        int[] sizes = args.length > 0? Arrays.stream(args).mapToInt(Integer::parseInt).toArray() : new int[] {1000, 10000};
+        System.out.printf("max heap %d MB, %d simulated s%n", Runtime.getRuntime().maxMemory() >> 20, DURATION / 1000);
+        System.out.println("nodes, mode, build ms, heap MB, KB per node, joined");
+        for (int nodes : sizes) {
+            if (nodes <= FULL_LIMIT) run(nodes, false);
+            run(nodes, true);
+        }
+        System.exit(0);
+    }
+
+    private static void run(int nodes, boolean compact) throws Exception {
+        long baseline = usedHeap();
+        var simulation = new Simulation();
+        simulation.setDirectory(Files.createTempDirectory("footprint"));
+        simulation.partitions = 1;
+        simulation.compact = compact;
+        simulation.logLevel = Logger.Severity.Error;
+        var random = new Random(nodes);
+        double side = Math.sqrt(nodes);
+        simulation.add("ctl", side / 2, side / 2, true);
+        for (int n = 1; n < nodes; n++) {
+            simulation.add(String.format("n%07d", n), random.nextDouble() * side, random.nextDouble() * side);
+        }
+
+        long start = System.nanoTime();
+        var exec = new PartitionedExecutor();
+        var ctx = new Context.Builder()
+                .register(simulation)
+                .register(new FileClient())
+                .register(exec)
+                .register(new SilentLogger())
+                .register(new ResultsCollector())
+                .build().deploy();
+        long buildMillis = (System.nanoTime() - start) / 1000000;
+
+        var end = new CountDownLatch(1);
+        exec.schedule(() -> {
+            exec.pause(true);
+            end.countDown();
+        }, DURATION);
+        exec.pause(false);
+        end.await();
+        long heap = usedHeap() - baseline;
+        long joined = simulation.all().stream().filter(n -> n.address() > 0).count();
+        System.out.printf("%d, %s, %d, %d, %.1f, %d%n", nodes, compact? "compact" : "full", buildMillis,
+                heap >> 20, heap / 1024.0 / nodes, joined);
+        ctx.destroy("benchmark ended");
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        var runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,78 @@
+package v2.simulation.benchmark;
+
+import v2.core.concurrency.Clock;
+import v2.core.context.Context;
+import v2.core.domain.PceCommand;
+import v2.core.domain.message.MessageType;
+import v2.core.util.MessageUtil;
+import v2.shared.impl.LocalCorrespondenceRegister;
+import v2.shared.testing.SilentLogger;
+import v2.simulation.impl.SimulatedPCE;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Feed throughput of the simulated pce with 1 to 8 controllers feeding concurrently.
+ * Every controller reports for its own nodes: mostly data messages, every tenth message is a routing report.
+ * Pass the number of feeds per controller as first argument.
+ */
+public class PceFeedBenchmark {
+
+    private static final int[] CONTROLLERS = {1, 2, 4, 8};
+    private static final int NODES_PER_CONTROLLER = 6;
+    private static final int ROUTING_EVERY = 10;
+
+    public static void main(String... args) throws Exception {
+        int feeds = args.length > 0? Integer.parseInt(args[0]) : 200000;
+        System.out.printf("%d cpus, %d feeds per controller%n", Runtime.getRuntime().availableProcessors(), feeds);
+        System.out.println("controllers, feeds/s, us/feed");
+        for (int controllers : CONTROLLERS) {
+            run(controllers, feeds / 10);
+            double rate = run(controllers, feeds);
+            System.out.printf("%d, %.0f, %.2f%n", controllers, rate, 1e6 * controllers / rate);
+        }
+    }
+
+    /**
+     * @return feeds per second over all controllers
+     */
+    private static double run(int controllers, int feeds) throws Exception {
+        var pce = new SimulatedPCE();
+        new Context.Builder().register(new SilentLogger()).register(Clock.SYSTEM).register(pce).build();
+
+        List<Callable<Long>> tasks = new ArrayList<>();
+        for (int c = 0; c < controllers; c++) {
+            long controllerId = 1000 + c;
+            int controllerAddress = pce.allocateAddress(controllerId, (byte) -1, -1);
+            var uplink = LocalCorrespondenceRegister.from(controllerAddress);
+            List<LocalCorrespondenceRegister> nodes = new ArrayList<>();
+            for (int i = 0; i < NODES_PER_CONTROLLER; i++) {
+                var commands = pce.feed(controllerId, uplink.packAndIncrement(MessageType.UpwardsJoin, MessageUtil.sidToJoinData(controllerId * 100 + i)));
+                int address = commands.stream().filter(command -> command.type == PceCommand.Type.Invite).findFirst().orElseThrow().address;
+                nodes.add(LocalCorrespondenceRegister.from(address));
+            }
+            tasks.add(() -> {
+                var random = new Random(controllerId);
+                long check = 0;
+                for (int f = 0; f < feeds; f++) {
+                    var sender = nodes.get(f % nodes.size());
+                    var message = f % ROUTING_EVERY == 0
+                            ? sender.packAndIncrement(MessageType.UpwardsRouting, (byte) controllerAddress, (byte) (128 + random.nextInt(128)))
+                            : sender.packAndIncrement(MessageType.Data, (byte) f);
+                    check += pce.feed(controllerId, message).size();
+                }
+                return check;
+            });
+        }
+
+        var pool = Executors.newFixedThreadPool(controllers);
+        long start = System.nanoTime();
+        long check = 0;
+        for (var future : pool.invokeAll(tasks)) check += future.get();
+        long elapsed = System.nanoTime() - start;
+        pool.shutdown();
+        if (check < 0) System.out.println(check);
+        return (double) controllers * feeds / elapsed * 1e9;
+    }
+}
@@ -0,0 +1,105 @@
+package v2.simulation.benchmark;
+
+import v2.core.context.Context;
+import v2.shared.integration.FileClient;
+import v2.shared.measurements.ResultsCollector;
+import v2.shared.testing.SilentLogger;
+import v2.simulation.Simulation;
+import v2.simulation.impl.PartitionedExecutor;
+import v2.simulation.util.NodeHandle;
+
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * <p>
+ *     Speedup of the partitioned executor over its single-partition run for a headless mesh of 1000 nodes
+ *     on a square with about one node per unit of area, with 1 to 32 partitions.
+ * </p>
+ * <p>
+ *     Every run ends with a digest of status, address and routing registry of all nodes,
+ *     which has to match the one of the single-partition run.
+ * </p>
+ * <p>
+ *     Arguments: simulated seconds, then node counts, e.g. {@code 120 1000 10000}.
+ * </p>
+ */
+public class PdesBenchmark {
+
+    private static final int[] PARTITIONS = {1, 2, 4, 8, 16, 32};
+
+    public static void main(String... args) throws Exception {
+        long duration = args.length > 0? Long.parseLong(args[0]) * 1000 : 60000;
+        int[] sizes = args.length > 1? Arrays.stream(args).skip(1).mapToInt(Integer::parseInt).toArray() : new int[] {1000};
+        System.out.printf("%d cpus, %d simulated s%n", Runtime.getRuntime().availableProcessors(), duration / 1000);
+        System.out.println("nodes, partitions, wall ms, speedup, joined, digest");
+        for (int nodes : sizes) {
+            run(nodes, 1, duration / 4);
+            long sequentialMillis = 0;
+            long sequentialDigest = 0;
+            for (int partitions : PARTITIONS) {
+                long start = System.nanoTime();
+                long[] result = run(nodes, partitions, duration);
+                long digest = result[1];
+                long wallMillis = (System.nanoTime() - start) / 1000000;
+                if (partitions == 1) {
+                    sequentialMillis = wallMillis;
+                    sequentialDigest = digest;
+                }
+                System.out.printf("%d, %d, %d, %.2f, %d, %016x%s%n", nodes, partitions, wallMillis, sequentialMillis / (double) wallMillis,
+                        result[0], digest, digest == sequentialDigest? "" : " MISMATCH");
+            }
+        }
+        System.exit(0);
+    }
+
+    /**
+     * @return number of nodes with an address and the digest
+     */
+    private static long[] run(int nodes, int partitions, long duration) throws Exception {
+        var simulation = new Simulation();
+        simulation.setDirectory(Files.createTempDirectory("pdes"));
+        simulation.partitions = partitions;
+        var random = new Random(nodes);
+        double side = Math.sqrt(nodes);
+        simulation.add("ctl", side / 2, side / 2, true);
+        for (int n = 1; n < nodes; n++) {
+            simulation.add(String.format("n%07d", n), random.nextDouble() * side, random.nextDouble() * side);
+        }
+
+        var exec = new PartitionedExecutor();
+        var ctx = new Context.Builder()
+                .register(simulation)
+                .register(new FileClient())
+                .register(exec)
+                .register(new SilentLogger())
+                .register(new ResultsCollector())
+                .build().deploy();
+
+        var end = new CountDownLatch(1);
+        exec.schedule(() -> {
+            exec.pause(true);
+            end.countDown();
+        }, duration);
+        exec.pause(false);
+        end.await();
+        long joined = simulation.all().stream().filter(n -> n.address() > 0).count();
+        long digest = digest(simulation.all());
+        ctx.destroy("benchmark ended");
+        return new long[] {joined, digest};
+    }
+
+    private static long digest(Collection<NodeHandle> handles) {
+        List<NodeHandle> sorted = new ArrayList<>(handles);
+        sorted.sort(Comparator.comparingLong(NodeHandle::id));
+        long digest = 17;
+        for (var node : sorted) {
+            digest = digest * 31 + node.id();
+            digest = digest * 31 + node.status().ordinal();
+            digest = digest * 31 + node.address();
+            digest = digest * 31 + new TreeSet<>(node.getRoutingRegistry()).hashCode();
+        }
+        return digest;
+    }
+}
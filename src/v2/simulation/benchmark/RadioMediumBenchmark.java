@@ -0,0 +1,116 @@
+package v2.simulation.benchmark;
+
+import v2.core.concurrency.Executor;
+import v2.core.context.Context;
+import v2.core.domain.ChannelInfo;
+import v2.core.domain.message.Message;
+import v2.shared.testing.SilentLogger;
+import v2.simulation.domain.NodeSimulationSpecs;
+import v2.simulation.impl.PartitionedExecutor;
+import v2.simulation.impl.SimulatedLoRaMeshModule;
+import v2.simulation.radio.RadioMedium;
+import v2.simulation.util.NeighbourIndex;
+import v2.simulation.util.ReceptionMatrix;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ *     Mesh capacity and cost of the radio medium. Every node sends a 12 byte message in its trigger slot
+ *     with the given probability, on one channel, for one simulated minute. Reports the share of frames that reached
+ *     a listening neighbour, the frames lost to collisions and to the receiver transmitting, and the simulated
+ *     transmissions per wall-clock second. Nodes are spread with about one node per unit of area.
+ * </p>
+ * <p>
+ *     Arguments: node counts, e.g. {@code 100 1000 5000}.
+ * </p>
+ */
+public class RadioMediumBenchmark {
+
+    private static final double[] LOADS = {0.01, 0.05, 0.2, 0.5};
+    private static final long DURATION = 60000;
+    private static final ChannelInfo CHANNEL = ChannelInfo.rendezvous;
+
+    public static void main(String... args) throws Exception {
+        int[] sizes = args.length > 0? Arrays.stream(args).mapToInt(Integer::parseInt).toArray() : new int[] {100, 1000, 5000};
+        System.out.println("nodes, load, tx, received/tx/neighbours, collisions/tx, deaf/tx, tx/s");
+        run(sizes[0], LOADS[0]);
+        for (int nodes : sizes) {
+            for (double load : LOADS) {
+                long start = System.nanoTime();
+                var medium = run(nodes, load);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                double tx = medium.transmissions();
+                System.out.printf("%d, %.2f, %.0f, %.3f, %.2f, %.2f, %.0f%n", nodes, load, tx,
+                        medium.receptions() / tx / averageNeighbours, medium.collisions() / tx, medium.deaf() / tx, tx / seconds);
+            }
+        }
+    }
+
+    private static double averageNeighbours;
+
+    private static RadioMedium run(int nodes, double load) throws Exception {
+        var exec = new PartitionedExecutor();
+        var ctx = new Context.Builder().register(new Config()).register(new SilentLogger()).register(exec).build().deploy();
+
+        var random = new Random(nodes);
+        double side = Math.sqrt(nodes);
+        List<NodeSimulationSpecs> specs = new ArrayList<>();
+        var neighbours = new NeighbourIndex(new ReceptionMatrix());
+        Map<NodeSimulationSpecs, Executor> shards = new HashMap<>();
+        for (int n = 0; n < nodes; n++) {
+            var node = new NodeSimulationSpecs(String.format("n%07d", n), random.nextDouble() * side, random.nextDouble() * side, false);
+            specs.add(node);
+            neighbours.add(node);
+            shards.put(node, exec.shard(node));
+        }
+        averageNeighbours = specs.stream().mapToInt(s -> neighbours.of(s).size()).average().orElse(1);
+
+        var delivered = new LongAdder();
+        var medium = new RadioMedium(new RadioMedium.Network() {
+            @Override
+            public Executor executor(NodeSimulationSpecs node) {
+                return shards.get(node);
+            }
+
+            @Override
+            public boolean deliver(NodeSimulationSpecs node, ChannelInfo channel, Message message) {
+                delivered.increment();
+                return true;
+            }
+        }, neighbours, 0);
+
+        var message = new Message(0x1234, new byte[12]);
+        for (var node : specs) {
+            var own = new Random(node.id());
+            var shard = shards.get(node);
+            shard.schedulePeriodic(() -> {
+                if (own.nextDouble() < load) medium.transmit(node, CHANNEL, message, exec.millis());
+            }, SimulatedLoRaMeshModule.TRIGGER_PERIOD, SimulatedLoRaMeshModule.TRIGGER_DELAY);
+        }
+
+        var end = new CountDownLatch(1);
+        exec.schedule(() -> {
+            exec.pause(true);
+            end.countDown();
+        }, DURATION);
+        exec.pause(false);
+        end.await();
+        ctx.destroy("benchmark ended");
+        return medium;
+    }
+
+    private static class Config implements PartitionedExecutor.Config {
+        @Override
+        public int partitions() {
+            return 1;
+        }
+
+        @Override
+        public long lookahead() {
+            return RadioMedium.DELIVERY_DELAY;
+        }
+    }
+}
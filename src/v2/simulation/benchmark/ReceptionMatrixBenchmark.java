@@ -0,0 +1,73 @@
+package v2.simulation.benchmark;
+
+import v2.simulation.domain.NodeSimulationSpecs;
+import v2.simulation.util.ReceptionMatrix;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Build time, memory and lookup rate of the reception matrix against computing the distance model on every call,
+ * as the link table of the control panel does for all pairs with the selected node.
+ * Nodes are spread with about one node per unit of area.
+ */
+public class ReceptionMatrixBenchmark {
+
+    private static final int[] NODES = {100, 1000, 2000, 10000};
+    private static final long BUDGET_MILLIS = 1000;
+
+    private static double sink;
+
+    public static void main(String... args) {
+        System.out.printf("%d cpus%n", Runtime.getRuntime().availableProcessors());
+        System.out.println("nodes, layout, build ms, MB, dense MB, computed lookups/s, matrix lookups/s");
+        for (int nodes : NODES) {
+            var specs = mesh(nodes);
+            var matrix = new ReceptionMatrix();
+            specs.forEach(matrix::add);
+            long start = System.nanoTime();
+            boolean dense = matrix.dense();
+            double buildMillis = (System.nanoTime() - start) / 1e6;
+
+            lookups(specs, null, BUDGET_MILLIS / 4);
+            double computed = lookups(specs, null, BUDGET_MILLIS);
+            lookups(specs, matrix, BUDGET_MILLIS / 4);
+            double stored = lookups(specs, matrix, BUDGET_MILLIS);
+            System.out.printf("%d, %s, %.0f, %.1f, %.1f, %.0f, %.0f%n", nodes, dense? "dense" : "csr", buildMillis,
+                    matrix.bytes() / 1e6, 4.0 * nodes * nodes / 1e6, computed, stored);
+        }
+        if (sink < 0) System.out.println(sink);
+    }
+
+    private static List<NodeSimulationSpecs> mesh(int nodes) {
+        var random = new Random(nodes);
+        double side = Math.sqrt(nodes);
+        List<NodeSimulationSpecs> specs = new ArrayList<>();
+        for (int n = 0; n < nodes; n++) {
+            specs.add(new NodeSimulationSpecs(String.format("n%07d", n), random.nextDouble() * side, random.nextDouble() * side, n == 0));
+        }
+        return specs;
+    }
+
+    /**
+     * looks up both directions between a random node and every other one, like a refresh of the link table
+     */
+    private static double lookups(List<NodeSimulationSpecs> specs, ReceptionMatrix matrix, long budget) {
+        long deadline = System.nanoTime() + budget * 1000000;
+        long count = 0;
+        var random = new Random(0);
+        while (System.nanoTime() < deadline) {
+            var selected = specs.get(random.nextInt(specs.size()));
+            for (var other : specs) {
+                if (matrix == null) {
+                    sink += other.reception(selected) + selected.reception(other);
+                } else {
+                    sink += matrix.get(other, selected) + matrix.get(selected, other);
+                }
+            }
+            count += 2L * specs.size();
+        }
+        return count * 1000.0 / budget;
+    }
+}
@@ -0,0 +1,96 @@
+package v2.simulation.benchmark;
+
+import v2.simulation.impl.SimulatedPCE;
+import v2.simulation.routing.FloydWarshallRouting;
+import v2.simulation.routing.RoutingEngine;
+
+import java.util.*;
+
+/**
+ * Cost of handling one routing report: Floyd-Warshall from scratch vs. the incremental routing engine,
+ * without and with the hysteresis of the simulated pce, which lets most reports hit the epoch cache.
+ * Nodes are placed randomly on a square with a constant density, links reach the nearest neighbours.
+ */
+public class RoutingBenchmark {
+
+    private static final int[] SIZES = {16, 32, 63, 127, 255};
+    private static final double RANGE = 1.6;
+    private static final long BUDGET_NANOS = 2_000_000_000L;
+
+    public static void main(String... args) {
+        System.out.println("nodes, floyd-warshall us/report, engine us/report, cached us/report, cache hit rate");
+        for (int n : SIZES) {
+            var random = new Random(n);
+            var retx = mesh(random, n);
+            Set<Integer> controllers = Set.of(1);
+
+            var engine = new RoutingEngine(n + 1);
+            for (int a = 1; a <= n; a++) engine.setLive(a, true);
+            engine.setController(1, true);
+            retx.forEach(engine::update);
+
+            double fw = measure(random, retx, a -> FloydWarshallRouting.routing(retx, controllers, a).size());
+            double incremental = measure(random, retx, a -> {
+                engine.update(a, retx.get(a));
+                return engine.routing(a).size();
+            });
+
+            var cachedEngine = new RoutingEngine(n + 1, SimulatedPCE.ROUTING_HYSTERESIS);
+            for (int a = 1; a <= n; a++) cachedEngine.setLive(a, true);
+            cachedEngine.setController(1, true);
+            retx.forEach(cachedEngine::update);
+            double cached = measure(random, retx, a -> {
+                cachedEngine.update(a, retx.get(a));
+                return cachedEngine.routing(a).size();
+            });
+            System.out.printf("%d, %.1f, %.1f, %.1f, %.2f%n", n, fw / 1000, incremental / 1000, cached / 1000, cachedEngine.hitRate());
+        }
+    }
+
+    /**
+     * @return nanoseconds per report, each report slightly changes the links of a random node
+     */
+    private static double measure(Random random, Map<Integer, Map<Integer, Double>> retx, Report report) {
+        long check = 0;
+        for (int i = 0; i < 3; i++) check += report.handle(jitter(random, retx));
+        int reports = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            check += report.handle(jitter(random, retx));
+            reports++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < BUDGET_NANOS && reports < 10000);
+        if (check < 0) System.out.println(check);
+        return (double) elapsed / reports;
+    }
+
+    private static int jitter(Random random, Map<Integer, Map<Integer, Double>> retx) {
+        int address = 1 + random.nextInt(retx.size());
+        retx.get(address).replaceAll((k, v) -> Math.max(0.05, Math.min(1, v + (random.nextDouble() - 0.5) * 0.1)));
+        return address;
+    }
+
+    private static Map<Integer, Map<Integer, Double>> mesh(Random random, int n) {
+        double side = Math.sqrt(n);
+        double[] x = new double[n + 1], y = new double[n + 1];
+        for (int a = 1; a <= n; a++) {
+            x[a] = random.nextDouble() * side;
+            y[a] = random.nextDouble() * side;
+        }
+        Map<Integer, Map<Integer, Double>> retx = new HashMap<>();
+        for (int a = 1; a <= n; a++) {
+            Map<Integer, Double> links = new HashMap<>();
+            for (int b = 1; b <= n; b++) {
+                double d = Math.hypot(x[a] - x[b], y[a] - y[b]);
+                if (a != b && d < RANGE) links.put(b, Math.max(0.05, 1 - d / RANGE));
+            }
+            retx.put(a, links);
+        }
+        return retx;
+    }
+
+    private interface Report {
+        int handle(int address);
+    }
+}
@@ -0,0 +1,71 @@
+package v2.simulation.benchmark;
+
+import v2.core.context.Context;
+import v2.shared.testing.SilentLogger;
+import v2.simulation.impl.VirtualTimeExecutor;
+
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Dispatch rate of the virtual time executor in discrete-event mode against the number of live periodic timers.
+ * Periods are spread between 1 s and 2 min like the hello, routing and data timers of a node.
+ * A quarter of the timers is cancelled and replaced while running, so lazy cancellation is exercised too.
+ */
+public class TimerQueueBenchmark {
+
+    private static final int[] TIMERS = {100, 1000, 10000, 100000};
+    private static final long BUDGET_MILLIS = 2000;
+
+    public static void main(String... args) throws Exception {
+        System.out.println("live timers, timers/s, virtual s/s");
+        for (int timers : TIMERS) {
+            run(timers, BUDGET_MILLIS / 4);
+            run(timers, BUDGET_MILLIS);
+        }
+    }
+
+    private static void run(int timers, long budget) throws Exception {
+        var exec = new VirtualTimeExecutor();
+        var ctx = new Context.Builder().register(new Config()).register(new SilentLogger()).register(exec).build().deploy();
+        var random = new Random(timers);
+        var dispatched = new LongAdder();
+        for (int i = 0; i < timers; i++) {
+            long period = 1000 + random.nextInt(119000);
+            var token = exec.schedulePeriodic(dispatched::increment, period, random.nextInt((int) period));
+            if (i % 4 == 0) {
+                exec.schedule(() -> {
+                    token.cancel();
+                    exec.schedulePeriodic(dispatched::increment, period, 0);
+                }, random.nextInt(600000));
+            }
+        }
+
+        exec.pause(false);
+        Thread.sleep(budget);
+        exec.pause(true);
+        long count = dispatched.sum();
+        long virtual = exec.millis();
+        ctx.destroy("benchmark ended");
+        if (budget == BUDGET_MILLIS) {
+            System.out.printf("%d, %.0f, %.0f%n", timers, count * 1000.0 / budget, virtual / (double) budget);
+        }
+    }
+
+    private static class Config implements VirtualTimeExecutor.Config {
+        @Override
+        public int poolSize() {
+            return 1;
+        }
+
+        @Override
+        public double timeFactor() {
+            return 1;
+        }
+
+        @Override
+        public boolean discreteEvent() {
+            return true;
+        }
+    }
+}
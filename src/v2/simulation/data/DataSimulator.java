@@ -1,6 +1,7 @@
 package v2.simulation.data;
 
 import v2.core.common.Counter;
+import v2.core.concurrency.CancellationToken;
 import v2.core.concurrency.Executor;
 import v2.core.context.Context;
 import v2.core.context.Module;
@@ -16,13 +17,13 @@ import java.util.*;
  * Data source and data sink at the same time
  */
 public class DataSimulator implements Module, DataSinkModule {
-    private static final Counter counter = new Counter();
-    private static final Map<Integer, Node> pending = new HashMap<>();
+    private final Counter counter = new Counter();
 
     private Executor exec;
     private Node node;
     private PceModule pce;
     private Config config;
+    private CancellationToken feedToken;
 
     @Override
     public void build(Context ctx) {
@@ -34,14 +35,17 @@ public class DataSimulator implements Module, DataSinkModule {
 
     @Override
     public void deploy() {
-        exec.schedulePeriodic(this::feedData, config.dataFeedPeriod(), config.dataFeedPeriod());
+        feedToken = exec.schedulePeriodic(this::feedData, config.dataFeedPeriod(), config.dataFeedPeriod());
+    }
+
+    @Override
+    public void destroy() {
+        if (feedToken != null) feedToken.cancel();
     }
 
     private void feedData() {
         if (node.isAlive()) {
-            var i = Integer.valueOf((int) counter.increment());
-            pending.put(i, node);
-            node.feedData(i.toString().getBytes());
+            node.feedData(Long.toString(counter.increment()).getBytes());
         }
     }
 
@@ -52,8 +56,6 @@ public class DataSimulator implements Module, DataSinkModule {
 
     @Override
     public Collection<Integer> feed(Message message) {
-        Integer i = Integer.parseInt(new String(message.data()));
-        pending.remove(i);
         return pce.correspondence(message.getAddress()).registerAndListLosses(message);
     }
 
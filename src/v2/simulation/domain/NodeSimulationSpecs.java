@@ -6,31 +6,43 @@ import v2.shared.impl.ConsoleLogger;
 import v2.shared.testing.GuardedDataSinkModule;
 import v2.shared.testing.GuardedPceModule;
 
-import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Random;
 
-public class NodeSimulationSpecs implements Node.Config, ConsoleLogger.Handle, GuardedDataSinkModule.Handle, GuardedPceModule.Handle, Serializable {
+public class NodeSimulationSpecs implements Node.Config, ConsoleLogger.Handle, GuardedDataSinkModule.Handle, GuardedPceModule.Handle {
 
     private final long sid;
     private double x, y;
     private boolean pceDisabled, dataSinkDisabled;
     private Logger.Severity logLevel = Logger.Severity.Warn;
+    private long helloPeriod = Node.HELLO_PERIOD;
+    private long routingCheckPeriod = Node.ROUTING_CHECK_PERIOD;
 
     public final Map<Long, Double> reception = new HashMap<>();
 
     public NodeSimulationSpecs(String label, double x, double y, boolean controller) {
+        this(idOf(label), x, y, controller);
+    }
+
+    public NodeSimulationSpecs(long id, double x, double y, boolean controller) {
         this.x = x;
         this.y = y;
         pceDisabled = !controller;
         dataSinkDisabled = !controller;
+        sid = id;
+    }
 
+    /**
+     * @return the node id of a label, made of its first 8 bytes
+     */
+    public static long idOf(String label) {
         long tmp = 0;
         byte[] bytes = label.getBytes();
         for (int i = 0; i < Math.min(8, bytes.length); i++) {
             tmp = (tmp << 8) + bytes[i];
         }
-        sid = tmp;
+        return tmp;
     }
 
     @Override
@@ -54,6 +66,24 @@ public class NodeSimulationSpecs implements Node.Config, ConsoleLogger.Handle, G
         this.y = y;
     }
 
+    public double distance(NodeSimulationSpecs other) {
+        double dx = x - other.x, dy = y - other.y;
+        return Math.sqrt(dx*dx + dy*dy);
+    }
+
+    /**
+     * @return probability that this node receives a transmission of the other one
+     */
+    public double reception(NodeSimulationSpecs other) {
+        return reception.getOrDefault(other.id(), distanceBasedReception(other));
+    }
+
+    public double distanceBasedReception(NodeSimulationSpecs other) {
+        double pseudoRandom = new Random((long) (x + 10*y + 100*other.x + 1000*other.y)).nextDouble();
+        double distancePower = 0.2 * Math.pow(1.5, distance(other) * 3);
+        return Math.min(0.95, Math.pow(pseudoRandom, distancePower));
+    }
+
     public boolean pceDisabled() {
         return pceDisabled;
     }
@@ -70,6 +100,24 @@ public class NodeSimulationSpecs implements Node.Config, ConsoleLogger.Handle, G
         this.dataSinkDisabled = dataSinkDisabled;
     }
 
+    @Override
+    public long helloPeriod() {
+        return helloPeriod;
+    }
+
+    public void setHelloPeriod(long helloPeriod) {
+        this.helloPeriod = helloPeriod;
+    }
+
+    @Override
+    public long routingCheckPeriod() {
+        return routingCheckPeriod;
+    }
+
+    public void setRoutingCheckPeriod(long routingCheckPeriod) {
+        this.routingCheckPeriod = routingCheckPeriod;
+    }
+
     public Logger.Severity logLevel() {
         return logLevel;
     }
@@ -11,9 +11,7 @@ import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.ObjectOutputStream;
+import java.nio.file.Files;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
@@ -47,25 +45,17 @@ public class ControlPanel extends JPanel implements Module {
         JPanel panel = new JPanel();
 
         var save = new JButton("save");
-        save.addActionListener(a -> {
-            File file = Simulation.root.resolve("latest.ser").toFile();
-            try {
-                FileOutputStream fs = new FileOutputStream(file);
-                ObjectOutputStream os = new ObjectOutputStream(fs);
-                os.writeObject(simulation);
-                fs.close();
-                os.close();
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        });
+        save.addActionListener(a -> simulation.save(simulation.root().resolve(Simulation.SNAPSHOT), false));
         panel.add(save);
 
+        var checkpoint = new JButton("checkpoint");
+        checkpoint.addActionListener(a -> simulation.checkpoint(simulation.root().resolve(Simulation.SNAPSHOT)));
+        panel.add(checkpoint);
+
         var delete = new JButton("un-save");
         delete.addActionListener(a -> {
-            File file = Simulation.root.resolve("latest.ser").toFile();
             try {
-                if (!file.delete()) throw new Exception("could not delete file");
+                Files.deleteIfExists(simulation.root().resolve(Simulation.SNAPSHOT));
             } catch (Exception e) {
                 e.printStackTrace();
             }
@@ -85,8 +75,13 @@ public class ControlPanel extends JPanel implements Module {
         var pauseButton = new JButton(exec.paused()? "run" : "pause");
         pauseButton.addActionListener(a -> {
             exec.pause(!exec.paused());
-            // 1 minute real-time
-            new ScheduledThreadPoolExecutor(1).schedule(() -> ctx.destroy("simulation ended"), 10, TimeUnit.SECONDS);
+            if (simulation.discreteEvent) {
+                // 1 day simulated, as fast as possible
+                exec.schedule(() -> ctx.destroy("simulation ended"), Simulation.DISCRETE_EVENT_DURATION);
+            } else {
+                // 1 minute real-time
+                new ScheduledThreadPoolExecutor(1).schedule(() -> ctx.destroy("simulation ended"), 10, TimeUnit.SECONDS);
+            }
             // 10 minutes simulated
 //            exec.schedule(() -> ctx.destroy("simulation ended"), 600000);
             pauseButton.setText(exec.paused()? "run" : "pause");
@@ -96,6 +91,10 @@ public class ControlPanel extends JPanel implements Module {
         var timeSlider = new JSlider(-3, 5, simulation.timeControl);
         timeSlider.addChangeListener(c -> simulation.timeControl = timeSlider.getValue());
         panel.add(timeSlider);
+
+        var discreteBox = new JCheckBox("discrete events", simulation.discreteEvent);
+        discreteBox.addActionListener(a -> simulation.discreteEvent = discreteBox.isSelected());
+        panel.add(discreteBox);
         return panel;
     }
 
@@ -5,16 +5,13 @@ import v2.core.context.Module;
 
 import javax.swing.*;
 import java.awt.*;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 
 public class GUI extends JFrame implements Module {
 
     GraphPanel graph;
     ControlPanel control;
 
-    private final ScheduledExecutorService repaint = new ScheduledThreadPoolExecutor(1);
+    private Timer repaint;
 
     public GUI() {
         super("LoRa Mesh Simulator");
@@ -38,11 +35,14 @@ public class GUI extends JFrame implements Module {
         setDefaultCloseOperation(EXIT_ON_CLOSE);
         setVisible(true);
 
-        repaint.scheduleAtFixedRate(this::repaint, 30, 30, TimeUnit.MILLISECONDS);
+        // the controls update themselves, the graph only repaints when something changed.
+        // a swing timer, so the graph compares its state on the EDT
+        repaint = new Timer(30, e -> graph.refresh());
+        repaint.start();
     }
 
     @Override
     public void destroy() {
-        repaint.shutdownNow();
+        if (repaint != null) repaint.stop();
     }
 }
@@ -1,8 +1,13 @@
 package v2.simulation.gui;
 
+import v2.core.common.BasicSubject;
+import v2.core.common.Counter;
+import v2.core.common.Subject;
+import v2.core.concurrency.Clock;
 import v2.core.context.Context;
 import v2.core.context.Module;
 import v2.core.domain.message.MessageHeader;
+import v2.core.domain.node.NodeStatus;
 import v2.simulation.Simulation;
 import v2.simulation.util.NodeHandle;
 
@@ -12,8 +17,9 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionAdapter;
 import java.awt.event.MouseWheelEvent;
-import java.util.ArrayList;
-import java.util.Comparator;
+import java.awt.image.VolatileImage;
+import java.util.*;
+import java.util.List;
 
 public class GraphPanel extends JPanel implements Module {
 
@@ -29,21 +35,41 @@ public class GraphPanel extends JPanel implements Module {
     private static final Color DOWN_H = new Color(160, 160, 160, 255);
     private static final Color ERROR = new Color(255, 0, 0, 100);
     private static final Color ERROR_H = new Color(255, 0, 0, 255);
+    /**
+     * time the pulse of a sent message takes to fade, its radius grows with the square root of the time
+     */
+    private static final long MESSAGE_PULSE = 625;
+    private static final long HELLO_PULSE = 100;
+    private static final int HIT_RADIUS = 10;
+    /**
+     * pixels around the panel in which nodes are still drawn, for labels and pulses reaching into it
+     */
+    private static final int MARGIN = 80;
 
     private GUI gui;
 
     private Simulation simulation;
 
+    private Clock clock;
+
     private NodeHandle highlighted;
 
     private int offsetX = Integer.MAX_VALUE, offsetY = Integer.MAX_VALUE;
     private double zoom = 100;
     private int xLast = Integer.MAX_VALUE, yLast = Integer.MAX_VALUE;
 
+    private VolatileImage background;
+    private final Shown shownBackground = new Shown(false);
+    private final Shown shownFrame = new Shown(true);
+    private boolean backgroundStale = true;
+    private final BasicSubject<Long> frameNanos = new BasicSubject<>(0L);
+    private final Counter backgroundRebuilds = new Counter();
+
     @Override
     public void build(Context ctx) {
         simulation = ctx.resolve(Simulation.class);
         gui = ctx.resolve(GUI.class);
+        clock = ctx.resolve(Clock.class);
     }
 
 
@@ -57,7 +83,7 @@ public class GraphPanel extends JPanel implements Module {
                 if (!SwingUtilities.isLeftMouseButton(e)) return;
 
                 var closest = closest(e);
-                if (screenDistance(closest, e) <= 10) {
+                if (closest != null) {
                     if (simulation.hasSelected() && e.isShiftDown()) {
                         String def = String.format("%.2f (default)", simulation.getSelected().distanceBasedReception(closest));
                         Object[] possibilities = {def, "1.0", "0.9", "0.8", "0.7", "0.6", "0.5", "0.4", "0.3", "0.2", "0.1", "0.0"};
@@ -80,7 +106,7 @@ public class GraphPanel extends JPanel implements Module {
                 } else if (simulation.hasSelected()) {
                     if (screenDistance(simulation.getSelected(), e) > 14) {
                         simulation.unselect();
-                        highlighted = screenDistance(closest, e) <= 10? closest : null;
+                        highlighted = null;
                     }
                 } else {
                     String label = JOptionPane.showInputDialog(
@@ -103,9 +129,7 @@ public class GraphPanel extends JPanel implements Module {
                 xLast = e.getX();
                 yLast = e.getY();
                 if (simulation.hasSelected()) return;
-                var closest = closest(e);
-                if (closest == null) return;
-                highlighted = screenDistance(closest, e) <= 10? closest : null;
+                highlighted = closest(e);
             }
 
             @Override
@@ -120,6 +144,7 @@ public class GraphPanel extends JPanel implements Module {
                 }
                 xLast = e.getX();
                 yLast = e.getY();
+                repaint();
             }
         });
 
@@ -128,12 +153,36 @@ public class GraphPanel extends JPanel implements Module {
             public void mouseWheelMoved(MouseWheelEvent e) {
                 super.mouseWheelMoved(e);
                 zoom *= Math.pow(0.9, e.getPreciseWheelRotation());
+                repaint();
             }
         });
     }
 
+    /**
+     * repaints if anything shown changed since the last frame or pulses are fading, to be called periodically on the EDT
+     */
+    public void refresh() {
+        var nodes = new ArrayList<>(simulation.all());
+        if (backgroundStale || !shownFrame.matches(nodes) || pulsing(nodes, clock.millis())) repaint();
+    }
+
+    /**
+     * @return duration of the latest frame
+     */
+    public Subject<Long> frameNanos() {
+        return frameNanos;
+    }
+
+    /**
+     * @return how often grid and edges were drawn anew
+     */
+    public Subject<Long> backgroundRebuilds() {
+        return backgroundRebuilds;
+    }
+
     @Override
     protected void paintComponent(Graphics g) {
+        long start = System.nanoTime();
         Graphics2D g2 = (Graphics2D) g;
         g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 
@@ -142,35 +191,12 @@ public class GraphPanel extends JPanel implements Module {
             offsetY = getHeight() / 2;
         }
 
-        long now = System.currentTimeMillis();
-
-        g2.setColor(Color.DARK_GRAY);
-        g2.fillRect(0, 0, getWidth(), getHeight());
-
-        g2.setColor(Color.GRAY);
-        for (int i = (int) xInv(offsetX - getHeight()); i < xInv(offsetX + getHeight()); i++) {
-            g2.drawLine(x(i), 0, x(i), getHeight());
-        }
-        for (int i = (int) yInv(offsetY - getWidth()); i < yInv(offsetY + getWidth()); i++) {
-            g2.drawLine(0, y(i), getWidth(), y(i));
-        }
-
+        long now = clock.millis();
         var nodes = new ArrayList<>(simulation.all());
-        for (var node : nodes) {
-            g2.setColor(new Color(200, 200, 200));
-            if (simulation.view.equals("upwards")) {
-                for (var other : simulation.all()) {
-                    if (node.getRoutingRegistry().contains(other.address())) {
-                        g2.drawLine(x(node), y(node), x(other), y(other));
-                    }
-                }
-            } else if (simulation.view.equals("downwards")) {
-                for (var other : simulation.all())
-                    if (node.getRoutingRegistry().contains(other.address() ^ (MessageHeader.DOWNWARDS_BIT >>> MessageHeader.ADDRESS_SHIFT))) {
-                    g2.drawLine(x(node), y(node), x(other), y(other));
-                }
-            }
+        shownFrame.record(nodes);
+        paintBackground(g2, nodes);
 
+        for (var node : visible()) {
             int mr = (int) Math.sqrt((now - node.lastSent()) * 4);
             int nr = node == simulation.getSelected()? 14 : 10;
 //            //message pulse
@@ -178,7 +204,7 @@ public class GraphPanel extends JPanel implements Module {
             g2.setColor(new Color(255, 255, 255, Math.max(50-mr, 0)));
             g2.fillOval(x(node) - mr, y(node) - mr, 2*mr+1, 2*mr+1);
             // hello pulse
-            g2.setColor(new Color(255, 255, 255, (int) Math.max(node.lastHello() + 100L - now, 0)));
+            g2.setColor(new Color(255, 255, 255, (int) Math.max(node.lastHello() + HELLO_PULSE - now, 0)));
             g2.fillOval(x(node) - nr, y(node) - nr, 2*nr+1, 2*nr+1);
             }
             // node status
@@ -192,7 +218,86 @@ public class GraphPanel extends JPanel implements Module {
             g2.drawString(node.label(), x(node), y(node) + 25);
         }
 
+        g2.setColor(Color.LIGHT_GRAY);
+        g2.drawString(String.format("frame %.1f ms, background drawn %d times", frameNanos.value() / 1e6, backgroundRebuilds.value()),
+                8, getHeight() - 8);
         g2.dispose();
+        frameNanos.set(System.nanoTime() - start);
+    }
+
+    /**
+     * draws grid and edges from the cached layer, which is drawn anew when the view, the nodes or their routing changed
+     */
+    private void paintBackground(Graphics2D g2, List<NodeHandle> nodes) {
+        var config = getGraphicsConfiguration();
+        if (config == null || getWidth() <= 0 || getHeight() <= 0) {
+            drawBackground(g2, nodes);
+            return;
+        }
+        do {
+            int validation = background == null? VolatileImage.IMAGE_INCOMPATIBLE : background.validate(config);
+            if (validation == VolatileImage.IMAGE_INCOMPATIBLE || background.getWidth() != getWidth() || background.getHeight() != getHeight()) {
+                background = createVolatileImage(getWidth(), getHeight());
+                backgroundStale = true;
+            } else if (validation == VolatileImage.IMAGE_RESTORED) {
+                backgroundStale = true;
+            }
+            if (backgroundStale || !shownBackground.matches(nodes)) {
+                var layer = background.createGraphics();
+                layer.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+                drawBackground(layer, nodes);
+                backgroundStale = false;
+                shownBackground.record(nodes);
+                layer.dispose();
+                backgroundRebuilds.increment();
+            }
+            g2.drawImage(background, 0, 0, null);
+        } while (background.contentsLost());
+    }
+
+    private void drawBackground(Graphics2D g2, List<NodeHandle> nodes) {
+        g2.setColor(Color.DARK_GRAY);
+        g2.fillRect(0, 0, getWidth(), getHeight());
+
+        g2.setColor(Color.GRAY);
+        for (int i = (int) xInv(offsetX - getHeight()); i < xInv(offsetX + getHeight()); i++) {
+            g2.drawLine(x(i), 0, x(i), getHeight());
+        }
+        for (int i = (int) yInv(offsetY - getWidth()); i < yInv(offsetY + getWidth()); i++) {
+            g2.drawLine(0, y(i), getWidth(), y(i));
+        }
+
+        int flip;
+        if (simulation.view.equals("upwards")) flip = 0;
+        else if (simulation.view.equals("downwards")) flip = MessageHeader.DOWNWARDS_BIT >>> MessageHeader.ADDRESS_SHIFT;
+        else return;
+
+        // an edge leads to every node whose address is in the registry, looked up instead of probing every pair
+        Map<Integer, List<NodeHandle>> byAddress = new HashMap<>();
+        for (var node : nodes) byAddress.computeIfAbsent(node.address(), a -> new ArrayList<>()).add(node);
+        g2.setColor(new Color(200, 200, 200));
+        for (var node : nodes) {
+            for (int entry : node.routingSnapshot()) {
+                for (var other : byAddress.getOrDefault(entry ^ flip, List.of())) {
+                    if (visible(x(node), y(node), x(other), y(other))) g2.drawLine(x(node), y(node), x(other), y(other));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return false if the line lies beyond one of the panel's edges
+     */
+    private boolean visible(int x1, int y1, int x2, int y2) {
+        return Math.max(x1, x2) >= 0 && Math.min(x1, x2) <= getWidth() && Math.max(y1, y2) >= 0 && Math.min(y1, y2) <= getHeight();
+    }
+
+    private boolean pulsing(List<NodeHandle> nodes, long now) {
+        if (!simulation.view.equals("pulse")) return false;
+        for (var node : nodes) {
+            if (now - node.lastSent() < MESSAGE_PULSE || now - node.lastHello() < HELLO_PULSE) return true;
+        }
+        return false;
     }
 
     private Color getColor(NodeHandle node) {
@@ -249,7 +354,91 @@ public class GraphPanel extends JPanel implements Module {
         return Math.sqrt(dx*dx + dy*dy);
     }
 
+    /**
+     * @return the node closest to the mouse within {@link #HIT_RADIUS} pixels, null if there is none
+     */
     private NodeHandle closest(MouseEvent e) {
-        return simulation.all().stream().min(Comparator.comparingDouble(t -> t.distance(xInv(e.getX()), yInv(e.getY())))).orElse(null);
+        var specs = simulation.neighbours().closest(xInv(e.getX()), yInv(e.getY()), HIT_RADIUS / zoom);
+        return specs == null? null : simulation.handle(specs);
+    }
+
+    /**
+     * @return running nodes that may show in the panel, including the ones whose label or pulse reaches into it
+     */
+    private List<NodeHandle> visible() {
+        List<NodeHandle> visible = new ArrayList<>();
+        for (var specs : simulation.neighbours().within(xInv(-MARGIN), yInv(-MARGIN), xInv(getWidth() + MARGIN), yInv(getHeight() + MARGIN))) {
+            var node = simulation.handle(specs);
+            if (node != null) visible.add(node);
+        }
+        return visible;
+    }
+
+    /**
+     * What the panel showed with the latest frame or background layer. Compared value by value,
+     * with the routing version of every node, so a change is never mistaken for the state already shown.
+     * Only used on the EDT.
+     */
+    private class Shown {
+        private final boolean frame;
+        private String view;
+        private double zoom;
+        private int offsetX, offsetY, width, height;
+        private NodeHandle highlighted, selected;
+        private NodeHandle[] nodes = new NodeHandle[0];
+        private double[] xs = new double[0], ys = new double[0];
+        private int[] addresses = new int[0], routingVersions = new int[0];
+        private NodeStatus[] statuses = new NodeStatus[0];
+
+        /**
+         * @param frame true to compare the node status, highlight and selection as well, false for the background only
+         */
+        Shown(boolean frame) {
+            this.frame = frame;
+        }
+
+        boolean matches(List<NodeHandle> current) {
+            var panel = GraphPanel.this;
+            if (!simulation.view.equals(view) || panel.zoom != zoom || panel.offsetX != offsetX || panel.offsetY != offsetY
+                    || getWidth() != width || getHeight() != height || current.size() != nodes.length) return false;
+            if (frame && (panel.highlighted != highlighted || simulation.getSelected() != selected)) return false;
+            for (int i = 0; i < nodes.length; i++) {
+                var node = current.get(i);
+                if (node != nodes[i] || node.x() != xs[i] || node.y() != ys[i] || node.address() != addresses[i]
+                        || node.routingVersion() != routingVersions[i]) return false;
+                if (frame && node.status() != statuses[i]) return false;
+            }
+            return true;
+        }
+
+        void record(List<NodeHandle> current) {
+            var panel = GraphPanel.this;
+            view = simulation.view;
+            zoom = panel.zoom;
+            offsetX = panel.offsetX;
+            offsetY = panel.offsetY;
+            width = getWidth();
+            height = getHeight();
+            highlighted = panel.highlighted;
+            selected = simulation.getSelected();
+            int n = current.size();
+            if (nodes.length != n) {
+                nodes = new NodeHandle[n];
+                xs = new double[n];
+                ys = new double[n];
+                addresses = new int[n];
+                routingVersions = new int[n];
+                statuses = new NodeStatus[n];
+            }
+            for (int i = 0; i < n; i++) {
+                var node = current.get(i);
+                nodes[i] = node;
+                xs[i] = node.x();
+                ys[i] = node.y();
+                addresses[i] = node.address();
+                routingVersions[i] = node.routingVersion();
+                statuses[i] = node.status();
+            }
+        }
     }
 }
@@ -0,0 +1,446 @@
+package v2.simulation.impl;
+
+import v2.core.common.StripedCounter;
+import v2.core.common.Subject;
+import v2.core.concurrency.CancellationToken;
+import v2.core.concurrency.Clock;
+import v2.core.concurrency.Executor;
+import v2.core.context.Context;
+import v2.core.context.Module;
+import v2.core.log.Logger;
+import v2.shared.measurements.ExecutorInsights;
+import v2.simulation.domain.NodeSimulationSpecs;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * <p>
+ *     Conservative parallel discrete-event executor. Nodes are split into spatial partitions, strips of equal node count
+ *     along the x axis, and every partition keeps its own event queue.
+ * </p>
+ * <p>
+ *     Time advances in windows as long as the {@link Config#lookahead() lookahead}. Within a window the partitions
+ *     run in parallel without any synchronization, which is safe because nodes only influence each other through events
+ *     at least one lookahead in the future. Such events are kept in the outbox of the sending partition
+ *     and handed over at the barrier that ends the window. Scheduling an event for another node inside the window
+ *     is a lookahead violation and fails.
+ * </p>
+ * <p>
+ *     Events are ordered by due time, then by the node that scheduled them and its own scheduling order.
+ *     That order doesn't depend on the partitioning, so every node sees the same events in the same order
+ *     with any number of partitions, and a run is reproducible for a given scenario.
+ * </p>
+ * <p>
+ *     Tasks scheduled on the executor itself rather than on a node shard run on the coordinator between two windows,
+ *     at the first barrier not before their due time.
+ * </p>
+ */
+public class PartitionedExecutor implements ShardedExecutor, ExecutorInsights, Clock {
+
+    private static final Comparator<Event> ORDER = Comparator.comparingLong((Event e) -> e.due)
+            .thenComparingLong(e -> e.origin)
+            .thenComparingLong(e -> e.sequence);
+    private static final long ROOT = Long.MIN_VALUE;
+
+    private Config config;
+    private Logger logger;
+    private long lookahead;
+    private Partition[] partitions;
+    private double[] bounds;
+    private ExecutorService pool;
+    private Thread coordinator;
+    private final StripedCounter step = new StripedCounter();
+    private final ThreadLocal<Partition> currentPartition = new ThreadLocal<>();
+    private final ThreadLocal<Shard> currentShard = new ThreadLocal<>();
+    private final Map<NodeSimulationSpecs, Shard> shards = new IdentityHashMap<>();
+    private final PriorityQueue<Event> rootEvents = new PriorityQueue<>(ORDER);
+    private final List<Event> unassigned = new ArrayList<>();
+    private final ConcurrentLinkedQueue<Event> inbox = new ConcurrentLinkedQueue<>();
+    private long rootSequence = 0;
+    private volatile boolean running = true;
+    private boolean paused = true;
+    private boolean started = false;
+    private boolean processing = false;
+    private volatile long windowStart = 0;
+    private volatile long windowEnd = 0;
+
+    public Subject<Long> step() {
+        return step;
+    }
+
+    public boolean paused() {
+        return paused;
+    }
+
+    public synchronized void pause(boolean value) {
+        paused = value;
+        notifyAll();
+    }
+
+    /**
+     * @return due time of the running event on a partition thread, start of the current window elsewhere
+     */
+    @Override
+    public long millis() {
+        var partition = currentPartition.get();
+        return partition != null? partition.now : windowStart;
+    }
+
+    @Override
+    public CancellationToken schedule(Runnable task, long delay) {
+        return schedule(null, task, delay, delay, false);
+    }
+
+    @Override
+    public CancellationToken schedulePeriodic(Runnable task, long period, long delay) {
+        return schedule(null, task, delay, period, true);
+    }
+
+    /**
+     * runs the action as a task of the executor itself, i.e. on the coordinator between two windows
+     */
+    @Override
+    public void quiesce(Runnable action) {
+        schedule(action, 0);
+    }
+
+    /**
+     * @return the executor of the node, the same one for every call with the same specs
+     */
+    @Override
+    public synchronized Executor shard(NodeSimulationSpecs specs) {
+        var shard = shards.computeIfAbsent(specs, s -> new Shard(s.id(), s.x()));
+        if (started && shard.partition == null) shard.partition = partitions[partitionOf(shard.x)];
+        return new Executor() {
+            @Override
+            public CancellationToken schedule(Runnable task, long delay) {
+                return PartitionedExecutor.this.schedule(shard, task, delay, delay, false);
+            }
+
+            @Override
+            public CancellationToken schedulePeriodic(Runnable task, long period, long delay) {
+                return PartitionedExecutor.this.schedule(shard, task, delay, period, true);
+            }
+
+            @Override
+            public String info() {
+                return "executor shard of " + specs.id();
+            }
+        };
+    }
+
+    /**
+     * @return number of partitions that received at least one node
+     */
+    public synchronized int populatedPartitions() {
+        if (!started) return 0;
+        Set<Partition> populated = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (var shard : shards.values()) populated.add(shard.partition);
+        return populated.size();
+    }
+
+    private CancellationToken schedule(Shard target, Runnable task, long delay, long period, boolean repeat) {
+        var partition = currentPartition.get();
+        var origin = currentShard.get();
+        var event = new Event(target, task, millis() + delay, period, repeat);
+        if (origin != null) {
+            event.origin = origin.id;
+            event.sequence = origin.sequence++;
+        }
+        if (partition != null) {
+            if (target == origin) {
+                partition.queue.add(event);
+            } else if (target != null && event.due < windowEnd) {
+                // checked for any other node, not only for other partitions, so that a run doesn't depend on the partitioning
+                throw new IllegalStateException(String.format("lookahead violated: event for node %d due at %d scheduled in window [%d, %d)",
+                        target.id, event.due, windowStart, windowEnd));
+            } else {
+                partition.outbox.add(event);
+            }
+        } else {
+            synchronized (this) {
+                if (origin == null) {
+                    event.origin = ROOT;
+                    event.sequence = rootSequence++;
+                }
+                if (processing) {
+                    // posted from outside while the partitions run, takes effect at the barrier
+                    event.due = Math.max(event.due, windowEnd);
+                    inbox.add(event);
+                } else {
+                    place(event);
+                }
+            }
+        }
+        return () -> event.cancelled = true;
+    }
+
+    /**
+     * puts the event into the queue it belongs to, caller holds the lock and no window is being processed
+     */
+    private void place(Event event) {
+        if (event.shard == null) {
+            rootEvents.add(event);
+        } else if (event.shard.partition == null) {
+            unassigned.add(event);
+        } else {
+            event.shard.partition.queue.add(event);
+        }
+    }
+
+    @Override
+    public void build(Context ctx) {
+        config = ctx.resolve(PartitionedExecutor.Config.class);
+        logger = ctx.resolve(Logger.class);
+    }
+
+    @Override
+    public void deploy() {
+        lookahead = Math.max(1, config.lookahead());
+        partitions = new Partition[Math.max(1, config.partitions())];
+        for (int i = 0; i < partitions.length; i++) partitions[i] = new Partition();
+        if (partitions.length > 1) pool = Executors.newFixedThreadPool(partitions.length);
+        coordinator = new Thread(this::coordinatorLoop);
+        coordinator.start();
+    }
+
+    @Override
+    public void destroy() {
+        synchronized (this) {
+            running = false;
+            notifyAll();
+        }
+        // the executor may be shut down by one of its own root tasks
+        if (coordinator == Thread.currentThread()) return;
+        try {
+            coordinator.join();
+        } catch (Exception e) {
+            logger.exception(e, this);
+        }
+    }
+
+    /**
+     * splits the nodes known at the first start into strips of equal node count, caller holds the lock
+     */
+    private void assignPartitions() {
+        List<Shard> sorted = new ArrayList<>(shards.values());
+        sorted.sort(Comparator.comparingDouble((Shard s) -> s.x).thenComparingLong(s -> s.id));
+        bounds = new double[partitions.length - 1];
+        Arrays.fill(bounds, Double.MAX_VALUE);
+        for (int i = 0; i < sorted.size(); i++) {
+            int index = (int) ((long) i * partitions.length / sorted.size());
+            sorted.get(i).partition = partitions[index];
+            if (index < bounds.length) bounds[index] = sorted.get(i).x;
+        }
+        for (int i = bounds.length - 2; i >= 0; i--) bounds[i] = Math.min(bounds[i], bounds[i + 1]);
+        started = true;
+        unassigned.forEach(this::place);
+        unassigned.clear();
+    }
+
+    /**
+     * @return partition for a node added after the start, by the strip its x coordinate falls into
+     */
+    private int partitionOf(double x) {
+        for (int i = 0; i < bounds.length; i++) {
+            if (x <= bounds[i]) return i;
+        }
+        return bounds.length;
+    }
+
+    private void coordinatorLoop() {
+        try {
+            while (true) {
+                long end;
+                synchronized (this) {
+                    while (paused && running) wait();
+                    if (!running) break;
+                    if (!started) assignPartitions();
+                    collect();
+                    long next = nextDue();
+                    if (next == Long.MAX_VALUE) {
+                        wait(10);
+                        continue;
+                    }
+                    // empty windows are skipped
+                    windowStart = Math.max(windowEnd, next - Math.floorMod(next, lookahead));
+                    windowEnd = windowStart + lookahead;
+                    runRootEvents();
+                    if (paused || !running) {
+                        // a root task stopped the run, the window starts over when resumed
+                        windowEnd = windowStart;
+                        continue;
+                    }
+                    end = windowEnd;
+                    processing = true;
+                }
+                try {
+                    runWindow(end);
+                } finally {
+                    synchronized (this) {
+                        processing = false;
+                    }
+                }
+                step.publish();
+            }
+        } catch (InterruptedException e) {
+            logger.exception(e, this);
+        } finally {
+            if (pool != null) pool.shutdown();
+        }
+    }
+
+    /**
+     * hands the events exchanged during the last window to their queues, caller holds the lock
+     */
+    private void collect() {
+        for (var partition : partitions) {
+            partition.outbox.forEach(this::place);
+            partition.outbox.clear();
+        }
+        Event event;
+        while ((event = inbox.poll()) != null) place(event);
+    }
+
+    /**
+     * @return due time of the earliest event of any queue, Long.MAX_VALUE if there is none
+     */
+    private long nextDue() {
+        long next = head(rootEvents);
+        for (var partition : partitions) next = Math.min(next, head(partition.queue));
+        return next;
+    }
+
+    private static long head(PriorityQueue<Event> queue) {
+        while (!queue.isEmpty() && queue.peek().cancelled) queue.poll();
+        return queue.isEmpty()? Long.MAX_VALUE : queue.peek().due;
+    }
+
+    /**
+     * runs root events due up to the start of the window on the coordinator, caller holds the lock
+     */
+    private void runRootEvents() {
+        while (head(rootEvents) <= windowStart) {
+            var event = rootEvents.poll();
+            run(event);
+            if (event.repeat && !event.cancelled) {
+                event.due += Math.max(1, event.period);
+                rootEvents.add(event);
+            }
+        }
+    }
+
+    private void runWindow(long end) throws InterruptedException {
+        List<Callable<Void>> work = new ArrayList<>();
+        for (var partition : partitions) {
+            if (head(partition.queue) < end) {
+                work.add(() -> {
+                    process(partition, end);
+                    return null;
+                });
+            }
+        }
+        if (pool == null || work.size() == 1) {
+            for (var w : work) {
+                try {
+                    w.call();
+                } catch (Exception e) {
+                    logger.exception(e, this);
+                }
+            }
+        } else {
+            pool.invokeAll(work);
+        }
+    }
+
+    /**
+     * runs all events of the partition that are due before the end of the window
+     */
+    private void process(Partition partition, long end) {
+        currentPartition.set(partition);
+        try {
+            while (head(partition.queue) < end) {
+                var event = partition.queue.poll();
+                partition.now = event.due;
+                currentShard.set(event.shard);
+                run(event);
+                if (event.repeat && !event.cancelled) {
+                    event.due += Math.max(1, event.period);
+                    partition.queue.add(event);
+                }
+            }
+        } finally {
+            currentShard.remove();
+            currentPartition.remove();
+        }
+    }
+
+    private void run(Event event) {
+        step.increment();
+        try {
+            event.task.run();
+        } catch (Exception e) {
+            logger.exception(e, this);
+        }
+    }
+
+    /**
+     * A node's share of the executor. sequence is only touched by the thread running the node's events.
+     */
+    private static class Shard {
+        final long id;
+        final double x;
+        Partition partition;
+        long sequence = 0;
+
+        Shard(long id, double x) {
+            this.id = id;
+            this.x = x;
+        }
+    }
+
+    /**
+     * Event queue of one strip of nodes. The queue belongs to the partition's thread during a window
+     * and to the coordinator between windows.
+     */
+    private static class Partition {
+        final PriorityQueue<Event> queue = new PriorityQueue<>(ORDER);
+        final List<Event> outbox = new ArrayList<>();
+        long now;
+    }
+
+    private static class Event {
+        final Shard shard;
+        final Runnable task;
+        long due;
+        final long period;
+        final boolean repeat;
+        long origin;
+        long sequence;
+        volatile boolean cancelled = false;
+
+        Event(Shard shard, Runnable task, long due, long period, boolean repeat) {
+            this.shard = shard;
+            this.task = task;
+            this.due = due;
+            this.period = period;
+            this.repeat = repeat;
+        }
+    }
+
+    public interface Config extends Module {
+        /**
+         * @return number of partitions, each processed by a thread of its own
+         */
+        int partitions();
+
+        /**
+         * @return minimum delay between an event on one node and its effect on another one, in virtual milliseconds
+         */
+        long lookahead();
+    }
+}
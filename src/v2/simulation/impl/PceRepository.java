@@ -0,0 +1,164 @@
+package v2.simulation.impl;
+
+import v2.core.domain.CorrespondenceRegister;
+import v2.core.domain.node.Node;
+import v2.core.domain.node.NodeStatus;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
+
+/**
+ * <p>
+ *     Node repository of the simulated pce with constant or logarithmic cost per operation:
+ *     nodes are indexed by id and by address, free addresses are kept in a bitmap
+ *     and live nodes are ordered by their last update, so expired nodes are found at the head.
+ * </p>
+ * <p>
+ *     Safe for concurrent use. Lookups do not lock, addresses are claimed by compare-and-set on the bitmap words,
+ *     only the live set is guarded by a lock of its own.
+ *     Timestamps must only be changed through {@link #touch(SimulatedNodeData, long)}.
+ * </p>
+ */
+public class PceRepository {
+
+    /**
+     * three keep-alive periods, so a quiet node stays live even if two keep-alive reports in a row are lost
+     */
+    public static final long LIVENESS_TIMEOUT = 3 * Node.ROUTING_KEEPALIVE_PERIOD;
+
+    private static final Comparator<SimulatedNodeData> byLastUpdated =
+            Comparator.comparingLong(SimulatedNodeData::getLastUpdated).thenComparingLong(SimulatedNodeData::getId);
+
+    private final Map<Long, SimulatedNodeData> byId = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<SimulatedNodeData> byAddress;
+    private final AtomicLongArray free;
+    private final TreeSet<SimulatedNodeData> live = new TreeSet<>(byLastUpdated);
+
+    /**
+     * @param addressLimit highest assignable address, addresses start at 1
+     */
+    public PceRepository(int addressLimit) {
+        byAddress = new AtomicReferenceArray<>(addressLimit + 1);
+        long[] words = new long[(addressLimit >> 6) + 1];
+        for (int address = 1; address <= addressLimit; address++) {
+            words[address >> 6] |= 1L << address;
+        }
+        free = new AtomicLongArray(words);
+    }
+
+    public SimulatedNodeData getById(long id, long now) {
+        var node = byId.get(id);
+        if (node != null) return node;
+        return byId.computeIfAbsent(id, key -> {
+            var created = new SimulatedNodeData();
+            created.id = id;
+            created.lastUpdated = now;
+            created.status = NodeStatus.Down;
+            created.address = -1;
+            synchronized (live) {
+                live.add(created);
+            }
+            return created;
+        });
+    }
+
+    /**
+     * @throws IllegalArgumentException if no node has the address
+     */
+    public SimulatedNodeData getByAddress(int address) {
+        var node = address > 0 && address < byAddress.length()? byAddress.get(address) : null;
+        if (node == null) throw new IllegalArgumentException("unknown address: " + address);
+        return node;
+    }
+
+    /**
+     * assigns the lowest free address to the node. the caller makes sure a node is allocated only once.
+     * @param correspondence register of the address, set before the node can be looked up by the address
+     * @throws IllegalStateException if all addresses are taken
+     */
+    public int allocate(SimulatedNodeData node, IntFunction<CorrespondenceRegister> correspondence) {
+        for (int word = 0; word < free.length(); word++) {
+            long bits;
+            while ((bits = free.get(word)) != 0) {
+                long lowest = Long.lowestOneBit(bits);
+                if (!free.compareAndSet(word, bits, bits & ~lowest)) continue;
+                int address = (word << 6) + Long.numberOfTrailingZeros(lowest);
+                node.address = address;
+                node.correspondence = correspondence.apply(address);
+                byAddress.set(address, node);
+                return address;
+            }
+        }
+        throw new IllegalStateException("node ids exhausted");
+    }
+
+    /**
+     * puts back a node of an earlier repository with its address and timestamp, before this one is used
+     * @throws IllegalStateException if the id or address is taken
+     */
+    public void restore(SimulatedNodeData node) {
+        if (byId.putIfAbsent(node.id, node) != null) throw new IllegalStateException("node already known: " + node.id);
+        if (node.address > 0) {
+            if (!byAddress.compareAndSet(node.address, null, node)) throw new IllegalStateException("address already taken: " + node.address);
+            int word = node.address >> 6;
+            long bit = 1L << node.address;
+            long bits;
+            do {
+                bits = free.get(word);
+            } while (!free.compareAndSet(word, bits, bits & ~bit));
+        }
+        synchronized (live) {
+            live.add(node);
+        }
+    }
+
+    /**
+     * @return every node known, live or not
+     */
+    public Collection<SimulatedNodeData> all() {
+        return new ArrayList<>(byId.values());
+    }
+
+    /**
+     * sets the node's timestamp
+     * @return true if the node was not live before
+     */
+    public boolean touch(SimulatedNodeData node, long now) {
+        synchronized (live) {
+            boolean wasLive = live.remove(node);
+            node.lastUpdated = now;
+            live.add(node);
+            return !wasLive;
+        }
+    }
+
+    public boolean isLive(SimulatedNodeData node) {
+        synchronized (live) {
+            return live.contains(node);
+        }
+    }
+
+    /**
+     * removes nodes without update within {@link #LIVENESS_TIMEOUT} from the live set
+     * @return the nodes that expired with this call
+     */
+    public List<SimulatedNodeData> expire(long now) {
+        List<SimulatedNodeData> expired = new ArrayList<>();
+        long threshold = now - LIVENESS_TIMEOUT;
+        synchronized (live) {
+            while (!live.isEmpty() && live.first().lastUpdated < threshold) {
+                expired.add(live.pollFirst());
+            }
+        }
+        return expired;
+    }
+
+    public Collection<SimulatedNodeData> live() {
+        synchronized (live) {
+            return new ArrayList<>(live);
+        }
+    }
+}
@@ -1,27 +1,21 @@
 package v2.simulation.impl;
 
-import v2.core.context.Context;
 import v2.core.domain.OsAdapter;
 import v2.simulation.Simulation;
-import v2.simulation.util.NodeHandle;
+import v2.simulation.domain.NodeSimulationSpecs;
 
 import java.nio.file.Path;
 
 public class PseudoOs implements OsAdapter {
 
     private final Simulation simulation;
-    private NodeHandle node;
+    private final NodeSimulationSpecs specs;
 
-    public PseudoOs(Simulation simulation) {
+    public PseudoOs(Simulation simulation, NodeSimulationSpecs specs) {
         this.simulation = simulation;
+        this.specs = specs;
     }
 
-    @Override
-    public void build(Context ctx) {
-        node = ctx.resolve(NodeHandle.class);
-    }
-
-
     @Override
     public Path pwd() {
         return Path.of(".");
@@ -29,6 +23,6 @@ public class PseudoOs implements OsAdapter {
 
     @Override
     public void reboot() {
-        simulation.restart(node);
+        simulation.restart(specs);
     }
 }
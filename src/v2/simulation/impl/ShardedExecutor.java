@@ -0,0 +1,22 @@
+package v2.simulation.impl;
+
+import v2.core.concurrency.Executor;
+import v2.simulation.domain.NodeSimulationSpecs;
+
+/**
+ * Executor of the simulation that hands every node an executor of its own.
+ */
+public interface ShardedExecutor extends Executor {
+
+    /**
+     * @return the executor to register in the node's context. tasks of one node never run concurrently
+     * and keep their order.
+     */
+    Executor shard(NodeSimulationSpecs specs);
+
+    /**
+     * runs the action while no task of any shard runs, e.g. to save a consistent state of all nodes.
+     * the action may run later and on another thread
+     */
+    void quiesce(Runnable action);
+}
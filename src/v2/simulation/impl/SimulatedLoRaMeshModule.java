@@ -2,6 +2,8 @@ package v2.simulation.impl;
 
 import v2.core.common.BasicObservable;
 import v2.core.common.Observable;
+import v2.core.concurrency.CancellationToken;
+import v2.core.concurrency.Clock;
 import v2.core.concurrency.Executor;
 import v2.core.context.Context;
 import v2.core.domain.ChannelInfo;
@@ -12,18 +14,21 @@ import v2.core.domain.message.MessageType;
 import v2.core.log.Logger;
 import v2.shared.measurements.LoraMeshModuleInsights;
 import v2.simulation.Simulation;
-import v2.simulation.util.NodeHandle;
+import v2.simulation.domain.NodeSimulationSpecs;
 
 import java.io.Serializable;
 import java.util.LinkedList;
 import java.util.Queue;
-import java.util.Random;
 
 public class SimulatedLoRaMeshModule implements LoRaMeshModule, LoraMeshModuleInsights, Serializable {
 
+    public static final long TRIGGER_PERIOD = 1000;
+    public static final long TRIGGER_DELAY = 500;
+
     private Simulation simulation;
     private Executor exec;
-    private NodeHandle handle;
+    private Clock clock;
+    private NodeSimulationSpecs specs;
     private Logger logger;
     private final BasicObservable<Message> triggered = new BasicObservable<>();
     private final BasicObservable<Message> received = new BasicObservable<>();
@@ -32,18 +37,28 @@ public class SimulatedLoRaMeshModule implements LoRaMeshModule, LoraMeshModuleIn
     private Observer.Ref listeningObserverRef;
     private long lastSent;
     private long lastHello;
+    private CancellationToken triggerToken;
 
     @Override
     public void build(Context ctx) {
         simulation = ctx.resolve(Simulation.class);
         exec = ctx.resolve(Executor.class);
-        handle = ctx.resolve(NodeHandle.class);
+        clock = ctx.resolve(Clock.class);
+        specs = ctx.resolve(NodeSimulationSpecs.class);
         logger = ctx.resolve(Logger.class);
     }
 
     @Override
     public void deploy() {
-        exec.schedulePeriodic(this::trigger, 1000, 500);
+        triggerToken = exec.schedulePeriodic(this::trigger, TRIGGER_PERIOD, TRIGGER_DELAY);
+    }
+
+    /**
+     * stops triggering, the executor shard outlives the node context across restarts
+     */
+    @Override
+    public void destroy() {
+        if (triggerToken != null) triggerToken.cancel();
     }
 
     @Override
@@ -60,21 +75,16 @@ public class SimulatedLoRaMeshModule implements LoRaMeshModule, LoraMeshModuleIn
         var message = item.message;
         var channel = item.channel;
         if (message.dataLength() > 12) logger.warn("sending long message: " + message, this);
+        long now = clock.millis();
         if (MessageType.Hello.matches(message)) {
-            lastHello = System.currentTimeMillis();
+            lastHello = now;
         } else {
-            lastSent = System.currentTimeMillis();
+            lastSent = now;
         }
 
         triggered.next(message);
 
-        Random r = new Random();
-        simulation.all().stream()
-                .filter(NodeHandle::isAlive)
-                .filter(n -> channel.equals(n.listeningChannel()))
-                .filter(n -> n != handle)
-                .filter(n -> n.reception(handle) >= r.nextDouble())
-                .forEach(other -> other.receive(message));
+        simulation.medium().transmit(specs, channel, message, now);
     }
 
     @Override
@@ -82,6 +92,14 @@ public class SimulatedLoRaMeshModule implements LoRaMeshModule, LoraMeshModuleIn
         queue.add(new Item(message, channel));
     }
 
+    @Override
+    public synchronized int queued() {
+        return queue.size();
+    }
+
+    /**
+     * called on this node's executor
+     */
     public void receive(Message message) {
         received.next(message);
     }
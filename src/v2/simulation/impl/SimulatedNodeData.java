@@ -28,7 +28,7 @@ public class SimulatedNodeData {
 
     public List<String> statusKeys = new ArrayList<>();
 
-    public CorrespondenceRegister correspondence = null;
+    public volatile CorrespondenceRegister correspondence = null;
 
     public long getId() {
         return id;
@@ -2,9 +2,12 @@ package v2.simulation.impl;
 
 import v2.core.common.BasicObservable;
 import v2.core.common.Observable;
+import v2.core.common.Subject;
+import v2.core.concurrency.Clock;
 import v2.core.context.Context;
 import v2.core.domain.ChannelInfo;
 import v2.core.domain.CorrespondenceRegister;
+import v2.core.domain.PceCommand;
 import v2.core.domain.PceModule;
 import v2.core.domain.message.Message;
 import v2.core.domain.message.MessageHeader;
@@ -13,43 +16,93 @@ import v2.core.domain.node.NodeStatus;
 import v2.core.log.Logger;
 import v2.shared.impl.LocalCorrespondenceRegister;
 import v2.shared.measurements.PceModuleInsights;
+import v2.shared.measurements.RoutingInsights;
+import v2.simulation.routing.RoutingEngine;
 
 import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.stream.Collectors;
 
-public class SimulatedPCE implements PceModule,  PceModuleInsights {
+/**
+ * <p>
+ *     In-process pce of the simulation, fed by any number of controllers in parallel.
+ * </p>
+ * <p>
+ *     The routing engine and the routing state of the nodes (status, retx, known routing) are guarded by the pce's monitor.
+ *     Address allocation shares that lock, so a node never gets two addresses.
+ *     Loss registration, which every fed message needs, only locks the node's own correspondence register,
+ *     and the repository locks its live set only. Feeds of other messages than joins and routing reports
+ *     don't take the pce's monitor unless nodes expired or the routing epoch moved.
+ * </p>
+ */
+public class SimulatedPCE implements PceModule,  PceModuleInsights, RoutingInsights {
+
+    public static final double ROUTING_HYSTERESIS = 0.05;
 
     private final BasicObservable<Message> forwarded = new BasicObservable<>();
 
     private Logger logger;
+    private Clock clock;
 
     @Override
     public void build(Context ctx) {
         logger = ctx.resolve(Logger.class);
+        clock = ctx.resolve(Clock.class);
     }
 
     private final ChannelInfo meshChannel = new ChannelInfo("sim-channel");
 
-    private final Map<Long, SimulatedNodeData> repo = new HashMap<>();
+    private final PceRepository repo = new PceRepository(MessageHeader.MESH_ADDRESS_LIMIT);
+    private final RoutingEngine routingEngine;
+    private volatile long pushedEpoch = -1;
+
+    public SimulatedPCE() {
+        this(ROUTING_HYSTERESIS);
+    }
+
+    /**
+     * @param routingHysteresis minimum change of a reported retx value that triggers a new routing calculation
+     */
+    public SimulatedPCE(double routingHysteresis) {
+        this(routingHysteresis, false);
+    }
+
+    /**
+     * @param routingHysteresis minimum change of a reported retx value that triggers a new routing calculation
+     * @param allPairsRouting true to calculate the routing of every epoch from scratch, see {@link RoutingEngine}
+     */
+    public SimulatedPCE(double routingHysteresis, boolean allPairsRouting) {
+        routingEngine = new RoutingEngine(MessageHeader.MESH_ADDRESS_LIMIT + 1, routingHysteresis, allPairsRouting);
+    }
 
     private SimulatedNodeData getById(long id) {
-        return repo.computeIfAbsent(id, key -> {
-            var created = new SimulatedNodeData();
-            created.id = id;
-            created.lastUpdated = System.currentTimeMillis();
-            created.status = NodeStatus.Down;
-            created.address = -1;
-            return created;
-        });
+        return repo.getById(id, clock.millis());
     }
 
     private SimulatedNodeData getByAddress(int address) {
-        return repo.values().stream().filter(n -> n.address == address).findAny().orElseThrow(IllegalArgumentException::new);
+        return repo.getByAddress(address);
     }
 
-    private boolean existsByAddress(int address) {
-        return repo.values().stream().anyMatch(n -> n.address == address);
+    /**
+     * refreshes the node's liveness, the routing engine follows when an addressed node comes alive
+     */
+    private void touch(SimulatedNodeData node) {
+        repo.touch(node, clock.millis());
+        if (node.address > 0) routingEngine.setLive(node.address, true);
+    }
+
+    private void expire() {
+        var expired = repo.expire(clock.millis());
+        if (!expired.isEmpty()) expire(expired);
+    }
+
+    private synchronized void expire(List<SimulatedNodeData> expired) {
+        for (var node : expired) {
+            if (node.address <= 0 || repo.isLive(node)) continue;
+            logger.info(String.format("node %d expired", node.address), this);
+            routingEngine.setLive(node.address, false);
+            routingEngine.setController(node.address, false);
+        }
     }
 
     @Override
@@ -58,20 +111,16 @@ public class SimulatedPCE implements PceModule,  PceModuleInsights {
     }
 
     @Override
-    public int allocateAddress(long id, byte mediatorId, double mediatorRetx) {
+    public synchronized int allocateAddress(long id, byte mediatorId, double mediatorRetx) {
         var node = getById(id);
         if (node.address > 0) {
             logger.info(String.format("resolved address %d of node %d", node.address, id), this);
             return node.address;
         }
         logger.info("allocating address for node: "+id, this);
-        int allocatedAddress = 1;
-        while (existsByAddress(allocatedAddress)) allocatedAddress++;
-        if (allocatedAddress > MessageHeader.MESH_ADDRESS_LIMIT) throw new IllegalStateException("node ids exhausted");
-        node.address = allocatedAddress;
+        int allocatedAddress = repo.allocate(node, LocalCorrespondenceRegister::to);
         node.status =NodeStatus.Joining;
-        node.lastUpdated = System.currentTimeMillis();
-        node.correspondence = LocalCorrespondenceRegister.to(allocatedAddress);
+        touch(node);
         logger.info(String.format("assigning address %d to node %d", allocatedAddress, id), this);
         return allocatedAddress;
     }
@@ -82,29 +131,28 @@ public class SimulatedPCE implements PceModule,  PceModuleInsights {
     }
 
     @Override
-    public List<String> feed(long controllerId, Message message) {
+    public List<PceCommand> feed(long controllerId, Message message) {
         forwarded.next(message);
         logger.info("message feed: "+message.header + Arrays.toString(message.data), this);
+        expire();
 
         int address = message.getAddress();
 
-        List<String> controllerCommands = new ArrayList<>();
+        List<PceCommand> controllerCommands = new ArrayList<>();
         var lost = registerAndListLosses(message);
         if (lost.size() > 0) {
-            StringBuilder job = new StringBuilder(String.format("%d trace", address));
-            for (int i : lost) job.append(" ").append(i);
-            controllerCommands.add(job.toString());
+            controllerCommands.add(PceCommand.trace(address, toBytes(lost)));
         }
 
         if (address == 0 || MessageType.Join.matches(message)) {
             long id = idFromJoinData(message.data);
             int allocateAddress = allocateAddress(id, (byte) -1, -1);
-            controllerCommands.add(String.format("%d invite %d %d", address, allocateAddress, id));
+            controllerCommands.add(PceCommand.invite(address, allocateAddress, id));
+            controllerCommands.addAll(pushRouting());
         } else if (MessageType.UpwardsRouting.matches(message)) {
-            var updates = updateRouting(message, controllerId);
-            StringBuilder job = new StringBuilder(String.format("%d update", address));
-            for (int i : updates) job.append(" ").append(i);
-            controllerCommands.add(job.toString());
+            controllerCommands.addAll(updateRouting(message, controllerId));
+        } else {
+            controllerCommands.addAll(pushRouting());
         }
 
         return controllerCommands;
@@ -116,118 +164,142 @@ public class SimulatedPCE implements PceModule,  PceModuleInsights {
         return node.correspondence.registerAndListLosses(message);
     }
 
-    private synchronized Set<Integer> updateRouting(Message message, long controllerId) {
+    /**
+     * updates the reporting node and pushes routing diffs to every node whose routing changed with this report.
+     * a report carries the node's complete retx vector, so links missing from it are gone.
+     * a report that does not change the topology is a keep-alive: the reporting node gets its full routing again
+     * as a replacement of its registry, so a node that lost an update, additions or deletions,
+     * converges at the latest with its next keep-alive.
+     */
+    private synchronized List<PceCommand> updateRouting(Message message, long controllerId) {
         var node = getByAddress(message.getNodeAddress());
         if (node.id == controllerId) {
             node.status = (NodeStatus.Controller);
         } else {
             node.status = (NodeStatus.Node);
         }
-        node.setLastUpdated(System.currentTimeMillis());
-        node.getRetx().putAll(retx(message.data));
+        touch(node);
+        node.setRetx(retx(message.data));
 
-        Set<Integer> current = node.getRouting();
-        Set<Integer> calculated = runFloydWarshall(node);
-        Set<Integer> updates = new HashSet<>();
-        updates.addAll(calculated.stream().filter(i -> !current.contains(i)).collect(Collectors.toList()));
-        updates.addAll(current.stream().filter(i -> !calculated.contains(i)).map(i -> i | MessageHeader.DELETE_BIT).collect(Collectors.toList()));
-        return updates;
-    }
-
-    private Set<Integer> runFloydWarshall(SimulatedNodeData nodeToUpdate) {
-        var all = liveNodes();
-        var controllers = all.stream().filter(n -> n.getStatus() == NodeStatus.Controller).collect(Collectors.toList());
-
-        if (controllers.isEmpty()) {
+        long epoch = routingEngine.epoch();
+        routingEngine.setController(node.address, node.status == NodeStatus.Controller);
+        routingEngine.update(node.address, node.getRetx());
+        if (!routingEngine.hasController()) {
             logger.warn("no controller found", this);
-            return Set.of();
         }
 
-        Map<Integer, SimulatedNodeData> byAddress = new HashMap<>();
-        Map<SimulatedNodeData, Map<SimulatedNodeData, Double>> distance = new HashMap<>();
-        Map<SimulatedNodeData, Map<SimulatedNodeData, SimulatedNodeData>> trace = new HashMap<>();
-        Map<SimulatedNodeData, Set<SimulatedNodeData>> uplinkRouting = new HashMap<>();
-        Map<SimulatedNodeData, Set<SimulatedNodeData>> downlinkRouting = new HashMap<>();
-
-        all.forEach(node -> byAddress.put(node.getAddress(), node));
+        List<PceCommand> commands = new ArrayList<>();
+        if (routingEngine.epoch() == epoch) {
+            routingDiff(node);
+            List<Integer> replacement = new ArrayList<>();
+            replacement.add(MessageHeader.ROUTING_RESET);
+            replacement.addAll(node.getRouting());
+            commands.add(PceCommand.update(node.address, toBytes(replacement)));
+        }
+        commands.addAll(pushChangedRouting());
+        return commands;
+    }
 
-        for (var node : all) {
-            distance.put(node, initialDistanceMap(node, byAddress));
-            trace.put(node, initialTraceMap(node, byAddress));
-            uplinkRouting.put(node, new HashSet<>());
-            downlinkRouting.put(node, new HashSet<>());
+    /**
+     * @return an update command for every live node whose routing changed since the last push, none if the epoch is unchanged
+     */
+    private List<PceCommand> pushRouting() {
+        if (routingEngine.epoch() == pushedEpoch) return List.of();
+        synchronized (this) {
+            return pushChangedRouting();
         }
+    }
 
-        // find all shortest paths
-        for (SimulatedNodeData k : all) {
-            for (SimulatedNodeData u : all) {
-                for (SimulatedNodeData v : all) {
-                    var uk = distance.get(u).getOrDefault(k, Double.MAX_VALUE);
-                    var kv = distance.get(k).getOrDefault(v, Double.MAX_VALUE);
-                    var uv = distance.get(u).getOrDefault(v, Double.MAX_VALUE);
-                    if (uk + kv < uv) {
-                        distance.get(u).put(v, uk + kv);
-                        trace.get(u).put(v, k);
-                    }
-                }
-            }
+    private List<PceCommand> pushChangedRouting() {
+        long epoch = routingEngine.epoch();
+        if (epoch == pushedEpoch) return List.of();
+        long misses = routingEngine.misses().value();
+        List<PceCommand> commands = new ArrayList<>();
+        for (var target : repo.live()) {
+            if (target.address <= 0) continue;
+            var diff = routingDiff(target);
+            if (!diff.isEmpty()) commands.add(PceCommand.update(target.address, toBytes(diff)));
+        }
+        pushedEpoch = epoch;
+        if (routingEngine.misses().value() > misses) {
+            logger.debug(String.format("routing epoch %d calculated in %d us, cache hit rate %.2f, %d nodes updated",
+                    epoch, routingEngine.recomputeNanos().value() / 1000, routingEngine.hitRate(), commands.size()), this);
         }
+        return commands;
+    }
 
+    /**
+     * @return entries to add and entries to delete (with the delete bit) to get from the node's known routing to the calculated one.
+     * the calculated routing becomes the known routing.
+     */
+    private Set<Integer> routingDiff(SimulatedNodeData target) {
+        Set<Integer> current = target.getRouting();
+        Set<Integer> calculated = routingEngine.routing(target.address);
+        Set<Integer> updates = new HashSet<>();
+        updates.addAll(calculated.stream().filter(i -> !current.contains(i)).collect(Collectors.toList()));
+        updates.addAll(current.stream().filter(i -> !calculated.contains(i)).map(i -> i | MessageHeader.DELETE_BIT).collect(Collectors.toList()));
+        target.setRouting(new HashSet<>(calculated));
+        return updates;
+    }
 
-        for (SimulatedNodeData u : all) {
-            SimulatedNodeData uplinkCtl = null;
-            SimulatedNodeData downlinkCtl = null;
-            for (SimulatedNodeData ctl : controllers) {
-                if (ctl == u) {
-                    uplinkCtl = downlinkCtl = u;
-                    break;
-                }
-                if (uplinkCtl == null || distance.get(u).get(ctl) < distance.get(u).get(uplinkCtl)) {
-                    uplinkCtl = ctl;
-                }
-                if (downlinkCtl == null || distance.get(ctl).get(u) < distance.get(downlinkCtl).get(u)) {
-                    downlinkCtl = ctl;
-                }
-            }
-            fillRouting(u, uplinkCtl, trace, uplinkRouting);
-            fillRouting(downlinkCtl, u, trace, downlinkRouting);
-        }
+    @Override
+    public Observable<Message> forwarded() {
+        return forwarded;
+    }
 
-        Set<Integer> calculatedRouting = new HashSet<>();
-        calculatedRouting.addAll(uplinkRouting.get(nodeToUpdate).stream().map(SimulatedNodeData::getAddress).collect(Collectors.toSet()));
-        calculatedRouting.addAll(downlinkRouting.get(nodeToUpdate).stream().map(SimulatedNodeData::getAddress).map(i -> i | MessageHeader.DOWNWARDS_BIT).collect(Collectors.toSet()));
-        return calculatedRouting;
+    @Override
+    public long epoch() {
+        return routingEngine.epoch();
     }
 
-    private  Map<SimulatedNodeData, Double> initialDistanceMap(SimulatedNodeData node, Map<Integer, SimulatedNodeData> byAddress) {
-        Map<SimulatedNodeData, Double> map = new HashMap<>();
-        map.put(node, 0.0);
-        node.getRetx().forEach((key, value) -> map.put(byAddress.get(key), 1.0 / value));
-        return map;
+    @Override
+    public Subject<Long> cacheHits() {
+        return routingEngine.hits();
     }
 
-    private  Map<SimulatedNodeData, SimulatedNodeData> initialTraceMap(SimulatedNodeData node, Map<Integer, SimulatedNodeData> byAddress) {
-        Map<SimulatedNodeData, SimulatedNodeData> map = new HashMap<>();
-        node.getRetx().keySet().stream().map(byAddress::get).forEach((neighbour) -> map.put(neighbour, neighbour));
-        map.put(node, node);
-        return map;
+    @Override
+    public Subject<Long> cacheMisses() {
+        return routingEngine.misses();
     }
 
-    private void fillRouting(SimulatedNodeData start, SimulatedNodeData end, Map<SimulatedNodeData, Map<SimulatedNodeData, SimulatedNodeData>> trace, Map<SimulatedNodeData, Set<SimulatedNodeData>> routing) {
-        if (start == null) return;
-        for (SimulatedNodeData v = trace.get(start).get(end); v != null && v != end; v = trace.get(v).get(end)) {
-            routing.get(v).add(start);
-        }
+    @Override
+    public double cacheHitRate() {
+        return routingEngine.hitRate();
     }
 
     @Override
-    public Observable<Message> forwarded() {
-        return forwarded;
+    public Subject<Long> recomputeNanos() {
+        return routingEngine.recomputeNanos();
+    }
+
+    /**
+     * @return every node the pce knows, for a checkpoint
+     */
+    public Collection<SimulatedNodeData> nodes() {
+        return repo.all();
+    }
+
+    /**
+     * takes over a node of a checkpoint, including its routing as last pushed, before the pce is used
+     */
+    public synchronized void restore(SimulatedNodeData node) {
+        repo.restore(node);
+        if (node.address <= 0) return;
+        routingEngine.setLive(node.address, true);
+        routingEngine.setController(node.address, node.status == NodeStatus.Controller);
+        routingEngine.update(node.address, node.getRetx());
     }
 
     public Collection<SimulatedNodeData> liveNodes() {
-        long threshold = System.currentTimeMillis() - 500000;
-        return repo.values().stream().filter(n -> n.lastUpdated >= threshold).collect(Collectors.toList());
+        expire();
+        return repo.live();
+    }
+
+    private static byte[] toBytes(Collection<Integer> values) {
+        byte[] data = new byte[values.size()];
+        int i = 0;
+        for (int value : values) data[i++] = (byte) value;
+        return data;
     }
 
     private static long idFromJoinData(byte[] data) {
@@ -239,7 +311,7 @@ public class SimulatedPCE implements PceModule,  PceModuleInsights {
     private static Map<Integer, Double> retx(byte[] data) {
         Map<Integer, Double> retx = new HashMap<>();
         for (int i = 0; i + 1 < data.length; i+=2) {
-            retx.put((int) data[i], 256.0 / data[i+1]);
+            retx.put((int) data[i], (data[i+1] & 0xff) / 256.0);
         }
         return retx;
     }
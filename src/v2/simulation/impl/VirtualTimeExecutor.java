@@ -1,31 +1,75 @@
 package v2.simulation.impl;
 
-import v2.core.common.Counter;
+import v2.core.common.StripedCounter;
 import v2.core.common.Subject;
 import v2.core.concurrency.Executor;
 import v2.core.concurrency.CancellationToken;
+import v2.core.concurrency.Clock;
 import v2.core.context.Context;
 import v2.core.context.Module;
 import v2.core.log.Logger;
 import v2.shared.measurements.ExecutorInsights;
+import v2.simulation.domain.NodeSimulationSpecs;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
 
-public class VirtualTimeExecutor implements Executor, ExecutorInsights {
+/**
+ * <p>
+ *     Executor and clock of the simulation. Tasks are scheduled in virtual milliseconds.
+ * </p>
+ * <p>
+ *     In real-time mode virtual time follows the wall clock, scaled by {@link Config#timeFactor()}:
+ *     a factor of 0.5 runs the simulation twice as fast. Virtual time stands still while paused.
+ * </p>
+ * <p>
+ *     In discrete-event mode the clock jumps to the next due task as soon as all tasks of the current instant are done,
+ *     so the simulation runs as fast as the tasks can be computed. The mode can be switched at any time.
+ * </p>
+ * <p>
+ *     Timers are kept in a binary heap ordered by due time and scheduling order, so dispatching a task costs O(log n).
+ *     Cancelled timers stay in the heap until they come up or until they make up half of it.
+ * </p>
+ * <p>
+ *     Due tasks go to the mailbox of their owner, see {@link #shard(Object)}. A mailbox with work is queued
+ *     on the lock-free deque of its home worker; idle workers steal whole mailboxes from the tail of other deques.
+ *     Idle workers park until a mailbox is queued: queuing wakes the home worker and one idle worker to steal.
+ *     Only one worker drains a mailbox at a time, so the tasks of one owner never run concurrently and keep their order,
+ *     while different owners spread over all workers.
+ * </p>
+ */
+public class VirtualTimeExecutor implements ShardedExecutor, ExecutorInsights, Clock {
 
     private Config config;
     private Thread scheduler;
     private Thread[] workerArray;
-    private final Counter step = new Counter();
-    private boolean running = true;
+    private final StripedCounter step = new StripedCounter();
+    private volatile boolean running = true;
     private boolean paused = true;
-    private final Collection<ExecutionItem> items = new ArrayList<>();
-    private final Queue<Runnable> pending = new LinkedList<>();
+    private final PriorityQueue<ExecutionItem> items = new PriorityQueue<>(
+            Comparator.comparingLong((ExecutionItem item) -> item.due).thenComparingLong(item -> item.sequence));
+    private long sequence = 0;
+    private int cancelled = 0;
+    private ConcurrentLinkedDeque<Mailbox>[] deques;
+    private final Mailbox rootMailbox = new Mailbox(0);
+    private int nextHome = 0;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private AtomicIntegerArray idle;
+    private final AtomicInteger idleCount = new AtomicInteger();
     private Logger logger;
 
+    private volatile boolean discrete = false;
+    private volatile long now = 0;
+    private long wallBase = System.currentTimeMillis();
+    private double factor = 1;
+
     public Subject<Long> step() {
         return step;
     }
@@ -35,37 +79,144 @@ public class VirtualTimeExecutor implements Executor, ExecutorInsights {
     }
 
     public synchronized void pause(boolean value) {
+        if (value == paused) return;
+        if (value) {
+            if (!discrete) now = realTimeNow();
+        } else {
+            wallBase = System.currentTimeMillis();
+        }
         paused = value;
         notifyAll();
     }
 
-    public synchronized CancellationToken schedule(Runnable task, long delay) {
-        var item = new ExecutionItem(task, System.currentTimeMillis(), delay, false);
-        items.add(item);
-        notifyAll();
-        return () -> item.expired = true;
+    @Override
+    public long millis() {
+        if (discrete) return now;
+        synchronized (this) {
+            return discrete? now : realTimeNow();
+        }
     }
 
-    public synchronized CancellationToken schedulePeriodic(Runnable task, long period, long delay) {
-        var item = new ExecutionItem(task, System.currentTimeMillis() - period + delay, period, true);
+    public CancellationToken schedule(Runnable task, long delay) {
+        return schedule(rootMailbox, task, delay);
+    }
+
+    public CancellationToken schedulePeriodic(Runnable task, long period, long delay) {
+        return schedulePeriodic(rootMailbox, task, period, delay);
+    }
+
+    /**
+     * pauses the executor, waits until the dispatched tasks are done and runs the action on the calling thread,
+     * then resumes unless the executor was paused before. must not be called from a task of the executor
+     */
+    @Override
+    public void quiesce(Runnable action) {
+        if (Arrays.asList(workerArray).contains(Thread.currentThread())) {
+            throw new IllegalStateException("the executor can't wait for its own task");
+        }
+        boolean wasPaused;
+        synchronized (this) {
+            wasPaused = paused;
+            pause(true);
+            try {
+                while (outstanding.get() > 0) wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (!wasPaused) pause(false);
+                throw new IllegalStateException("interrupted while waiting for running tasks", e);
+            }
+        }
+        try {
+            action.run();
+        } finally {
+            if (!wasPaused) pause(false);
+        }
+    }
+
+    @Override
+    public Executor shard(NodeSimulationSpecs specs) {
+        return shard((Object) specs);
+    }
+
+    /**
+     * @return an executor for the tasks of one owner, e.g. a node, to be registered in the owner's context.
+     * its tasks run one at a time in scheduling order, on the owner's home worker unless stolen by an idle one.
+     */
+    public synchronized Executor shard(Object owner) {
+        var mailbox = new Mailbox(nextHome++ % workerArray.length);
+        return new Executor() {
+            @Override
+            public CancellationToken schedule(Runnable task, long delay) {
+                return VirtualTimeExecutor.this.schedule(mailbox, task, delay);
+            }
+
+            @Override
+            public CancellationToken schedulePeriodic(Runnable task, long period, long delay) {
+                return VirtualTimeExecutor.this.schedulePeriodic(mailbox, task, period, delay);
+            }
+
+            @Override
+            public String info() {
+                return "executor shard of " + owner;
+            }
+        };
+    }
+
+    private synchronized CancellationToken schedule(Mailbox mailbox, Runnable task, long delay) {
+        return add(new ExecutionItem(mailbox, task, millis() + delay, delay, false, sequence++));
+    }
+
+    private synchronized CancellationToken schedulePeriodic(Mailbox mailbox, Runnable task, long period, long delay) {
+        return add(new ExecutionItem(mailbox, task, millis() + delay, period, true, sequence++));
+    }
+
+    /**
+     * @return number of scheduled timers, including cancelled ones not yet removed
+     */
+    public synchronized int timers() {
+        return items.size();
+    }
+
+    private CancellationToken add(ExecutionItem item) {
+        boolean first = items.isEmpty() || items.comparator().compare(item, items.peek()) < 0;
         items.add(item);
-        notifyAll();
-        return () -> item.expired = true;
+        if (first) notifyAll();
+        return () -> cancel(item);
+    }
+
+    private synchronized void cancel(ExecutionItem item) {
+        if (item.expired) return;
+        item.expired = true;
+        if (++cancelled > items.size() / 2) {
+            items.removeIf(i -> i.expired);
+            cancelled = 0;
+        }
     }
 
     @Override
     public void build(Context ctx) {
         config = ctx.resolve(VirtualTimeExecutor.Config.class);
-        workerArray = new Thread[config.poolSize()];
+        workerArray = new Thread[Math.max(1, config.poolSize())];
+        deques = newDeques(workerArray.length);
+        idle = new AtomicIntegerArray(workerArray.length);
         logger = ctx.resolve(Logger.class);
     }
 
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static ConcurrentLinkedDeque<Mailbox>[] newDeques(int count) {
+        ConcurrentLinkedDeque<Mailbox>[] deques = new ConcurrentLinkedDeque[count];
+        for (int i = 0; i < count; i++) deques[i] = new ConcurrentLinkedDeque<>();
+        return deques;
+    }
+
     @Override
     public void deploy() {
+        factor = config.timeFactor();
+        discrete = config.discreteEvent();
         scheduler = new Thread(this::schedulerLoop);
         scheduler.start();
         for (int i = 0; i < workerArray.length; i++) {
-            var workerId = i + 1;
+            var workerId = i;
             workerArray[i] = new Thread(() -> workerLoop(workerId));
             workerArray[i].start();
         }
@@ -73,13 +224,19 @@ public class VirtualTimeExecutor implements Executor, ExecutorInsights {
 
     @Override
     public void destroy() {
-        running = false;
+        synchronized (this) {
+            running = false;
+            notifyAll();
+        }
+        for (var t : workerArray) LockSupport.unpark(t);
         try {
             scheduler.join();
         } catch (Exception e) {
             logger.exception(e, this);
         }
         for (var t : workerArray) {
+            // the executor may be shut down by one of its own tasks
+            if (t == Thread.currentThread()) continue;
             try {
                 t.join();
             } catch (Exception e) {
@@ -88,98 +245,233 @@ public class VirtualTimeExecutor implements Executor, ExecutorInsights {
         }
     }
 
-    private synchronized Runnable dequeue() throws InterruptedException {
-        while (pending.isEmpty()) {
-            wait(10);
-        }
-        step.increment();
-        return pending.poll();
+    /**
+     * virtual time derived from the wall clock, caller holds the lock
+     */
+    private long realTimeNow() {
+        if (paused) return now;
+        return now + (long) ((System.currentTimeMillis() - wallBase) / factor);
+    }
+
+    /**
+     * takes over mode and time factor changes of the config without a jump of virtual time, caller holds the lock
+     */
+    private void applyConfig() {
+        boolean nextDiscrete = config.discreteEvent();
+        double nextFactor = config.timeFactor();
+        if (nextDiscrete == discrete && (discrete || nextFactor == factor)) return;
+        if (!discrete) now = realTimeNow();
+        wallBase = System.currentTimeMillis();
+        factor = nextFactor;
+        discrete = nextDiscrete;
     }
 
     private void schedulerLoop() {
         while (running) {
-            synchronized (this) {
-                while (paused) {
-                    try {
+            try {
+                synchronized (this) {
+                    while (paused && running) {
                         wait();
-                    } catch (InterruptedException e) {
-                        logger.exception(e, this);
                     }
-                }
-            }
-//            logger.debug("scheduler cycle", this);
-            long now = System.currentTimeMillis();
-            double factor = config.timeFactor();
-            Collection<Runnable> found = new ArrayList<>();
-            Collection<ExecutionItem> copy;
-            synchronized (this) {
-                copy = new ArrayList<>(items);
-            }
-            long minTargetTime = now + 100;
-            for (var item : copy) {
-                while (!item.expired && item.targetTime(factor) <= now) {
-                    found.add(item.task);
-                    if (item.repeat) {
-                        item.increment(factor);
+                    if (!running) return;
+                    applyConfig();
+                    if (discrete) {
+                        advance();
                     } else {
-                        item.expired = true;
+                        tick();
                     }
                 }
-                if (!item.expired) {
-                    minTargetTime = Math.min(minTargetTime, item.targetTime(factor));
-                }
+            } catch (InterruptedException e) {
+                logger.exception(e, this);
             }
+        }
+    }
 
-            synchronized (this) {
-                pending.addAll(found);
-                items.removeIf(item -> item.expired);
-                notifyAll();
-                try {
-                    wait(minTargetTime - now);
-                } catch (InterruptedException e) {
-                    logger.exception(e, this);
-                }
+    /**
+     * real-time mode: releases all due tasks and waits until the next one is due, at most 100 ms
+     */
+    private void tick() throws InterruptedException {
+        long time = realTimeNow();
+        long next = release(time);
+        step.publish();
+        long wallDelay = next == Long.MAX_VALUE? 100 : (long) Math.ceil((next - time) * factor);
+        wait(Math.max(1, Math.min(100, wallDelay)));
+    }
+
+    /**
+     * discrete-event mode: waits until the current instant is done, then jumps to the next due task
+     */
+    private void advance() throws InterruptedException {
+        if (outstanding.get() > 0) {
+            wait(10);
+            return;
+        }
+        long next = nextDue();
+        if (next == Long.MAX_VALUE) {
+            wait(10);
+            return;
+        }
+        now = Math.max(now, next);
+        release(now);
+        step.publish();
+    }
+
+    /**
+     * hands all tasks due at the given time to the workers
+     * @return due time of the next task, Long.MAX_VALUE if there is none
+     */
+    private long release(long time) {
+        long next;
+        while ((next = nextDue()) <= time) {
+            var item = items.poll();
+            dispatch(item.mailbox, item.task);
+            if (item.repeat) {
+                item.due += Math.max(1, item.period);
+                items.add(item);
+            } else {
+                item.expired = true;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * drops cancelled timers from the head of the heap
+     * @return due time of the next task, Long.MAX_VALUE if there is none
+     */
+    private long nextDue() {
+        while (!items.isEmpty() && items.peek().expired) {
+            items.poll();
+            cancelled--;
+        }
+        return items.isEmpty()? Long.MAX_VALUE : items.peek().due;
+    }
+
+    private void dispatch(Mailbox mailbox, Runnable task) {
+        outstanding.incrementAndGet();
+        mailbox.tasks.add(task);
+        offer(mailbox);
+    }
+
+    /**
+     * queues the mailbox on its home worker unless it is queued or being drained already
+     */
+    private void offer(Mailbox mailbox) {
+        if (!mailbox.queued.compareAndSet(false, true)) return;
+        deques[mailbox.home].addLast(mailbox);
+        LockSupport.unpark(workerArray[mailbox.home]);
+        wakeIdle();
+    }
+
+    /**
+     * unparks one idle worker, if any, so that it steals the mailbox just queued if the home worker is busy
+     */
+    private void wakeIdle() {
+        if (idleCount.get() == 0) return;
+        for (int i = 0; i < workerArray.length; i++) {
+            if (idle.compareAndSet(i, 1, 0)) {
+                idleCount.decrementAndGet();
+                LockSupport.unpark(workerArray[i]);
+                return;
             }
         }
     }
 
     private void workerLoop(int workerId) {
-        while (running) {
+        while (true) {
+            var mailbox = poll(workerId);
+            if (mailbox == null) {
+                // queued work is finished before shutting down
+                if (!running) return;
+                // announce idleness before looking again, so a mailbox queued meanwhile either is found or unparks this worker
+                idle.set(workerId, 1);
+                idleCount.incrementAndGet();
+                mailbox = poll(workerId);
+                if (mailbox == null && running) LockSupport.park(this);
+                if (idle.compareAndSet(workerId, 1, 0)) idleCount.decrementAndGet();
+                if (mailbox == null) continue;
+            }
+            drain(mailbox);
+        }
+    }
+
+    private Mailbox poll(int workerId) {
+        var mailbox = deques[workerId].pollFirst();
+        return mailbox != null? mailbox : steal(workerId);
+    }
+
+    private Mailbox steal(int workerId) {
+        for (int i = 1; i < deques.length; i++) {
+            var mailbox = deques[(workerId + i) % deques.length].pollLast();
+            if (mailbox != null) return mailbox;
+        }
+        return null;
+    }
+
+    /**
+     * runs a batch of the mailbox's tasks, then hands the mailbox back if more work arrived meanwhile
+     */
+    private void drain(Mailbox mailbox) {
+        for (int i = 0; i < Mailbox.BATCH; i++) {
+            var task = mailbox.tasks.poll();
+            if (task == null) break;
+            step.increment();
             try {
-                var task = dequeue();
-//                logger.debug("t"+workerId+" cycle", this);
                 task.run();
             } catch (Exception e) {
                 logger.exception(e, this);
             }
+            if (outstanding.decrementAndGet() == 0) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+        mailbox.queued.set(false);
+        if (!mailbox.tasks.isEmpty()) offer(mailbox);
+    }
+
+    /**
+     * Tasks of one owner. queued is set while the mailbox sits in a deque or is being drained.
+     */
+    private static class Mailbox {
+        static final int BATCH = 16;
+
+        final int home;
+        final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        final AtomicBoolean queued = new AtomicBoolean();
+
+        Mailbox(int home) {
+            this.home = home;
         }
     }
 
     private static class ExecutionItem {
+        final Mailbox mailbox;
         final Runnable task;
-        long scheduledTime;
-        final long delay;
+        long due;
+        final long period;
         final boolean repeat;
+        final long sequence;
         boolean expired = false;
 
-        public ExecutionItem(Runnable task, long scheduledTime, long delay, boolean repeat) {
+        public ExecutionItem(Mailbox mailbox, Runnable task, long due, long period, boolean repeat, long sequence) {
+            this.mailbox = mailbox;
             this.task = task;
-            this.scheduledTime = scheduledTime;
-            this.delay = delay;
+            this.due = due;
+            this.period = period;
             this.repeat = repeat;
-        }
-
-        long targetTime(double timeFactor) {
-            return (long) (scheduledTime + delay * timeFactor);
-        }
-
-        void increment(double timeFactor) {
-            scheduledTime += delay * timeFactor;
+            this.sequence = sequence;
         }
     }
 
     public interface Config extends Module {
         int poolSize();
         double timeFactor();
+
+        /**
+         * @return true to jump from event to event instead of following the wall clock
+         */
+        boolean discreteEvent();
     }
 }
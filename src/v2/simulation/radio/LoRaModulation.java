@@ -0,0 +1,66 @@
+package v2.simulation.radio;
+
+import v2.core.domain.ChannelInfo;
+
+/**
+ * LoRa modulation parameters and the time on air of a packet, after the formula of the Semtech SX127x data sheets.
+ */
+public class LoRaModulation {
+
+    /**
+     * the E32 default air data rate of 2.4 kbps, which is roughly SF9 at 125 kHz
+     */
+    public static final LoRaModulation DEFAULT = new LoRaModulation(9, 125000, 1, 8, true, true);
+
+    /**
+     * spreading factor of the E32 air data rates 0.3, 1.2, 2.4, 4.8, 9.6 and 19.2 kbps at 125 kHz, nearest match
+     */
+    private static final int[] E32_SPREADING_FACTORS = {12, 10, 9, 8, 7, 7, 7, 7};
+
+    public final int spreadingFactor;
+    public final int bandwidth;
+    /**
+     * 1 to 4 for the coding rates 4/5 to 4/8
+     */
+    public final int codingRate;
+    public final int preambleSymbols;
+    public final boolean explicitHeader;
+    public final boolean crc;
+
+    public LoRaModulation(int spreadingFactor, int bandwidth, int codingRate, int preambleSymbols, boolean explicitHeader, boolean crc) {
+        this.spreadingFactor = spreadingFactor;
+        this.bandwidth = bandwidth;
+        this.codingRate = codingRate;
+        this.preambleSymbols = preambleSymbols;
+        this.explicitHeader = explicitHeader;
+        this.crc = crc;
+    }
+
+    /**
+     * @return modulation of an E32 channel code, i.e. the hex config bytes with the air data rate in the speed byte,
+     * the default modulation for any other code
+     */
+    public static LoRaModulation of(ChannelInfo channel) {
+        String code = channel.code;
+        if (code.length() != 12 || !code.matches("[0-9a-fA-F]+")) return DEFAULT;
+        int speed = Integer.parseInt(code.substring(6, 8), 16);
+        int sf = E32_SPREADING_FACTORS[speed & 0x07];
+        return sf == DEFAULT.spreadingFactor? DEFAULT : new LoRaModulation(sf, 125000, 1, 8, true, true);
+    }
+
+    public double symbolMillis() {
+        return 1000.0 * (1 << spreadingFactor) / bandwidth;
+    }
+
+    /**
+     * @return time on air of a packet with the given payload in milliseconds
+     */
+    public double timeOnAirMillis(int payloadBytes) {
+        double symbol = symbolMillis();
+        // low data rate optimization is mandatory for symbols longer than 16 ms
+        int lowDataRate = symbol > 16? 1 : 0;
+        double bits = 8.0 * payloadBytes - 4 * spreadingFactor + 28 + (crc? 16 : 0) - (explicitHeader? 0 : 20);
+        double payloadSymbols = 8 + Math.max(Math.ceil(bits / (4 * (spreadingFactor - 2 * lowDataRate))) * (codingRate + 4), 0);
+        return (preambleSymbols + 4.25) * symbol + payloadSymbols * symbol;
+    }
+}
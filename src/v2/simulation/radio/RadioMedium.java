@@ -0,0 +1,278 @@
+package v2.simulation.radio;
+
+import v2.core.concurrency.Executor;
+import v2.core.domain.ChannelInfo;
+import v2.core.domain.message.Message;
+import v2.simulation.domain.NodeSimulationSpecs;
+import v2.simulation.impl.SimulatedLoRaMeshModule;
+import v2.simulation.util.NeighbourIndex;
+import v2.simulation.util.Seeds;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ *     The air between the simulated radios. A transmission occupies the channel for its {@link LoRaModulation time on air}
+ *     and reaches every node of the sender's {@link NeighbourIndex neighbour list} at a signal strength
+ *     given by a log-distance path loss.
+ * </p>
+ * <p>
+ *     Every receiver tracks the frames that reached it. A frame is received if it survived fading, the receiver
+ *     didn't transmit meanwhile and every overlapping frame on the same channel is at least {@link #CAPTURE_DB} weaker;
+ *     otherwise it is lost to a collision, and so is the weaker frame. Frames lost to fading still interfere.
+ * </p>
+ * <p>
+ *     Frames reach the receiver's executor {@link #DELIVERY_DELAY} after they started, which is the lookahead
+ *     of a partitioned run. Whether a frame is received is decided that long after it ended, when all frames that
+ *     overlap it are known to the receiver. The state of a receiver is only touched by tasks of its own node,
+ *     so the outcome doesn't depend on how nodes are spread over threads.
+ * </p>
+ */
+public class RadioMedium {
+
+    /**
+     * delay between the start of a transmission and the moment receivers learn about it, one trigger slot
+     */
+    public static final long DELIVERY_DELAY = SimulatedLoRaMeshModule.TRIGGER_PERIOD;
+    public static final double CAPTURE_DB = 6;
+    public static final double PATH_LOSS_EXPONENT = 2.7;
+    /**
+     * frames ended longer ago than this are forgotten
+     */
+    private static final long HISTORY = 10000;
+    /**
+     * on-air header of a message, see E32LoRaMeshModule
+     */
+    private static final int HEADER_BYTES = 2;
+
+    private final Network network;
+    private final NeighbourIndex neighbours;
+    private final long seed;
+    private final Map<NodeSimulationSpecs, Radio> radios = new ConcurrentHashMap<>();
+    private final LongAdder transmissions = new LongAdder();
+    private final LongAdder receptions = new LongAdder();
+    private final LongAdder collisions = new LongAdder();
+    private final LongAdder deaf = new LongAdder();
+    private volatile Listener listener;
+    private volatile boolean silent;
+
+    public RadioMedium(Network network, NeighbourIndex neighbours, long seed) {
+        this.network = network;
+        this.neighbours = neighbours;
+        this.seed = seed;
+    }
+
+    /**
+     * to be called on the sender's executor in its trigger slot. the radio starts sending at a random point of the slot,
+     * as nodes without a common clock would, so neighbours don't collide in every slot
+     */
+    public void transmit(NodeSimulationSpecs sender, ChannelInfo channel, Message message, long slot) {
+        long airtime = (long) Math.ceil(LoRaModulation.of(channel).timeOnAirMillis(HEADER_BYTES + message.dataLength()));
+        long start = slot + (long) (draw(sender, sender, slot) * Math.max(0, SimulatedLoRaMeshModule.TRIGGER_PERIOD - airtime));
+        var frame = new Frame(sender, channel, message, start, start + airtime);
+        var radio = radio(sender);
+        radio.forget(start - DELIVERY_DELAY - HISTORY);
+        radio.transmitted(frame);
+        transmissions.increment();
+        var listener = this.listener;
+        if (listener != null) listener.transmitted(slot, sender.id(), channel, message);
+        if (silent) return;
+        for (var link : neighbours.of(sender)) {
+            var receiver = link.receiver;
+            var exec = network.executor(receiver);
+            if (exec == null) continue;
+            boolean faded = link.reception < draw(sender, receiver, start);
+            double power = -10 * PATH_LOSS_EXPONENT * Math.log10(Math.max(0.1, receiver.distance(sender)));
+            var arrival = new Arrival(frame, power, !faded);
+            exec.schedule(() -> arrive(exec, receiver, arrival), start - slot + DELIVERY_DELAY);
+        }
+    }
+
+    private void arrive(Executor exec, NodeSimulationSpecs receiver, Arrival arrival) {
+        var radio = radio(receiver);
+        radio.arrived(arrival);
+        if (arrival.decodable) {
+            exec.schedule(() -> decide(receiver, radio, arrival), arrival.frame.end - arrival.frame.start);
+        }
+    }
+
+    private void decide(NodeSimulationSpecs receiver, Radio radio, Arrival arrival) {
+        var frame = arrival.frame;
+        radio.forget(frame.start - HISTORY);
+        if (radio.transmittedDuring(frame)) {
+            deaf.increment();
+            return;
+        }
+        for (var other : radio.arrivals) {
+            if (other == arrival || !other.frame.overlaps(frame) || !other.frame.channel.equals(frame.channel)) continue;
+            if (arrival.power - other.power < CAPTURE_DB) {
+                collisions.increment();
+                return;
+            }
+        }
+        if (network.deliver(receiver, frame.channel, frame.message)) {
+            receptions.increment();
+            var listener = this.listener;
+            if (listener != null) {
+                listener.delivered(frame.end + DELIVERY_DELAY, frame.start + DELIVERY_DELAY, receiver.id(), frame.sender.id(), frame.channel, frame.message);
+            }
+        }
+    }
+
+    /**
+     * hands a recorded frame to the receiver instead of one that went through the medium,
+     * to be called on the receiver's executor at the time it was delivered in the recording
+     */
+    public void replay(long time, long arrival, NodeSimulationSpecs receiver, long sender, ChannelInfo channel, Message message) {
+        if (!network.deliver(receiver, channel, message)) return;
+        receptions.increment();
+        var listener = this.listener;
+        if (listener != null) listener.delivered(time, arrival, receiver.id(), sender, channel, message);
+    }
+
+    /**
+     * @param listener notified of every transmission and delivery, on the executor of the node concerned
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * frames are still counted and reported to the listener but reach no one, for replays of recorded deliveries
+     */
+    public void silence() {
+        silent = true;
+    }
+
+    private Radio radio(NodeSimulationSpecs specs) {
+        return radios.computeIfAbsent(specs, s -> new Radio());
+    }
+
+    /**
+     * uniform draw for fading, a function of seed, sender, receiver and time only,
+     * so that the outcome doesn't depend on the order in which nodes are processed
+     */
+    private double draw(NodeSimulationSpecs sender, NodeSimulationSpecs receiver, long time) {
+        return Seeds.draw(seed, sender.id(), receiver.id(), time);
+    }
+
+    public long transmissions() {
+        return transmissions.sum();
+    }
+
+    /**
+     * @return frames handed to a listening node
+     */
+    public long receptions() {
+        return receptions.sum();
+    }
+
+    /**
+     * @return frames lost because another one overlapped at the receiver without being weak enough
+     */
+    public long collisions() {
+        return collisions.sum();
+    }
+
+    /**
+     * @return frames lost because the receiver was transmitting itself
+     */
+    public long deaf() {
+        return deaf.sum();
+    }
+
+    /**
+     * The nodes around the medium.
+     */
+    public interface Network {
+        /**
+         * @return executor of the node, null if it was removed
+         */
+        Executor executor(NodeSimulationSpecs specs);
+
+        /**
+         * hands the message to the node if it is up and listening on the channel
+         * @return true if the node took it
+         */
+        boolean deliver(NodeSimulationSpecs specs, ChannelInfo channel, Message message);
+    }
+
+    public interface Listener {
+        /**
+         * @param time the trigger slot in which the frame was handed to the radio
+         */
+        void transmitted(long time, long sender, ChannelInfo channel, Message message);
+
+        /**
+         * @param time when the receiver got the frame
+         * @param arrival when the receiver learned about the frame, i.e. its start plus {@link #DELIVERY_DELAY}
+         */
+        void delivered(long time, long arrival, long receiver, long sender, ChannelInfo channel, Message message);
+    }
+
+    private static class Frame {
+        final NodeSimulationSpecs sender;
+        final ChannelInfo channel;
+        final Message message;
+        final long start;
+        final long end;
+
+        Frame(NodeSimulationSpecs sender, ChannelInfo channel, Message message, long start, long end) {
+            this.sender = sender;
+            this.channel = channel;
+            this.message = message;
+            this.start = start;
+            this.end = end;
+        }
+
+        boolean overlaps(Frame other) {
+            return start < other.end && other.start < end;
+        }
+    }
+
+    /**
+     * a frame as seen by one receiver
+     */
+    private static class Arrival {
+        final Frame frame;
+        final double power;
+        final boolean decodable;
+
+        Arrival(Frame frame, double power, boolean decodable) {
+            this.frame = frame;
+            this.power = power;
+            this.decodable = decodable;
+        }
+    }
+
+    /**
+     * Frames around one node, in the order they started. Only used by the node's own tasks.
+     */
+    private static class Radio {
+        final ArrayDeque<Arrival> arrivals = new ArrayDeque<>();
+        final ArrayDeque<Frame> transmitted = new ArrayDeque<>();
+
+        void arrived(Arrival arrival) {
+            arrivals.addLast(arrival);
+        }
+
+        void transmitted(Frame frame) {
+            transmitted.addLast(frame);
+        }
+
+        boolean transmittedDuring(Frame frame) {
+            for (var own : transmitted) {
+                if (own.overlaps(frame)) return true;
+            }
+            return false;
+        }
+
+        void forget(long before) {
+            while (!arrivals.isEmpty() && arrivals.peekFirst().frame.end < before) arrivals.pollFirst();
+            while (!transmitted.isEmpty() && transmitted.peekFirst().end < before) transmitted.pollFirst();
+        }
+    }
+}
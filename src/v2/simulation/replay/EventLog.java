@@ -0,0 +1,249 @@
+package v2.simulation.replay;
+
+import v2.core.domain.ChannelInfo;
+import v2.core.domain.message.Message;
+import v2.simulation.radio.RadioMedium;
+import v2.simulation.util.Varints;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * <p>
+ *     Binary log of every transmission and delivery of a run. Events are written in the order of time, event kind,
+ *     node, sender and content, so the log of a deterministic run is the same byte for byte whatever thread
+ *     reported an event first.
+ * </p>
+ * <p>
+ *     Format (version 2): magic, version and seed of the run, then per event its kind, the time since the previous event,
+ *     the node and for deliveries the sender and the time the frame took on air, the channel and the message.
+ *     Nodes and channels are written in full on their first appearance and referenced by their index afterwards,
+ *     all numbers are varints, so a 12 byte message takes about 20 bytes. The time since the previous event is signed,
+ *     an event reported after a flush of later ones is written with a negative delta rather than failing the log;
+ *     version 1 wrote it unsigned.
+ * </p>
+ */
+public class EventLog {
+
+    public static final int MAGIC = 0x4c4d4556;
+    public static final int VERSION = 2;
+
+    public enum Kind {
+        Transmission, Delivery
+    }
+
+    public static class Event {
+        private static final Comparator<Event> ORDER = Comparator.<Event>comparingLong(e -> e.time)
+                .thenComparing(e -> e.kind)
+                .thenComparingLong(e -> e.node)
+                .thenComparingLong(e -> e.sender)
+                .thenComparingLong(e -> e.arrival)
+                .thenComparing(e -> e.channel.code)
+                .thenComparingInt(e -> e.message.header)
+                .thenComparing(e -> e.message.data, Arrays::compare);
+
+        public final Kind kind;
+        public final long time;
+        /**
+         * sender of a transmission, receiver of a delivery
+         */
+        public final long node;
+        /**
+         * sender of a delivery, the node itself for a transmission
+         */
+        public final long sender;
+        /**
+         * when the receiver learned about a delivered frame, the time itself for a transmission
+         */
+        public final long arrival;
+        public final ChannelInfo channel;
+        public final Message message;
+
+        public Event(Kind kind, long time, long node, long sender, long arrival, ChannelInfo channel, Message message) {
+            this.kind = kind;
+            this.time = time;
+            this.node = node;
+            this.sender = sender;
+            this.arrival = arrival;
+            this.channel = channel;
+            this.message = message;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Event && ORDER.compare(this, (Event) o) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(kind, time, node, sender, arrival, channel, message.header, Arrays.hashCode(message.data));
+        }
+
+        @Override
+        public String toString() {
+            return kind == Kind.Transmission?
+                    String.format("%d: %d sent on %s %s", time, node, channel, message) :
+                    String.format("%d: %d got from %d on %s %s", time, node, sender, channel, message);
+        }
+    }
+
+    /**
+     * Collects the events reported by the medium and writes the ones that can no longer be preceded by another.
+     */
+    public static class Writer implements RadioMedium.Listener, Closeable {
+        private final DataOutputStream out;
+        private final List<Event> pending = new ArrayList<>();
+        private final Map<Long, Integer> nodes = new HashMap<>();
+        private final Map<ChannelInfo, Integer> channels = new HashMap<>();
+        private long last = 0;
+        private long written = 0;
+
+        public Writer(Path file, long seed) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(seed);
+        }
+
+        @Override
+        public synchronized void transmitted(long time, long sender, ChannelInfo channel, Message message) {
+            pending.add(new Event(Kind.Transmission, time, sender, sender, time, channel, message));
+        }
+
+        @Override
+        public synchronized void delivered(long time, long arrival, long receiver, long sender, ChannelInfo channel, Message message) {
+            pending.add(new Event(Kind.Delivery, time, receiver, sender, arrival, channel, message));
+        }
+
+        /**
+         * writes all events before the given time, to be called once no event before it can be reported anymore
+         */
+        public synchronized void flush(long before) {
+            pending.sort(Event.ORDER);
+            int count = 0;
+            try {
+                while (count < pending.size() && pending.get(count).time < before) write(pending.get(count++));
+                out.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            pending.subList(0, count).clear();
+        }
+
+        /**
+         * @return events written so far
+         */
+        public synchronized long written() {
+            return written;
+        }
+
+        private void write(Event event) throws IOException {
+            out.writeByte(event.kind.ordinal());
+            Varints.writeSigned(out, event.time - last);
+            last = event.time;
+            writeNode(event.node);
+            if (event.kind == Kind.Delivery) {
+                writeNode(event.sender);
+                Varints.write(out, event.time - event.arrival);
+            }
+            Integer channel = channels.get(event.channel);
+            if (channel == null) {
+                Varints.write(out, channels.size());
+                out.writeUTF(event.channel.code);
+                channels.put(event.channel, channels.size());
+            } else {
+                Varints.write(out, channel);
+            }
+            Varints.write(out, event.message.header & 0xffffffffL);
+            Varints.write(out, event.message.data.length);
+            out.write(event.message.data);
+            written++;
+        }
+
+        private void writeNode(long id) throws IOException {
+            Integer index = nodes.get(id);
+            if (index == null) {
+                Varints.write(out, nodes.size());
+                out.writeLong(id);
+                nodes.put(id, nodes.size());
+            } else {
+                Varints.write(out, index);
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            try {
+                flush(Long.MAX_VALUE);
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    public static class Reader implements Closeable {
+        private final DataInputStream in;
+        private final List<Long> nodes = new ArrayList<>();
+        private final List<ChannelInfo> channels = new ArrayList<>();
+        public final long seed;
+        private final int version;
+        private long last = 0;
+
+        public Reader(Path file) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+            if (in.readInt() != MAGIC) throw new IOException(String.format("%s is no event log", file));
+            version = in.readByte();
+            if (version < 1 || version > VERSION) throw new IOException(String.format("event log version %d is not supported", version));
+            seed = in.readLong();
+        }
+
+        /**
+         * @return the next event, null at the end of the log
+         */
+        public Event next() throws IOException {
+            int kind = in.read();
+            if (kind < 0) return null;
+            long time = last + (version < 2? Varints.read(in) : Varints.readSigned(in));
+            last = time;
+            long node = readNode();
+            long sender = node, arrival = time;
+            if (kind == Kind.Delivery.ordinal()) {
+                sender = readNode();
+                arrival = time - Varints.read(in);
+            }
+            int channel = (int) Varints.read(in);
+            if (channel == channels.size()) channels.add(new ChannelInfo(in.readUTF()));
+            int header = (int) Varints.read(in);
+            byte[] data = new byte[(int) Varints.read(in)];
+            in.readFully(data);
+            return new Event(Kind.values()[kind], time, node, sender, arrival, channels.get(channel), new Message(header, data));
+        }
+
+        private long readNode() throws IOException {
+            int index = (int) Varints.read(in);
+            if (index == nodes.size()) nodes.add(in.readLong());
+            return nodes.get(index);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * @return the first event that differs between the two logs, null if they are equal
+     */
+    public static String compare(Path a, Path b) throws IOException {
+        try (var left = new Reader(a); var right = new Reader(b)) {
+            for (long index = 0; ; index++) {
+                var l = left.next();
+                var r = right.next();
+                if (l == null && r == null) return null;
+                if (l == null || !l.equals(r)) return String.format("event %d: %s <> %s", index, l, r);
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package v2.simulation.replay;
+
+import v2.core.common.Counter;
+import v2.core.common.Subject;
+import v2.core.concurrency.Clock;
+import v2.core.concurrency.Executor;
+import v2.core.context.Module;
+import v2.core.log.Logger;
+import v2.simulation.domain.NodeSimulationSpecs;
+import v2.simulation.radio.RadioMedium;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * <p>
+ *     Feeds the deliveries of a recorded run to the nodes instead of the frames of the medium, which is silenced,
+ *     so every node gets the same traffic as in the recording whatever it sends itself. Unchanged nodes then send
+ *     exactly what they sent in the recording; changed ones can be compared on identical input.
+ * </p>
+ * <p>
+ *     Deliveries are read ahead once per {@link RadioMedium#DELIVERY_DELAY} by a task of the root executor and
+ *     reach the receiver's executor at the time the frame arrived, from where they are delivered after
+ *     the time on air, as the medium does. A delivery that would arrive before the task reads it can't be replayed
+ *     anymore; such deliveries are counted and reported, see {@link #dropped()}.
+ * </p>
+ */
+public class Replayer implements Module {
+
+    /**
+     * deliveries are read this far ahead, longer than any frame takes on air
+     */
+    private static final long READ_AHEAD = 10000;
+
+    private final EventLog.Reader reader;
+    private final RadioMedium medium;
+    private final Map<Long, NodeSimulationSpecs> nodes;
+    private final Function<NodeSimulationSpecs, Executor> executors;
+    private final Logger logger;
+    private final List<EventLog.Event> ahead = new ArrayList<>();
+    private final Counter dropped = new Counter();
+    private boolean ended;
+
+    public Replayer(EventLog.Reader reader, RadioMedium medium, Map<Long, NodeSimulationSpecs> nodes,
+                    Function<NodeSimulationSpecs, Executor> executors, Logger logger) {
+        this.reader = reader;
+        this.medium = medium;
+        this.nodes = nodes;
+        this.executors = executors;
+        this.logger = logger;
+    }
+
+    /**
+     * @return number of recorded deliveries that arrived before they were read and were not replayed,
+     * 0 unless the executor fell behind the periodic read
+     */
+    public Subject<Long> dropped() {
+        return dropped;
+    }
+
+    /**
+     * @param root executor of the simulation, not of a node
+     */
+    public void start(Executor root, Clock clock) {
+        medium.silence();
+        root.schedulePeriodic(() -> feed(clock.millis()), RadioMedium.DELIVERY_DELAY, 0);
+    }
+
+    /**
+     * schedules the deliveries that arrive before the next call
+     */
+    private void feed(long now) {
+        try {
+            while (!ended && (ahead.isEmpty() || ahead.get(ahead.size() - 1).time < now + RadioMedium.DELIVERY_DELAY + READ_AHEAD)) {
+                var event = reader.next();
+                if (event == null) {
+                    ended = true;
+                    reader.close();
+                } else if (event.kind == EventLog.Kind.Delivery) {
+                    ahead.add(event);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        int late = 0;
+        for (Iterator<EventLog.Event> it = ahead.iterator(); it.hasNext(); ) {
+            var event = it.next();
+            if (event.arrival >= now + RadioMedium.DELIVERY_DELAY) continue;
+            it.remove();
+            var receiver = nodes.get(event.node);
+            var exec = receiver == null? null : executors.apply(receiver);
+            if (exec == null) continue;
+            if (event.arrival < now) {
+                dropped.increment();
+                late++;
+                continue;
+            }
+            exec.schedule(() -> exec.schedule(() -> medium.replay(event.time, event.arrival, receiver, event.sender, event.channel, event.message),
+                    event.time - event.arrival), event.arrival - now);
+        }
+        if (late > 0) {
+            logger.warn(String.format("%d recorded deliveries arrived before %d and were dropped, %d in total", late, now, dropped.value()), this);
+        }
+    }
+
+    @Override
+    public String info() {
+        return "replayer";
+    }
+}
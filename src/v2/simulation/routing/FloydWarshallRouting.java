@@ -0,0 +1,213 @@
+package v2.simulation.routing;
+
+import v2.core.domain.message.MessageHeader;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <p>
+ *     All-pairs shortest paths over the live nodes on a dense {@code double[][]} distance matrix
+ *     and a {@code short[][]} next-hop matrix, indexed by position in the sorted address list.
+ *     Reference for {@link RoutingEngine} and its all-pairs backend, which recalculates the routing from scratch.
+ * </p>
+ * <p>
+ *     The matrices are processed in {@link #BLOCK} x {@link #BLOCK} tiles (blocked Floyd-Warshall).
+ *     For each pivot block, the diagonal tile is solved first, then its row and column tiles, then all remaining tiles.
+ *     Tiles of the last two phases are independent of each other and are spread over a fork-join pool.
+ * </p>
+ */
+public class FloydWarshallRouting {
+
+    public static final int BLOCK = 32;
+    private static final double INF = Double.POSITIVE_INFINITY;
+
+    private final int n;
+    private final int blocks;
+    private final int[] addresses;
+    private final Map<Integer, Integer> index = new HashMap<>();
+    private final double[][] dist;
+    private final short[][] next;
+
+    /**
+     * @param retx reported retx values of all live nodes, by address
+     */
+    public FloydWarshallRouting(Map<Integer, Map<Integer, Double>> retx) {
+        this(retx.keySet().stream().mapToInt(Integer::intValue).sorted().toArray());
+        for (int i = 0; i < n; i++) {
+            final int from = i;
+            retx.get(addresses[i]).forEach((address, value) -> {
+                Integer to = index.get(address);
+                if (to == null || to == from || value <= 0) return;
+                link(from, to, 1.0 / value);
+            });
+        }
+    }
+
+    /**
+     * @param addresses of the live nodes, sorted
+     * @param cost link costs by address, infinite without a link
+     */
+    public FloydWarshallRouting(int[] addresses, double[][] cost) {
+        this(addresses);
+        for (int i = 0; i < n; i++) {
+            double[] row = cost[addresses[i]];
+            for (int j = 0; j < n; j++) {
+                if (i != j && row[addresses[j]] < INF) link(i, j, row[addresses[j]]);
+            }
+        }
+    }
+
+    private FloydWarshallRouting(int[] addresses) {
+        this.addresses = addresses;
+        n = addresses.length;
+        if (n > Short.MAX_VALUE) throw new IllegalArgumentException("too many nodes: " + n);
+        blocks = (n + BLOCK - 1) / BLOCK;
+        for (int i = 0; i < n; i++) index.put(addresses[i], i);
+
+        dist = new double[n][n];
+        next = new short[n][n];
+        for (int i = 0; i < n; i++) {
+            Arrays.fill(dist[i], INF);
+            Arrays.fill(next[i], (short) -1);
+            dist[i][i] = 0;
+            next[i][i] = (short) i;
+        }
+    }
+
+    private void link(int from, int to, double cost) {
+        dist[from][to] = cost;
+        next[from][to] = (short) to;
+    }
+
+    /**
+     * routing of a single node, calculated single-threaded
+     * @param controllers addresses of the live controllers
+     */
+    public static Set<Integer> routing(Map<Integer, Map<Integer, Double>> retx, Collection<Integer> controllers, int address) {
+        var routing = new FloydWarshallRouting(retx);
+        routing.solve();
+        return routing.routing(controllers).getOrDefault(address, Set.of());
+    }
+
+    public void solve() {
+        for (int kb = 0; kb < blocks; kb++) {
+            tile(kb, kb, kb);
+            for (int b = 0; b < blocks; b++) {
+                if (b == kb) continue;
+                tile(kb, kb, b);
+                tile(kb, b, kb);
+            }
+            for (int ib = 0; ib < blocks; ib++) {
+                if (ib != kb) tileRow(kb, ib);
+            }
+        }
+    }
+
+    public void solve(ForkJoinPool pool) {
+        for (int kb = 0; kb < blocks; kb++) {
+            final int pivot = kb;
+            tile(pivot, pivot, pivot);
+            pool.invoke(new Tiles(0, blocks, b -> {
+                if (b == pivot) return;
+                tile(pivot, pivot, b);
+                tile(pivot, b, pivot);
+            }));
+            pool.invoke(new Tiles(0, blocks, ib -> {
+                if (ib != pivot) tileRow(pivot, ib);
+            }));
+        }
+    }
+
+    public double distance(int from, int to) {
+        return dist[index.get(from)][index.get(to)];
+    }
+
+    /**
+     * @param controllers addresses of the live controllers
+     * @return routing of every node: uplink sources and downlink destinations with the downwards bit
+     */
+    public Map<Integer, Set<Integer>> routing(Collection<Integer> controllers) {
+        Map<Integer, Set<Integer>> routing = new HashMap<>();
+        int[] ctl = controllers.stream().filter(index::containsKey).mapToInt(index::get).sorted().toArray();
+        if (ctl.length == 0) return routing;
+        boolean[] isController = new boolean[n];
+        for (int c : ctl) isController[c] = true;
+
+        for (int u = 0; u < n; u++) {
+            if (isController[u]) continue;
+            int uplinkCtl = ctl[0], downlinkCtl = ctl[0];
+            for (int c : ctl) {
+                if (dist[u][c] < dist[u][uplinkCtl]) uplinkCtl = c;
+                if (dist[c][u] < dist[downlinkCtl][u]) downlinkCtl = c;
+            }
+            for (int v = next[u][uplinkCtl]; v >= 0 && v != uplinkCtl; v = next[v][uplinkCtl]) {
+                routing.computeIfAbsent(addresses[v], k -> new HashSet<>()).add(addresses[u]);
+            }
+            for (int v = next[downlinkCtl][u]; v >= 0 && v != u; v = next[v][u]) {
+                routing.computeIfAbsent(addresses[v], k -> new HashSet<>()).add(addresses[u] | MessageHeader.DOWNWARDS_BIT);
+            }
+        }
+        return routing;
+    }
+
+    /**
+     * relaxes all tiles (ib, jb) of a block row against pivot block kb, except the already solved ones
+     */
+    private void tileRow(int kb, int ib) {
+        for (int jb = 0; jb < blocks; jb++) {
+            if (jb != kb) tile(kb, ib, jb);
+        }
+    }
+
+    private void tile(int kb, int ib, int jb) {
+        int kEnd = Math.min(n, (kb + 1) * BLOCK), iEnd = Math.min(n, (ib + 1) * BLOCK), jEnd = Math.min(n, (jb + 1) * BLOCK);
+        for (int k = kb * BLOCK; k < kEnd; k++) {
+            double[] distK = dist[k];
+            for (int i = ib * BLOCK; i < iEnd; i++) {
+                double[] distI = dist[i];
+                double ik = distI[k];
+                if (ik == INF) continue;
+                short[] nextI = next[i];
+                short nextIK = nextI[k];
+                for (int j = jb * BLOCK; j < jEnd; j++) {
+                    double candidate = ik + distK[j];
+                    if (candidate < distI[j]) {
+                        distI[j] = candidate;
+                        nextI[j] = nextIK;
+                    }
+                }
+            }
+        }
+    }
+
+    private interface BlockTask {
+        void run(int block);
+    }
+
+    /**
+     * Splits a range of block indices in halves until single blocks are left. Never serialized.
+     */
+    @SuppressWarnings("serial")
+    private static class Tiles extends RecursiveAction {
+        private final int from, to;
+        private final BlockTask task;
+
+        Tiles(int from, int to, BlockTask task) {
+            this.from = from;
+            this.to = to;
+            this.task = task;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                task.run(from);
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Tiles(from, mid, task), new Tiles(mid, to, task));
+            }
+        }
+    }
+}
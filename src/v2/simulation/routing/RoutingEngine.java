@@ -0,0 +1,424 @@
+package v2.simulation.routing;
+
+import v2.core.common.BasicSubject;
+import v2.core.common.Counter;
+import v2.core.common.Subject;
+import v2.core.domain.message.MessageHeader;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * <p>
+ *     Keeps two shortest-path trees per controller: one towards the controller (uplink) and one from it (downlink).
+ *     All state lives in arrays indexed by address.
+ * </p>
+ * <p>
+ *     When one node reports new retx values, only the trees touched by the changed links are repaired (dynamic Dijkstra):
+ *     subtrees hanging below a changed tree link are invalidated and reattached,
+ *     improvements are propagated from the affected nodes.
+ *     Liveness and controller changes rebuild the trees from scratch.
+ * </p>
+ * <p>
+ *     Every change of the trees' input starts a new topology epoch. Link changes within the hysteresis are ignored.
+ *     The routing of all nodes is calculated once per epoch and served from a cache until the next change.
+ * </p>
+ * <p>
+ *     Link costs and the resulting routing match {@link FloydWarshallRouting}. With all-pairs routing selected,
+ *     no trees are kept and every new epoch is calculated from scratch by {@link FloydWarshallRouting} instead,
+ *     in parallel for large meshes. That suits meshes whose topology changes with most reports anyway.
+ * </p>
+ * <p>
+ *     Not thread-safe, except for reading the {@link #epoch()}.
+ * </p>
+ */
+public class RoutingEngine {
+
+    private static final double INF = Double.POSITIVE_INFINITY;
+
+    private final int capacity;
+    private final double hysteresis;
+    private final boolean allPairs;
+    private final double[][] cost;
+    private final boolean[] live;
+    private final boolean[] controller;
+    private final Tree[] uplink;
+    private final Tree[] downlink;
+    private final int[] changed;
+
+    private final List<Set<Integer>> cache;
+    private volatile long epoch = 0;
+    private long cachedEpoch = -1;
+    private final Counter hits = new Counter();
+    private final Counter misses = new Counter();
+    private final BasicSubject<Long> recomputeNanos = new BasicSubject<>(0L);
+
+    public RoutingEngine(int capacity) {
+        this(capacity, 0);
+    }
+
+    /**
+     * @param hysteresis minimum change of a reported retx value to be taken into account
+     */
+    public RoutingEngine(int capacity, double hysteresis) {
+        this(capacity, hysteresis, false);
+    }
+
+    /**
+     * @param hysteresis minimum change of a reported retx value to be taken into account
+     * @param allPairs true to recalculate the routing of every epoch from scratch instead of repairing trees
+     */
+    public RoutingEngine(int capacity, double hysteresis, boolean allPairs) {
+        this.capacity = capacity;
+        this.hysteresis = hysteresis;
+        this.allPairs = allPairs;
+        cost = new double[capacity][capacity];
+        for (double[] row : cost) Arrays.fill(row, INF);
+        live = new boolean[capacity];
+        controller = new boolean[capacity];
+        uplink = new Tree[capacity];
+        downlink = new Tree[capacity];
+        changed = new int[capacity];
+        cache = new ArrayList<>(capacity);
+        for (int i = 0; i < capacity; i++) cache.add(new HashSet<>());
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public long epoch() {
+        return epoch;
+    }
+
+    public Subject<Long> hits() {
+        return hits;
+    }
+
+    public Subject<Long> misses() {
+        return misses;
+    }
+
+    /**
+     * @return duration of the latest routing calculation
+     */
+    public Subject<Long> recomputeNanos() {
+        return recomputeNanos;
+    }
+
+    public double hitRate() {
+        long total = hits.value() + misses.value();
+        return total == 0? 0 : (double) hits.value() / total;
+    }
+
+    /**
+     * replaces the outgoing links of a node. the reported retx values are link reliabilities,
+     * a link costs their inverse, the expected number of transmissions.
+     */
+    public void update(int address, Map<Integer, Double> retx) {
+        checkAddress(address);
+        double[] row = cost[address];
+        int count = 0;
+        for (int to = 0; to < capacity; to++) {
+            Double value = to == address? null : retx.get(to);
+            double next = value == null || value <= 0? INF : 1.0 / value;
+            double prev = row[to];
+            if (next == prev) continue;
+            if (next != INF && prev != INF && Math.abs(1.0 / next - 1.0 / prev) <= hysteresis) continue;
+            row[to] = next;
+            changed[count++] = to;
+        }
+        if (count == 0 || !live[address]) return;
+        epoch++;
+        if (allPairs) return;
+        for (int c = 0; c < capacity; c++) {
+            if (uplink[c] == null) continue;
+            uplink[c].repair(address, changed, count);
+            downlink[c].repair(address, changed, count);
+        }
+    }
+
+    public void setLive(int address, boolean value) {
+        checkAddress(address);
+        if (live[address] == value) return;
+        live[address] = value;
+        epoch++;
+        rebuild();
+    }
+
+    public void setController(int address, boolean value) {
+        checkAddress(address);
+        if (controller[address] == value) return;
+        controller[address] = value;
+        epoch++;
+        if (allPairs) return;
+        if (value) {
+            uplink[address] = new Tree(address, true);
+            downlink[address] = new Tree(address, false);
+        } else {
+            uplink[address] = downlink[address] = null;
+        }
+    }
+
+    public boolean hasController() {
+        for (int c = 0; c < capacity; c++) {
+            if (controller[c] && live[c]) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the addresses the node has to forward: uplink sources and downlink destinations with the downwards bit
+     */
+    public Set<Integer> routing(int address) {
+        checkAddress(address);
+        if (cachedEpoch == epoch) {
+            hits.increment();
+        } else {
+            misses.increment();
+            recompute();
+        }
+        return Collections.unmodifiableSet(cache.get(address));
+    }
+
+    private void recompute() {
+        long start = System.nanoTime();
+        cache.forEach(Set::clear);
+        if (allPairs) {
+            recomputeAllPairs();
+            cachedEpoch = epoch;
+            recomputeNanos.set(System.nanoTime() - start);
+            return;
+        }
+        for (int u = 0; u < capacity; u++) {
+            if (!live[u] || controller[u]) continue;
+            Tree up = null, down = null;
+            for (int c = 0; c < capacity; c++) {
+                if (!controller[c] || !live[c]) continue;
+                if (up == null || uplink[c].dist[u] < up.dist[u]) up = uplink[c];
+                if (down == null || downlink[c].dist[u] < down.dist[u]) down = downlink[c];
+            }
+            if (up == null) break;
+            up.addToPath(u, u);
+            down.addToPath(u, u | MessageHeader.DOWNWARDS_BIT);
+        }
+        cachedEpoch = epoch;
+        recomputeNanos.set(System.nanoTime() - start);
+    }
+
+    private void recomputeAllPairs() {
+        int[] addresses = IntStream.range(0, capacity).filter(a -> live[a]).toArray();
+        List<Integer> controllers = new ArrayList<>();
+        for (int a : addresses) {
+            if (controller[a]) controllers.add(a);
+        }
+        var routing = new FloydWarshallRouting(addresses, cost);
+        if (addresses.length > FloydWarshallRouting.BLOCK) routing.solve(ForkJoinPool.commonPool());
+        else routing.solve();
+        routing.routing(controllers).forEach((address, entries) -> cache.get(address).addAll(entries));
+    }
+
+    private void rebuild() {
+        if (allPairs) return;
+        for (int c = 0; c < capacity; c++) {
+            if (uplink[c] == null) continue;
+            uplink[c].build();
+            downlink[c].build();
+        }
+    }
+
+    private double cost(int from, int to) {
+        return live[from] && live[to]? cost[from][to] : INF;
+    }
+
+    private void checkAddress(int address) {
+        if (address < 0 || address >= capacity) {
+            throw new IllegalArgumentException(String.format("address %d out of range", address));
+        }
+    }
+
+    /**
+     * Shortest-path tree rooted at a controller. parent[v] is the neighbour of v on its path to the root,
+     * i.e. the next hop for an uplink tree and the predecessor for a downlink tree.
+     */
+    private class Tree {
+        final int root;
+        final boolean towardsRoot;
+        final double[] dist = new double[capacity];
+        final int[] parent = new int[capacity];
+        final boolean[] invalid = new boolean[capacity];
+        final Heap heap = new Heap(dist);
+
+        Tree(int root, boolean towardsRoot) {
+            this.root = root;
+            this.towardsRoot = towardsRoot;
+            build();
+        }
+
+        /**
+         * cost of the tree edge from parent p to child v
+         */
+        double edge(int p, int v) {
+            return towardsRoot? cost(v, p) : cost(p, v);
+        }
+
+        void build() {
+            Arrays.fill(dist, INF);
+            Arrays.fill(parent, -1);
+            if (!live[root]) return;
+            dist[root] = 0;
+            heap.push(root);
+            propagate();
+        }
+
+        /**
+         * repairs the tree after the links from one node to the given targets changed
+         */
+        void repair(int from, int[] targets, int count) {
+            boolean anyInvalid = false;
+            for (int i = 0; i < count; i++) {
+                int p = towardsRoot? targets[i] : from;
+                int v = towardsRoot? from : targets[i];
+                if (parent[v] == p) {
+                    invalidate(v);
+                    anyInvalid = true;
+                }
+            }
+            if (anyInvalid) {
+                for (int v = 0; v < capacity; v++) {
+                    if (!invalid[v]) continue;
+                    dist[v] = INF;
+                    parent[v] = -1;
+                }
+                for (int v = 0; v < capacity; v++) {
+                    if (!invalid[v]) continue;
+                    for (int p = 0; p < capacity; p++) {
+                        if (invalid[p] || dist[p] == INF) continue;
+                        relax(p, v);
+                    }
+                }
+                Arrays.fill(invalid, false);
+            }
+            for (int i = 0; i < count; i++) {
+                int p = towardsRoot? targets[i] : from;
+                int v = towardsRoot? from : targets[i];
+                if (dist[p] != INF) relax(p, v);
+            }
+            propagate();
+        }
+
+        /**
+         * adds the entry to the routing of every node between u and the root
+         */
+        void addToPath(int u, int entry) {
+            if (dist[u] == INF) return;
+            for (int v = parent[u]; v >= 0 && v != root; v = parent[v]) {
+                cache.get(v).add(entry);
+            }
+        }
+
+        private void invalidate(int top) {
+            invalid[top] = true;
+            for (boolean grown = true; grown; ) {
+                grown = false;
+                for (int v = 0; v < capacity; v++) {
+                    if (!invalid[v] && parent[v] >= 0 && invalid[parent[v]]) {
+                        invalid[v] = true;
+                        grown = true;
+                    }
+                }
+            }
+        }
+
+        private void relax(int p, int v) {
+            double candidate = dist[p] + edge(p, v);
+            if (candidate < dist[v]) {
+                dist[v] = candidate;
+                parent[v] = p;
+                heap.push(v);
+            }
+        }
+
+        private void propagate() {
+            while (!heap.isEmpty()) {
+                int p = heap.poll();
+                for (int v = 0; v < capacity; v++) {
+                    if (v != p) relax(p, v);
+                }
+            }
+        }
+    }
+
+    /**
+     * Indexed binary min-heap over addresses, keyed by the distance array of a tree.
+     */
+    private static class Heap {
+        final double[] key;
+        final int[] heap;
+        final int[] position;
+        int size = 0;
+
+        Heap(double[] key) {
+            this.key = key;
+            heap = new int[key.length];
+            position = new int[key.length];
+            Arrays.fill(position, -1);
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        /**
+         * inserts the address or restores the heap order after its key decreased
+         */
+        void push(int v) {
+            if (position[v] < 0) {
+                heap[size] = v;
+                position[v] = size++;
+            }
+            up(position[v]);
+        }
+
+        int poll() {
+            int top = heap[0];
+            position[top] = -1;
+            if (--size > 0) {
+                heap[0] = heap[size];
+                position[heap[0]] = 0;
+                down(0);
+            }
+            return top;
+        }
+
+        private void up(int i) {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (key[heap[parent]] <= key[heap[i]]) break;
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void down(int i) {
+            while (true) {
+                int smallest = i;
+                int left = 2 * i + 1, right = left + 1;
+                if (left < size && key[heap[left]] < key[heap[smallest]]) smallest = left;
+                if (right < size && key[heap[right]] < key[heap[smallest]]) smallest = right;
+                if (smallest == i) return;
+                swap(i, smallest);
+                i = smallest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int tmp = heap[a];
+            heap[a] = heap[b];
+            heap[b] = tmp;
+            position[heap[a]] = a;
+            position[heap[b]] = b;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package v2.simulation.snapshot;
+
+import v2.core.domain.NodeState;
+import v2.core.domain.node.NodeStatus;
+import v2.core.log.Logger;
+import v2.shared.impl.LocalCorrespondenceRegister;
+import v2.simulation.domain.NodeSimulationSpecs;
+import v2.simulation.impl.SimulatedNodeData;
+import v2.simulation.util.Varints;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ *     Binary file of a simulation: its settings and the specs of every node with its position and reception
+ *     overrides. A checkpoint adds the runtime state, i.e. the {@link NodeState} every joined node would resume from
+ *     and the repository of every pce with addresses, routing and correspondence counters.
+ * </p>
+ * <p>
+ *     Format (version 2): magic, version, flags, time of the checkpoint, settings, then records of a tag and
+ *     their content up to an end tag. Records are written and read one at a time, so a large mesh is never held
+ *     as a whole. Timestamps of the pce are stored relative to the time of the checkpoint.
+ *     Enum constants are stored by name, so reordering or extending an enum keeps older files readable;
+ *     version 1 stored their ordinals.
+ *     Readers refuse newer versions; a new version may only add fields at the end of a record or new tags.
+ * </p>
+ */
+public class Snapshot {
+
+    public static final int MAGIC = 0x4c4d534e;
+    public static final int VERSION = 2;
+
+    /**
+     * the file holds runtime state
+     */
+    public static final int RUNTIME = 1;
+
+    private static final int END = 0;
+    private static final int NODE = 1;
+    private static final int STATE = 2;
+    private static final int PCE = 3;
+
+    private static final int PCE_DISABLED = 1;
+    private static final int DATA_SINK_DISABLED = 2;
+
+    /**
+     * The settings of a simulation kept in a snapshot.
+     */
+    public static class Settings {
+        public long time;
+        public long seed;
+        public long dataFeedPeriod;
+        public int timeControl;
+        public boolean discreteEvent;
+        public String view = "plain";
+    }
+
+    /**
+     * Gets the records of a snapshot in the order they were written: all nodes, then their states, then the pces.
+     */
+    public interface Visitor {
+        void node(NodeSimulationSpecs specs);
+
+        default void state(long id, NodeState state) {
+        }
+
+        /**
+         * @param node with its timestamp relative to the time of the checkpoint
+         */
+        default void pce(long controller, SimulatedNodeData node) {
+        }
+    }
+
+    public static class Writer implements Closeable {
+        private final DataOutputStream out;
+
+        public Writer(OutputStream stream, Settings settings, boolean runtime) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(stream));
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeByte(runtime? RUNTIME : 0);
+            out.writeLong(settings.time);
+            out.writeLong(settings.seed);
+            Varints.write(out, settings.dataFeedPeriod);
+            Varints.writeSigned(out, settings.timeControl);
+            out.writeBoolean(settings.discreteEvent);
+            out.writeUTF(settings.view);
+        }
+
+        public void node(NodeSimulationSpecs specs) throws IOException {
+            out.writeByte(NODE);
+            out.writeLong(specs.id());
+            out.writeDouble(specs.x());
+            out.writeDouble(specs.y());
+            out.writeByte((specs.pceDisabled()? PCE_DISABLED : 0) | (specs.dataSinkDisabled()? DATA_SINK_DISABLED : 0));
+            out.writeUTF(specs.logLevel().name());
+            Varints.write(out, specs.helloPeriod());
+            Varints.write(out, specs.routingCheckPeriod());
+            Varints.write(out, specs.reception.size());
+            for (Map.Entry<Long, Double> link : specs.reception.entrySet()) {
+                out.writeLong(link.getKey());
+                out.writeDouble(link.getValue());
+            }
+        }
+
+        public void state(long id, NodeState state) throws IOException {
+            byte[] bytes = state.toBytes();
+            out.writeByte(STATE);
+            out.writeLong(id);
+            Varints.write(out, bytes.length);
+            out.write(bytes);
+        }
+
+        /**
+         * @param now time of the checkpoint, timestamps are written relative to it
+         */
+        public void pce(long controller, SimulatedNodeData node, long now) throws IOException {
+            out.writeByte(PCE);
+            out.writeLong(controller);
+            out.writeLong(node.id);
+            Varints.writeSigned(out, node.address);
+            out.writeUTF(node.status.name());
+            Varints.writeSigned(out, node.lastUpdated - now);
+            Varints.write(out, node.retx.size());
+            for (var retx : node.retx.entrySet()) {
+                Varints.writeSigned(out, retx.getKey());
+                out.writeFloat(retx.getValue().floatValue());
+            }
+            writeAll(node.routing);
+            var correspondence = node.correspondence instanceof LocalCorrespondenceRegister? (LocalCorrespondenceRegister) node.correspondence : null;
+            out.writeBoolean(correspondence != null);
+            if (correspondence != null) {
+                Varints.write(out, correspondence.sendingCounter());
+                Varints.write(out, correspondence.nextReceivingCounter());
+                writeAll(correspondence.missing());
+            }
+        }
+
+        private void writeAll(Collection<Integer> values) throws IOException {
+            Varints.write(out, values.size());
+            for (int value : values) Varints.writeSigned(out, value);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                out.writeByte(END);
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    public static class Reader implements Closeable {
+        private final DataInputStream in;
+        private final int version;
+        public final Settings settings = new Settings();
+        public final boolean runtime;
+
+        public Reader(InputStream stream) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(stream));
+            if (in.readInt() != MAGIC) throw new IOException("no simulation snapshot");
+            version = in.readUnsignedByte();
+            if (version > VERSION) throw new IOException(String.format("snapshot version %d is newer than the supported version %d", version, VERSION));
+            runtime = (in.readUnsignedByte() & RUNTIME) != 0;
+            settings.time = in.readLong();
+            settings.seed = in.readLong();
+            settings.dataFeedPeriod = Varints.read(in);
+            settings.timeControl = (int) Varints.readSigned(in);
+            settings.discreteEvent = in.readBoolean();
+            settings.view = in.readUTF();
+        }
+
+        /**
+         * hands every record to the visitor, up to the end of the snapshot
+         */
+        public void read(Visitor visitor) throws IOException {
+            for (int tag = in.readUnsignedByte(); tag != END; tag = in.readUnsignedByte()) {
+                switch (tag) {
+                    case NODE:
+                        visitor.node(readNode());
+                        break;
+                    case STATE: {
+                        long id = in.readLong();
+                        byte[] bytes = new byte[(int) Varints.read(in)];
+                        in.readFully(bytes);
+                        visitor.state(id, NodeState.parse(bytes));
+                        break;
+                    }
+                    case PCE: {
+                        long controller = in.readLong();
+                        visitor.pce(controller, readPceNode());
+                        break;
+                    }
+                    default:
+                        throw new IOException("unknown snapshot record " + tag);
+                }
+            }
+        }
+
+        private NodeSimulationSpecs readNode() throws IOException {
+            long id = in.readLong();
+            double x = in.readDouble(), y = in.readDouble();
+            int flags = in.readUnsignedByte();
+            var specs = new NodeSimulationSpecs(id, x, y, false);
+            specs.setPceDisabled((flags & PCE_DISABLED) != 0);
+            specs.setDataSinkDisabled((flags & DATA_SINK_DISABLED) != 0);
+            specs.setLogLevel(readEnum(Logger.Severity.class));
+            specs.setHelloPeriod(Varints.read(in));
+            specs.setRoutingCheckPeriod(Varints.read(in));
+            for (long i = Varints.read(in); i > 0; i--) specs.reception.put(in.readLong(), in.readDouble());
+            return specs;
+        }
+
+        private SimulatedNodeData readPceNode() throws IOException {
+            var node = new SimulatedNodeData();
+            node.id = in.readLong();
+            node.address = (int) Varints.readSigned(in);
+            node.status = readEnum(NodeStatus.class);
+            node.lastUpdated = Varints.readSigned(in);
+            for (long i = Varints.read(in); i > 0; i--) node.retx.put((int) Varints.readSigned(in), (double) in.readFloat());
+            node.routing.addAll(readAll());
+            if (in.readBoolean()) {
+                var correspondence = LocalCorrespondenceRegister.to(node.address);
+                correspondence.restoreSendingCounter((int) Varints.read(in));
+                int next = (int) Varints.read(in);
+                correspondence.restore(next, readAll());
+                node.correspondence = correspondence;
+            }
+            return node;
+        }
+
+        private <E extends Enum<E>> E readEnum(Class<E> type) throws IOException {
+            if (version < 2) return type.getEnumConstants()[in.readUnsignedByte()];
+            String name = in.readUTF();
+            try {
+                return Enum.valueOf(type, name);
+            } catch (IllegalArgumentException e) {
+                throw new IOException(String.format("unknown %s %s", type.getSimpleName(), name), e);
+            }
+        }
+
+        private List<Integer> readAll() throws IOException {
+            List<Integer> values = new ArrayList<>();
+            for (long i = Varints.read(in); i > 0; i--) values.add((int) Varints.readSigned(in));
+            return values;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package v2.simulation.test;
+
+import org.junit.jupiter.api.Test;
+import v2.core.context.Context;
+import v2.core.domain.node.Node;
+import v2.shared.integration.FileClient;
+import v2.shared.measurements.NodeStatistics;
+import v2.shared.measurements.ResultsCollector;
+import v2.shared.testing.SilentLogger;
+import v2.simulation.Simulation;
+import v2.simulation.domain.NodeSimulationSpecs;
+import v2.simulation.impl.PartitionedExecutor;
+
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataBufferDrainTest {
+
+    /**
+     * data buffered while the sink is down is forwarded once a status check finds the sink again
+     */
+    @Test
+    void testControllerDrainsWhenSinkRecovers() throws Exception {
+        var simulation = simulation();
+        var ctl = simulation.add("ctl", 0, 0, true);
+        var results = new ResultsCollector();
+        var exec = new PartitionedExecutor();
+        var ctx = deploy(simulation, exec, results);
+
+        long[] buffered = new long[1];
+        exec.schedule(() -> simulation.handle(ctl).setDataSinkDisabled(true), 10000);
+        exec.schedule(() -> {
+            buffered[0] = statistics(results, ctl).getBufferedBytes();
+            simulation.handle(ctl).setDataSinkDisabled(false);
+        }, 200000);
+        run(exec, 200000 + Node.STATUS_CHECK_PERIOD + 10 * Node.DRAIN_PERIOD);
+
+        var statistics = statistics(results, ctl);
+        ctx.destroy("test ended");
+        assertTrue(buffered[0] > 0, "buffered while the sink was down");
+        assertEquals(0L, statistics.getBufferedBytes());
+        assertTrue(statistics.getDrained() > 0, "drained after the sink recovered");
+        assertEquals(0L, statistics.getLost());
+    }
+
+    /**
+     * a node forwards buffered data into the mesh no faster than the radio sends it
+     */
+    @Test
+    void testNodeDrainIsPacedByTheRadio() throws Exception {
+        var simulation = simulation();
+        simulation.add("ctl", 0, 0, true);
+        var n1 = simulation.add("n1", 1000, 0);
+        var results = new ResultsCollector();
+        var exec = new PartitionedExecutor();
+        var ctx = deploy(simulation, exec, results);
+
+        long[] buffered = new long[1];
+        int[] maxQueued = new int[1];
+        exec.schedule(() -> {
+            buffered[0] = statistics(results, n1).getBufferedBytes();
+            simulation.handle(n1).setX(0.5);
+        }, 300000);
+        for (long t = 300000; t < 1000000; t += 500) {
+            exec.schedule(() -> maxQueued[0] = Math.max(maxQueued[0], simulation.handle(n1).queued()), t);
+        }
+        run(exec, 1000000);
+
+        var statistics = statistics(results, n1);
+        ctx.destroy("test ended");
+        assertTrue(buffered[0] > 0, "buffered before joining");
+        assertEquals(0L, statistics.getBufferedBytes());
+        // the join volleys are queued at once, the backlog only tops the queue up
+        int limit = 2 * Node.JOIN_VOLLEY + Node.DRAIN_QUEUE_LIMIT + 4;
+        assertTrue(statistics.getDrained() > 2 * limit, "backlog larger than the limit");
+        assertTrue(maxQueued[0] <= limit, "radio queue grew to " + maxQueued[0]);
+    }
+
+    private static Simulation simulation() throws Exception {
+        var simulation = new Simulation();
+        simulation.setDirectory(Files.createTempDirectory("drain"));
+        simulation.partitions = 1;
+        simulation.dataFeedPeriod = 2000;
+        return simulation;
+    }
+
+    private static Context deploy(Simulation simulation, PartitionedExecutor exec, ResultsCollector results) {
+        return new Context.Builder()
+                .register(simulation)
+                .register(new FileClient())
+                .register(exec)
+                .register(new SilentLogger())
+                .register(results)
+                .build().deploy();
+    }
+
+    private static void run(PartitionedExecutor exec, long until) throws InterruptedException {
+        var end = new CountDownLatch(1);
+        exec.schedule(() -> {
+            exec.pause(true);
+            end.countDown();
+        }, until);
+        exec.pause(false);
+        end.await();
+    }
+
+    private static NodeStatistics statistics(ResultsCollector results, NodeSimulationSpecs specs) {
+        NodeStatistics latest = null;
+        for (var s : results.statistics()) if (s.getNodeId() == specs.id()) latest = s;
+        return latest;
+    }
+}
@@ -0,0 +1,76 @@
+package v2.simulation.test;
+
+import org.junit.jupiter.api.Test;
+import v2.core.domain.ChannelInfo;
+import v2.core.domain.message.Message;
+import v2.simulation.replay.EventLog;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventLogTest {
+
+    private static final ChannelInfo OTHER = new ChannelInfo("c000001a1745");
+
+    @Test
+    void testRoundTripInOrder() throws Exception {
+        var file = Files.createTempFile("events", ".bin");
+        try (var writer = new EventLog.Writer(file, 42)) {
+            // reported out of order, as by several partitions
+            writer.delivered(1300, 1100, 2, 1, ChannelInfo.rendezvous, new Message(0x1234, (byte) 1, (byte) 2));
+            writer.transmitted(500, 1, ChannelInfo.rendezvous, new Message(0x1234, (byte) 1, (byte) 2));
+            writer.transmitted(500, 3, OTHER, new Message(0x4321));
+            writer.flush(1000);
+            writer.delivered(1300, 1100, 2, 1, ChannelInfo.rendezvous, new Message(0x1234, (byte) 1, (byte) 2));
+            assertEquals(2, writer.written());
+        }
+
+        List<EventLog.Event> events = new ArrayList<>();
+        try (var reader = new EventLog.Reader(file)) {
+            assertEquals(42, reader.seed);
+            for (var event = reader.next(); event != null; event = reader.next()) events.add(event);
+        }
+        assertEquals(4, events.size());
+        assertEquals(new EventLog.Event(EventLog.Kind.Transmission, 500, 1, 1, 500, ChannelInfo.rendezvous, new Message(0x1234, (byte) 1, (byte) 2)), events.get(0));
+        assertEquals(new EventLog.Event(EventLog.Kind.Transmission, 500, 3, 3, 500, OTHER, new Message(0x4321)), events.get(1));
+        assertEquals(new EventLog.Event(EventLog.Kind.Delivery, 1300, 2, 1, 1100, ChannelInfo.rendezvous, new Message(0x1234, (byte) 1, (byte) 2)), events.get(2));
+        assertEquals(events.get(2), events.get(3));
+    }
+
+    @Test
+    void testEventReportedAfterFlushIsKept() throws Exception {
+        var file = Files.createTempFile("events", ".bin");
+        try (var writer = new EventLog.Writer(file, 0)) {
+            writer.transmitted(2000, 1, ChannelInfo.rendezvous, new Message(1));
+            writer.flush(3000);
+            // too late to keep the order, written with a negative delta
+            writer.transmitted(1500, 2, ChannelInfo.rendezvous, new Message(2));
+            writer.transmitted(2500, 1, ChannelInfo.rendezvous, new Message(3));
+        }
+
+        List<Long> times = new ArrayList<>();
+        try (var reader = new EventLog.Reader(file)) {
+            for (var event = reader.next(); event != null; event = reader.next()) times.add(event.time);
+        }
+        assertEquals(List.of(2000L, 1500L, 2500L), times);
+    }
+
+    @Test
+    void testCompareFindsFirstDifference() throws Exception {
+        Path a = Files.createTempFile("events", ".bin"), b = Files.createTempFile("events", ".bin");
+        try (var left = new EventLog.Writer(a, 0); var right = new EventLog.Writer(b, 0)) {
+            for (int i = 0; i < 10; i++) {
+                left.transmitted(i * 1000L, 1, ChannelInfo.rendezvous, new Message(i));
+                right.transmitted(i * 1000L, 1, ChannelInfo.rendezvous, new Message(i == 7? 99 : i));
+            }
+        }
+        assertNull(EventLog.compare(a, a));
+        var difference = EventLog.compare(a, b);
+        assertNotNull(difference);
+        assertTrue(difference.startsWith("event 7:"), difference);
+    }
+}
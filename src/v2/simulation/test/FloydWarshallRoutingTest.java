@@ -0,0 +1,63 @@
+package v2.simulation.test;
+
+import org.junit.jupiter.api.Test;
+import v2.core.domain.message.MessageHeader;
+import v2.simulation.routing.FloydWarshallRouting;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FloydWarshallRoutingTest {
+
+    @Test
+    void testLine() {
+        Map<Integer, Map<Integer, Double>> retx = new HashMap<>();
+        retx.put(1, Map.of(2, 0.5));
+        retx.put(2, Map.of(1, 0.5, 3, 1.0));
+        retx.put(3, Map.of(2, 1.0));
+        retx.put(4, Map.of());
+        var routing = new FloydWarshallRouting(retx);
+        routing.solve();
+
+        assertEquals(3.0, routing.distance(3, 1));
+        assertEquals(Double.POSITIVE_INFINITY, routing.distance(1, 4));
+        assertEquals(Map.of(2, Set.of(3, 3 | MessageHeader.DOWNWARDS_BIT)), routing.routing(Set.of(1)));
+    }
+
+    @Test
+    void testParallelMatchesSequential() {
+        var random = new Random(7);
+        int n = 150;
+        double side = Math.sqrt(n);
+        double[] x = new double[n + 1], y = new double[n + 1];
+        for (int a = 1; a <= n; a++) {
+            x[a] = random.nextDouble() * side;
+            y[a] = random.nextDouble() * side;
+        }
+        Map<Integer, Map<Integer, Double>> retx = new HashMap<>();
+        for (int a = 1; a <= n; a++) {
+            Map<Integer, Double> links = new HashMap<>();
+            for (int b = 1; b <= n; b++) {
+                double d = Math.hypot(x[a] - x[b], y[a] - y[b]);
+                if (a != b && d < 1.6) links.put(b, 0.05 + random.nextDouble() * 0.95);
+            }
+            retx.put(a, links);
+        }
+
+        var sequential = new FloydWarshallRouting(retx);
+        sequential.solve();
+        var parallel = new FloydWarshallRouting(retx);
+        var pool = new ForkJoinPool(4);
+        parallel.solve(pool);
+        pool.shutdown();
+
+        for (int a = 1; a <= n; a++) {
+            for (int b = 1; b <= n; b++) {
+                assertEquals(sequential.distance(a, b), parallel.distance(a, b));
+            }
+        }
+        assertEquals(sequential.routing(Set.of(1, 77)), parallel.routing(Set.of(1, 77)));
+    }
+}
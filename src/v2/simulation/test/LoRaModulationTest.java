@@ -0,0 +1,30 @@
+package v2.simulation.test;
+
+import org.junit.jupiter.api.Test;
+import v2.core.domain.ChannelInfo;
+import v2.simulation.radio.LoRaModulation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LoRaModulationTest {
+
+    @Test
+    void testTimeOnAir() {
+        // reference values of the Semtech LoRa calculator, 125 kHz, CR 4/5, 8 preamble symbols, explicit header, crc
+        assertEquals(41.216, modulation(7).timeOnAirMillis(10), 1e-9);
+        assertEquals(185.344, modulation(9).timeOnAirMillis(20), 1e-9);
+        // low data rate optimization kicks in from SF11 on
+        assertEquals(991.232, modulation(12).timeOnAirMillis(10), 1e-9);
+    }
+
+    @Test
+    void testE32AirDataRate() {
+        assertEquals(9, LoRaModulation.of(ChannelInfo.rendezvous).spreadingFactor);
+        assertEquals(12, LoRaModulation.of(new ChannelInfo("c000001817ff")).spreadingFactor);
+        assertEquals(LoRaModulation.DEFAULT, LoRaModulation.of(new ChannelInfo("sim-channel")));
+    }
+
+    private static LoRaModulation modulation(int spreadingFactor) {
+        return new LoRaModulation(spreadingFactor, 125000, 1, 8, true, true);
+    }
+}
@@ -0,0 +1,53 @@
+package v2.simulation.test;
+
+import org.junit.jupiter.api.Test;
+import v2.simulation.domain.NodeSimulationSpecs;
+import v2.simulation.util.NeighbourIndex;
+import v2.simulation.util.ReceptionMatrix;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NeighbourIndexTest {
+
+    @Test
+    void testWithinMatchesScan() {
+        var index = new NeighbourIndex(new ReceptionMatrix());
+        Set<NodeSimulationSpecs> all = new HashSet<>();
+        var random = new Random(3);
+        for (int n = 0; n < 500; n++) {
+            var specs = new NodeSimulationSpecs(n, random.nextDouble() * 100 - 50, random.nextDouble() * 100 - 50, false);
+            index.add(specs);
+            all.add(specs);
+        }
+        double[][] areas = {{-10, -10, 10, 10}, {-50, -50, 50, 50}, {3.5, -20, 4.5, 20}, {-1e9, -1e9, 1e9, 1e9}, {60, 60, 70, 70}};
+        for (double[] area : areas) {
+            Set<NodeSimulationSpecs> expected = new HashSet<>();
+            for (var specs : all) {
+                if (specs.x() >= area[0] && specs.x() <= area[2] && specs.y() >= area[1] && specs.y() <= area[3]) expected.add(specs);
+            }
+            assertEquals(expected, new HashSet<>(index.within(area[0], area[1], area[2], area[3])));
+        }
+    }
+
+    @Test
+    void testClosestFollowsMoves() {
+        var index = new NeighbourIndex(new ReceptionMatrix());
+        var a = new NodeSimulationSpecs(1, 0, 0, false);
+        var b = new NodeSimulationSpecs(2, 7.9, 0, false);
+        index.add(a);
+        index.add(b);
+
+        assertEquals(b, index.closest(8.5, 0, 1));
+        assertNull(index.closest(20, 0, 1));
+
+        b.setX(20.2);
+        index.moved(b);
+        assertEquals(b, index.closest(20, 0, 1));
+        assertEquals(a, index.closest(0.5, 0, 1));
+        assertNull(index.closest(8.5, 0, 1));
+    }
+}
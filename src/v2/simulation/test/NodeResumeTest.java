@@ -0,0 +1,193 @@
+package v2.simulation.test;
+
+import org.junit.jupiter.api.Test;
+import v2.core.context.Context;
+import v2.core.domain.ChannelInfo;
+import v2.core.domain.NodeState;
+import v2.core.domain.message.Message;
+import v2.core.domain.message.MessageType;
+import v2.core.domain.node.Node;
+import v2.shared.integration.FileClient;
+import v2.shared.measurements.ResultsCollector;
+import v2.shared.testing.SilentLogger;
+import v2.simulation.Simulation;
+import v2.simulation.impl.PartitionedExecutor;
+import v2.simulation.impl.SimulatedLoRaMeshModule;
+import v2.simulation.radio.RadioMedium;
+
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NodeResumeTest {
+
+    /**
+     * a node losing power resumes from the state saved last, which may be several messages old
+     */
+    @Test
+    void testResumeAfterPowerLossReusesNoCounter() throws Exception {
+        var simulation = new Simulation();
+        var dir = Files.createTempDirectory("resume");
+        simulation.setDirectory(dir);
+        simulation.partitions = 1;
+        simulation.dataFeedPeriod = 2000;
+        simulation.add("ctl", 0, 0, true);
+        var node = simulation.add("n1", 0.5, 0);
+
+        var exec = new PartitionedExecutor();
+        var ctx = new Context.Builder()
+                .register(simulation)
+                .register(new FileClient())
+                .register(exec)
+                .register(new SilentLogger())
+                .register(new ResultsCollector())
+                .build().deploy();
+        // counters sent by the node, hello and uplink apart
+        List<Integer> hellos = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> uplinks = Collections.synchronizedList(new ArrayList<>());
+        simulation.medium().setListener(new RadioMedium.Listener() {
+            @Override
+            public void transmitted(long time, long sender, ChannelInfo channel, Message message) {
+                if (sender != node.id() || MessageType.Downwards.matches(message)) return;
+                (MessageType.Hello.matches(message)? hellos : uplinks).add(message.getCounter());
+            }
+
+            @Override
+            public void delivered(long time, long arrival, long receiver, long sender, ChannelInfo channel, Message message) {
+            }
+        });
+
+        var stateFile = dir.resolve(Simulation.STATE_DIR).resolve(String.valueOf(node.id())).resolve("node.state");
+        NodeState[] saved = new NodeState[1];
+        int[] sentBefore = new int[2];
+        var end = new CountDownLatch(1);
+        exec.schedule(() -> {
+            try {
+                assertTrue(simulation.handle(node).address() > 0, "n1 joined");
+                byte[] lastSaved = Files.readAllBytes(stateFile);
+                saved[0] = NodeState.parse(lastSaved);
+                sentBefore[0] = hellos.size();
+                sentBefore[1] = uplinks.size();
+                simulation.restart(node);
+                // the power loss leaves the state of before, not the one saved on shutdown
+                Files.write(stateFile, lastSaved);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }, 250000);
+        exec.schedule(() -> {
+            exec.pause(true);
+            end.countDown();
+        }, 300000);
+        exec.pause(false);
+        end.await();
+        assertTrue(simulation.handle(node).state() != null, "n1 resumed");
+        ctx.destroy("test ended");
+
+        assertNoReuse(saved[0].helloCounter, hellos, sentBefore[0]);
+        assertNoReuse(saved[0].uplinkCounter, uplinks, sentBefore[1]);
+    }
+
+    /**
+     * the radio of a node context stops triggering when the context is destroyed, the executor shard lives on
+     */
+    @Test
+    void testRestartStopsTriggersOfTheOldContext() throws Exception {
+        var simulation = new Simulation();
+        simulation.setDirectory(Files.createTempDirectory("resume"));
+        simulation.partitions = 1;
+        var ctl = simulation.add("ctl", 0, 0, true);
+
+        var exec = new PartitionedExecutor();
+        var results = new ResultsCollector();
+        var ctx = new Context.Builder()
+                .register(simulation)
+                .register(new FileClient())
+                .register(exec)
+                .register(new SilentLogger())
+                .register(results)
+                .build().deploy();
+        var end = new CountDownLatch(1);
+        exec.schedule(() -> simulation.restart(ctl), 50000);
+        exec.schedule(() -> {
+            exec.pause(true);
+            end.countDown();
+        }, 100000);
+        exec.pause(false);
+        end.await();
+
+        long triggers = 0;
+        for (var s : results.statistics()) {
+            triggers += s.getEmptyTriggers() + s.getDataTriggers() + s.getHelloTriggers() + s.getRoutingTriggers() + s.getOtherTriggers();
+        }
+        ctx.destroy("test ended");
+        long expected = 100000 / SimulatedLoRaMeshModule.TRIGGER_PERIOD;
+        assertTrue(Math.abs(triggers - expected) <= 2, triggers + " triggers in " + expected + " periods");
+    }
+
+    /**
+     * a node resuming with an address that belongs to a neighbour gives up its state and joins again
+     */
+    @Test
+    void testResumeWithTakenAddressRejoins() throws Exception {
+        var simulation = new Simulation();
+        var dir = Files.createTempDirectory("resume");
+        simulation.setDirectory(dir);
+        simulation.partitions = 1;
+        simulation.add("ctl", 0, 0, true);
+        var n1 = simulation.add("n1", 0.5, 0);
+        var n2 = simulation.add("n2", 0, 0.5);
+
+        var exec = new PartitionedExecutor();
+        var ctx = new Context.Builder()
+                .register(simulation)
+                .register(new FileClient())
+                .register(exec)
+                .register(new SilentLogger())
+                .register(new ResultsCollector())
+                .build().deploy();
+
+        var states = dir.resolve(Simulation.STATE_DIR);
+        int[] addresses = new int[2];
+        var end = new CountDownLatch(1);
+        exec.schedule(() -> {
+            try {
+                addresses[0] = simulation.handle(n1).address();
+                addresses[1] = simulation.handle(n2).address();
+                byte[] taken = Files.readAllBytes(states.resolve(String.valueOf(n1.id())).resolve("node.state"));
+                simulation.restart(n2);
+                Files.write(states.resolve(String.valueOf(n2.id())).resolve("node.state"), taken);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }, 250000);
+        // before the resume times out for lack of confirmation
+        int[] beforeTimeout = new int[1];
+        exec.schedule(() -> beforeTimeout[0] = simulation.handle(n2).address(), 250000 + Node.RESUME_TIMEOUT - 5000);
+        exec.schedule(() -> {
+            exec.pause(true);
+            end.countDown();
+        }, 700000);
+        exec.pause(false);
+        end.await();
+        int rejoined = simulation.handle(n2).address();
+        ctx.destroy("test ended");
+
+        assertTrue(addresses[0] > 0 && addresses[1] > 0 && addresses[0] != addresses[1], "both joined");
+        assertNotEquals(addresses[0], beforeTimeout[0], "n2 kept the address of n1");
+        assertEquals(addresses[1], rejoined);
+    }
+
+    /**
+     * @param savedCounter next counter as saved, the ones after it up to the power loss are gone from the state
+     */
+    private static void assertNoReuse(int savedCounter, List<Integer> sent, int sentBefore) {
+        Set<Integer> unsaved = new HashSet<>();
+        for (int i = sentBefore - 1; i >= 0 && sent.get(i) != (savedCounter + 31) % 32; i--) unsaved.add(sent.get(i));
+        assertTrue(sent.size() > sentBefore, "sent after resuming");
+        int resumed = sent.get(sentBefore);
+        assertFalse(unsaved.contains(resumed), String.format("counter %d sent again after resuming from %d", resumed, savedCounter));
+    }
+}
@@ -0,0 +1,123 @@
+package v2.simulation.test;
+
+import org.junit.jupiter.api.Test;
+import v2.core.concurrency.Executor;
+import v2.core.context.Context;
+import v2.shared.testing.SilentLogger;
+import v2.simulation.domain.NodeSimulationSpecs;
+import v2.simulation.impl.PartitionedExecutor;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Nodes on a line exchange messages with their neighbours, delayed by the lookahead.
+ * Every node logs what it sees; the logs must not depend on the number of partitions.
+ */
+class PartitionedExecutorTest {
+
+    private static final long LOOKAHEAD = 1000;
+    private static final int NODES = 60;
+    private static final long DURATION = 120000;
+
+    @Test
+    void testSameResultForAnyPartitioning() throws Exception {
+        var sequential = run(1);
+        assertEquals(NODES, sequential.size());
+        for (var log : sequential) assertTrue(log.size() > DURATION / LOOKAHEAD, "node barely ran");
+        assertEquals(sequential, run(2));
+        assertEquals(sequential, run(4));
+        assertEquals(sequential, run(7));
+    }
+
+    @Test
+    void testLookaheadViolationFails() throws Exception {
+        var exec = new PartitionedExecutor();
+        var ctx = new Context.Builder().register(new TestConfig(2)).register(new SilentLogger()).register(exec).build().deploy();
+        var a = exec.shard(new NodeSimulationSpecs("a", 0, 0, false));
+        var b = exec.shard(new NodeSimulationSpecs("b", 10, 0, false));
+        var failure = new AtomicReference<Exception>();
+        var done = new CountDownLatch(1);
+        a.schedule(() -> {
+            try {
+                b.schedule(() -> {}, LOOKAHEAD / 2);
+            } catch (IllegalStateException e) {
+                failure.set(e);
+            }
+            done.countDown();
+        }, 100);
+        exec.pause(false);
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        ctx.destroy("test ended");
+        assertNotNull(failure.get());
+    }
+
+    private static List<List<String>> run(int partitions) throws Exception {
+        var exec = new PartitionedExecutor();
+        var ctx = new Context.Builder().register(new TestConfig(partitions)).register(new SilentLogger()).register(exec).build().deploy();
+
+        List<Executor> shards = new ArrayList<>();
+        List<List<String>> logs = new ArrayList<>();
+        for (int n = 0; n < NODES; n++) {
+            shards.add(exec.shard(new NodeSimulationSpecs("n" + n, n, 0, false)));
+            logs.add(new ArrayList<>());
+        }
+        // every entry is only touched by the events of its own node
+        long[] state = new long[NODES];
+        for (int n = 0; n < NODES; n++) {
+            final int node = n;
+            var random = new Random(n);
+            shards.get(n).schedulePeriodic(() -> {
+                state[node] = state[node] * 31 + random.nextInt(1000);
+                logs.get(node).add(exec.millis() + " tick " + state[node]);
+                // a neighbour on either side, sometimes one further away
+                int target = Math.floorMod(node + (random.nextBoolean()? 1 : -1) * (1 + random.nextInt(3)), NODES);
+                long value = state[node];
+                int copies = 1 + random.nextInt(3);
+                for (int c = 0; c < copies; c++) {
+                    shards.get(target).schedule(() -> {
+                        state[target] ^= value;
+                        logs.get(target).add(exec.millis() + " from " + node + " " + value);
+                    }, LOOKAHEAD + random.nextInt(1500));
+                }
+                // local follow-up inside the window
+                shards.get(node).schedule(() -> logs.get(node).add(exec.millis() + " local " + state[node]), random.nextInt(200));
+            }, LOOKAHEAD, random.nextInt((int) LOOKAHEAD));
+        }
+
+        var end = new CountDownLatch(1);
+        exec.schedule(() -> {
+            exec.pause(true);
+            end.countDown();
+        }, DURATION);
+        exec.pause(false);
+        assertTrue(end.await(30, TimeUnit.SECONDS), "run did not end");
+        ctx.destroy("test ended");
+        assertEquals(Math.min(partitions, NODES), exec.populatedPartitions());
+        return logs;
+    }
+
+    private static class TestConfig implements PartitionedExecutor.Config {
+        private final int partitions;
+
+        TestConfig(int partitions) {
+            this.partitions = partitions;
+        }
+
+        @Override
+        public int partitions() {
+            return partitions;
+        }
+
+        @Override
+        public long lookahead() {
+            return LOOKAHEAD;
+        }
+    }
+}
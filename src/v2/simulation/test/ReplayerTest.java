@@ -0,0 +1,74 @@
+package v2.simulation.test;
+
+import org.junit.jupiter.api.Test;
+import v2.core.context.Context;
+import v2.shared.integration.FileClient;
+import v2.shared.measurements.ResultsCollector;
+import v2.shared.testing.SilentLogger;
+import v2.simulation.Simulation;
+import v2.simulation.impl.PartitionedExecutor;
+import v2.simulation.replay.EventLog;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplayerTest {
+
+    private static final long DURATION = 300000;
+
+    /**
+     * unchanged nodes fed with the recorded deliveries get and send exactly what they did in the recording
+     */
+    @Test
+    void testReplayDeliversAsRecorded() throws Exception {
+        var dir = Files.createTempDirectory("replay");
+        var recording = dir.resolve("recorded.bin");
+        var replayed = dir.resolve("replayed.bin");
+
+        run(dir.resolve("record"), recording, null);
+        var simulation = run(dir.resolve("replay"), replayed, recording);
+
+        assertEquals(0, (long) simulation.replayer().dropped().value());
+        long deliveries = 0;
+        try (var reader = new EventLog.Reader(recording)) {
+            for (var event = reader.next(); event != null; event = reader.next()) {
+                if (event.kind == EventLog.Kind.Delivery) deliveries++;
+            }
+        }
+        assertTrue(deliveries > 0, "nothing delivered in the recording");
+        assertNull(EventLog.compare(recording, replayed));
+    }
+
+    private static Simulation run(Path directory, Path record, Path replay) throws Exception {
+        var simulation = new Simulation();
+        simulation.setDirectory(Files.createDirectories(directory));
+        simulation.partitions = 1;
+        simulation.seed = 7;
+        simulation.add("ctl", 0, 0, true);
+        simulation.add("n1", 0.5, 0);
+        simulation.add("n2", 1, 0);
+        simulation.record(record);
+        if (replay != null) simulation.replay(replay);
+
+        var exec = new PartitionedExecutor();
+        var ctx = new Context.Builder()
+                .register(simulation)
+                .register(new FileClient())
+                .register(exec)
+                .register(new SilentLogger())
+                .register(new ResultsCollector())
+                .build().deploy();
+        var end = new CountDownLatch(1);
+        exec.schedule(() -> {
+            exec.pause(true);
+            end.countDown();
+        }, DURATION);
+        exec.pause(false);
+        end.await();
+        ctx.destroy("test ended");
+        return simulation;
+    }
+}
@@ -0,0 +1,172 @@
+package v2.simulation.test;
+
+import org.junit.jupiter.api.Test;
+import v2.core.domain.message.MessageHeader;
+import v2.simulation.routing.FloydWarshallRouting;
+import v2.simulation.routing.RoutingEngine;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RoutingEngineTest {
+
+    private static final int NODES = 40;
+
+    @Test
+    void testLine() {
+        var engine = new RoutingEngine(8);
+        for (int a = 1; a <= 4; a++) engine.setLive(a, true);
+        engine.setController(1, true);
+        engine.update(1, Map.of(2, 1.0));
+        engine.update(2, Map.of(1, 1.0, 3, 1.0));
+        engine.update(3, Map.of(2, 1.0, 4, 1.0));
+        engine.update(4, Map.of(3, 1.0));
+
+        assertEquals(Set.of(3, 4, 3 | MessageHeader.DOWNWARDS_BIT, 4 | MessageHeader.DOWNWARDS_BIT), engine.routing(2));
+        assertEquals(Set.of(4, 4 | MessageHeader.DOWNWARDS_BIT), engine.routing(3));
+        assertEquals(Set.of(), engine.routing(4));
+    }
+
+    /**
+     * links cost the expected number of transmissions, the inverse of their reliability
+     */
+    @Test
+    void testLinkCostIsExpectedTransmissions() {
+        linkCostIsExpectedTransmissions(new RoutingEngine(8));
+    }
+
+    @Test
+    void testAllPairsLinkCostIsExpectedTransmissions() {
+        linkCostIsExpectedTransmissions(new RoutingEngine(8, 0, true));
+    }
+
+    private static void linkCostIsExpectedTransmissions(RoutingEngine engine) {
+        for (int a = 1; a <= 3; a++) engine.setLive(a, true);
+        engine.setController(1, true);
+        // direct 1 / 0.3 = 3.3 against 2 * 1 / 0.9 = 2.2 through 2
+        engine.update(1, Map.of(2, 0.9, 3, 0.3));
+        engine.update(2, Map.of(1, 0.9, 3, 0.9));
+        engine.update(3, Map.of(1, 0.3, 2, 0.9));
+        assertEquals(Set.of(3, 3 | MessageHeader.DOWNWARDS_BIT), engine.routing(2));
+
+        // direct 1 / 0.6 = 1.7 against 2.2 through 2
+        engine.update(1, Map.of(2, 0.9, 3, 0.6));
+        engine.update(3, Map.of(1, 0.6, 2, 0.9));
+        assertEquals(Set.of(), engine.routing(2));
+    }
+
+    @Test
+    void testMatchesFloydWarshall() {
+        matchesFloydWarshall(new RoutingEngine(NODES + 1));
+    }
+
+    @Test
+    void testAllPairsMatchesFloydWarshall() {
+        matchesFloydWarshall(new RoutingEngine(NODES + 1, 0, true));
+    }
+
+    private static void matchesFloydWarshall(RoutingEngine engine) {
+        var random = new Random(3);
+        Map<Integer, Map<Integer, Double>> retx = new HashMap<>();
+        for (int a = 1; a <= NODES; a++) {
+            retx.put(a, randomLinks(random, a));
+            engine.setLive(a, true);
+        }
+        Set<Integer> controllers = new HashSet<>(List.of(1, 2));
+        controllers.forEach(c -> engine.setController(c, true));
+        retx.forEach(engine::update);
+        assertSameRouting(engine, retx, controllers);
+
+        for (int round = 0; round < 200; round++) {
+            int a = 1 + random.nextInt(NODES);
+            var links = retx.get(a);
+            int target = 1 + random.nextInt(NODES);
+            if (target != a) {
+                if (random.nextInt(4) == 0) links.remove(target);
+                else links.put(target, 0.05 + random.nextDouble() * 0.95);
+            }
+            engine.update(a, links);
+            if (round % 20 == 0) assertSameRouting(engine, retx, controllers);
+        }
+        assertSameRouting(engine, retx, controllers);
+    }
+
+    @Test
+    void testLivenessAndControllerChanges() {
+        livenessAndControllerChanges(new RoutingEngine(NODES + 1));
+    }
+
+    @Test
+    void testAllPairsLivenessAndControllerChanges() {
+        livenessAndControllerChanges(new RoutingEngine(NODES + 1, 0, true));
+    }
+
+    private static void livenessAndControllerChanges(RoutingEngine engine) {
+        var random = new Random(5);
+        Map<Integer, Map<Integer, Double>> all = new HashMap<>();
+        for (int a = 1; a <= NODES; a++) {
+            all.put(a, randomLinks(random, a));
+            engine.setLive(a, true);
+            engine.update(a, all.get(a));
+        }
+        engine.setController(1, true);
+        Map<Integer, Map<Integer, Double>> live = new HashMap<>(all);
+        assertSameRouting(engine, live, Set.of(1));
+
+        for (int a = 10; a < 20; a++) {
+            engine.setLive(a, false);
+            live.remove(a);
+        }
+        assertSameRouting(engine, live, Set.of(1));
+
+        engine.setController(25, true);
+        assertSameRouting(engine, live, Set.of(1, 25));
+
+        engine.setController(1, false);
+        engine.setLive(12, true);
+        live.put(12, all.get(12));
+        assertSameRouting(engine, live, Set.of(25));
+    }
+
+    @Test
+    void testEpochCache() {
+        var engine = new RoutingEngine(8, 0.1);
+        for (int a = 1; a <= 3; a++) engine.setLive(a, true);
+        engine.setController(1, true);
+        engine.update(1, Map.of(2, 0.5));
+        engine.update(2, Map.of(1, 0.5, 3, 0.5));
+        engine.update(3, Map.of(2, 0.5));
+        long epoch = engine.epoch();
+
+        assertEquals(Set.of(3, 3 | MessageHeader.DOWNWARDS_BIT), engine.routing(2));
+        assertEquals(Set.of(), engine.routing(3));
+        assertEquals(1, (long) engine.misses().value());
+        assertEquals(1, (long) engine.hits().value());
+
+        engine.update(2, Map.of(1, 0.55, 3, 0.45));
+        assertEquals(epoch, engine.epoch());
+        assertEquals(Set.of(3, 3 | MessageHeader.DOWNWARDS_BIT), engine.routing(2));
+        assertEquals(1, (long) engine.misses().value());
+
+        engine.update(2, Map.of(1, 0.55));
+        assertEquals(epoch + 1, engine.epoch());
+        assertEquals(Set.of(3), engine.routing(2));
+        assertEquals(2, (long) engine.misses().value());
+    }
+
+    private static Map<Integer, Double> randomLinks(Random random, int address) {
+        Map<Integer, Double> links = new HashMap<>();
+        for (int i = 0; i < 4; i++) {
+            int target = 1 + random.nextInt(NODES);
+            if (target != address) links.put(target, 0.05 + random.nextDouble() * 0.95);
+        }
+        return links;
+    }
+
+    private static void assertSameRouting(RoutingEngine engine, Map<Integer, Map<Integer, Double>> retx, Set<Integer> controllers) {
+        for (int address : retx.keySet()) {
+            assertEquals(FloydWarshallRouting.routing(retx, controllers, address), engine.routing(address), "routing of " + address);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package v2.simulation.test;
+
+import org.junit.jupiter.api.Test;
+import v2.core.domain.node.Node;
+import v2.simulation.batch.Scenario;
+import v2.simulation.domain.NodeSimulationSpecs;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScenarioTest {
+
+    @Test
+    void testParsesNodesAndLinks() throws Exception {
+        var file = Files.createTempFile("mesh", ".properties");
+        Files.writeString(file, String.join("\n",
+                "duration=120",
+                "node.ctl=0,0,controller",
+                "node.n1 = 1.5 , 2",
+                "link.n1.ctl=0.9",
+                "compact=true"));
+        var scenario = Scenario.load(file);
+        assertEquals(file.getFileName().toString().replace(".properties", ""), scenario.name);
+        assertEquals(120000L, scenario.duration);
+        assertTrue(scenario.compact);
+        assertFalse(scenario.allPairsRouting);
+        assertEquals(2, scenario.size());
+
+        var runs = scenario.expand();
+        assertEquals(1, runs.size());
+        var run = runs.get(0);
+        assertEquals(0L, run.seed);
+        assertEquals(Node.HELLO_PERIOD, run.helloPeriod);
+        assertEquals(Node.ROUTING_CHECK_PERIOD, run.routingCheckPeriod);
+
+        var specs = byId(run.simulation().specs());
+        var ctl = specs.get(NodeSimulationSpecs.idOf("ctl"));
+        var n1 = specs.get(NodeSimulationSpecs.idOf("n1"));
+        assertFalse(ctl.pceDisabled());
+        assertTrue(n1.pceDisabled());
+        assertEquals(1.5, n1.x());
+        assertEquals(2.0, n1.y());
+        assertEquals(0.9, n1.reception.get(ctl.id()));
+        assertTrue(ctl.reception.isEmpty());
+        assertEquals(Node.HELLO_PERIOD, n1.helloPeriod());
+    }
+
+    @Test
+    void testFirstNodeIsControllerByDefault() {
+        var scenario = scenario("node.b=1,0", "node.a=0,0");
+        var specs = byId(scenario.expand().get(0).simulation().specs());
+        assertFalse(specs.get(NodeSimulationSpecs.idOf("a")).pceDisabled());
+        assertTrue(specs.get(NodeSimulationSpecs.idOf("b")).pceDisabled());
+    }
+
+    @Test
+    void testExpandSweepsEveryCombination() {
+        var scenario = scenario("name=sweep", "node.a=0,0", "seed=1,2,3", "hello_period=10000, 20000", "data_feed_period=4000");
+        var runs = scenario.expand();
+        assertEquals(6, runs.size());
+        Set<List<Long>> combinations = new HashSet<>();
+        for (int i = 0; i < runs.size(); i++) {
+            var run = runs.get(i);
+            assertEquals(i, run.index);
+            assertEquals(String.format("sweep-%03d", i), run.name());
+            assertEquals(4000L, run.dataFeedPeriod);
+            combinations.add(List.of(run.seed, run.helloPeriod));
+            var specs = run.simulation().specs().get(0);
+            assertEquals(run.helloPeriod, specs.helloPeriod());
+        }
+        assertEquals(6, combinations.size());
+        assertTrue(combinations.contains(List.of(3L, 20000L)));
+    }
+
+    @Test
+    void testGridTopology() {
+        var scenario = scenario("topology=grid 3 2 1.5", "link.g001002.g000002=0.5");
+        assertEquals(6, scenario.size());
+        var specs = byId(scenario.expand().get(0).simulation().specs());
+        var corner = specs.get(NodeSimulationSpecs.idOf("g001002"));
+        assertEquals(3.0, corner.x());
+        assertEquals(1.5, corner.y());
+        assertEquals(0.5, corner.reception.get(NodeSimulationSpecs.idOf("g000002")));
+        assertFalse(specs.get(NodeSimulationSpecs.idOf("g000000")).pceDisabled());
+    }
+
+    @Test
+    void testRandomTopology() {
+        var scenario = scenario("node.ctl=-1,-1,controller", "topology=random 50 10 7");
+        assertEquals(51, scenario.size());
+        var first = positions(scenario);
+        assertEquals(first, positions(scenario("node.ctl=-1,-1,controller", "topology=random 50 10 7")));
+        assertNotEquals(first, positions(scenario("node.ctl=-1,-1,controller", "topology=random 50 10 8")));
+        for (var specs : scenario.expand().get(0).simulation().specs()) {
+            if (specs.id() == NodeSimulationSpecs.idOf("ctl")) continue;
+            assertTrue(specs.x() >= 0 && specs.x() < 10 && specs.y() >= 0 && specs.y() < 10);
+            assertTrue(specs.pceDisabled());
+        }
+    }
+
+    @Test
+    void testRejectsInvalidScenarios() {
+        assertThrows(IllegalArgumentException.class, () -> scenario("node.a=0"));
+        assertThrows(IllegalArgumentException.class, () -> scenario("node.a=0,0", "link.a.b=0.5"));
+        assertThrows(IllegalArgumentException.class, () -> scenario("topology=hexagon 3"));
+        assertThrows(IllegalArgumentException.class, () -> scenario("node.gateway-north=0,0", "node.gateway-south=1,0"));
+        // differing within the first 8 bytes is enough
+        assertEquals(2, scenario("node.sensor-n=0,0", "node.sensor-s=1,0").size());
+    }
+
+    private static Scenario scenario(String... lines) {
+        var properties = new Properties();
+        try {
+            properties.load(new StringReader(String.join("\n", lines)));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return Scenario.of("test", properties);
+    }
+
+    private static Map<Long, NodeSimulationSpecs> byId(List<NodeSimulationSpecs> specs) {
+        return specs.stream().collect(Collectors.toMap(NodeSimulationSpecs::id, s -> s));
+    }
+
+    private static List<List<Double>> positions(Scenario scenario) {
+        return scenario.expand().get(0).simulation().specs().stream().map(s -> List.of(s.x(), s.y())).collect(Collectors.toList());
+    }
+}
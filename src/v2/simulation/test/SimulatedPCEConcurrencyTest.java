@@ -0,0 +1,137 @@
+package v2.simulation.test;
+
+import org.junit.jupiter.api.Test;
+import v2.core.concurrency.Clock;
+import v2.core.context.Context;
+import v2.core.domain.PceCommand;
+import v2.core.domain.message.MessageType;
+import v2.core.domain.node.NodeStatus;
+import v2.core.util.MessageUtil;
+import v2.shared.impl.LocalCorrespondenceRegister;
+import v2.shared.testing.SilentLogger;
+import v2.simulation.impl.SimulatedNodeData;
+import v2.simulation.impl.SimulatedPCE;
+import v2.simulation.routing.FloydWarshallRouting;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Several controllers feed the same pce at once, each with its own nodes plus a few nodes that all of them report.
+ */
+class SimulatedPCEConcurrencyTest {
+
+    private static final int CONTROLLERS = 8;
+    private static final int NODES_PER_CONTROLLER = 5;
+    private static final int SHARED_NODES = 4;
+    private static final int MESSAGES_PER_NODE = 24;
+    private static final int SKIP_EVERY = 7;
+
+    @Test
+    void testParallelFeeds() throws Exception {
+        var pce = new SimulatedPCE(0);
+        new Context.Builder().register(new SilentLogger()).register(Clock.SYSTEM).register(pce).build();
+
+        Map<Long, Integer> sharedAddresses = new ConcurrentHashMap<>();
+        Map<Integer, Set<Integer>> expectedMissing = new ConcurrentHashMap<>();
+        var start = new CountDownLatch(1);
+        var pool = Executors.newFixedThreadPool(CONTROLLERS);
+        List<Future<List<Integer>>> futures = new ArrayList<>();
+        for (int c = 0; c < CONTROLLERS; c++) {
+            final long controllerId = 1000 + c;
+            futures.add(pool.submit(() -> {
+                start.await();
+                return feedAsController(pce, controllerId, sharedAddresses, expectedMissing);
+            }));
+        }
+        start.countDown();
+        Set<Integer> addresses = new HashSet<>();
+        for (var future : futures) {
+            for (int address : future.get(60, TimeUnit.SECONDS)) {
+                assertTrue(addresses.add(address), "address assigned twice: " + address);
+            }
+        }
+        pool.shutdown();
+        assertEquals(SHARED_NODES, sharedAddresses.size());
+        addresses.addAll(sharedAddresses.values());
+        assertEquals(CONTROLLERS * (NODES_PER_CONTROLLER + 1) + SHARED_NODES, addresses.size());
+
+        expectedMissing.forEach((address, missing) -> {
+            var register = (LocalCorrespondenceRegister) pce.correspondence(address);
+            assertEquals(missing, new HashSet<>(register.missing()), "missing messages of " + address);
+        });
+
+        // a final feed pushes the routing of the latest epoch, which must match a calculation from scratch
+        int anyController = pce.allocateAddress(1000, (byte) -1, -1);
+        pce.feed(1000, LocalCorrespondenceRegister.from(anyController).pack(MessageType.Data));
+        Map<Integer, Map<Integer, Double>> retx = new HashMap<>();
+        Set<Integer> controllers = new HashSet<>();
+        for (SimulatedNodeData node : pce.liveNodes()) {
+            retx.put(node.address, node.getRetx());
+            if (node.status == NodeStatus.Controller) controllers.add(node.address);
+        }
+        assertEquals(CONTROLLERS, controllers.size());
+        for (SimulatedNodeData node : pce.liveNodes()) {
+            assertEquals(FloydWarshallRouting.routing(retx, controllers, node.address), node.getRouting(), "routing of " + node.address);
+        }
+    }
+
+    /**
+     * @return addresses of the controller and its own nodes
+     */
+    private static List<Integer> feedAsController(SimulatedPCE pce, long controllerId,
+                                                  Map<Long, Integer> sharedAddresses, Map<Integer, Set<Integer>> expectedMissing) {
+        var random = new Random(controllerId);
+        int controllerAddress = pce.allocateAddress(controllerId, (byte) -1, -1);
+        var uplink = LocalCorrespondenceRegister.from(controllerAddress);
+
+        List<Integer> own = new ArrayList<>();
+        own.add(controllerAddress);
+        for (int i = 0; i < NODES_PER_CONTROLLER; i++) {
+            own.add(join(pce, controllerId, uplink, controllerId * 100 + i));
+        }
+        for (long sid = 1; sid <= SHARED_NODES; sid++) {
+            int address = join(pce, controllerId, uplink, sid);
+            Integer previous = sharedAddresses.putIfAbsent(sid, address);
+            if (previous != null) assertEquals((long) previous, address);
+        }
+
+        List<LocalCorrespondenceRegister> senders = new ArrayList<>();
+        for (int address : own.subList(1, own.size())) senders.add(LocalCorrespondenceRegister.from(address));
+        for (int m = 0; m < MESSAGES_PER_NODE; m++) {
+            for (var sender : senders) {
+                if (m % SKIP_EVERY == SKIP_EVERY - 1) {
+                    expectedMissing.computeIfAbsent(sender.address(), k -> ConcurrentHashMap.newKeySet()).add(sender.sendingCounter());
+                    sender.packAndIncrement(MessageType.Data);
+                } else if (m % 3 == 0) {
+                    pce.feed(controllerId, sender.packAndIncrement(MessageType.UpwardsRouting, links(random, sender.address())));
+                } else {
+                    pce.feed(controllerId, sender.packAndIncrement(MessageType.Data, (byte) m));
+                }
+            }
+            if (m % 3 == 0) {
+                pce.feed(controllerId, uplink.packAndIncrement(MessageType.UpwardsRouting, links(random, controllerAddress)));
+            }
+        }
+        return own;
+    }
+
+    private static int join(SimulatedPCE pce, long controllerId, LocalCorrespondenceRegister uplink, long sid) {
+        var commands = pce.feed(controllerId, uplink.packAndIncrement(MessageType.UpwardsJoin, MessageUtil.sidToJoinData(sid)));
+        return commands.stream().filter(c -> c.type == PceCommand.Type.Invite).findFirst().orElseThrow().address;
+    }
+
+    private static byte[] links(Random random, int address) {
+        int limit = CONTROLLERS * (NODES_PER_CONTROLLER + 1) + SHARED_NODES;
+        byte[] data = new byte[8];
+        for (int i = 0; i < data.length; i += 2) {
+            int target = 1 + random.nextInt(limit);
+            data[i] = (byte) (target == address? 1 + target % limit : target);
+            data[i + 1] = (byte) (16 + random.nextInt(240));
+        }
+        return data;
+    }
+}
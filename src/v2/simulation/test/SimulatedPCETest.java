@@ -0,0 +1,150 @@
+package v2.simulation.test;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import v2.core.concurrency.Clock;
+import v2.core.context.Context;
+import v2.core.domain.PceCommand;
+import v2.core.domain.message.MessageHeader;
+import v2.core.domain.message.MessageType;
+import v2.core.domain.node.Node;
+import v2.core.util.MessageUtil;
+import v2.shared.impl.LocalCorrespondenceRegister;
+import v2.shared.testing.SilentLogger;
+import v2.simulation.impl.PceRepository;
+import v2.simulation.impl.SimulatedNodeData;
+import v2.simulation.impl.SimulatedPCE;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimulatedPCETest {
+
+    private static final long CONTROLLER_ID = 1000;
+
+    private long now;
+    private SimulatedPCE pce;
+    private LocalCorrespondenceRegister controller;
+    private LocalCorrespondenceRegister a;
+    private LocalCorrespondenceRegister b;
+
+    @BeforeEach
+    void setUp() {
+        now = 0;
+        pce = new SimulatedPCE(0);
+        new Context.Builder().register(new SilentLogger()).register((Clock) () -> now).register(pce).build();
+        controller = LocalCorrespondenceRegister.from(pce.allocateAddress(CONTROLLER_ID, (byte) -1, -1));
+        a = LocalCorrespondenceRegister.from(join(1));
+        b = LocalCorrespondenceRegister.from(join(2));
+    }
+
+    @Test
+    void testQuietNodeNeverExpires() {
+        report(controller, a.address());
+        report(a, controller.address(), b.address());
+        report(b, a.address());
+        assertTrue(PceRepository.LIVENESS_TIMEOUT >= 2 * Node.ROUTING_KEEPALIVE_PERIOD);
+
+        long epoch = pce.epoch();
+        for (int period = 1; period <= 20; period++) {
+            now += Node.ROUTING_KEEPALIVE_PERIOD;
+            // every third keep-alive of b gets lost
+            for (var node : List.of(controller, a, b)) {
+                if (node == b && period % 3 == 0) continue;
+                report(node, neighbours(node));
+            }
+            assertEquals(Set.of(controller.address(), a.address(), b.address()), liveAddresses(), "live after period " + period);
+        }
+        assertEquals(epoch, pce.epoch());
+    }
+
+    @Test
+    void testSilentNodeExpires() {
+        report(controller, a.address());
+        report(a, controller.address());
+        now += PceRepository.LIVENESS_TIMEOUT + 1;
+        report(controller, a.address());
+        assertEquals(Set.of(controller.address()), liveAddresses());
+    }
+
+    @Test
+    void testLostLinkIsRemoved() {
+        report(controller, a.address());
+        report(a, controller.address(), b.address());
+        report(b, a.address());
+        int downlink = b.address() | MessageHeader.DOWNWARDS_BIT;
+        assertTrue(routingOf(a.address()).contains(downlink));
+
+        // a no longer hears b, so b is cut off
+        var commands = report(a, controller.address());
+        assertFalse(routingOf(a.address()).contains(downlink));
+        assertTrue(commands.stream().anyMatch(c -> c.target == a.address()
+                && entries(c).contains(downlink | MessageHeader.DELETE_BIT)), "deletion pushed to " + a.address());
+    }
+
+    @Test
+    void testKeepAliveReplacesRouting() {
+        report(controller, a.address());
+        report(a, controller.address(), b.address());
+        report(b, a.address());
+
+        var commands = report(a, controller.address(), b.address());
+        var update = commands.stream().filter(c -> c.target == a.address()).findFirst().orElseThrow();
+        assertEquals(MessageHeader.ROUTING_RESET, update.data[0] & 0xff);
+        assertEquals(routingOf(a.address()), new HashSet<>(entries(update).subList(1, update.data.length)));
+    }
+
+    @Test
+    void testLossyDirectLinkIsAvoided() {
+        // reliabilities encoded like the node does, b hears the controller badly and a well
+        report(controller, new int[]{a.address(), b.address()}, new double[]{0.9, 0.3});
+        report(a, new int[]{controller.address(), b.address()}, new double[]{0.9, 0.9});
+        report(b, new int[]{controller.address(), a.address()}, new double[]{0.3, 1.0});
+        assertTrue(routingOf(a.address()).contains(b.address() | MessageHeader.DOWNWARDS_BIT), "b routed through a");
+    }
+
+    private int join(long sid) {
+        var commands = pce.feed(CONTROLLER_ID, controller.packAndIncrement(MessageType.UpwardsJoin, MessageUtil.sidToJoinData(sid)));
+        return commands.stream().filter(c -> c.type == PceCommand.Type.Invite).findFirst().orElseThrow().address;
+    }
+
+    private List<PceCommand> report(LocalCorrespondenceRegister node, int... neighbours) {
+        byte[] data = new byte[neighbours.length * 2];
+        for (int i = 0; i < neighbours.length; i++) {
+            data[2 * i] = (byte) neighbours[i];
+            data[2 * i + 1] = (byte) 200;
+        }
+        return new ArrayList<>(pce.feed(CONTROLLER_ID, node.packAndIncrement(MessageType.UpwardsRouting, data)));
+    }
+
+    private List<PceCommand> report(LocalCorrespondenceRegister node, int[] neighbours, double[] reliability) {
+        byte[] data = new byte[neighbours.length * 2];
+        for (int i = 0; i < neighbours.length; i++) {
+            data[2 * i] = (byte) neighbours[i];
+            data[2 * i + 1] = (byte) Math.min(255, (int) (reliability[i] * 256));
+        }
+        return new ArrayList<>(pce.feed(CONTROLLER_ID, node.packAndIncrement(MessageType.UpwardsRouting, data)));
+    }
+
+    private int[] neighbours(LocalCorrespondenceRegister node) {
+        if (node == controller) return new int[]{a.address()};
+        if (node == a) return new int[]{controller.address(), b.address()};
+        return new int[]{a.address()};
+    }
+
+    private Set<Integer> liveAddresses() {
+        return pce.liveNodes().stream().map(n -> n.address).filter(address -> address > 0).collect(Collectors.toSet());
+    }
+
+    private Set<Integer> routingOf(int address) {
+        return pce.liveNodes().stream().filter(n -> n.address == address).findFirst().map(SimulatedNodeData::getRouting).orElseThrow();
+    }
+
+    private static List<Integer> entries(PceCommand command) {
+        List<Integer> entries = new ArrayList<>();
+        for (byte entry : command.data) entries.add(entry & 0xff);
+        return entries;
+    }
+}
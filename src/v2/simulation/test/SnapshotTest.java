@@ -0,0 +1,150 @@
+package v2.simulation.test;
+
+import org.junit.jupiter.api.Test;
+import v2.core.domain.ChannelInfo;
+import v2.core.domain.NodeState;
+import v2.core.domain.node.NodeStatus;
+import v2.core.log.Logger;
+import v2.shared.impl.LocalCorrespondenceRegister;
+import v2.simulation.domain.NodeSimulationSpecs;
+import v2.simulation.impl.SimulatedNodeData;
+import v2.simulation.snapshot.Snapshot;
+import v2.simulation.util.Varints;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotTest {
+
+    @Test
+    void testRoundTrip() throws Exception {
+        var ctl = new NodeSimulationSpecs("ctl", 0, 0, true);
+        var node = new NodeSimulationSpecs("n1", 1.5, -2.25, false);
+        node.reception.put(ctl.id(), 0.9);
+        node.setHelloPeriod(10000);
+        node.setLogLevel(Logger.Severity.Debug);
+        var state = new NodeState(7, ChannelInfo.rendezvous, 3, 4, 5, List.of(1, 2), List.of(7, 9), Map.of(1, 0.5));
+        var data = new SimulatedNodeData();
+        data.id = node.id();
+        data.address = 7;
+        data.status = NodeStatus.Node;
+        data.lastUpdated = 98000;
+        data.retx.put(1, 0.25);
+        data.routing.add(9);
+        var correspondence = LocalCorrespondenceRegister.to(7);
+        correspondence.restoreSendingCounter(12);
+        correspondence.restore(30, List.of(28));
+        data.correspondence = correspondence;
+
+        var settings = new Snapshot.Settings();
+        settings.time = 100000;
+        settings.seed = 42;
+        settings.dataFeedPeriod = 2500;
+        settings.view = "pulse";
+        var out = new ByteArrayOutputStream();
+        try (var writer = new Snapshot.Writer(out, settings, true)) {
+            writer.node(ctl);
+            writer.node(node);
+            writer.state(node.id(), state);
+            writer.pce(ctl.id(), data, settings.time);
+        }
+
+        List<NodeSimulationSpecs> nodes = new ArrayList<>();
+        Map<Long, NodeState> states = new HashMap<>();
+        List<SimulatedNodeData> pce = new ArrayList<>();
+        try (var reader = new Snapshot.Reader(new ByteArrayInputStream(out.toByteArray()))) {
+            assertTrue(reader.runtime);
+            assertEquals(42, reader.settings.seed);
+            assertEquals(2500, reader.settings.dataFeedPeriod);
+            assertEquals("pulse", reader.settings.view);
+            reader.read(new Snapshot.Visitor() {
+                @Override
+                public void node(NodeSimulationSpecs specs) {
+                    nodes.add(specs);
+                }
+
+                @Override
+                public void state(long id, NodeState state) {
+                    states.put(id, state);
+                }
+
+                @Override
+                public void pce(long controller, SimulatedNodeData node) {
+                    assertEquals(ctl.id(), controller);
+                    pce.add(node);
+                }
+            });
+        }
+
+        assertEquals(2, nodes.size());
+        assertFalse(nodes.get(0).pceDisabled());
+        var restored = nodes.get(1);
+        assertEquals(node.id(), restored.id());
+        assertEquals(-2.25, restored.y());
+        assertTrue(restored.pceDisabled());
+        assertEquals(0.9, restored.reception(nodes.get(0)));
+        assertEquals((long) 10000, restored.helloPeriod());
+        assertEquals(Logger.Severity.Debug, restored.logLevel());
+        assertArrayEquals(state.toBytes(), states.get(node.id()).toBytes());
+
+        assertEquals(1, pce.size());
+        var restoredData = pce.get(0);
+        assertEquals(7, restoredData.address);
+        assertEquals(NodeStatus.Node, restoredData.status);
+        assertEquals((long) -2000, restoredData.lastUpdated);
+        assertEquals(Map.of(1, 0.25), restoredData.retx);
+        assertEquals(Set.of(9), restoredData.routing);
+        var restoredCorrespondence = (LocalCorrespondenceRegister) restoredData.correspondence;
+        assertEquals(12, restoredCorrespondence.sendingCounter());
+        assertEquals(30, restoredCorrespondence.nextReceivingCounter());
+        assertEquals(List.of(28), new ArrayList<>(restoredCorrespondence.missing()));
+    }
+
+    @Test
+    void testVersion1IsRead() throws Exception {
+        var bytes = new ByteArrayOutputStream();
+        var out = new DataOutputStream(bytes);
+        out.writeInt(Snapshot.MAGIC);
+        out.writeByte(1);
+        out.writeByte(0);
+        out.writeLong(0);
+        out.writeLong(42);
+        Varints.write(out, 2500);
+        Varints.writeSigned(out, 0);
+        out.writeBoolean(false);
+        out.writeUTF("plain");
+        // a node record with the log level as ordinal
+        out.writeByte(1);
+        out.writeLong(5);
+        out.writeDouble(1);
+        out.writeDouble(2);
+        out.writeByte(0);
+        out.writeByte(Logger.Severity.Info.ordinal());
+        Varints.write(out, 10000);
+        Varints.write(out, 20000);
+        Varints.write(out, 0);
+        out.writeByte(0);
+
+        List<NodeSimulationSpecs> nodes = new ArrayList<>();
+        try (var reader = new Snapshot.Reader(new ByteArrayInputStream(bytes.toByteArray()))) {
+            reader.read(nodes::add);
+        }
+        assertEquals(1, nodes.size());
+        assertEquals(5, nodes.get(0).id());
+        assertEquals(Logger.Severity.Info, nodes.get(0).logLevel());
+    }
+
+    @Test
+    void testNewerVersionIsRefused() throws Exception {
+        var out = new ByteArrayOutputStream();
+        new Snapshot.Writer(out, new Snapshot.Settings(), false).close();
+        byte[] bytes = out.toByteArray();
+        bytes[4] = Snapshot.VERSION + 1;
+        assertThrows(IOException.class, () -> new Snapshot.Reader(new ByteArrayInputStream(bytes)));
+    }
+}
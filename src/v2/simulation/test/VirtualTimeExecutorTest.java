@@ -0,0 +1,209 @@
+package v2.simulation.test;
+
+import org.junit.jupiter.api.Test;
+import v2.core.context.Context;
+import v2.shared.testing.SilentLogger;
+import v2.simulation.impl.VirtualTimeExecutor;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VirtualTimeExecutorTest {
+
+    private static final long DAY = 24 * 3600 * 1000L;
+
+    @Test
+    void testDiscreteDayRunsFast() throws Exception {
+        var exec = new VirtualTimeExecutor();
+        var ctx = new Context.Builder().register(new TestConfig(true, 1)).register(new SilentLogger()).register(exec).build().deploy();
+
+        List<Long> fired = Collections.synchronizedList(new ArrayList<>());
+        long[] hellos = new long[1];
+        var end = new CountDownLatch(1);
+        exec.schedulePeriodic(() -> fired.add(exec.millis()), 60000, 500);
+        exec.schedulePeriodic(() -> hellos[0]++, 1000, 0);
+        exec.schedule(() -> exec.schedule(() -> {
+            exec.pause(true);
+            end.countDown();
+        }, DAY - 10000), 10000);
+
+        long start = System.nanoTime();
+        exec.pause(false);
+        assertTrue(end.await(30, TimeUnit.SECONDS), "simulated day did not end");
+        long wallMillis = (System.nanoTime() - start) / 1000000;
+        ctx.destroy("test ended");
+
+        assertEquals(DAY, exec.millis());
+        assertEquals(24 * 60, fired.size());
+        for (int i = 0; i < fired.size(); i++) assertEquals(500 + i * 60000L, (long) fired.get(i));
+        assertEquals(DAY / 1000 + 1, hellos[0]);
+        assertTrue(wallMillis < DAY / 1000, "took " + wallMillis + " ms");
+    }
+
+    @Test
+    void testDelayedTaskSeesItsDueTime() throws Exception {
+        var exec = new VirtualTimeExecutor();
+        var ctx = new Context.Builder().register(new TestConfig(true, 1)).register(new SilentLogger()).register(exec).build().deploy();
+        exec.pause(false);
+
+        long[] seen = new long[2];
+        var done = new CountDownLatch(1);
+        exec.schedule(() -> {
+            seen[0] = exec.millis();
+            exec.async(() -> {
+                seen[1] = exec.millis();
+                done.countDown();
+            });
+        }, 3600000);
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        ctx.destroy("test ended");
+
+        assertEquals(3600000, seen[0]);
+        assertEquals(3600000, seen[1]);
+    }
+
+    @Test
+    void testShardsKeepOrderAcrossWorkers() throws Exception {
+        var exec = new VirtualTimeExecutor();
+        var ctx = new Context.Builder().register(new TestConfig(true, 4)).register(new SilentLogger()).register(exec).build().deploy();
+
+        int shards = 16, tasks = 2000;
+        List<List<Integer>> order = new ArrayList<>();
+        AtomicBoolean[] busy = new AtomicBoolean[shards];
+        AtomicBoolean overlap = new AtomicBoolean();
+        var done = new CountDownLatch(shards * tasks);
+        for (int s = 0; s < shards; s++) {
+            var executor = exec.shard("shard " + s);
+            var seen = new ArrayList<Integer>();
+            order.add(seen);
+            busy[s] = new AtomicBoolean();
+            var flag = busy[s];
+            for (int t = 0; t < tasks; t++) {
+                final int index = t;
+                // several tasks per instant, so a shard regularly has queued work to keep in order
+                executor.schedule(() -> {
+                    if (!flag.compareAndSet(false, true)) overlap.set(true);
+                    seen.add(index);
+                    flag.set(false);
+                    done.countDown();
+                }, t / 10);
+            }
+        }
+        exec.pause(false);
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        ctx.destroy("test ended");
+
+        assertFalse(overlap.get(), "tasks of one shard ran concurrently");
+        for (var seen : order) {
+            assertEquals(tasks, seen.size());
+            for (int t = 0; t < tasks; t++) assertEquals(t, (long) seen.get(t));
+        }
+        assertEquals((long) shards * tasks, (long) exec.step().value());
+    }
+
+    @Test
+    void testQuiesceRunsWhileNoTaskRuns() throws Exception {
+        var exec = new VirtualTimeExecutor();
+        var ctx = new Context.Builder().register(new TestConfig(true, 4)).register(new SilentLogger()).register(exec).build().deploy();
+
+        var running = new AtomicInteger();
+        var ran = new AtomicLong();
+        for (int s = 0; s < 8; s++) {
+            exec.shard("shard " + s).schedulePeriodic(() -> {
+                running.incrementAndGet();
+                LockSupport.parkNanos(200000);
+                ran.incrementAndGet();
+                running.decrementAndGet();
+            }, 1, 0);
+        }
+        exec.pause(false);
+        while (ran.get() < 1000) Thread.sleep(1);
+
+        long[] seen = new long[3];
+        exec.quiesce(() -> {
+            seen[0] = running.get();
+            seen[1] = ran.get();
+            LockSupport.parkNanos(50000000);
+            seen[2] = ran.get();
+        });
+        assertFalse(exec.paused());
+        long resumed = ran.get();
+        while (ran.get() == resumed) Thread.sleep(1);
+        ctx.destroy("test ended");
+
+        assertEquals(0, seen[0]);
+        assertEquals(seen[1], seen[2]);
+    }
+
+    @Test
+    void testIdleWorkersParkUntilWorkArrives() throws Exception {
+        var exec = new VirtualTimeExecutor();
+        var ctx = new Context.Builder().register(new TestConfig(true, 4)).register(new SilentLogger()).register(exec).build().deploy();
+        exec.pause(false);
+        var done = new CountDownLatch(1);
+        exec.shard("shard").async(done::countDown);
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        // without work every worker waits without a timeout instead of polling
+        long deadline = System.currentTimeMillis() + 10000;
+        List<Thread.State> states;
+        do {
+            Thread.sleep(10);
+            states = workerStates();
+        } while (!states.stream().allMatch(state -> state == Thread.State.WAITING) && System.currentTimeMillis() < deadline);
+        assertEquals(4, states.size());
+        assertTrue(states.stream().allMatch(state -> state == Thread.State.WAITING), "worker states " + states);
+
+        var again = new CountDownLatch(1);
+        exec.shard("other").async(again::countDown);
+        assertTrue(again.await(10, TimeUnit.SECONDS));
+        ctx.destroy("test ended");
+    }
+
+    private static List<Thread.State> workerStates() {
+        List<Thread.State> states = new ArrayList<>();
+        Thread.getAllStackTraces().forEach((thread, stack) -> {
+            for (var frame : stack) {
+                if (frame.getClassName().equals(VirtualTimeExecutor.class.getName()) && frame.getMethodName().equals("workerLoop")) {
+                    states.add(thread.getState());
+                    break;
+                }
+            }
+        });
+        return states;
+    }
+
+    private static class TestConfig implements VirtualTimeExecutor.Config {
+        private final boolean discrete;
+        private final int poolSize;
+
+        TestConfig(boolean discrete, int poolSize) {
+            this.discrete = discrete;
+            this.poolSize = poolSize;
+        }
+
+        @Override
+        public int poolSize() {
+            return poolSize;
+        }
+
+        @Override
+        public double timeFactor() {
+            return 1;
+        }
+
+        @Override
+        public boolean discreteEvent() {
+            return discrete;
+        }
+    }
+}
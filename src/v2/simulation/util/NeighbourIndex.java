@@ -0,0 +1,203 @@
+package v2.simulation.util;
+
+import v2.simulation.domain.NodeSimulationSpecs;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ *     Nodes that can hear a sender, with their reception probability as held by the {@link ReceptionMatrix}. Nodes are kept in a grid of {@link #RANGE}-sized cells,
+ *     so the list of a sender is built from the 3x3 cells around it, once, and cached until a node in reach moves
+ *     or one of the sender's links is set by hand. The same grid answers which nodes lie in an area of the map.
+ * </p>
+ * <p>
+ *     Distance-based links fade out quickly; beyond {@link #RANGE} or below {@link #MIN_RECEPTION} they are left out.
+ *     Links set by hand are always kept, at any distance.
+ * </p>
+ */
+public class NeighbourIndex {
+
+    public static final double RANGE = 8;
+    public static final double MIN_RECEPTION = 0.001;
+
+    private final ReceptionMatrix matrix;
+    private final Map<Long, List<NodeSimulationSpecs>> grid = new HashMap<>();
+    private final Map<NodeSimulationSpecs, Long> cells = new IdentityHashMap<>();
+    private final Map<Long, Set<NodeSimulationSpecs>> manual = new HashMap<>();
+    private final Map<NodeSimulationSpecs, List<Link>> cache = new ConcurrentHashMap<>();
+
+    public NeighbourIndex(ReceptionMatrix matrix) {
+        this.matrix = matrix;
+    }
+
+    public ReceptionMatrix matrix() {
+        return matrix;
+    }
+
+    /**
+     * @return nodes that may receive a transmission of the sender, ordered by id
+     */
+    public List<Link> of(NodeSimulationSpecs sender) {
+        var links = cache.get(sender);
+        if (links != null) return links;
+        synchronized (this) {
+            return cache.computeIfAbsent(sender, this::build);
+        }
+    }
+
+    public synchronized void add(NodeSimulationSpecs specs) {
+        matrix.add(specs);
+        long cell = cell(specs.x(), specs.y());
+        cells.put(specs, cell);
+        grid.computeIfAbsent(cell, c -> new ArrayList<>()).add(specs);
+        specs.reception.keySet().forEach(sender -> manual.computeIfAbsent(sender, s -> new HashSet<>()).add(specs));
+        invalidateAround(cell);
+    }
+
+    public synchronized void remove(NodeSimulationSpecs specs) {
+        matrix.remove(specs);
+        Long cell = cells.remove(specs);
+        if (cell == null) return;
+        grid.get(cell).remove(specs);
+        manual.values().forEach(receivers -> receivers.remove(specs));
+        cache.remove(specs);
+        invalidateAround(cell);
+        // senders out of range that reach the node through a manual link
+        specs.reception.keySet().forEach(this::invalidate);
+    }
+
+    /**
+     * to be called after the node changed its position
+     */
+    public synchronized void moved(NodeSimulationSpecs specs) {
+        matrix.moved(specs);
+        Long previous = cells.get(specs);
+        if (previous == null) return;
+        long cell = cell(specs.x(), specs.y());
+        if (cell != previous) {
+            grid.get(previous).remove(specs);
+            grid.computeIfAbsent(cell, c -> new ArrayList<>()).add(specs);
+            cells.put(specs, cell);
+        }
+        invalidateAround(previous);
+        invalidateAround(cell);
+    }
+
+    /**
+     * to be called after the reception of the receiver from the sender was set or reset
+     */
+    public synchronized void linkChanged(NodeSimulationSpecs receiver, NodeSimulationSpecs sender) {
+        matrix.linkChanged(receiver, sender);
+        var receivers = manual.computeIfAbsent(sender.id(), s -> new HashSet<>());
+        if (receiver.reception.containsKey(sender.id())) {
+            receivers.add(receiver);
+        } else {
+            receivers.remove(receiver);
+        }
+        cache.remove(sender);
+    }
+
+    /**
+     * @return nodes positioned in the rectangle, looked up in the cells it overlaps
+     */
+    public synchronized List<NodeSimulationSpecs> within(double minX, double minY, double maxX, double maxY) {
+        List<NodeSimulationSpecs> found = new ArrayList<>();
+        long first = cell(minX, minY), last = cell(maxX, maxY);
+        int cx0 = (int) (first >> 32), cy0 = (int) first, cx1 = (int) (last >> 32), cy1 = (int) last;
+        if ((double) (cx1 - cx0 + 1L) * (cy1 - cy0 + 1L) > grid.size()) {
+            // a large area has more cells than there are occupied ones
+            for (var nodes : grid.values()) addWithin(found, nodes, minX, minY, maxX, maxY);
+            return found;
+        }
+        for (int cx = cx0; cx <= cx1; cx++) {
+            for (int cy = cy0; cy <= cy1; cy++) {
+                var nodes = grid.get(key(cx, cy));
+                if (nodes != null) addWithin(found, nodes, minX, minY, maxX, maxY);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return the node closest to the position within the distance, null if there is none
+     */
+    public NodeSimulationSpecs closest(double x, double y, double maxDistance) {
+        NodeSimulationSpecs closest = null;
+        double best = maxDistance;
+        for (var specs : within(x - maxDistance, y - maxDistance, x + maxDistance, y + maxDistance)) {
+            double dx = specs.x() - x, dy = specs.y() - y;
+            double distance = Math.sqrt(dx*dx + dy*dy);
+            if (distance <= best) {
+                best = distance;
+                closest = specs;
+            }
+        }
+        return closest;
+    }
+
+    private static void addWithin(List<NodeSimulationSpecs> found, List<NodeSimulationSpecs> nodes, double minX, double minY, double maxX, double maxY) {
+        for (var specs : nodes) {
+            if (specs.x() >= minX && specs.x() <= maxX && specs.y() >= minY && specs.y() <= maxY) found.add(specs);
+        }
+    }
+
+    private void invalidate(long sender) {
+        cache.keySet().removeIf(specs -> specs.id() == sender);
+    }
+
+    private void invalidateAround(long cell) {
+        int cx = (int) (cell >> 32), cy = (int) cell;
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                var nodes = grid.get(key(cx + dx, cy + dy));
+                if (nodes != null) nodes.forEach(cache::remove);
+            }
+        }
+    }
+
+    private List<Link> build(NodeSimulationSpecs sender) {
+        List<Link> links = new ArrayList<>();
+        Set<NodeSimulationSpecs> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        long cell = cell(sender.x(), sender.y());
+        int cx = (int) (cell >> 32), cy = (int) cell;
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                var nodes = grid.get(key(cx + dx, cy + dy));
+                if (nodes == null) continue;
+                for (var receiver : nodes) {
+                    if (receiver == sender || receiver.distance(sender) > RANGE) continue;
+                    seen.add(receiver);
+                    add(links, receiver, matrix.get(receiver, sender));
+                }
+            }
+        }
+        for (var receiver : manual.getOrDefault(sender.id(), Set.of())) {
+            if (receiver != sender && seen.add(receiver)) add(links, receiver, matrix.get(receiver, sender));
+        }
+        links.sort(Comparator.comparingLong(link -> link.receiver.id()));
+        return List.copyOf(links);
+    }
+
+    private static void add(List<Link> links, NodeSimulationSpecs receiver, double reception) {
+        if (reception >= MIN_RECEPTION) links.add(new Link(receiver, reception));
+    }
+
+    private static long cell(double x, double y) {
+        return key((int) Math.floor(x / RANGE), (int) Math.floor(y / RANGE));
+    }
+
+    private static long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xffffffffL);
+    }
+
+    public static class Link {
+        public final NodeSimulationSpecs receiver;
+        public final double reception;
+
+        Link(NodeSimulationSpecs receiver, double reception) {
+            this.receiver = receiver;
+            this.reception = reception;
+        }
+    }
+}
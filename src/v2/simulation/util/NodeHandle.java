@@ -3,19 +3,21 @@ package v2.simulation.util;
 import v2.core.context.Context;
 import v2.core.context.Module;
 import v2.core.domain.ChannelInfo;
+import v2.core.domain.NodeState;
 import v2.core.domain.message.Message;
 import v2.core.domain.node.Node;
 import v2.core.domain.node.NodeStatus;
 import v2.core.log.Logger;
+import v2.simulation.Simulation;
 import v2.simulation.domain.NodeSimulationSpecs;
 import v2.simulation.impl.SimulatedLoRaMeshModule;
 
 import java.nio.ByteBuffer;
-import java.util.Random;
 import java.util.Set;
 
 public class NodeHandle implements Module {
 
+    private Simulation simulation;
     private Node node;
     private NodeSimulationSpecs specs;
     private SimulatedLoRaMeshModule lora;
@@ -23,6 +25,7 @@ public class NodeHandle implements Module {
 
     @Override
     public void build(Context ctx) {
+        simulation = ctx.resolve(Simulation.class);
         node = ctx.resolve(Node.class);
         specs = ctx.resolve(NodeSimulationSpecs.class);
         lora = ctx.resolve(SimulatedLoRaMeshModule.class);
@@ -67,10 +70,12 @@ public class NodeHandle implements Module {
 
     public void setX(double x) {
         specs.setX(x);
+        simulation.neighbours().moved(specs);
     }
 
     public void setY(double y) {
         specs.setY(y);
+        simulation.neighbours().moved(specs);
     }
 
     public double distance(double x, double y) {
@@ -91,6 +96,13 @@ public class NodeHandle implements Module {
         return lora.listeningChannel();
     }
 
+    /**
+     * @return messages waiting in the radio queue
+     */
+    public int queued() {
+        return lora.queued();
+    }
+
     public long lastSent() {
         return lora.lastSent();
     }
@@ -100,27 +112,45 @@ public class NodeHandle implements Module {
     }
 
     public double reception(NodeHandle other) {
-        return specs.reception.getOrDefault(other.id(), distanceBasedReception(other));
+        return simulation.neighbours().matrix().get(specs, other.specs);
     }
 
     public double distanceBasedReception(NodeHandle other) {
-        double pseudoRandom = new Random((long) (x() + 10*y() + 100*other.x() + 1000*other.y())).nextDouble();
-        double distancePower = 0.2 * Math.pow(1.5, distance(other) * 3);
-        return Math.min(0.95, Math.pow(pseudoRandom, distancePower));
+        return specs.distanceBasedReception(other.specs);
     }
 
     public void resetReception(NodeHandle other) {
         specs.reception.remove(other.id());
+        simulation.neighbours().linkChanged(specs, other.specs);
     }
 
     public void setReception(NodeHandle other, double value) {
         specs.reception.put(other.id(), value);
+        simulation.neighbours().linkChanged(specs, other.specs);
+    }
+
+    /**
+     * @return the state the node would resume from, see {@link Node#state()}
+     */
+    public NodeState state() {
+        return node.state();
     }
 
     public Set<Integer> getRoutingRegistry() {
         return node.getRoutingRegistry();
     }
 
+    public int routingVersion() {
+        return node.routingVersion();
+    }
+
+    /**
+     * @return the routing registry as of its latest change, safe to read from any thread
+     */
+    public Set<Integer> routingSnapshot() {
+        return node.routingSnapshot();
+    }
+
     public Logger.Severity logLevel() {
         return specs.logLevel();
     }
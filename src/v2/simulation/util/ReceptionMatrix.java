@@ -0,0 +1,249 @@
+package v2.simulation.util;
+
+import v2.simulation.domain.NodeSimulationSpecs;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * <p>
+ *     Reception probability of every pair of nodes, computed once from the distance model of {@link NodeSimulationSpecs}
+ *     with the links set by hand applied on top. Values are stored as floats, by sender and then by receiver.
+ * </p>
+ * <p>
+ *     Up to {@link #DENSE_LIMIT} nodes the matrix is dense. Above, it is a compressed sparse row matrix holding
+ *     only the pairs within {@link NeighbourIndex#RANGE} and above {@link NeighbourIndex#MIN_RECEPTION}
+ *     plus the links set by hand, all other pairs read as 0.
+ * </p>
+ * <p>
+ *     Adding or removing a node rebuilds the matrix in parallel on the next read. A move recomputes the node's row
+ *     and column in place if the matrix is dense, a link set by hand is written in place if its entry exists.
+ * </p>
+ */
+public class ReceptionMatrix {
+
+    public static final int DENSE_LIMIT = 2048;
+
+    private final Set<NodeSimulationSpecs> nodes = Collections.newSetFromMap(new IdentityHashMap<>());
+    private volatile Layout layout = null;
+
+    /**
+     * @return probability that the receiver gets a transmission of the sender
+     */
+    public double get(NodeSimulationSpecs receiver, NodeSimulationSpecs sender) {
+        var current = layout();
+        Integer r = current.index.get(receiver), s = current.index.get(sender);
+        if (r == null || s == null) return receiver.reception(sender);
+        return current.get(s, r);
+    }
+
+    public synchronized void add(NodeSimulationSpecs specs) {
+        nodes.add(specs);
+        layout = null;
+    }
+
+    public synchronized void remove(NodeSimulationSpecs specs) {
+        nodes.remove(specs);
+        layout = null;
+    }
+
+    /**
+     * to be called after the node changed its position
+     */
+    public synchronized void moved(NodeSimulationSpecs specs) {
+        var current = layout;
+        if (current == null) return;
+        if (current instanceof Dense) {
+            ((Dense) current).refresh(specs);
+        } else {
+            layout = null;
+        }
+    }
+
+    /**
+     * to be called after the reception of the receiver from the sender was set or reset
+     */
+    public synchronized void linkChanged(NodeSimulationSpecs receiver, NodeSimulationSpecs sender) {
+        var current = layout;
+        if (current == null) return;
+        Integer r = current.index.get(receiver), s = current.index.get(sender);
+        if (r == null || s == null || !current.set(s, r, (float) receiver.reception(sender))) layout = null;
+    }
+
+    /**
+     * @return bytes held by the matrix and its index, roughly
+     */
+    public long bytes() {
+        var current = layout();
+        return current.bytes() + current.nodes.length * 48L;
+    }
+
+    public boolean dense() {
+        return layout() instanceof Dense;
+    }
+
+    private Layout layout() {
+        var current = layout;
+        if (current != null) return current;
+        synchronized (this) {
+            if (layout == null) {
+                var sorted = nodes.toArray(new NodeSimulationSpecs[0]);
+                Arrays.sort(sorted, Comparator.comparingLong(NodeSimulationSpecs::id));
+                layout = sorted.length <= DENSE_LIMIT? new Dense(sorted) : new Sparse(sorted);
+            }
+            return layout;
+        }
+    }
+
+    private abstract static class Layout {
+        final NodeSimulationSpecs[] nodes;
+        final Map<NodeSimulationSpecs, Integer> index = new IdentityHashMap<>();
+
+        Layout(NodeSimulationSpecs[] nodes) {
+            this.nodes = nodes;
+            for (int i = 0; i < nodes.length; i++) index.put(nodes[i], i);
+        }
+
+        abstract float get(int sender, int receiver);
+
+        /**
+         * @return false if the pair has no entry
+         */
+        abstract boolean set(int sender, int receiver, float value);
+
+        abstract long bytes();
+    }
+
+    private static class Dense extends Layout {
+        final float[] values;
+
+        Dense(NodeSimulationSpecs[] nodes) {
+            super(nodes);
+            int n = nodes.length;
+            values = new float[n * n];
+            IntStream.range(0, n).parallel().forEach(s -> {
+                for (int r = 0; r < n; r++) {
+                    if (r != s) values[s * n + r] = (float) nodes[r].reception(nodes[s]);
+                }
+            });
+        }
+
+        void refresh(NodeSimulationSpecs specs) {
+            Integer i = index.get(specs);
+            if (i == null) return;
+            int n = nodes.length;
+            for (int other = 0; other < n; other++) {
+                if (other == i) continue;
+                values[i * n + other] = (float) nodes[other].reception(specs);
+                values[other * n + i] = (float) specs.reception(nodes[other]);
+            }
+        }
+
+        @Override
+        float get(int sender, int receiver) {
+            return values[sender * nodes.length + receiver];
+        }
+
+        @Override
+        boolean set(int sender, int receiver, float value) {
+            values[sender * nodes.length + receiver] = value;
+            return true;
+        }
+
+        @Override
+        long bytes() {
+            return 4L * values.length;
+        }
+    }
+
+    private static class Sparse extends Layout {
+        final int[] rowStart;
+        final int[] receivers;
+        final float[] values;
+
+        Sparse(NodeSimulationSpecs[] nodes) {
+            super(nodes);
+            int n = nodes.length;
+            Map<Long, List<Integer>> grid = new HashMap<>();
+            for (int i = 0; i < n; i++) grid.computeIfAbsent(cell(nodes[i].x(), nodes[i].y()), c -> new ArrayList<>()).add(i);
+            Map<Long, Integer> byId = new HashMap<>();
+            for (int i = 0; i < n; i++) byId.put(nodes[i].id(), i);
+            Map<Integer, Set<Integer>> manual = new HashMap<>();
+            for (int r = 0; r < n; r++) {
+                for (long sender : nodes[r].reception.keySet()) {
+                    Integer s = byId.get(sender);
+                    if (s != null) manual.computeIfAbsent(s, k -> new HashSet<>()).add(r);
+                }
+            }
+
+            int[][] rowReceivers = new int[n][];
+            float[][] rowValues = new float[n][];
+            IntStream.range(0, n).parallel().forEach(s -> {
+                var sender = nodes[s];
+                Set<Integer> candidates = new TreeSet<>(manual.getOrDefault(s, Set.of()));
+                long cell = cell(sender.x(), sender.y());
+                int cx = (int) (cell >> 32), cy = (int) cell;
+                for (int dx = -1; dx <= 1; dx++) {
+                    for (int dy = -1; dy <= 1; dy++) {
+                        for (int r : grid.getOrDefault(key(cx + dx, cy + dy), List.of())) {
+                            if (nodes[r].distance(sender) <= NeighbourIndex.RANGE) candidates.add(r);
+                        }
+                    }
+                }
+                candidates.remove(s);
+                int[] cols = new int[candidates.size()];
+                float[] vals = new float[candidates.size()];
+                int count = 0;
+                for (int r : candidates) {
+                    double reception = nodes[r].reception(sender);
+                    if (reception < NeighbourIndex.MIN_RECEPTION && !nodes[r].reception.containsKey(sender.id())) continue;
+                    cols[count] = r;
+                    vals[count++] = (float) reception;
+                }
+                rowReceivers[s] = Arrays.copyOf(cols, count);
+                rowValues[s] = Arrays.copyOf(vals, count);
+            });
+
+            rowStart = new int[n + 1];
+            for (int s = 0; s < n; s++) rowStart[s + 1] = rowStart[s] + rowReceivers[s].length;
+            receivers = new int[rowStart[n]];
+            values = new float[rowStart[n]];
+            for (int s = 0; s < n; s++) {
+                System.arraycopy(rowReceivers[s], 0, receivers, rowStart[s], rowReceivers[s].length);
+                System.arraycopy(rowValues[s], 0, values, rowStart[s], rowValues[s].length);
+            }
+        }
+
+        private int find(int sender, int receiver) {
+            int i = Arrays.binarySearch(receivers, rowStart[sender], rowStart[sender + 1], receiver);
+            return i >= 0? i : -1;
+        }
+
+        @Override
+        float get(int sender, int receiver) {
+            int i = find(sender, receiver);
+            return i >= 0? values[i] : 0;
+        }
+
+        @Override
+        boolean set(int sender, int receiver, float value) {
+            int i = find(sender, receiver);
+            if (i < 0) return false;
+            values[i] = value;
+            return true;
+        }
+
+        @Override
+        long bytes() {
+            return 4L * rowStart.length + 8L * values.length;
+        }
+
+        private static long cell(double x, double y) {
+            return key((int) Math.floor(x / NeighbourIndex.RANGE), (int) Math.floor(y / NeighbourIndex.RANGE));
+        }
+
+        private static long key(int cx, int cy) {
+            return ((long) cx << 32) | (cy & 0xffffffffL);
+        }
+    }
+}
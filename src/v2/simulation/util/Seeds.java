@@ -0,0 +1,35 @@
+package v2.simulation.util;
+
+/**
+ * <p>
+ *     Random draws of a seeded simulation. A draw is a hash of the seed and the keys it belongs to, e.g. sender,
+ *     receiver and time of a frame, instead of the next value of a shared generator. Every node thereby has its own
+ *     stream that doesn't depend on the order in which nodes run, on the partitioning or on the draws of other nodes,
+ *     so a run is repeated exactly with the same seed.
+ * </p>
+ */
+public final class Seeds {
+
+    private Seeds() {
+    }
+
+    /**
+     * @return uniform draw in [0, 1)
+     */
+    public static double draw(long seed, long a, long b, long c) {
+        return (hash(seed, a, b, c) >>> 11) * 0x1.0p-53;
+    }
+
+    public static long hash(long seed, long a, long b, long c) {
+        return mix(mix(mix(seed ^ a) ^ b) ^ c);
+    }
+
+    /**
+     * SplitMix64 finalizer
+     */
+    public static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,48 @@
+package v2.simulation.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Unsigned LEB128 numbers of the binary simulation files, 7 bits per byte, lowest first.
+ */
+public final class Varints {
+
+    private Varints() {
+    }
+
+    /**
+     * @throws IllegalArgumentException for negative values, see {@link #writeSigned(DataOutput, long)}
+     */
+    public static void write(DataOutput out, long value) throws IOException {
+        if (value < 0) throw new IllegalArgumentException("negative varint " + value);
+        while ((value & ~0x7fL) != 0) {
+            out.writeByte((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    public static long read(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("malformed varint");
+    }
+
+    /**
+     * zigzag encoded, so small negative values stay short
+     */
+    public static void writeSigned(DataOutput out, long value) throws IOException {
+        write(out, (value << 1) ^ (value >> 63));
+    }
+
+    public static long readSigned(DataInput in) throws IOException {
+        long value = read(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+}